@@ -410,7 +410,10 @@ public final class StaticInstanceReader {
         ans = new AlloyInstance(sol, sol.getOriginalFilename(), sol.getOriginalCommand(), am, atom2sets, rels, isMeta);
     }
 
-    /** Parse the file into an AlloyInstance if possible. */
+    /**
+     * Parse the file into an AlloyInstance if possible; the file can be in either
+     * XML or the binary form written by A4Solution.writeBinary().
+     */
     public static AlloyInstance parseInstance(File file) throws Err {
         try {
             return (new StaticInstanceReader(new XMLNode(file))).ans;
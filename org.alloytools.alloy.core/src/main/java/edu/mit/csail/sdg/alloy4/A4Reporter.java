@@ -128,6 +128,19 @@ public class A4Reporter {
             parent.solve(primaryVars, totalVars, clauses);
     }
 
+    /**
+     * If A4Options.progressInterval is positive, this method is called every that
+     * many milliseconds while the translator and the SAT solver are running, from
+     * a sampling thread rather than the thread executing the command.
+     *
+     * @param metrics - the live metrics of the running command (a
+     *            kodkod.engine.config.Metrics)
+     */
+    public void progress(Object metrics) {
+        if (parent != null)
+            parent.progress(metrics);
+    }
+
     /**
      * If solver==KK or solver==CNF, this method is called by the translator after
      * it constructed the Kodkod or CNF file.
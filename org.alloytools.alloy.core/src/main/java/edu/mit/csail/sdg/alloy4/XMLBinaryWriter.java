@@ -0,0 +1,493 @@
+/* Alloy Analyzer 4 -- Copyright (c) 2006-2009, Felix Chang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files
+ * (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package edu.mit.csail.sdg.alloy4;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutable; this class converts the XML document written to it into a compact
+ * binary form, as it is being written, and {@link XMLNode#XMLNode(File)} reads
+ * that form back.
+ * <p>
+ * The binary form starts with the bytes {@link #MAGIC} and a version byte,
+ * followed by a sequence of records, each starting with a tag byte. Strings
+ * (element names, attribute names and values, and atom labels) are written once
+ * in a STRING record the first time they are used, and referred to afterwards
+ * by their index in that dictionary. A START record holds the name and
+ * attributes of an element, and an END record closes it. Consecutive
+ * &lt;tuple&gt; elements that consist of &lt;atom label=".."/&gt; elements only
+ * are packed into one TUPLES record, which holds their arity, their number and
+ * the dictionary index of each atom. All numbers are unsigned varints (7 bits
+ * per byte, least significant first). Text between elements is dropped, just as
+ * {@link XMLNode#XMLNode(File)} drops it when parsing XML.
+ * <p>
+ * The binary form is smaller than the XML and faster to parse, but
+ * {@link XMLNode#XMLNode(File)} still builds the whole document tree from it,
+ * so reading a solution takes as much memory as reading its XML form.
+ */
+
+public final class XMLBinaryWriter extends Writer {
+
+    /** The bytes at the start of every binary document. */
+    static final byte[]               MAGIC           = {
+                                                         0, 'A', '4', 'B'
+    };
+
+    /** The version of the binary form. */
+    static final int                  VERSION         = 1;
+
+    /** The tag of the record that ends the document. */
+    static final int                  END_OF_DOCUMENT = 0;
+
+    /** The tag of the record that adds a string to the dictionary. */
+    static final int                  STRING          = 1;
+
+    /** The tag of the record that opens an element. */
+    static final int                  START           = 2;
+
+    /** The tag of the record that closes an element. */
+    static final int                  END             = 3;
+
+    /** The tag of the record that holds consecutive tuples of the same arity. */
+    static final int                  TUPLES          = 4;
+
+    /** The states of the XML tokenizer. */
+    private static final int          TEXT = 0, OPEN = 1, NAME = 2, ATTRS = 3, ATTR_NAME = 4, EQUALS = 5, QUOTE = 6, VALUE = 7, ENTITY = 8, EMPTY = 9, CLOSE = 10, BANG = 11, SKIP = 12, COMMENT = 13;
+
+    /** The output stream. */
+    private final OutputStream        out;
+
+    /** The dictionary index of each string written so far. */
+    private final Map<String,Integer> strings         = new HashMap<String,Integer>();
+
+    /** The current state of the XML tokenizer. */
+    private int                       state           = TEXT;
+
+    /** The token being read. */
+    private final StringBuilder       token           = new StringBuilder();
+
+    /** The entity being read inside an attribute value. */
+    private final StringBuilder       entity          = new StringBuilder();
+
+    /**
+     * The quote character that ends the attribute value being read, or the number
+     * of consecutive dashes just seen inside a comment.
+     */
+    private int                       quote;
+
+    /** The name of the element being read. */
+    private String                    name;
+
+    /** The attribute names and values of the element being read. */
+    private final List<String>        attrs           = new ArrayList<String>();
+
+    /** The names of the open elements. */
+    private final List<String>        open            = new ArrayList<String>();
+
+    /**
+     * If nonnull, we are inside a &lt;tuple&gt; that has had only atoms so far,
+     * and this holds their labels.
+     */
+    private List<String>              tuple;
+
+    /** True if we are inside an &lt;atom&gt; of that tuple. */
+    private boolean                   inAtom;
+
+    /** The arity of the tuples in the pending TUPLES record. */
+    private int                       arity;
+
+    /** The number of tuples in the pending TUPLES record. */
+    private int                       count;
+
+    /** The atom indexes of the pending TUPLES record, as varints. */
+    private byte[]                    batch           = new byte[64];
+
+    /** The number of bytes used in batch. */
+    private int                       batchSize;
+
+    /**
+     * Constructs a writer that writes the binary form of the XML document written
+     * to it into the given stream; the stream is closed when this writer is.
+     */
+    public XMLBinaryWriter(OutputStream out) throws IOException {
+        this.out = (out instanceof BufferedOutputStream) ? out : new BufferedOutputStream(out);
+        this.out.write(MAGIC);
+        this.out.write(VERSION);
+    }
+
+    /**
+     * Converts the given XML file into the binary form, and writes it into the
+     * given file.
+     */
+    public static void convert(File xml, File binary) throws IOException {
+        Reader reader = null;
+        XMLBinaryWriter writer = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(xml), "UTF-8");
+            writer = new XMLBinaryWriter(new FileOutputStream(binary));
+            char[] buffer = new char[8192];
+            for (int n; (n = reader.read(buffer)) >= 0;)
+                writer.write(buffer, 0, n);
+            writer.close();
+            writer = null;
+        } finally {
+            Util.close(reader);
+            Util.close(writer);
+        }
+    }
+
+    /**
+     * Returns true if the given stream starts with {@link #MAGIC}; the stream is
+     * reset to where it was before.
+     *
+     * @param in - a stream that supports mark and reset
+     */
+    static boolean isBinary(InputStream in) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        in.mark(head.length);
+        int n = 0;
+        for (int i; n < head.length && (i = in.read(head, n, head.length - n)) > 0;)
+            n = n + i;
+        in.reset();
+        return n == head.length && Arrays.equals(head, MAGIC);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        for (int i = offset, n = offset + length; i < n; i++)
+            write(buffer[i]);
+    }
+
+    /** Feeds one character to the XML tokenizer. */
+    @SuppressWarnings("fallthrough")
+    private void write(char c) throws IOException {
+        boolean space = c == ' ' || c == '\t' || c == '\r' || c == '\n';
+        switch (state) {
+            case TEXT :
+                if (c == '<')
+                    state = OPEN;
+                return;
+            case OPEN :
+                if (c == '/') {
+                    state = CLOSE;
+                } else if (c == '?') {
+                    state = SKIP;
+                } else if (c == '!') {
+                    state = BANG;
+                } else {
+                    token.append(c);
+                    state = NAME;
+                }
+                return;
+            case NAME :
+                if (!space && c != '/' && c != '>') {
+                    token.append(c);
+                    return;
+                }
+                name = token.toString();
+                token.setLength(0);
+                state = ATTRS;
+                // fall through, since c ends the name
+            case ATTRS :
+                if (c == '/') {
+                    state = EMPTY;
+                } else if (c == '>') {
+                    state = TEXT;
+                    start();
+                } else if (!space) {
+                    token.append(c);
+                    state = ATTR_NAME;
+                }
+                return;
+            case ATTR_NAME :
+                if (!space && c != '=') {
+                    token.append(c);
+                    return;
+                }
+                attrs.add(token.toString());
+                token.setLength(0);
+                state = EQUALS;
+                // fall through, since c may be the equal sign
+            case EQUALS :
+                if (c == '=')
+                    state = QUOTE;
+                else if (!space)
+                    throw malformed("Expects = after the attribute name \"" + attrs.get(attrs.size() - 1) + "\"");
+                return;
+            case QUOTE :
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                    state = VALUE;
+                } else if (!space)
+                    throw malformed("Expects a quoted attribute value");
+                return;
+            case VALUE :
+                if (c == quote) {
+                    attrs.add(token.toString());
+                    token.setLength(0);
+                    state = ATTRS;
+                } else if (c == '&') {
+                    state = ENTITY;
+                } else {
+                    token.append(c);
+                }
+                return;
+            case ENTITY :
+                if (c != ';') {
+                    entity.append(c);
+                    return;
+                }
+                token.append(decode(entity.toString()));
+                entity.setLength(0);
+                state = VALUE;
+                return;
+            case EMPTY :
+                if (c != '>')
+                    throw malformed("Expects > after /");
+                state = TEXT;
+                start();
+                end();
+                return;
+            case CLOSE :
+                if (c != '>') {
+                    token.append(c);
+                    return;
+                }
+                String closing = token.toString().trim();
+                token.setLength(0);
+                if (open.isEmpty() || !open.get(open.size() - 1).equals(closing))
+                    throw malformed("Unexpected </" + closing + ">");
+                state = TEXT;
+                end();
+                return;
+            case SKIP :
+                if (c == '>')
+                    state = TEXT;
+                return;
+            case BANG : // either <!--...--> or a declaration such as <!DOCTYPE...>
+                token.append(c);
+                if (c != '-') {
+                    token.setLength(0);
+                    state = (c == '>') ? TEXT : SKIP;
+                } else if (token.length() == 2) {
+                    token.setLength(0);
+                    quote = 0;
+                    state = COMMENT;
+                }
+                return;
+            case COMMENT :
+                if (c == '-') {
+                    quote++;
+                } else {
+                    if (c == '>' && quote >= 2)
+                        state = TEXT;
+                    quote = 0;
+                }
+                return;
+        }
+    }
+
+    /** Returns an exception that reports malformed XML. */
+    private IOException malformed(String message) {
+        return new IOException("Malformed XML: " + message + ".");
+    }
+
+    /** Returns the character denoted by the entity &amp;name; in a value. */
+    private char decode(String name) throws IOException {
+        if (name.equals("lt"))
+            return '<';
+        if (name.equals("gt"))
+            return '>';
+        if (name.equals("amp"))
+            return '&';
+        if (name.equals("quot"))
+            return '"';
+        if (name.equals("apos"))
+            return '\'';
+        try {
+            if (name.startsWith("#x"))
+                return (char) Integer.parseInt(name.substring(2), 16);
+            if (name.startsWith("#"))
+                return (char) Integer.parseInt(name.substring(1));
+        } catch (NumberFormatException ex) {}
+        throw malformed("Unknown entity &" + name + ";");
+    }
+
+    /** Handles the start of an element, whose name and attributes were read. */
+    private void start() throws IOException {
+        if (open.isEmpty() && !strings.isEmpty())
+            throw malformed("Expects only one root element");
+        open.add(name);
+        if (tuple != null) {
+            if (!inAtom && name.equals("atom") && attrs.size() == 2 && attrs.get(0).equals("label")) {
+                tuple.add(attrs.get(1));
+                inAtom = true;
+                attrs.clear();
+                return;
+            }
+            unpack();
+        } else if (name.equals("tuple") && attrs.isEmpty()) {
+            tuple = new ArrayList<String>();
+            inAtom = false;
+            return;
+        }
+        flushTuples();
+        startRecord(name, attrs);
+        attrs.clear();
+    }
+
+    /** Handles the end of the innermost open element. */
+    private void end() throws IOException {
+        open.remove(open.size() - 1);
+        if (tuple != null) {
+            if (inAtom) {
+                inAtom = false;
+            } else {
+                addTuple(tuple);
+                tuple = null;
+            }
+            return;
+        }
+        flushTuples();
+        out.write(END);
+    }
+
+    /**
+     * Writes the tuple being read as ordinary elements, since it has turned out to
+     * contain something other than atoms.
+     */
+    private void unpack() throws IOException {
+        List<String> atoms = tuple;
+        tuple = null;
+        flushTuples();
+        startRecord("tuple", null);
+        for (int i = 0; i < atoms.size(); i++) {
+            startRecord("atom", Arrays.asList("label", atoms.get(i)));
+            if (i < atoms.size() - 1 || !inAtom)
+                out.write(END);
+        }
+    }
+
+    /** Adds the given tuple to the pending TUPLES record. */
+    private void addTuple(List<String> atoms) throws IOException {
+        if (count > 0 && arity != atoms.size())
+            flushTuples();
+        arity = atoms.size();
+        count++;
+        for (String atom : atoms) {
+            if (batchSize + 5 > batch.length)
+                batch = Arrays.copyOf(batch, batch.length * 2);
+            for (int i = intern(atom); true; i = i >>> 7) {
+                if (i < 0x80) {
+                    batch[batchSize++] = (byte) i;
+                    break;
+                }
+                batch[batchSize++] = (byte) ((i & 0x7F) | 0x80);
+            }
+        }
+    }
+
+    /** Writes the pending TUPLES record, if any. */
+    private void flushTuples() throws IOException {
+        if (count == 0)
+            return;
+        out.write(TUPLES);
+        writeVarint(arity);
+        writeVarint(count);
+        out.write(batch, 0, batchSize);
+        count = 0;
+        batchSize = 0;
+    }
+
+    /** Writes a START record. */
+    private void startRecord(String name, List<String> attrs) throws IOException {
+        int n = (attrs == null) ? 0 : attrs.size();
+        if (n % 2 != 0)
+            throw malformed("Expects a value for the attribute \"" + attrs.get(n - 1) + "\"");
+        int[] indexes = new int[n + 1];
+        indexes[0] = intern(name);
+        for (int i = 0; i < n; i++)
+            indexes[i + 1] = intern(attrs.get(i));
+        out.write(START);
+        writeVarint(indexes[0]);
+        writeVarint(n / 2);
+        for (int i = 1; i <= n; i++)
+            writeVarint(indexes[i]);
+    }
+
+    /**
+     * Returns the dictionary index of the given string, writing a STRING record
+     * first if it has not been written before.
+     */
+    private int intern(String string) throws IOException {
+        Integer ans = strings.get(string);
+        if (ans != null)
+            return ans;
+        ans = strings.size();
+        strings.put(string, ans);
+        out.write(STRING);
+        writeVarint(string.length());
+        for (int i = 0; i < string.length(); i++)
+            writeVarint(string.charAt(i));
+        return ans;
+    }
+
+    /** Writes a nonnegative number as a varint. */
+    private void writeVarint(int i) throws IOException {
+        while (i >= 0x80) {
+            out.write((i & 0x7F) | 0x80);
+            i = i >>> 7;
+        }
+        out.write(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Ends the binary document and closes the stream.
+     *
+     * @throws IOException if the XML written so far is not a complete document
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (state != TEXT || !open.isEmpty() || strings.isEmpty())
+                throw malformed("Unexpected end of document");
+            out.write(END_OF_DOCUMENT);
+        } finally {
+            out.close();
+        }
+    }
+}
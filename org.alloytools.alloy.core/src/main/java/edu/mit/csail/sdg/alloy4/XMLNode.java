@@ -15,10 +15,12 @@
 
 package edu.mit.csail.sdg.alloy4;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -494,6 +496,121 @@ public final class XMLNode implements Iterable<XMLNode> {
         }
     }
 
+    /**
+     * Reader for the binary form written by {@link XMLBinaryWriter}.
+     */
+    private static final class BinaryParser {
+
+        /** The input stream, positioned after the magic bytes. */
+        private final InputStream  in;
+
+        /** The dictionary of strings read so far. */
+        private final List<String> strings = new ArrayList<String>();
+
+        /**
+         * Constructor is private, since we want only XMLNode to be able to construct an
+         * instance of this class.
+         */
+        private BinaryParser(InputStream in) {
+            this.in = in;
+        }
+
+        /** Throws an IOException reporting a malformed binary document. */
+        private void malform(String msg) throws IOException {
+            throw new IOException("Error in the binary XML document: " + msg);
+        }
+
+        /** Reads one byte; throws an IOException at the end of the stream. */
+        private int read() throws IOException {
+            int ans = in.read();
+            if (ans < 0)
+                malform("Unexpected end of file.");
+            return ans;
+        }
+
+        /**
+         * Reads a varint, which must fit into a nonnegative int: its fifth byte, if
+         * any, is its last one and holds at most 3 bits.
+         */
+        private int readVarint() throws IOException {
+            int ans = 0;
+            for (int shift = 0;; shift = shift + 7) {
+                int b = read();
+                if (shift == 28 && (b & 0xF8) != 0)
+                    malform("Number too large.");
+                ans = ans | ((b & 0x7F) << shift);
+                if (b < 0x80)
+                    return ans;
+            }
+        }
+
+        /** Reads a dictionary index, and returns the string it refers to. */
+        private String readString() throws IOException {
+            int i = readVarint();
+            if (i >= strings.size())
+                malform("Unknown string " + i + ".");
+            return strings.get(i);
+        }
+
+        /** Parses the document into the given root node. */
+        private void parse(XMLNode root) throws IOException {
+            for (int i = 0; i < XMLBinaryWriter.MAGIC.length; i++)
+                read();
+            if (read() != XMLBinaryWriter.VERSION)
+                malform("Unsupported version.");
+            final List<XMLNode> open = new ArrayList<XMLNode>();
+            boolean started = false;
+            while (true) {
+                final int tag = read();
+                if (tag == XMLBinaryWriter.STRING) {
+                    char[] chars = new char[readVarint()];
+                    for (int i = 0; i < chars.length; i++)
+                        chars[i] = (char) readVarint();
+                    strings.add(new String(chars));
+                } else if (tag == XMLBinaryWriter.START) {
+                    if (open.isEmpty() && started)
+                        malform("Expects only one root element.");
+                    XMLNode x = open.isEmpty() ? root : new XMLNode();
+                    x.type = readString();
+                    for (int n = readVarint(); n > 0; n--) {
+                        String key = readString();
+                        x.map.put(key, readString());
+                    }
+                    if (!open.isEmpty())
+                        open.get(open.size() - 1).sub.add(x);
+                    open.add(x);
+                    started = true;
+                } else if (tag == XMLBinaryWriter.END) {
+                    if (open.isEmpty())
+                        malform("Unexpected end of element.");
+                    open.remove(open.size() - 1);
+                } else if (tag == XMLBinaryWriter.TUPLES) {
+                    if (open.isEmpty())
+                        malform("Unexpected tuple outside the root element.");
+                    XMLNode parent = open.get(open.size() - 1);
+                    int arity = readVarint();
+                    for (int n = readVarint(); n > 0; n--) {
+                        XMLNode tuple = new XMLNode();
+                        tuple.type = "tuple";
+                        for (int i = 0; i < arity; i++) {
+                            XMLNode atom = new XMLNode();
+                            atom.type = "atom";
+                            atom.map.put("label", readString());
+                            tuple.sub.add(atom);
+                        }
+                        parent.sub.add(tuple);
+                    }
+                } else if (tag == XMLBinaryWriter.END_OF_DOCUMENT) {
+                    if (!started || !open.isEmpty())
+                        malform("Unexpected end of document.");
+                    return;
+                } else {
+                    malform("Unknown record " + tag + ".");
+                }
+            }
+        }
+    }
+
     /**
      * Add a text node by removing all contents from the given StringBuilder and
      * clearing that StringBuilder.
@@ -544,14 +661,19 @@ public final class XMLNode implements Iterable<XMLNode> {
     }
 
     /**
-     * Constructs the root XMLNode by parsing an entire XML document.
+     * Constructs the root XMLNode by parsing an entire XML document, or a document
+     * in the binary form written by {@link XMLBinaryWriter}.
      */
     public XMLNode(File file) throws IOException {
-        FileInputStream fis = null;
+        InputStream fis = null;
         InputStreamReader reader = null;
         try {
+            fis = new BufferedInputStream(new FileInputStream(file));
+            if (XMLBinaryWriter.isBinary(fis)) {
+                new BinaryParser(fis).parse(this);
+                return;
+            }
             // document ::= Misc* doctypedecl? Misc* element Misc*
-            fis = new FileInputStream(file);
             reader = new InputStreamReader(fis, "UTF-8");
             XMLParser parser = new XMLParser(reader, false);
             if (parser.skipNondata(false) != '<')
@@ -402,7 +402,7 @@ public final class Type implements Iterable<Type.ProductType>, Clause {
         return false;
     }
 
-    public static Type smallIntType() {
+    public static synchronized Type smallIntType() {
         if (SMALL_INT == null) {
             SMALL_INT = make(Sig.SIGINT);
             SMALL_INT.is_small_int = true;
@@ -20,11 +20,15 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import edu.mit.csail.sdg.alloy4.ConstList;
 import edu.mit.csail.sdg.alloy4.ConstList.TempList;
@@ -40,16 +44,34 @@ public final class SimTupleset implements Iterable<SimTuple> {
     // else if (min<max && next) this == tuples + { (min,min+1)...(max-1,max) }
     // else this == tuples
 
-    public static final SimAtom       EMPTY_ATOM = SimAtom.make("∅");
+    public static final SimAtom                  EMPTY_ATOM = SimAtom.make("∅");
     /**
      * The list of tuples. <br>
      * <b>Invariant:</b> If nonempty, it must contain only same-arity tuples. <br>
      * <b>Invariant:</b> It must not contain duplicate tuples.
      */
-    private final ConstList<SimTuple> tuples;
-    private final int                 min;
-    private final int                 max;
-    private final boolean             next;
+    private final ConstList<SimTuple>            tuples;
+    private final int                            min;
+    private final int                            max;
+    private final boolean                        next;
+
+    /**
+     * Tuplesets with at most this many tuples are searched linearly rather than
+     * indexed.
+     */
+    private static final int                     SMALL = 16;
+
+    /**
+     * If nonnull, it caches the set of tuples in the "tuples" list (computed on
+     * demand by set()).
+     */
+    private volatile Set<SimTuple>               set;
+
+    /**
+     * If nonnull, it caches the map from each atom to the list of all tuples
+     * beginning with it (computed on demand by heads()).
+     */
+    private volatile Map<SimAtom,List<SimTuple>> heads;
 
     /**
      * Construct a tupleset with the given 4 values (Note: caller MUST make sure
@@ -143,6 +165,48 @@ public final class SimTupleset implements Iterable<SimTuple> {
             return null;
     }
 
+    /**
+     * Returns the set of tuples in the "tuples" list, building it if needed.
+     * <p>
+     * This is thread safe: if two threads both build it, they build equal sets.
+     */
+    private Set<SimTuple> set() {
+        Set<SimTuple> ans = set;
+        if (ans == null)
+            set = ans = new HashSet<SimTuple>(tuples);
+        return ans;
+    }
+
+    /**
+     * Returns the map from each atom to the list of all tuples in this tupleset
+     * that begin with it (in their original order), building it if needed.
+     * <p>
+     * This is thread safe: if two threads both build it, they build equal maps.
+     */
+    private Map<SimAtom,List<SimTuple>> heads() {
+        Map<SimAtom,List<SimTuple>> ans = heads;
+        if (ans == null) {
+            ans = new IdentityHashMap<SimAtom,List<SimTuple>>();
+            for (SimTuple x : this) {
+                List<SimTuple> list = ans.get(x.head());
+                if (list == null)
+                    ans.put(x.head(), list = new ArrayList<SimTuple>(1));
+                list.add(x);
+            }
+            heads = ans;
+        }
+        return ans;
+    }
+
+    /**
+     * Returns the list of all tuples in this tupleset that begin with the given
+     * atom (in their original order).
+     */
+    private List<SimTuple> withHead(SimAtom atom) {
+        List<SimTuple> ans = heads().get(atom);
+        return ans == null ? Collections.<SimTuple> emptyList() : ans;
+    }
+
     /** Returns true if this is empty. */
     public boolean empty() {
         return min >= max && tuples.size() == 0;
@@ -183,7 +247,7 @@ public final class SimTupleset implements Iterable<SimTuple> {
             if (a != null && b != null && a < b && a.intValue() == b.intValue() - 1 && min <= a && b <= max)
                 return true;
         }
-        return tuples.contains(that);
+        return tuples.size() <= SMALL ? tuples.contains(that) : set().contains(that);
     }
 
     /**
@@ -197,6 +261,8 @@ public final class SimTupleset implements Iterable<SimTuple> {
             if (a != null && min <= a && a <= max)
                 return true;
         }
+        if (tuples.size() > SMALL)
+            return heads().containsKey(that);
         for (int i = tuples.size() - 1; i >= 0; i--)
             if (tuples.get(i).get(0) == that)
                 return true;
@@ -286,24 +352,19 @@ public final class SimTupleset implements Iterable<SimTuple> {
             return this;
         if (min < max) { // if we get here, than arity must be 2, and n must be
                         // 1.
-            TempList<SimTuple> ans = new TempList<SimTuple>(tuples.size());
+            LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
             for (SimTuple x : tuples) {
                 Integer a = x.head().toInt(null);
                 if (a != null && a >= min && a < max)
                     continue;
-                SimTuple y = SimTuple.make(x.head());
-                if (!ans.contains(y))
-                    ans.add(y);
+                ans.add(SimTuple.make(x.head()));
             }
-            return new SimTupleset(ans.makeConst(), min, max - 1, false);
-        }
-        TempList<SimTuple> ans = new TempList<SimTuple>(tuples.size());
-        for (SimTuple x : this) {
-            SimTuple y = x.head(n);
-            if (!ans.contains(y))
-                ans.add(y);
+            return new SimTupleset(ans, min, max - 1, false);
         }
-        return new SimTupleset(ans.makeConst());
+        LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
+        for (SimTuple x : this)
+            ans.add(x.head(n));
+        return new SimTupleset(ans);
     }
 
     /**
@@ -318,24 +379,19 @@ public final class SimTupleset implements Iterable<SimTuple> {
             return this;
         if (min < max) { // if we get here, than arity must be 2, and n must be
                         // 1.
-            TempList<SimTuple> ans = new TempList<SimTuple>(tuples.size());
+            LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
             for (SimTuple x : tuples) {
                 Integer a = x.tail().toInt(null);
                 if (a != null && a > min && a <= max)
                     continue;
-                SimTuple y = SimTuple.make(x.tail());
-                if (!ans.contains(y))
-                    ans.add(y);
+                ans.add(SimTuple.make(x.tail()));
             }
-            return new SimTupleset(ans.makeConst(), min + 1, max, false);
-        }
-        TempList<SimTuple> ans = new TempList<SimTuple>(tuples.size());
-        for (SimTuple x : this) {
-            SimTuple y = x.tail(n);
-            if (!ans.contains(y))
-                ans.add(y);
+            return new SimTupleset(ans, min + 1, max, false);
         }
-        return new SimTupleset(ans.makeConst());
+        LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
+        for (SimTuple x : this)
+            ans.add(x.tail(n));
+        return new SimTupleset(ans);
     }
 
     /** Returns a read-only iterator over the tuples. */
@@ -423,21 +479,6 @@ public final class SimTupleset implements Iterable<SimTuple> {
         return make(list);
     }
 
-    /**
-     * Returns the index position if the list of tuples contains the tuple (a,b) (or
-     * return -1 if not found).
-     */
-    private static int find(TempList<SimTuple> tuples, SimAtom a, SimAtom b) {
-        if (tuples.size() == 0 || tuples.get(0).arity() != 2)
-            return -1;
-        for (int i = tuples.size() - 1; i >= 0; i--) {
-            SimTuple x = tuples.get(i);
-            if (x.head() == a && x.tail() == b)
-                return i;
-        }
-        return -1;
-    }
-
     /** {@inheritDoc} */
     @Override
     public String toString() {
@@ -680,15 +721,12 @@ public final class SimTupleset implements Iterable<SimTuple> {
             return EMPTY;
         if (arity() == 1 && that.arity() == 1)
             throw new ErrorType("Cannot join two unary relations.");
-        TempList<SimTuple> ans = new TempList<SimTuple>();
+        // hash join: look up the tuples of "that" by their first atom
+        LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
         for (SimTuple a : this)
-            for (SimTuple b : that)
-                if (a.tail() == b.head()) {
-                    SimTuple c = a.join(b);
-                    if (!ans.contains(c))
-                        ans.add(c);
-                }
-        return ans.size() == 0 ? EMPTY : new SimTupleset(ans.makeConst());
+            for (SimTuple b : that.withHead(a.tail()))
+                ans.add(a.join(b));
+        return ans.size() == 0 ? EMPTY : new SimTupleset(ans);
     }
 
     /** Return the intersection of this and that. */
@@ -758,40 +796,24 @@ public final class SimTupleset implements Iterable<SimTuple> {
     public SimTupleset closure() {
         if (arity() != 2)
             return EMPTY;
-        TempList<SimTuple> ar = new TempList<SimTuple>(size());
-        ar.addAll(this);
-        while (true) {
-            int n = ar.size();
-            for (int i = 0; i < n; i++) {
-                SimTuple left = ar.get(i);
-                if (left.head() == left.tail())
-                    continue; // whatever "right" is, "left.right" won't add any
-                             // new tuple to the final answer
-                for (int j = 0; j < n; j++)
-                    if (i != j) { // whatever "left" is, "left.left" won't add
-                                 // any new tuple to the final answer
-                        SimTuple right = ar.get(j);
-                        if (right.head() == right.tail())
-                            continue; // whatever "left" is, "left.right" won't
-                                     // add any new tuple to the final answer
-                        if (left.tail() == right.head() && find(ar, left.head(), right.tail()) < 0)
-                            ar.add(SimTuple.make(left.head(), right.tail()));
-                    }
-            }
-            if (n == ar.size())
-                return ar.size() == longsize() ? this : new SimTupleset(ar.makeConst()); // if
-                                                                                        // we
-                                                                                        // went
-                                                                                        // through
-                                                                                        // the
-                                                                                        // loop
-                                                                                        // without
-                                                                                        // making
-                                                                                        // any
-                                                                                        // change,
-                                                                                        // we're
-                                                                                        // done
+        // semi-naive evaluation: only the tuples found in the previous round
+        // are joined with this tupleset, so each path is extended only once
+        LinkedHashSet<SimTuple> ans = new LinkedHashSet<SimTuple>();
+        List<SimTuple> delta = new ArrayList<SimTuple>(size());
+        for (SimTuple x : this)
+            if (ans.add(x))
+                delta.add(x);
+        while (delta.size() > 0) {
+            List<SimTuple> found = new ArrayList<SimTuple>();
+            for (SimTuple left : delta)
+                for (SimTuple right : withHead(left.tail())) {
+                    SimTuple x = SimTuple.make(left.head(), right.tail());
+                    if (ans.add(x))
+                        found.add(x);
+                }
+            delta = found;
         }
+        return ans.size() == longsize() ? this : new SimTupleset(ans);
     }
 
     /**
@@ -803,8 +825,8 @@ public final class SimTupleset implements Iterable<SimTuple> {
         if (shift <= 0)
             return EMPTY;
         TempList<SimTuple> ans = new TempList<SimTuple>();
-        again: for (SimTuple r : this) {
-            for (int i = 0; i < x.arity(); i++)
+        again: for (SimTuple r : withHead(x.head())) {
+            for (int i = 1; i < x.arity(); i++)
                 if (r.get(i) != x.get(i))
                     continue again;
             ans.add(r.tail(shift));
@@ -860,37 +882,25 @@ public final class SimTupleset implements Iterable<SimTuple> {
         if (first.longsize() != 1 || first.arity() != 1 || elem.arity() != 1 || arity() != 2 || longsize() != elem.longsize() - 1)
             return false;
         SimAtom e = first.getAtom();
-        List<SimAtom> elems = elem.getAllAtoms(0);
-        if (longsize() > Integer.MAX_VALUE)
-            throw new OutOfMemoryError();
-        List<SimTuple> next = new ArrayList<SimTuple>(size());
+        Set<SimAtom> elems = Collections.newSetFromMap(new IdentityHashMap<SimAtom,Boolean>());
+        elems.addAll(elem.getAllAtoms(0));
+        IdentityHashMap<SimAtom,SimAtom> next = new IdentityHashMap<SimAtom,SimAtom>();
         for (SimTuple x : this)
-            next.add(x);
+            if (next.put(x.head(), x.tail()) != null)
+                return false; // some element has two successors
         while (true) {
             // "e" must be in elems; remove it from elems
-            for (int n = elems.size(), i = 0;; i++)
-                if (i >= n)
-                    return false;
-                else if (elems.get(i) == e) {
-                    elems.set(i, elems.get(n - 1));
-                    elems.remove(n - 1);
-                    break;
-                }
+            // (if there was a cycle, we would eventually detect that since the
+            // repeated element would no longer be in "elems")
+            if (!elems.remove(e))
+                return false;
             // if "e" was the last element, then "next" must be empty as well
             if (elems.size() == 0)
                 return next.size() == 0;
             // remove (e,e') from next and let e' be the new e
-            // (if there was a cycle, we would eventually detect that since the
-            // repeated element would no longer be in "elems")
-            for (int n = next.size(), i = 0;; i++)
-                if (i >= n)
-                    return false;
-                else if (e == next.get(i).head()) {
-                    e = next.get(i).tail();
-                    next.set(i, next.get(n - 1));
-                    next.remove(n - 1);
-                    break;
-                }
+            e = next.remove(e);
+            if (e == null)
+                return false;
         }
     }
 
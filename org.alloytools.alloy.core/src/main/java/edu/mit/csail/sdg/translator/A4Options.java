@@ -19,6 +19,7 @@ import java.io.Serializable;
 
 import edu.mit.csail.sdg.alloy4.ErrorAPI;
 import edu.mit.csail.sdg.alloy4.SafeList;
+import kodkod.engine.config.Budget;
 
 /**
  * Mutable; this class encapsulates the customizable options of the
@@ -180,6 +181,10 @@ public final class A4Options implements Serializable {
         public static final SatSolver GlucoseJNI       = new SatSolver("glucose(jni)", "Glucose", null, null, true);
         /** CryptoMiniSat */
         public static final SatSolver CryptoMiniSatJNI = new SatSolver("cryptominisat(jni)", "CryptoMiniSat", null, null, true);
+        /**
+         * Portfolio of the available JNI solvers and SAT4J, solving in parallel
+         */
+        public static final SatSolver PortfolioJNI     = new SatSolver("portfolio(jni)", "Portfolio", null, null, true);
         /** SAT4J using native Java */
         public static final SatSolver SAT4J            = new SatSolver("sat4j", "SAT4J", null, null, true);
         /** Outputs the raw CNF file only */
@@ -231,6 +236,16 @@ public final class A4Options implements Serializable {
      */
     public int       coreMinimization     = 2;
 
+    /**
+     * This option specifies how many threads minimize an unsat core when
+     * coreMinimization is 0. With more than one, several formulas are tried for
+     * removal from the core at once, each thread with its own SAT solver that
+     * enforces the top-level formulas through assumptions.
+     * <p>
+     * Default value is 1, which minimizes the core one formula at a time.
+     */
+    public int       coreThreads          = 1;
+
     /**
      * Unsat core granularity, default is 0 (only top-level conjuncts are
      * considered), 3 expands all quantifiers
@@ -286,6 +301,44 @@ public final class A4Options implements Serializable {
      */
     public int       unrolls              = (-1);
 
+    /**
+     * This option specifies whether a command with growable scopes should be
+     * translated once, at its largest scope, and then solved incrementally for each
+     * intermediate scope under assumptions, rather than translated anew for every
+     * scope. It takes effect only if the chosen SAT solver supports assumptions;
+     * otherwise every scope is translated anew.
+     * <p>
+     * Default value is false.
+     */
+    public boolean   incrementalGreedy    = false;
+
+    /**
+     * This option specifies how often, in milliseconds, the progress of a running
+     * command is reported through A4Reporter.progress(), from a separate sampling
+     * thread. The progress includes the current stage of the translation, the
+     * number of gates and clauses generated so far, and the search statistics of
+     * the SAT solver. The same metrics are available through JMX while the command
+     * runs.
+     * <p>
+     * Default value is 0, which disables progress reports.
+     */
+    public int       progressInterval     = 0;
+
+    /**
+     * This option specifies the budget of a command: a token that another thread
+     * can cancel, together with limits on the time that each SAT analysis of the
+     * command may take and on the number of gates and clauses that its translation
+     * may generate. A command whose budget is cancelled or exceeded fails with an
+     * ErrorFatal whose cause is a kodkod.engine.AbortedException that describes how
+     * far the analysis got. Commands that run concurrently with the same options
+     * share the budget: each of their analyses gets the full limits, and
+     * cancelling the budget aborts all of them. The budget is not serialized, so
+     * it does not reach a separate solver process.
+     * <p>
+     * Default value is null, which means that commands run until they complete.
+     */
+    public transient Budget budget        = null;
+
     /** This method makes a copy of this Options object. */
     public A4Options dup() {
         A4Options x = new A4Options();
@@ -294,6 +347,7 @@ public final class A4Options implements Serializable {
         x.symmetry = symmetry;
         x.skolemDepth = skolemDepth;
         x.coreMinimization = coreMinimization;
+        x.coreThreads = coreThreads;
         x.solver = solver;
         x.solverDirectory = solverDirectory;
         x.tempDirectory = tempDirectory;
@@ -301,6 +355,9 @@ public final class A4Options implements Serializable {
         x.recordKodkod = recordKodkod;
         x.noOverflow = noOverflow;
         x.coreGranularity = coreGranularity;
+        x.incrementalGreedy = incrementalGreedy;
+        x.progressInterval = progressInterval;
+        x.budget = budget;
         return x;
     }
 }
@@ -23,6 +23,7 @@ import static edu.mit.csail.sdg.ast.Sig.UNIV;
 import static kodkod.engine.Solution.Outcome.UNSATISFIABLE;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -54,6 +55,7 @@ import edu.mit.csail.sdg.alloy4.SafeList;
 import edu.mit.csail.sdg.alloy4.TableView;
 import edu.mit.csail.sdg.alloy4.UniqueNameGenerator;
 import edu.mit.csail.sdg.alloy4.Util;
+import edu.mit.csail.sdg.alloy4.XMLBinaryWriter;
 import edu.mit.csail.sdg.ast.Command;
 import edu.mit.csail.sdg.ast.Expr;
 import edu.mit.csail.sdg.ast.ExprBinary;
@@ -83,12 +85,14 @@ import kodkod.engine.Proof;
 import kodkod.engine.Solution;
 import kodkod.engine.Solver;
 import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.config.Metrics;
 import kodkod.engine.config.Options;
 import kodkod.engine.config.Reporter;
 import kodkod.engine.fol2sat.TranslationRecord;
 import kodkod.engine.fol2sat.Translator;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.ucore.HybridStrategy;
+import kodkod.engine.ucore.ParallelDeletionStrategy;
 import kodkod.engine.ucore.RCEStrategy;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
@@ -349,6 +353,9 @@ public final class A4Solution {
         int sym = (expected == 1 ? 0 : opt.symmetry);
         solver = new Solver();
         solver.options().setNoOverflow(opt.noOverflow);
+        if (opt.progressInterval > 0)
+            solver.options().setMetrics(new Metrics(opt.progressInterval));
+        solver.options().setBudget(opt.budget);
         // solver.options().setFlatten(false); // added for now, since
         // multiplication and division circuit takes forever to flatten
         if (opt.solver.external() != null) {
@@ -374,6 +381,8 @@ public final class A4Solution {
             solver.options().setSolver(SATFactory.CryptoMiniSat);
         } else if (opt.solver.equals(A4Options.SatSolver.MiniSatJNI)) {
             solver.options().setSolver(SATFactory.MiniSat);
+        } else if (opt.solver.equals(A4Options.SatSolver.PortfolioJNI)) {
+            solver.options().setSolver(SATFactory.Portfolio);
         } else if (opt.solver.equals(A4Options.SatSolver.MiniSatProverJNI)) {
             sym = 20;
             solver.options().setSolver(SATFactory.MiniSatProver);
@@ -407,16 +416,32 @@ public final class A4Solution {
      * the "next" instance.
      */
     private A4Solution(A4Solution old) throws Err {
+        this(old, old.originalCommand, nextInstance(old), old.kEnumerator);
+    }
+
+    /**
+     * Returns the "next" instance of the given solution.
+     */
+    private static Instance nextInstance(A4Solution old) throws Err {
         if (!old.solved)
             throw new ErrorAPI("This solution is not yet solved, so next() is not allowed.");
         if (old.kEnumerator == null)
             throw new ErrorAPI("This solution was not generated by an incremental SAT solver.\n" + "Solution enumeration is currently only implemented for MiniSat and SAT4J.");
         if (old.eval == null)
             throw new ErrorAPI("This solution is already unsatisfiable, so you cannot call next() to get the next solution.");
-        Instance inst = old.kEnumerator.next().instance();
+        return old.kEnumerator.next().instance();
+    }
+
+    /**
+     * Construct a new solved A4Solution with the same frame as the old one, the
+     * given command description, the given instance (or null if unsatisfiable),
+     * and the given enumerator of the instances that follow it (or null if there
+     * are none). The old solution need not be solved.
+     */
+    private A4Solution(A4Solution old, String originalCommand, Instance inst, Iterator<Solution> kEnumerator) throws Err {
         unrolls = old.unrolls;
         originalOptions = old.originalOptions;
-        originalCommand = old.originalCommand;
+        this.originalCommand = originalCommand;
         bitwidth = old.bitwidth;
         maxseq = old.maxseq;
         kAtoms = old.kAtoms;
@@ -425,15 +450,15 @@ public final class A4Solution {
         seqidxBounds = old.seqidxBounds;
         stringBounds = old.stringBounds;
         solver = old.solver;
-        bounds = old.bounds;
+        bounds = old.solved ? old.bounds : old.bounds.clone().unmodifiableView();
         formulas = old.formulas;
-        sigs = old.sigs;
-        kEnumerator = old.kEnumerator;
-        k2pos = old.k2pos;
-        rel2type = old.rel2type;
-        decl2type = old.decl2type;
+        sigs = old.solved ? old.sigs : old.sigs.dup();
+        this.kEnumerator = kEnumerator;
+        k2pos = ConstMap.make(old.k2pos);
+        rel2type = ConstMap.make(old.rel2type);
+        decl2type = ConstMap.make(old.decl2type);
         if (inst != null) {
-            eval = new Evaluator(inst, old.solver.options());
+            eval = new Evaluator(inst, old.solver.options(), true);
             a2k = new LinkedHashMap<Expr,Expression>();
             for (Map.Entry<Expr,Expression> e : old.a2k.entrySet())
                 if (e.getKey() instanceof Sig || e.getKey() instanceof Field)
@@ -442,9 +467,9 @@ public final class A4Solution {
             rename(this, null, null, un);
             a2k = ConstMap.make(a2k);
         } else {
-            skolems = old.skolems;
+            skolems = old.skolems.dup();
             eval = null;
-            a2k = old.a2k;
+            a2k = ConstMap.make(old.a2k);
         }
         s2k = old.s2k;
         atoms = atoms.dup();
@@ -553,6 +578,30 @@ public final class A4Solution {
         return bounds.clone();
     }
 
+    /**
+     * Returns an unmodifiable view of the Kodkod formulas added so far.
+     */
+    List<Formula> getFormulas() {
+        return Collections.unmodifiableList(formulas);
+    }
+
+    /**
+     * Returns the Kodkod options used to solve this frame.
+     */
+    Options getOptions() {
+        return solver.options();
+    }
+
+    /**
+     * Returns a new solved A4Solution for the given command with the same frame as
+     * this one and the given Kodkod instance, or an unsatisfiable one if the
+     * instance is null. This frame need not be solved, and remains unchanged. The
+     * returned solution does not support next().
+     */
+    A4Solution solved(Command cmd, Instance inst) throws Err {
+        return new A4Solution(this, cmd.toString(), inst, null);
+    }
+
     /**
      * Add a new relation with the given label and the given lower and upper bound.
      *
@@ -1303,6 +1352,61 @@ public final class A4Solution {
 
     // ===================================================================================================//
 
+    /**
+     * Returns a Kodkod reporter that records the type of each skolem generated for
+     * this frame, and passes the size of the next CNF to the given A4Reporter
+     * (if not null) unless solved[0] is true, in which case the size is not
+     * reported. Reporting the size sets solved[0] to true.
+     */
+    Reporter skolemReporter(final A4Reporter rep, final boolean[] solved) {
+        return skolemReporter(rep, solved, null);
+    }
+
+    /**
+     * Returns a Kodkod reporter like {@link #skolemReporter(A4Reporter, boolean[])}
+     * that also adds each skolem generated for this frame to the given collection
+     * (if not null).
+     */
+    Reporter skolemReporter(final A4Reporter rep, final boolean[] solved, final Collection<Relation> skolems) {
+        return new AbstractReporter() {
+
+            @Override
+            public void skolemizing(Decl decl, Relation skolem, List<Decl> predecl) {
+                if (skolems != null)
+                    skolems.add(skolem);
+                try {
+                    Type t = kv2typepos(decl.variable()).a;
+                    if (t == Type.EMPTY)
+                        return;
+                    for (int i = (predecl == null ? -1 : predecl.size() - 1); i >= 0; i--) {
+                        Type pp = kv2typepos(predecl.get(i).variable()).a;
+                        if (pp == Type.EMPTY)
+                            return;
+                        t = pp.product(t);
+                    }
+                    kr2type(skolem, t);
+                } catch (Throwable ex) {} // Exception here is not fatal
+            }
+
+            @Override
+            public void solvingCNF(int primaryVars, int vars, int clauses) {
+                if (solved[0])
+                    return;
+                else
+                    solved[0] = true; // initially solved[0] is true, so we
+                                     // won't report the # of vars/clauses
+                if (rep != null)
+                    rep.solve(primaryVars, vars, clauses);
+            }
+
+            @Override
+            public void progress(Metrics metrics) {
+                if (rep != null)
+                    rep.progress(metrics);
+            }
+        };
+    }
+
     /**
      * Solve for the solution if not solved already; if cmd==null, we will simply
      * use the lowerbound of each relation as its value.
@@ -1321,7 +1425,7 @@ public final class A4Solution {
             }
             for (Relation r : bounds.relations())
                 inst.add(r, bounds.lowerBound(r));
-            eval = new Evaluator(inst, solver.options());
+            eval = new Evaluator(inst, solver.options(), true);
             rename(this, null, null, new UniqueNameGenerator());
             solved();
             return this;
@@ -1341,39 +1445,7 @@ public final class A4Solution {
         final boolean solved[] = new boolean[] {
                                                 true
         };
-        solver.options().setReporter(new AbstractReporter() { // Set up a
-                                                             // reporter to
-                                                             // catch the
-                                                             // type+pos of
-                                                             // skolems
-
-            @Override
-            public void skolemizing(Decl decl, Relation skolem, List<Decl> predecl) {
-                try {
-                    Type t = kv2typepos(decl.variable()).a;
-                    if (t == Type.EMPTY)
-                        return;
-                    for (int i = (predecl == null ? -1 : predecl.size() - 1); i >= 0; i--) {
-                        Type pp = kv2typepos(predecl.get(i).variable()).a;
-                        if (pp == Type.EMPTY)
-                            return;
-                        t = pp.product(t);
-                    }
-                    kr2type(skolem, t);
-                } catch (Throwable ex) {} // Exception here is not fatal
-            }
-
-            @Override
-            public void solvingCNF(int primaryVars, int vars, int clauses) {
-                if (solved[0])
-                    return;
-                else
-                    solved[0] = true; // initially solved[0] is true, so we
-                                     // won't report the # of vars/clauses
-                if (rep != null)
-                    rep.solve(primaryVars, vars, clauses);
-            }
-        });
+        solver.options().setReporter(skolemReporter(rep, solved));
         if (!opt.solver.equals(SatSolver.CNF) && !opt.solver.equals(SatSolver.KK) && tryBookExamples) { // try
                                                                                                        // book
                                                                                                        // examples
@@ -1441,7 +1513,12 @@ public final class A4Solution {
                     // rather than TRIVIALLY_UNSATISFIABLE
                     int i = p.highLevelCore().size();
                     rep.minimizing(cmd, i);
-                    if (opt.coreMinimization == 0)
+                    if (opt.coreMinimization == 0 && opt.coreThreads > 1)
+                        try {
+                            SATFactory workers = SATFactory.MiniSat.assumptions() ? SATFactory.MiniSat : SATFactory.DefaultSAT4J;
+                            p.minimize(new ParallelDeletionStrategy(p.log(), workers, opt.coreThreads));
+                        } catch (Throwable ex) {}
+                    else if (opt.coreMinimization == 0)
                         try {
                             p.minimize(new RCEStrategy(p.log()));
                         } catch (Throwable ex) {}
@@ -1465,7 +1542,7 @@ public final class A4Solution {
         }
         // If satisfiable, then add/rename the atoms and skolems
         if (inst != null) {
-            eval = new Evaluator(inst, solver.options());
+            eval = new Evaluator(inst, solver.options(), true);
             rename(this, null, null, new UniqueNameGenerator());
         }
         // report the result
@@ -1667,6 +1744,37 @@ public final class A4Solution {
             throw new ErrorFatal("Error writing the solution XML file.");
     }
 
+    /**
+     * Helper method to write out a full solution file in the compact binary form of
+     * {@link XMLBinaryWriter}; it holds the same content as the XML file, and
+     * {@link A4SolutionReader} and the visualizer read it just the same. The file
+     * is smaller and faster to parse than the XML file, but it is still read into
+     * a complete document tree, so loading it takes no less memory.
+     */
+    public void writeBinary(String filename, Iterable<Func> macros, Map<String,String> sourceFiles) throws Err {
+        writeBinary(null, filename, macros, sourceFiles);
+    }
+
+    /**
+     * Helper method to write out a full solution file in the compact binary form of
+     * {@link XMLBinaryWriter}.
+     */
+    public void writeBinary(A4Reporter rep, String filename, Iterable<Func> macros, Map<String,String> sourceFiles) throws Err {
+        final PrintWriter out;
+        try {
+            out = new PrintWriter(new XMLBinaryWriter(new FileOutputStream(filename)));
+        } catch (IOException ex) {
+            throw new ErrorFatal("Error writing the solution file.", ex);
+        }
+        try {
+            writeXML(rep, out, macros, sourceFiles);
+        } finally {
+            out.close(); // writes the end of the document
+        }
+        if (out.checkError())
+            throw new ErrorFatal("Error writing the solution file.");
+    }
+
     public String format() {
         if (!solved)
             return "---OUTCOME---\nUnknown.\n";
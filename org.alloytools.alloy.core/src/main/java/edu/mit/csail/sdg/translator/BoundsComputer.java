@@ -224,7 +224,7 @@ final class BoundsComputer {
         Expression sum = null;
         while (n > 0) {
             n--;
-            Variable v = Variable.unary("v" + Integer.toString(TranslateAlloyToKodkod.cnt++));
+            Variable v = Variable.unary("v" + Integer.toString(TranslateAlloyToKodkod.cnt.getAndIncrement()));
             kodkod.ast.Decl dd = v.oneOf(a);
             if (d == null)
                 d = dd;
@@ -0,0 +1,161 @@
+/* Alloy Analyzer 4 -- Copyright (c) 2006-2009, Felix Chang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files
+ * (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package edu.mit.csail.sdg.translator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.Pos;
+import edu.mit.csail.sdg.ast.Command;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.IncrementalSolver;
+import kodkod.engine.Solution;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntIterator;
+
+/**
+ * This class solves a group of commands that have the same scope, and that
+ * share most of their facts, with one incremental SAT solver.
+ * <p>
+ * The bounds of the group and the facts that its commands share are
+ * translated, with symmetry breaking, only once. The rest of each command (the
+ * negated assertion of a check, or the body of a run) is then pushed onto the
+ * solver, checked under the assumption of its own activation literals, and
+ * popped again; so the SAT solver keeps the clauses it has learned from one
+ * command to the next.
+ */
+final class CommandGroupSolver {
+
+    /** The options of the commands. */
+    private final A4Options         opt;
+
+    /** The frame of the group, with the shared facts. */
+    private final A4Solution        frame;
+
+    /** The Kodkod relations bound by the frame. */
+    private final Set<Relation>     relations;
+
+    /** The incremental solver. */
+    private final IncrementalSolver solver;
+
+    /**
+     * If quiet[0] is true, the solver does not report the size of the next CNF.
+     */
+    private final boolean[]         quiet   = new boolean[] {
+                                                             true
+    };
+
+    /** The skolems generated for the command being solved. */
+    private final List<Relation>    skolems = new ArrayList<Relation>();
+
+    private CommandGroupSolver(A4Reporter rep, A4Options opt, A4Solution frame) {
+        this.opt = opt;
+        this.frame = frame;
+        final Bounds bounds = frame.getBounds();
+        this.relations = new HashSet<Relation>(bounds.relations());
+        final List<Formula> formulas = new ArrayList<Formula>(frame.getFormulas());
+        for (Relation r : bounds.relations()) {
+            formulas.add(r.eq(r));
+        } // Without this, kodkod refuses to grow unmentioned relations
+        final Options options = frame.getOptions().clone();
+        options.setReporter(frame.skolemReporter(rep, quiet, skolems));
+        this.solver = IncrementalSolver.solver(options);
+        solver.solve(Formula.and(formulas), bounds);
+    }
+
+    /**
+     * Returns a solver for a group of commands, given the options and the frame of
+     * their scope with their shared facts added, or null if the chosen SAT solver
+     * cannot solve under assumptions.
+     */
+    static CommandGroupSolver make(A4Reporter rep, A4Options opt, A4Solution frame) throws Err {
+        final Options options = frame.getOptions();
+        if (opt.solver.equals(A4Options.SatSolver.CNF) || opt.solver.equals(A4Options.SatSolver.KK))
+            return null;
+        if (!options.solver().incremental() || !options.solver().assumptions() || options.logTranslation() != 0)
+            return null;
+        rep.debug("Simplifying the bounds...\n");
+        if (opt.inferPartialInstance && frame.getFormulas().size() > 0 && !new Simplifier().simplify(rep, frame, frame.getFormulas()))
+            frame.addFormula(Formula.FALSE, Pos.UNKNOWN);
+        return new CommandGroupSolver(rep, opt, frame);
+    }
+
+    /**
+     * Solves the given command, given the Kodkod translation of the part of its
+     * formula that is not shared with the other commands of the group, and
+     * reports and returns its solution in the frame of the group.
+     */
+    A4Solution solve(A4Reporter rep, Command cmd, Formula goal) throws Err {
+        final long start = System.currentTimeMillis();
+        final Options options = solver.options();
+        rep.translate(opt.solver.id(), frame.getBitwidth(), frame.getMaxSeq(), options.skolemDepth(), options.symmetryBreaking());
+        rep.debug("Generating the solution...\n");
+        Instance inst = null;
+        if (solver.usable()) { // otherwise the shared facts are unsatisfiable
+            skolems.clear();
+            quiet[0] = false;
+            solver.push(goal);
+            final Solution checked;
+            try {
+                checked = solver.check();
+            } finally {
+                solver.pop();
+            }
+            inst = restrict(checked.instance());
+            if (!quiet[0]) // no CNF was solved, so report the size of the trivial translation
+                rep.solve(checked.stats().primaryVariables(), checked.stats().variables(), checked.stats().clauses());
+        }
+        final A4Solution sol = frame.solved(cmd, inst);
+        if (inst != null)
+            rep.resultSAT(cmd, System.currentTimeMillis() - start, sol);
+        else
+            rep.resultUNSAT(cmd, System.currentTimeMillis() - start, sol);
+        return sol;
+    }
+
+    /**
+     * Returns the given instance without the skolems of the other commands of the
+     * group, or null if the given instance is null.
+     */
+    private Instance restrict(Instance inst) {
+        if (inst == null)
+            return null;
+        final Instance ans = new Instance(inst.universe());
+        for (Map.Entry<Relation,TupleSet> e : inst.relationTuples().entrySet()) {
+            if (relations.contains(e.getKey()) || skolems.contains(e.getKey()))
+                ans.add(e.getKey(), e.getValue());
+        }
+        for (IntIterator it = inst.ints().iterator(); it.hasNext();) {
+            final int i = it.next();
+            ans.add(i, inst.tuples(i));
+        }
+        return ans;
+    }
+
+    /** Releases the resources associated with this solver. */
+    void free() {
+        solver.free();
+    }
+}
@@ -0,0 +1,232 @@
+/* Alloy Analyzer 4 -- Copyright (c) 2006-2009, Felix Chang
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files
+ * (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package edu.mit.csail.sdg.translator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.Pos;
+import edu.mit.csail.sdg.ast.Command;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Node;
+import kodkod.ast.Relation;
+import kodkod.ast.visitor.AbstractReplacer;
+import kodkod.engine.IncrementalSolver;
+import kodkod.engine.Solution;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.Tuple;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+
+/**
+ * This class solves the successive scopes of a command with growable sigs with
+ * one incremental SAT solver.
+ * <p>
+ * The facts are translated once, in the frame of the largest scope of the
+ * command (where the growable sigs are not exact). The bounds and the scope
+ * constraints of each smaller scope are then mapped onto that frame, by atom
+ * and relation names, and passed to the SAT solver as assumptions; so the SAT
+ * solver keeps the clauses it has learned from one scope to the next.
+ * <p>
+ * The bounds of a smaller scope are not symmetric with respect to the
+ * symmetries of the largest one, so the frame binds a singleton relation to
+ * each of its atoms; this rules out symmetry breaking altogether.
+ */
+final class GreedyIncrementalSolver {
+
+    /** The options of the command. */
+    private final A4Options            opt;
+
+    /** The frame of the largest scope, with the facts of the command. */
+    private final A4Solution           frame;
+
+    /** The Kodkod universe of the frame. */
+    private final Universe             universe;
+
+    /**
+     * The Kodkod relations of the frame other than the string relations, by name;
+     * a name maps to null if it is not unique.
+     */
+    private final Map<String,Relation> name2rel = new HashMap<String,Relation>();
+
+    /** The bounds of the frame, which the bounds of every scope must narrow. */
+    private final Bounds               limits;
+
+    /** The incremental solver. */
+    private final IncrementalSolver    solver;
+
+    /**
+     * If quiet[0] is true, the solver does not report the size of the next CNF.
+     */
+    private final boolean[]            quiet = new boolean[] {
+                                                              true
+    };
+
+    /**
+     * The facts of the frame, or null if they have been passed to the solver.
+     */
+    private Formula                    facts;
+
+    /**
+     * The bounds of the frame, or null if they have been passed to the solver.
+     */
+    private Bounds                     bounds;
+
+    private GreedyIncrementalSolver(A4Reporter rep, A4Options opt, A4Solution frame) {
+        this.opt = opt;
+        this.frame = frame;
+        this.universe = frame.getFactory().universe();
+        this.bounds = frame.getBounds();
+        this.limits = frame.getBounds();
+        final List<Formula> formulas = new ArrayList<Formula>(frame.getFormulas());
+        for (Relation r : bounds.relations()) {
+            formulas.add(r.eq(r));
+        } // Without this, kodkod refuses to grow unmentioned relations
+        this.facts = Formula.and(formulas);
+        for (Relation r : bounds.relations()) {
+            if (!frame.s2k().containsValue(r))
+                name2rel.put(r.name(), name2rel.containsKey(r.name()) ? null : r);
+        }
+        final TupleFactory factory = universe.factory();
+        for (int i = 0; i < universe.size(); i++) {
+            final Object atom = universe.atom(i);
+            bounds.boundExactly(Relation.unary(atom.toString()), factory.setOf(atom));
+        }
+        final Options options = frame.getOptions().clone();
+        options.setSymmetryBreaking(0);
+        options.setReporter(frame.skolemReporter(rep, quiet));
+        this.solver = IncrementalSolver.solver(options);
+    }
+
+    /**
+     * Returns a solver for the successive scopes of a command, given the options
+     * and the frame of its largest scope with its facts added, or null if the
+     * chosen SAT solver cannot solve under assumptions.
+     */
+    static GreedyIncrementalSolver make(A4Reporter rep, A4Options opt, A4Solution frame) throws Err {
+        final Options options = frame.getOptions();
+        if (opt.solver.equals(A4Options.SatSolver.CNF) || opt.solver.equals(A4Options.SatSolver.KK))
+            return null;
+        if (!options.solver().incremental() || !options.solver().assumptions() || options.logTranslation() != 0)
+            return null;
+        if (opt.inferPartialInstance && frame.getFormulas().size() > 0 && !new Simplifier().simplify(rep, frame, frame.getFormulas()))
+            frame.addFormula(Formula.FALSE, Pos.UNKNOWN);
+        rep.translate(opt.solver.id(), frame.getBitwidth(), frame.getMaxSeq(), options.skolemDepth(), 0);
+        return new GreedyIncrementalSolver(rep, opt, frame);
+    }
+
+    /**
+     * Solves the given command, given the frame of its scope without the facts,
+     * and returns the solution in the frame of the largest scope; or returns null
+     * if the scope cannot be mapped onto the frame of the largest scope, in which
+     * case this solver must not be used again. If sim is nonnull, it is applied to
+     * the given frame first.
+     */
+    A4Solution solve(A4Reporter rep, Command cmd, A4Solution step, Simplifier sim) throws Err {
+        if (!solver.usable()) // the facts are unsatisfiable in the largest scope
+            return frame.solved(cmd, null);
+        if (step.getBitwidth() != frame.getBitwidth() || step.getMaxSeq() != frame.getMaxSeq())
+            return null;
+        if (sim != null && opt.inferPartialInstance && !sim.simplify(rep, step, step.getFormulas()))
+            return frame.solved(cmd, null);
+        // Map the relations of the step onto those of the frame
+        final Bounds stepBounds = step.getBounds();
+        if (stepBounds.relations().size() != limits.relations().size())
+            return null;
+        final Map<Relation,Relation> map = new IdentityHashMap<Relation,Relation>();
+        final Map<Expression,String> k2s = new IdentityHashMap<Expression,String>();
+        for (Map.Entry<String,Expression> e : step.s2k().entrySet())
+            k2s.put(e.getValue(), e.getKey());
+        final Bounds assumed = new Bounds(universe);
+        for (Relation r : stepBounds.relations()) {
+            final String string = k2s.get(r);
+            final Expression m = string != null ? frame.s2k().get(string) : name2rel.get(r.name());
+            if (!(m instanceof Relation) || map.containsValue(m) || !limits.relations().contains(m))
+                return null;
+            final TupleSet lower = convert(stepBounds.lowerBound(r)), upper = convert(stepBounds.upperBound(r));
+            if (lower == null || upper == null)
+                return null;
+            if (!lower.containsAll(limits.lowerBound((Relation) m)) || !limits.upperBound((Relation) m).containsAll(upper))
+                return null; // the bounds of the step do not narrow those of the frame
+            map.put(r, (Relation) m);
+            assumed.bound((Relation) m, lower, upper);
+        }
+        // Rewrite the scope constraints of the step in terms of the frame
+        final boolean[] unmapped = new boolean[1];
+        final AbstractReplacer replacer = new AbstractReplacer(new HashSet<Node>()) {
+
+            @Override
+            public Expression visit(Relation relation) {
+                final Relation m = map.get(relation);
+                if (m != null)
+                    return m;
+                unmapped[0] = true;
+                return relation;
+            }
+        };
+        final List<Formula> constraints = new ArrayList<Formula>();
+        for (Formula f : step.getFormulas())
+            constraints.add(f.accept(replacer));
+        if (unmapped[0])
+            return null;
+        // Solve
+        final Solution sol;
+        quiet[0] = false;
+        if (facts != null) {
+            sol = solver.solve(facts, bounds, Formula.and(constraints), assumed);
+            facts = null;
+            bounds = null;
+        } else {
+            sol = solver.solve(Formula.TRUE, new Bounds(universe), Formula.and(constraints), assumed);
+        }
+        if (!quiet[0]) // no CNF was solved, so report the size of the trivial translation
+            rep.solve(sol.stats().primaryVariables(), sol.stats().variables(), sol.stats().clauses());
+        return frame.solved(cmd, sol.instance());
+    }
+
+    /**
+     * Converts the given tuple set into a tuple set over the universe of the frame,
+     * or returns null if some atom is not in that universe.
+     */
+    private TupleSet convert(TupleSet old) {
+        final TupleFactory factory = universe.factory();
+        final TupleSet ans = factory.noneOf(old.arity());
+        final Object[] atoms = new Object[old.arity()];
+        for (Tuple t : old) {
+            for (int i = 0; i < atoms.length; i++) {
+                atoms[i] = t.atom(i);
+                if (!universe.contains(atoms[i]))
+                    return null;
+            }
+            ans.add(factory.tuple(atoms));
+        }
+        return ans;
+    }
+
+    /** Releases the resources associated with this solver. */
+    void free() {
+        solver.free();
+    }
+}
@@ -19,11 +19,19 @@ import static edu.mit.csail.sdg.alloy4.Util.tail;
 import static edu.mit.csail.sdg.ast.Sig.UNIV;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.mit.csail.sdg.alloy4.A4Reporter;
 import edu.mit.csail.sdg.alloy4.ConstList;
@@ -33,6 +41,7 @@ import edu.mit.csail.sdg.alloy4.Err;
 import edu.mit.csail.sdg.alloy4.ErrorFatal;
 import edu.mit.csail.sdg.alloy4.ErrorSyntax;
 import edu.mit.csail.sdg.alloy4.ErrorType;
+import edu.mit.csail.sdg.alloy4.ErrorWarning;
 import edu.mit.csail.sdg.alloy4.Pair;
 import edu.mit.csail.sdg.alloy4.Pos;
 import edu.mit.csail.sdg.alloy4.Util;
@@ -51,6 +60,7 @@ import edu.mit.csail.sdg.ast.ExprQt;
 import edu.mit.csail.sdg.ast.ExprUnary;
 import edu.mit.csail.sdg.ast.ExprVar;
 import edu.mit.csail.sdg.ast.Func;
+import edu.mit.csail.sdg.ast.Module;
 import edu.mit.csail.sdg.ast.Sig;
 import edu.mit.csail.sdg.ast.Sig.Field;
 import edu.mit.csail.sdg.ast.Type;
@@ -67,6 +77,7 @@ import kodkod.ast.QuantifiedFormula;
 import kodkod.ast.Relation;
 import kodkod.ast.Variable;
 import kodkod.ast.operator.ExprOperator;
+import kodkod.engine.AbortedException;
 import kodkod.engine.CapacityExceededException;
 import kodkod.engine.fol2sat.HigherOrderDeclException;
 import kodkod.instance.Tuple;
@@ -80,7 +91,12 @@ import kodkod.util.ints.IntVector;
 
 public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
 
-    static int                                cnt              = 0;
+    /**
+     * This is used to generate unique names for quantified variables; it is shared
+     * by all translations, which may run concurrently (see
+     * {@link #execute_commands}).
+     */
+    static final AtomicInteger                cnt              = new AtomicInteger();
 
     /**
      * This is used to detect "function recursion" (which we currently do not
@@ -419,6 +435,41 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
         return new ErrorType("Translation capacity exceeded.\n" + "In this scope, universe contains " + vec.get(0) + " atoms\n" + "and relations of arity " + vec.size() + " cannot be represented.\n" + "Visit http://alloy.mit.edu/ for advice on refactoring.");
     }
 
+    /**
+     * Converts an AbortedException into an ErrorFatal that keeps it as its cause,
+     * so that clients can read how far the aborted analysis got.
+     */
+    static ErrorFatal rethrow(AbortedException ex) {
+        return new ErrorFatal("The analysis was aborted: " + ex.getMessage(), ex);
+    }
+
+    /**
+     * Returns the last command that execute_greedyCommand() derives from the given
+     * one by growing the scopes of the given sigs, with those sigs made non-exact;
+     * its scope contains the scopes of all commands derived from the given one.
+     */
+    private static Command largestScope(Command cmd, ConstList<Sig> growableSigs) throws Err {
+        while (true) {
+            Command next = cmd;
+            for (Sig s : growableSigs) {
+                CommandScope sc = next.getScope(s);
+                if (sc.increment > sc.endingScope - sc.startingScope) {
+                    next = null;
+                    break;
+                }
+                next = next.change(s, sc.isExact, sc.startingScope + sc.increment, sc.endingScope, sc.increment);
+            }
+            if (next == null)
+                break;
+            cmd = next;
+        }
+        for (Sig s : growableSigs) {
+            CommandScope sc = cmd.getScope(s);
+            cmd = cmd.change(s, false, sc.startingScope, sc.endingScope, sc.increment);
+        }
+        return cmd;
+    }
+
     private static A4Solution execute_greedyCommand(A4Reporter rep, Iterable<Sig> sigs, Command usercommand, A4Options opt) throws Exception {
         // FIXTHIS: if the next command has a "smaller scope" than the last
         // command, we would get a Kodkod exception...
@@ -426,7 +477,7 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
         // throw an Exception...
         // FIXTHIS: does solution enumeration still work when we're doing a
         // greedy solve?
-        TranslateAlloyToKodkod tr = null;
+        TranslateAlloyToKodkod tr = null, largest = null;
         try {
             long start = System.currentTimeMillis();
             GreedySimulator sim = new GreedySimulator();
@@ -460,39 +511,63 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
             for (int i = commands.size() - 1; i >= 0; i--) {
                 Command cmd = commands.get(i);
                 sim.growableSigs = cmd.getGrowableSigs();
-                while (cmd != null) {
-                    rep.debug(cmd.scope.toString());
-                    usercommand = cmd;
-                    tr = new TranslateAlloyToKodkod(rep2, opt, sigs, cmd);
-                    tr.makeFacts(cmd.formula);
-                    sim.totalOrderPredicates = tr.totalOrderPredicates;
-                    sol = tr.frame.solve(rep2, cmd, sim.partial == null || cmd.check ? new Simplifier() : sim, false);
-                    if (!sol.satisfiable() && !cmd.check) {
-                        start = System.currentTimeMillis() - start;
-                        if (sim.partial == null) {
-                            rep.resultUNSAT(cmd, start, sol);
+                GreedyIncrementalSolver inc = null;
+                if (opt.incrementalGreedy && !sim.growableSigs.isEmpty()) {
+                    largest = new TranslateAlloyToKodkod(rep2, opt, sigs, largestScope(cmd, sim.growableSigs));
+                    largest.makeFacts(cmd.formula);
+                    inc = GreedyIncrementalSolver.make(rep2, opt, largest.frame);
+                }
+                try {
+                    while (cmd != null) {
+                        rep.debug(cmd.scope.toString());
+                        usercommand = cmd;
+                        tr = new TranslateAlloyToKodkod(rep2, opt, sigs, cmd);
+                        sol = null;
+                        if (inc != null) {
+                            sol = inc.solve(rep2, cmd, tr.frame, sim.partial == null || cmd.check ? null : sim);
+                            if (sol == null) {
+                                // this scope cannot be mapped onto the largest
+                                // one, so translate it (and the rest) anew
+                                inc.free();
+                                inc = null;
+                                tr = new TranslateAlloyToKodkod(rep2, opt, sigs, cmd);
+                            }
+                        }
+                        if (sol == null) {
+                            tr.makeFacts(cmd.formula);
+                            sim.totalOrderPredicates = tr.totalOrderPredicates;
+                            sol = tr.frame.solve(rep2, cmd, sim.partial == null || cmd.check ? new Simplifier() : sim, false);
+                        }
+                        if (!sol.satisfiable() && !cmd.check) {
+                            start = System.currentTimeMillis() - start;
+                            if (sim.partial == null) {
+                                rep.resultUNSAT(cmd, start, sol);
+                                return sol;
+                            } else {
+                                rep.resultSAT(cmd, start, sim.partial);
+                                return sim.partial;
+                            }
+                        }
+                        if (sol.satisfiable() && cmd.check) {
+                            start = System.currentTimeMillis() - start;
+                            rep.resultSAT(cmd, start, sol);
                             return sol;
-                        } else {
-                            rep.resultSAT(cmd, start, sim.partial);
-                            return sim.partial;
                         }
-                    }
-                    if (sol.satisfiable() && cmd.check) {
-                        start = System.currentTimeMillis() - start;
-                        rep.resultSAT(cmd, start, sol);
-                        return sol;
-                    }
-                    sim.partial = sol;
-                    if (sim.growableSigs.isEmpty())
-                        break;
-                    for (Sig s : sim.growableSigs) {
-                        CommandScope sc = cmd.getScope(s);
-                        if (sc.increment > sc.endingScope - sc.startingScope) {
-                            cmd = null;
+                        sim.partial = sol;
+                        if (sim.growableSigs.isEmpty())
                             break;
+                        for (Sig s : sim.growableSigs) {
+                            CommandScope sc = cmd.getScope(s);
+                            if (sc.increment > sc.endingScope - sc.startingScope) {
+                                cmd = null;
+                                break;
+                            }
+                            cmd = cmd.change(s, sc.isExact, sc.startingScope + sc.increment, sc.endingScope, sc.increment);
                         }
-                        cmd = cmd.change(s, sc.isExact, sc.startingScope + sc.increment, sc.endingScope, sc.increment);
                     }
+                } finally {
+                    if (inc != null)
+                        inc.free();
                 }
             }
             if (sol.satisfiable())
@@ -502,8 +577,12 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
             return sol;
         } catch (CapacityExceededException ex) {
             throw rethrow(ex);
+        } catch (AbortedException ex) {
+            throw rethrow(ex);
         } catch (HigherOrderDeclException ex) {
             Pos p = tr != null ? tr.frame.kv2typepos(ex.decl().variable()).b : Pos.UNKNOWN;
+            if (p == Pos.UNKNOWN && largest != null)
+                p = largest.frame.kv2typepos(ex.decl().variable()).b;
             throw new ErrorType(p, "Analysis cannot be performed since it requires higher-order quantification that could not be skolemized.");
         }
     }
@@ -539,6 +618,8 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
             throw new ErrorFatal("The required JNI library cannot be found: " + ex.toString().trim(), ex);
         } catch (CapacityExceededException ex) {
             throw rethrow(ex);
+        } catch (AbortedException ex) {
+            throw rethrow(ex);
         } catch (HigherOrderDeclException ex) {
             Pos p = tr != null ? tr.frame.kv2typepos(ex.decl().variable()).b : Pos.UNKNOWN;
             throw new ErrorType(p, "Analysis cannot be performed since it requires higher-order quantification that could not be skolemized.");
@@ -550,6 +631,303 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
         }
     }
 
+    /**
+     * Based on the specified "options", execute the given commands one after
+     * another, and return the resulting A4Solution objects in the same order as
+     * the commands.
+     * <p>
+     * Commands with identical scopes (that reference the same String constants) are
+     * executed as a group: the bounds of the group and the facts that its commands
+     * share are translated once, and the rest of each command (such as the negated
+     * assertion of a check) is solved under the assumption of its own activation
+     * literals, with one incremental SAT solver. The solutions of grouped commands
+     * do not support next(). Commands whose scope differs from that of all other
+     * commands, commands with growable sigs, and all commands if the chosen SAT
+     * solver cannot solve under assumptions, are executed separately, exactly as
+     * if by {@link #execute_command}; so are the remaining commands of a group if
+     * solving one of them fails.
+     *
+     * @param rep - if nonnull, we'll send compilation diagnostic messages to it
+     * @param sigs - the list of sigs; this list must be complete
+     * @param cmds - the Commands to execute
+     * @param opt - the set of options guiding the execution of the commands
+     * @return the list of solutions, where the i-th solution is the result of the
+     *         i-th command; the i-th solution is null if the user chose "save to
+     *         FILE" as the SAT solver
+     */
+    public static List<A4Solution> execute_commandsIncrementally(A4Reporter rep, Iterable<Sig> sigs, List<Command> cmds, A4Options opt) throws Err {
+        if (rep == null)
+            rep = A4Reporter.NOP;
+        final List<A4Solution> ans = new ArrayList<A4Solution>(cmds.size());
+        for (int i = 0; i < cmds.size(); i++)
+            ans.add(null);
+        for (List<Integer> group : groupByScope(sigs, cmds)) {
+            final List<Command> commands = new ArrayList<Command>(group.size());
+            for (int i : group)
+                commands.add(cmds.get(i));
+            final List<A4Solution> sols = group.size() > 1 ? execute_group(rep, sigs, commands, opt) : new ArrayList<A4Solution>();
+            for (int i = 0; i < group.size(); i++)
+                ans.set(group.get(i), i < sols.size() ? sols.get(i) : execute_command(rep, sigs, commands.get(i), opt));
+        }
+        return ans;
+    }
+
+    /**
+     * Partitions the indices of the given commands into groups of commands with
+     * identical scopes and String constants, in the order of their first command.
+     * Commands with growable sigs are each in a group of their own.
+     */
+    private static List<List<Integer>> groupByScope(Iterable<Sig> sigs, List<Command> cmds) throws Err {
+        final List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        final List<Set<String>> strings = new ArrayList<Set<String>>(); // null for a group of its own
+        for (int i = 0; i < cmds.size(); i++) {
+            final Command cmd = cmds.get(i);
+            final Set<String> set = (cmd.parent != null || !cmd.getGrowableSigs().isEmpty()) ? null : cmd.getAllStringConstants(sigs);
+            List<Integer> group = null;
+            for (int j = 0; set != null && j < groups.size() && group == null; j++)
+                if (set.equals(strings.get(j)) && sameScope(cmd, cmds.get(groups.get(j).get(0))))
+                    group = groups.get(j);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.add(group);
+                strings.add(set);
+            }
+            group.add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * Returns true if the two commands specify the same scopes, in the same order.
+     */
+    private static boolean sameScope(Command a, Command b) {
+        if (a.overall != b.overall || a.bitwidth != b.bitwidth || a.maxseq != b.maxseq || a.scope.size() != b.scope.size() || !a.additionalExactScopes.equals(b.additionalExactScopes))
+            return false;
+        for (int i = 0; i < a.scope.size(); i++) {
+            CommandScope x = a.scope.get(i), y = b.scope.get(i);
+            if (x.sig != y.sig || x.isExact != y.isExact || x.startingScope != y.startingScope || x.endingScope != y.endingScope || x.increment != y.increment)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the conjuncts of the given formula.
+     */
+    private static List<Expr> conjuncts(Expr formula) {
+        if (formula instanceof ExprList && ((ExprList) formula).op == ExprList.Op.AND)
+            return ((ExprList) formula).args;
+        return Util.asList(formula);
+    }
+
+    /**
+     * Returns the set of the given expressions, compared by identity.
+     */
+    private static Set<Expr> identitySet(List<Expr> exprs) {
+        final Set<Expr> ans = Collections.newSetFromMap(new IdentityHashMap<Expr,Boolean>());
+        ans.addAll(exprs);
+        return ans;
+    }
+
+    /**
+     * Executes a group of commands with identical scopes with one incremental SAT
+     * solver, and returns the solutions of a prefix of the commands; the remaining
+     * commands must be executed separately.
+     */
+    private static List<A4Solution> execute_group(A4Reporter rep, Iterable<Sig> sigs, List<Command> cmds, A4Options opt) {
+        final List<A4Solution> ans = new ArrayList<A4Solution>(cmds.size());
+        // The shared facts are the conjuncts common to all commands
+        final Set<Expr> shared = identitySet(conjuncts(cmds.get(0).formula));
+        for (Command cmd : cmds)
+            shared.retainAll(identitySet(conjuncts(cmd.formula)));
+        CommandGroupSolver solver = null;
+        try {
+            final TranslateAlloyToKodkod tr = new TranslateAlloyToKodkod(rep, opt, sigs, cmds.get(0));
+            final List<Expr> facts = new ArrayList<Expr>();
+            for (Expr e : conjuncts(cmds.get(0).formula))
+                if (shared.contains(e))
+                    facts.add(e);
+            tr.makeFacts(ExprList.make(null, null, ExprList.Op.AND, facts));
+            final List<Formula> goals = new ArrayList<Formula>(cmds.size());
+            for (Command cmd : cmds) {
+                final List<Expr> rest = new ArrayList<Expr>();
+                for (Expr e : conjuncts(cmd.formula))
+                    if (!shared.contains(e))
+                        rest.add(e);
+                goals.add(tr.cform((new ConvToConjunction()).visitThis(ExprList.make(null, null, ExprList.Op.AND, rest))));
+            }
+            solver = CommandGroupSolver.make(rep, opt, tr.frame);
+            if (solver != null)
+                for (int i = 0; i < cmds.size(); i++)
+                    ans.add(solver.solve(rep, cmds.get(i), goals.get(i)));
+        } catch (Err ex) {
+            // the failed command is executed again separately, which reports the error
+        } catch (RuntimeException ex) {
+            // likewise
+        } finally {
+            if (solver != null)
+                solver.free();
+        }
+        return ans;
+    }
+
+    /**
+     * Based on the specified "options", execute the given commands concurrently on
+     * a pool of at most "threads" worker threads, and return the resulting
+     * A4Solution objects in the same order as the commands.
+     * <p>
+     * Each command is translated and solved independently, exactly as if by
+     * {@link #execute_command}. The reporter receives the progress messages and
+     * the SAT/UNSAT results of each command as soon as they are produced, so the
+     * messages of different commands may be interleaved; calls to the reporter are
+     * serialized, so it need not be thread-safe. If some commands fail, the
+     * remaining commands still run to completion, and then the error of the first
+     * failed command (in the order given) is thrown.
+     *
+     * @param rep - if nonnull, we'll send compilation diagnostic messages to it
+     * @param world - the module whose reachable sigs the commands refer to
+     * @param cmds - the Commands to execute
+     * @param opt - the set of options guiding the execution of the commands (it
+     *            must not be modified while the commands are running)
+     * @param threads - the maximum number of commands to execute at once; if it is
+     *            0 or less, the number of available processors is used
+     * @return the list of solutions, where the i-th solution is the result of the
+     *         i-th command; the i-th solution is null if the user chose "save to
+     *         FILE" as the SAT solver
+     */
+    public static List<A4Solution> execute_commands(A4Reporter rep, Module world, List<Command> cmds, final A4Options opt, int threads) throws Err {
+        final A4Reporter syncRep = new SynchronizedReporter(rep == null ? A4Reporter.NOP : rep);
+        final ConstList<Sig> sigs = world.getAllReachableSigs();
+        if (threads <= 0)
+            threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, cmds.size())), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "alloy-command");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final List<Future<A4Solution>> futures = new ArrayList<Future<A4Solution>>(cmds.size());
+            for (final Command cmd : cmds) {
+                futures.add(pool.submit(new Callable<A4Solution>() {
+
+                    @Override
+                    public A4Solution call() throws Err {
+                        return execute_command(syncRep, sigs, cmd, opt);
+                    }
+                }));
+            }
+            final List<A4Solution> ans = new ArrayList<A4Solution>(cmds.size());
+            Err err = null;
+            for (Future<A4Solution> f : futures) {
+                try {
+                    ans.add(f.get());
+                } catch (ExecutionException ex) {
+                    ans.add(null);
+                    if (err == null)
+                        err = (ex.getCause() instanceof Err) ? (Err) ex.getCause() : new ErrorFatal("Unknown exception occurred: " + ex.getCause(), ex.getCause());
+                }
+            }
+            if (err != null)
+                throw err;
+            return ans;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ErrorFatal("Interrupted while executing commands.", ex);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * An A4Reporter that serializes all calls to the reporter it forwards to, so
+     * that concurrently executing commands can share one reporter.
+     */
+    private static final class SynchronizedReporter extends A4Reporter {
+
+        SynchronizedReporter(A4Reporter reporter) {
+            super(reporter);
+        }
+
+        @Override
+        public synchronized void debug(String msg) {
+            super.debug(msg);
+        }
+
+        @Override
+        public synchronized void parse(String msg) {
+            super.parse(msg);
+        }
+
+        @Override
+        public synchronized void typecheck(String msg) {
+            super.typecheck(msg);
+        }
+
+        @Override
+        public synchronized void warning(ErrorWarning msg) {
+            super.warning(msg);
+        }
+
+        @Override
+        public synchronized void scope(String msg) {
+            super.scope(msg);
+        }
+
+        @Override
+        public synchronized void bound(String msg) {
+            super.bound(msg);
+        }
+
+        @Override
+        public synchronized void translate(String solver, int bitwidth, int maxseq, int skolemDepth, int symmetry) {
+            super.translate(solver, bitwidth, maxseq, skolemDepth, symmetry);
+        }
+
+        @Override
+        public synchronized void solve(int primaryVars, int totalVars, int clauses) {
+            super.solve(primaryVars, totalVars, clauses);
+        }
+
+        @Override
+        public synchronized void progress(Object metrics) {
+            super.progress(metrics);
+        }
+
+        @Override
+        public synchronized void resultCNF(String filename) {
+            super.resultCNF(filename);
+        }
+
+        @Override
+        public synchronized void resultSAT(Object command, long solvingTime, Object solution) {
+            super.resultSAT(command, solvingTime, solution);
+        }
+
+        @Override
+        public synchronized void minimizing(Object command, int before) {
+            super.minimizing(command, before);
+        }
+
+        @Override
+        public synchronized void minimized(Object command, int before, int after) {
+            super.minimized(command, before, after);
+        }
+
+        @Override
+        public synchronized void resultUNSAT(Object command, long solvingTime, Object solution) {
+            super.resultUNSAT(command, solvingTime, solution);
+        }
+
+        @Override
+        public synchronized void write(Object expr) {
+            super.write(expr);
+        }
+    }
+
     /**
      * Based on the specified "options", execute one command and return the
      * resulting A4Solution object.
@@ -585,6 +963,8 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
             throw new ErrorFatal("The required JNI library cannot be found: " + ex.toString().trim(), ex);
         } catch (CapacityExceededException ex) {
             throw rethrow(ex);
+        } catch (AbortedException ex) {
+            throw rethrow(ex);
         } catch (HigherOrderDeclException ex) {
             Pos p = tr != null ? tr.frame.kv2typepos(ex.decl().variable()).b : Pos.UNKNOWN;
             throw new ErrorType(p, "Analysis cannot be performed since it requires higher-order quantification that could not be skolemized.");
@@ -1028,7 +1408,7 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
                                                                       // order
             Formula f2 = next.join(first).no(); // first element has no
                                                // predecessor
-            Variable e = Variable.unary("v" + Integer.toString(cnt++));
+            Variable e = Variable.unary("v" + Integer.toString(cnt.getAndIncrement()));
             Formula f3 = e.eq(first).or(next.join(e).one()); // each element
                                                             // (except the
                                                             // first) has
@@ -1277,7 +1657,7 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
     }
 
     // [AM]
-    private static boolean am = true;
+    private static final boolean am = true;
 
     /**
      * Helper method that translates the formula "r in (a ?->? b)" into a Kodkod
@@ -1291,7 +1671,7 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
         // r that begins with a.
         Expression atuple = null, ar = r;
         for (int i = a.arity(); i > 0; i--) {
-            Variable v = Variable.unary("v" + Integer.toString(cnt++));
+            Variable v = Variable.unary("v" + Integer.toString(cnt.getAndIncrement()));
             if (!am) {
                 if (a.arity() == 1)
                     d = v.oneOf(a);
@@ -1340,7 +1720,7 @@ public final class TranslateAlloyToKodkod extends VisitReturn<Object> {
         // r that end with b.
         Expression btuple = null, rb = r;
         for (int i = b.arity(); i > 0; i--) {
-            Variable v = Variable.unary("v" + Integer.toString(cnt++));
+            Variable v = Variable.unary("v" + Integer.toString(cnt.getAndIncrement()));
             if (!am) {
                 if (b.arity() == 1)
                     d2 = v.oneOf(b);
@@ -15,16 +15,18 @@
 
 package edu.mit.csail.sdg.translator;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import edu.mit.csail.sdg.alloy4.Util;
+import kodkod.engine.satlab.DimacsWriter;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 
 /**
  * An implementation of SATSolver that dumps the CNF to a file and then throws
- * an exception (this code is adapted from ExternalSolver from Kodkod).
+ * an exception (this code is adapted from ExternalSolver from Kodkod). If the
+ * file name ends in ".gz", the CNF is gzip-compressed.
  */
 
 final class WriteCNF implements SATSolver {
@@ -44,23 +46,14 @@ final class WriteCNF implements SATSolver {
         }
     }
 
-    /** This is the CNF file we are generating. */
-    private final RandomAccessFile cnf;
-
-    /**
-     * This buffers up the clauses we are writing to the CNF file, to avoid
-     * excessive I/O.
-     */
-    private final StringBuilder    buffer;
-
-    /** This is the buffer size. */
-    private static final int       capacity = 8192;
+    /** This writes the clauses to the CNF file we are generating. */
+    private final DimacsWriter cnf;
 
     /** The number of variables so far. */
-    private int                    vars     = 0;
+    private int                vars    = 0;
 
     /** The number of clauses so far. */
-    private int                    clauses  = 0;
+    private int                clauses = 0;
 
     /**
      * Helper method that returns a factory for WriteCNF instances.
@@ -88,30 +81,12 @@ final class WriteCNF implements SATSolver {
      */
     private WriteCNF(String filename) {
         try {
-            this.cnf = new RandomAccessFile(filename, "rw");
-            this.cnf.setLength(0);
-            this.buffer = new StringBuilder(capacity);
-            for (int i = String.valueOf(Integer.MAX_VALUE).length() * 2 + 8; i > 0; i--) {
-                // get enough space into the buffer for the cnf header, which
-                // will be written last
-                buffer.append(' ');
-            }
-            buffer.append('\n');
+            this.cnf = new DimacsWriter(new File(filename));
         } catch (Exception ex) {
             throw new RuntimeException("WriteCNF failed.", ex);
         }
     }
 
-    /** Helper method that flushes the buffer. */
-    private void flush() {
-        try {
-            cnf.writeBytes(buffer.toString());
-            buffer.setLength(0);
-        } catch (IOException ex) {
-            throw new RuntimeException("WriteCNF failed.", ex);
-        }
-    }
-
     /** {@inheritDoc} */
     @Override
     protected void finalize() throws Throwable {
@@ -137,11 +112,11 @@ final class WriteCNF implements SATSolver {
     public boolean addClause(int[] lits) {
         if (lits.length > 0) {
             clauses++;
-            if (buffer.length() > capacity)
-                flush();
-            for (int i = 0; i < lits.length; i++)
-                buffer.append(lits[i]).append(' ');
-            buffer.append("0\n");
+            try {
+                cnf.addClause(lits);
+            } catch (IOException ex) {
+                throw new RuntimeException("WriteCNF failed.", ex);
+            }
             return true;
         }
         return false;
@@ -163,10 +138,7 @@ final class WriteCNF implements SATSolver {
     @Override
     public boolean solve() {
         try {
-            flush();
-            cnf.seek(0);
-            cnf.writeBytes("p cnf " + vars + " " + clauses);
-            cnf.close();
+            cnf.finish(vars);
         } catch (Exception ex) {
             throw new RuntimeException("WriteCNF failed.", ex);
         }
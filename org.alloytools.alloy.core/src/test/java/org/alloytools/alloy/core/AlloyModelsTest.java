@@ -1,16 +1,32 @@
 package org.alloytools.alloy.core;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
 import org.junit.Test;
 
 import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.ErrorFatal;
 import edu.mit.csail.sdg.ast.Command;
+import edu.mit.csail.sdg.ast.Expr;
 import edu.mit.csail.sdg.ast.Module;
 import edu.mit.csail.sdg.parser.CompModule;
 import edu.mit.csail.sdg.parser.CompUtil;
 import edu.mit.csail.sdg.translator.A4Options;
 import edu.mit.csail.sdg.translator.A4Solution;
 import edu.mit.csail.sdg.translator.TranslateAlloyToKodkod;
+import kodkod.engine.AbortedException;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
+import kodkod.engine.satlab.SATFactory;
 
 public class AlloyModelsTest {
 
@@ -48,4 +64,184 @@ public class AlloyModelsTest {
             return;
         }
     }
+
+    @Test
+    public void concurrentCommands() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Node { succ: lone Node }\n" + "fact { no n: Node | n in n.^succ }\n" + "assert acyclic { all n: Node | n !in n.succ }\n" + "assert empty { no Node }\n" + "check acyclic for 4\n" + "check empty for 3\n" + "run { some succ } for 2\n" + "run { #Node = 3 and #succ = 3 } for 3\n");
+
+        A4Options options = new A4Options();
+        List<Command> commands = world.getAllCommands();
+        List<A4Solution> answers = TranslateAlloyToKodkod.execute_commands(A4Reporter.NOP, world, commands, options, 4);
+        assertEquals(commands.size(), answers.size());
+        for (int i = 0; i < commands.size(); i++) {
+            A4Solution expected = TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), commands.get(i), options);
+            assertEquals(expected.satisfiable(), answers.get(i).satisfiable());
+        }
+    }
+
+    @Test
+    public void incrementalCommands() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Node { succ: lone Node }\n" + "fact { no n: Node | n in n.^succ }\n" + "assert acyclic { all n: Node | n !in n.succ }\n" + "assert empty { no Node }\n" + "assert total { all n: Node | some n.succ }\n" + "check acyclic for 3\n" + "check empty for 3\n" + "run { some succ } for 3\n" + "check total for 3\n" + "run { #Node = 3 and #succ = 3 } for 3\n" + "check empty for 2\n");
+
+        A4Options options = new A4Options();
+        final int[] translations = new int[1];
+        A4Reporter rep = new A4Reporter() {
+
+            @Override
+            public void debug(String msg) {
+                if (msg.startsWith("Generating facts"))
+                    translations[0]++;
+            }
+        };
+        List<Command> commands = world.getAllCommands();
+        List<A4Solution> answers = TranslateAlloyToKodkod.execute_commandsIncrementally(rep, world.getAllReachableSigs(), commands, options);
+        assertEquals(commands.size(), answers.size());
+        // the five commands for 3 share one translation
+        assertEquals(2, translations[0]);
+        for (int i = 0; i < commands.size(); i++) {
+            A4Solution expected = TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), commands.get(i), options);
+            assertEquals(commands.get(i).toString(), expected.satisfiable(), answers.get(i).satisfiable());
+            if (answers.get(i).satisfiable())
+                assertEquals(commands.get(i).toString(), Boolean.TRUE, answers.get(i).eval(commands.get(i).formula));
+        }
+    }
+
+    @Test
+    public void incrementalGreedyCommands() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Node { succ: set Node }\n" + "fact { no n: Node | n in n.^succ }\n" + "assert small { #Node < 3 }\n" + "assert sink { some Node implies some n: Node | no n.succ }\n" + "run { #succ >= 2 } for exactly 1..4 Node\n" + "run { #Node < 3 } for exactly 1..5 Node\n" + "check small for exactly 1..5 Node\n" + "check sink for exactly 1..4 Node\n");
+
+        Expr nodes = CompUtil.parseOneExpression_fromString(world, "#Node");
+        A4Options plain = new A4Options();
+        A4Options greedy = plain.dup();
+        greedy.incrementalGreedy = true;
+        final int[] translations = new int[1];
+        A4Reporter rep = new A4Reporter() {
+
+            @Override
+            public void debug(String msg) {
+                if (msg.startsWith("Generating facts"))
+                    translations[0]++;
+            }
+        };
+        for (Command command : world.getAllCommands()) {
+            A4Solution expected = TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), command, plain);
+            translations[0] = 0;
+            A4Solution actual = TranslateAlloyToKodkod.execute_command(rep, world.getAllReachableSigs(), command, greedy);
+            // the facts are translated once, in the largest scope
+            assertEquals(command.toString(), 1, translations[0]);
+            assertEquals(command.toString(), expected.satisfiable(), actual.satisfiable());
+            if (actual.satisfiable()) {
+                // both solutions are found in the same scope
+                assertEquals(command.toString(), expected.eval(nodes), actual.eval(nodes));
+                assertEquals(command.toString(), Boolean.TRUE, actual.eval(command.formula));
+            }
+        }
+    }
+
+    @Test
+    public void parallelCoreMinimization() throws Exception {
+        Assume.assumeTrue(SATFactory.available(SATFactory.MiniSatProver));
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig A { f: one B }\n" + "sig B {}\n" + "fact { #A = 3 }\n" + "fact { #B = 2 }\n" + "fact { all a: A | one a.f }\n" + "fact { f.~f in iden }\n" + "fact { all disj x, y: A | x.f != y.f }\n" + "fact { some A }\n" + "run {} for 4\n");
+
+        A4Options options = new A4Options();
+        options.solver = A4Options.SatSolver.MiniSatProverJNI;
+        options.coreMinimization = 0;
+        options.coreThreads = 4;
+        final int[] sizes = new int[2];
+        A4Reporter rep = new A4Reporter() {
+
+            @Override
+            public void minimized(Object command, int before, int after) {
+                sizes[0] = before;
+                sizes[1] = after;
+            }
+        };
+        Command command = world.getAllCommands().get(0);
+        A4Solution ans = TranslateAlloyToKodkod.execute_command(rep, world.getAllReachableSigs(), command, options);
+        assertFalse(ans.satisfiable());
+        assertTrue(sizes[1] > 0 && sizes[1] < sizes[0]);
+        // the core is minimal: the size of each sig, one of the two constraints
+        // that make f total, and one of the two injectivity facts
+        assertEquals(4, sizes[1]);
+    }
+
+    @Test
+    public void progressReports() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Node { succ: set Node }\n" + "assert acyclic { no n: Node | n in n.^succ }\n" + "check acyclic for 6\n");
+
+        A4Options options = new A4Options();
+        options.progressInterval = 1;
+        final List<Object> reports = new ArrayList<Object>();
+        A4Reporter rep = new A4Reporter() {
+
+            @Override
+            public void progress(Object metrics) {
+                synchronized (reports) {
+                    reports.add(metrics);
+                }
+            }
+        };
+        Command command = world.getAllCommands().get(0);
+        A4Solution ans = TranslateAlloyToKodkod.execute_command(rep, world.getAllReachableSigs(), command, options);
+        assertTrue(ans.satisfiable());
+        synchronized (reports) {
+            assertFalse(reports.isEmpty());
+            Metrics metrics = (Metrics) reports.get(reports.size() - 1);
+            assertEquals(Metrics.Stage.DONE, metrics.stage());
+            assertTrue(metrics.getGates() > 0);
+            assertTrue(metrics.getClauses() > 0);
+        }
+    }
+
+    @Test
+    public void budgetAbortsCommand() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Node { succ: set Node }\n" + "assert acyclic { no n: Node | n in n.^succ }\n" + "check acyclic for 6\n");
+        Command command = world.getAllCommands().get(0);
+
+        A4Options options = new A4Options();
+        options.budget = new Budget(0, 50, 0);
+        try {
+            TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), command, options);
+            fail("expected the command to be aborted");
+        } catch (ErrorFatal e) {
+            assertTrue(e.getCause() instanceof AbortedException);
+            Budget.Usage usage = ((AbortedException) e.getCause()).usage();
+            assertNotNull(usage);
+            assertEquals(Budget.Limit.GATES, usage.limit());
+        }
+
+        options.budget = new Budget();
+        assertTrue(TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), command, options).satisfiable());
+    }
+
+    @Test
+    public void budgetLimitsConcurrentCommands() throws Exception {
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, "sig Pigeon { hole: one Hole }\n" + "sig Hole {}\n" + "fact { hole.~hole in iden }\n" + "run {} for exactly 13 Pigeon, exactly 12 Hole\n" + "run { some Hole } for 2\n" + "run { some hole } for exactly 13 Pigeon, exactly 12 Hole\n");
+
+        A4Options options = new A4Options();
+        options.symmetry = 0;
+        options.budget = new Budget(300, 0, 0);
+        final int[] results = new int[1];
+        A4Reporter rep = new A4Reporter() {
+
+            @Override
+            public void resultSAT(Object command, long solvingTime, Object solution) {
+                results[0]++;
+            }
+        };
+        long start = System.currentTimeMillis();
+        try {
+            TranslateAlloyToKodkod.execute_commands(rep, world, world.getAllCommands(), options, 3);
+            fail("expected the pigeonhole commands to be aborted");
+        } catch (ErrorFatal e) {
+            assertTrue(e.getCause() instanceof AbortedException);
+            Budget.Usage usage = ((AbortedException) e.getCause()).usage();
+            assertEquals(Budget.Limit.TIME, usage.limit());
+            assertTrue(usage.millis() >= 300);
+        }
+        // both pigeonhole commands were aborted, each on its own clock, and the
+        // easy one ran to completion
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, results[0]);
+    }
 }
@@ -0,0 +1,104 @@
+package org.alloytools.alloy.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.mit.csail.sdg.sim.SimAtom;
+import edu.mit.csail.sdg.sim.SimTuple;
+import edu.mit.csail.sdg.sim.SimTupleset;
+
+public class SimTuplesetTest {
+
+    private static SimAtom atom(int i) {
+        return SimAtom.make("A" + i);
+    }
+
+    /** Returns a random binary relation over n atoms with about m tuples. */
+    private static SimTupleset random(Random random, int n, int m) {
+        Set<SimTuple> tuples = new LinkedHashSet<SimTuple>();
+        for (int i = 0; i < m; i++)
+            tuples.add(SimTuple.make(atom(random.nextInt(n)), atom(random.nextInt(n))));
+        return SimTupleset.make(tuples);
+    }
+
+    /** Computes the join of a and b with nested loops. */
+    private static Set<SimTuple> join(SimTupleset a, SimTupleset b) {
+        Set<SimTuple> ans = new LinkedHashSet<SimTuple>();
+        for (SimTuple x : a)
+            for (SimTuple y : b)
+                if (x.tail() == y.head())
+                    ans.add(x.join(y));
+        return ans;
+    }
+
+    private static Set<SimTuple> set(SimTupleset a) {
+        Set<SimTuple> ans = new LinkedHashSet<SimTuple>();
+        for (SimTuple x : a)
+            ans.add(x);
+        return ans;
+    }
+
+    @Test
+    public void testJoinAndClosure() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            SimTupleset a = random(random, 30, 5 + round * 10), b = random(random, 30, 40);
+            assertEquals(join(a, b), set(a.join(b)));
+            assertEquals(join(a, b).size(), a.join(b).size());
+            // the closure is the least fixpoint of r = a + r.a
+            Set<SimTuple> closure = set(a);
+            for (int size = -1; size != closure.size();) {
+                size = closure.size();
+                closure.addAll(join(SimTupleset.make(new ArrayList<SimTuple>(closure)), a));
+            }
+            assertEquals(closure, set(a.closure()));
+            assertEquals(closure.size(), a.closure().size());
+            for (SimTuple x : closure)
+                assertTrue(a.closure().has(x));
+            assertTrue(a.in(a.closure()));
+        }
+    }
+
+    @Test
+    public void testMembership() {
+        List<SimTuple> tuples = new ArrayList<SimTuple>();
+        for (int i = 0; i < 100; i++)
+            tuples.add(SimTuple.make(atom(i)));
+        SimTupleset a = SimTupleset.make(tuples);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(a.has(atom(i)));
+            assertTrue(a.has(SimTuple.make(atom(i))));
+        }
+        assertFalse(a.has(atom(100)));
+        assertFalse(a.has(SimTuple.make(atom(100))));
+        assertEquals(a, a.union(SimTupleset.make(tuples.subList(0, 50))));
+        assertEquals(50, a.difference(SimTupleset.make(tuples.subList(0, 50))).size());
+    }
+
+    @Test
+    public void testTotalOrder() throws Exception {
+        List<SimTuple> elems = new ArrayList<SimTuple>(), next = new ArrayList<SimTuple>();
+        for (int i = 0; i < 50; i++) {
+            elems.add(SimTuple.make(atom(i)));
+            if (i > 0)
+                next.add(SimTuple.make(atom(i - 1), atom(i)));
+        }
+        SimTupleset elem = SimTupleset.make(elems), first = SimTupleset.make(elems.get(0));
+        assertTrue(SimTupleset.make(next).totalOrder(elem, first));
+        assertFalse(SimTupleset.make(next).totalOrder(elem, SimTupleset.make(elems.get(1))));
+        // a cycle back to the first element
+        next.set(next.size() - 1, SimTuple.make(atom(48), atom(0)));
+        assertFalse(SimTupleset.make(next).totalOrder(elem, first));
+        // the closure of a chain over 49 atoms
+        assertEquals(49 * 48 / 2, SimTupleset.make(next.subList(0, 48)).closure().size());
+    }
+}
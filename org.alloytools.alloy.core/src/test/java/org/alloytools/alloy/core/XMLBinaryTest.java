@@ -0,0 +1,90 @@
+package org.alloytools.alloy.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.XMLBinaryWriter;
+import edu.mit.csail.sdg.alloy4.XMLNode;
+import edu.mit.csail.sdg.ast.Command;
+import edu.mit.csail.sdg.ast.Sig;
+import edu.mit.csail.sdg.parser.CompModule;
+import edu.mit.csail.sdg.parser.CompUtil;
+import edu.mit.csail.sdg.translator.A4Options;
+import edu.mit.csail.sdg.translator.A4Solution;
+import edu.mit.csail.sdg.translator.A4SolutionReader;
+import edu.mit.csail.sdg.translator.TranslateAlloyToKodkod;
+
+public class XMLBinaryTest {
+
+    private static File temp(String suffix) throws Exception {
+        File file = File.createTempFile("xmlbinary", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testSolution() throws Exception {
+        String model = "sig Node { succ: set Node, label: Node -> Node }\n" + "run { some n: Node | #n.succ > 1 and some label } for 5\n";
+        CompModule world = CompUtil.parseEverything_fromString(A4Reporter.NOP, model);
+        Command command = world.getAllCommands().get(0);
+        A4Solution sol = TranslateAlloyToKodkod.execute_command(A4Reporter.NOP, world.getAllReachableSigs(), command, new A4Options());
+        assertTrue(sol.satisfiable());
+
+        File xml = temp(".xml"), binary = temp(".bin"), converted = temp(".bin");
+        sol.writeXML(xml.getPath(), null, Collections.singletonMap("model.als", model));
+        sol.writeBinary(binary.getPath(), null, Collections.singletonMap("model.als", model));
+        XMLBinaryWriter.convert(xml, converted);
+        assertTrue(binary.length() < xml.length());
+
+        String expected = new XMLNode(xml).toString();
+        assertEquals(expected, new XMLNode(binary).toString());
+        assertEquals(expected, new XMLNode(converted).toString());
+
+        A4Solution read = A4SolutionReader.read(world.getAllReachableSigs(), new XMLNode(binary));
+        for (Sig s : world.getAllReachableUserDefinedSigs()) {
+            assertEquals(sol.eval(s).toString(), read.eval(s).toString());
+            for (Sig.Field f : s.getFields())
+                assertEquals(sol.eval(f).toString(), read.eval(f).toString());
+        }
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        String document = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<!-- a comment - with a dash -->\n" + "<alloy builddate='today'>\n" + "<instance a=\"&lt;&amp;&gt;&quot;&apos;\" b=\"&#x1F;&#65;&#xd83d;&#xde00;\">\n" + "  <field label=\"f\"> <tuple> <atom label=\"A$0\"/> <atom label=\"B$0\"/> </tuple>\n" + "    <tuple><atom label=\"A$1\"/><atom label=\"B$1\"/></tuple>\n" + "    <tuple><atom label=\"A$1\"/></tuple>\n" + "    <tuple><atom label=\"A$1\"/><type ID=\"2\"/></tuple>\n" + "    <tuple><atom label=\"A$1\"><x/></atom></tuple>\n" + "    <tuple/>\n" + "  </field>\n" + "</instance>\n" + "</alloy>\n";
+        File xml = temp(".xml"), binary = temp(".bin");
+        Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+        out.write(document);
+        out.close();
+        XMLBinaryWriter.convert(xml, binary);
+        assertEquals(new XMLNode(xml).toString(), new XMLNode(binary).toString());
+    }
+
+    @Test
+    public void testNumberTooLarge() throws Exception {
+        // the header, then a string whose length does not fit into an int
+        File binary = temp(".bin");
+        OutputStream out = new FileOutputStream(binary);
+        out.write(new byte[] {
+                              0, 'A', '4', 'B', 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F
+        });
+        out.close();
+        try {
+            new XMLNode(binary);
+            fail("expected the number to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("too large"));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import examples.alloy.Dijkstra;
+import examples.alloy.FileSystem;
+import examples.alloy.Handshake;
+import examples.alloy.Lists;
+import examples.alloy.RingElection;
+import examples.alloy.Trees;
+import examples.netconfig.Bigconfig;
+import examples.tptp.ALG212;
+import examples.tptp.COM008;
+import examples.tptp.GEO091;
+import examples.tptp.LAT258;
+import examples.tptp.MED007;
+import kodkod.ast.Formula;
+import kodkod.instance.Bounds;
+
+/**
+ * The problems on which the translation pipeline is benchmarked. Each problem
+ * is one of the examples from the Kodkod test tree, together with three scopes
+ * at which it is benchmarked.
+ *
+ * @specfield scopes: Scope -> one int
+ */
+public enum Problem {
+
+    TREES(5, 6, 7) {
+
+        @Override
+        Spec spec(int scope) {
+            final Trees model = new Trees();
+            return new Spec(model.checkEquivOfTreeDefns(), model.bounds(scope));
+        }
+    },
+    LISTS(8, 11, 14) {
+
+        @Override
+        Spec spec(int scope) {
+            final Lists model = new Lists();
+            return new Spec(model.checkReflexive(), model.bounds(scope));
+        }
+    },
+    DIJKSTRA(10, 15, 20) {
+
+        @Override
+        Spec spec(int scope) {
+            final Dijkstra model = new Dijkstra();
+            return new Spec(model.checkDijkstraPreventsDeadlocks(), model.bounds(scope));
+        }
+    },
+    RING_ELECTION(6, 7, 8) {
+
+        @Override
+        Spec spec(int scope) {
+            final RingElection model = new RingElection();
+            return new Spec(model.checkAtMostOneElected(), model.bounds(scope));
+        }
+    },
+    FILE_SYSTEM(10, 20, 30) {
+
+        @Override
+        Spec spec(int scope) {
+            final FileSystem model = new FileSystem();
+            return new Spec(model.checkNoDirAliases(), model.bounds(scope));
+        }
+    },
+    HANDSHAKE(6, 8, 10) {
+
+        @Override
+        Spec spec(int scope) {
+            final Handshake model = new Handshake();
+            return new Spec(model.runPuzzle(), model.bounds(scope));
+        }
+    },
+    ALG212(5, 6, 7) {
+
+        @Override
+        Spec spec(int scope) {
+            final ALG212 model = new ALG212();
+            return new Spec(model.checkDistLong(), model.bounds(scope));
+        }
+    },
+    COM008(7, 9, 11) {
+
+        @Override
+        Spec spec(int scope) {
+            final COM008 model = new COM008();
+            return new Spec(model.checkGoalToBeProved(), model.bounds(scope));
+        }
+    },
+    GEO091(6, 8, 10) {
+
+        @Override
+        Spec spec(int scope) {
+            final GEO091 model = new GEO091();
+            return new Spec(model.checkTheorem_2_13(), model.bounds(scope));
+        }
+    },
+    LAT258(5, 6, 7) {
+
+        @Override
+        Spec spec(int scope) {
+            final LAT258 model = new LAT258();
+            return new Spec(model.checkGoalToBeProved(), model.bounds(scope));
+        }
+    },
+    MED007(15, 25, 35) {
+
+        @Override
+        Spec spec(int scope) {
+            final MED007 model = new MED007();
+            return new Spec(model.checkTranssls2_qilt27(), model.bounds(scope));
+        }
+    },
+    BIGCONFIG(10, 20, 30) {
+
+        /**
+         * Uses two headquarters, scope-2 subsites, and true closure.
+         */
+        @Override
+        Spec spec(int scope) {
+            final Bigconfig model = new Bigconfig(0);
+            return new Spec(model.show(), model.bounds(2, scope - 2, scope));
+        }
+    };
+
+    /**
+     * The sizes at which a problem is benchmarked.
+     */
+    public enum Scope {
+                       SMALL,
+                       MEDIUM,
+                       LARGE
+    }
+
+    private final int[] scopes;
+
+    private Problem(int small, int medium, int large) {
+        this.scopes = new int[] {
+                                 small, medium, large
+        };
+    }
+
+    /**
+     * Returns the formula and bounds of this problem for the given scope.
+     *
+     * @return formula and bounds of this problem for the given scope
+     */
+    abstract Spec spec(int scope);
+
+    /**
+     * Returns the formula and bounds of this problem at the given size.
+     *
+     * @return this.spec(this.scopes[size])
+     */
+    public final Spec spec(Scope size) {
+        return spec(scopes[size.ordinal()]);
+    }
+
+    /**
+     * A formula and the bounds in which it is to be solved.
+     */
+    public static final class Spec {
+
+        public final Formula formula;
+        public final Bounds  bounds;
+
+        Spec(Formula formula, Bounds bounds) {
+            this.formula = formula;
+            this.bounds = bounds;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+
+/**
+ * Measures the time that a SAT solver takes to solve the CNF translation of a
+ * {@linkplain Problem problem}. The problem is translated before each
+ * iteration, which consists of a single call to {@link SATSolver#solve()}.
+ * The solver is given by the name of one of the {@link SATFactory} constants.
+ */
+@State(Scope.Benchmark )
+@BenchmarkMode(Mode.SingleShotTime )
+@OutputTimeUnit(TimeUnit.MILLISECONDS )
+@Warmup(iterations = 3 )
+@Measurement(iterations = 5 )
+@Fork(1 )
+public class SolveBenchmark {
+
+    @Param({
+            "TREES", "LISTS", "DIJKSTRA", "RING_ELECTION", "FILE_SYSTEM", "HANDSHAKE", "ALG212", "COM008", "GEO091", "LAT258", "MED007", "BIGCONFIG"
+    } )
+    public Problem       problem;
+
+    @Param({
+            "SMALL", "MEDIUM", "LARGE"
+    } )
+    public Problem.Scope scope;
+
+    @Param({
+            "DefaultSAT4J"
+    } )
+    public String        solver;
+
+    private Options   options;
+    private SATSolver cnf;
+
+    /**
+     * Sets up the options with the named solver.
+     *
+     * @throws IllegalArgumentException the named solver is not available
+     */
+    @Setup(Level.Trial )
+    public void setupOptions() throws ReflectiveOperationException {
+        final SATFactory factory = (SATFactory) SATFactory.class.getField(solver).get(null);
+        if (!SATFactory.available(factory))
+            throw new IllegalArgumentException(solver + " is not available on this platform.");
+        options = new Options();
+        options.setSolver(factory);
+    }
+
+    /**
+     * Translates the problem to CNF.
+     */
+    @Setup(Level.Iteration )
+    public void translate() {
+        final Problem.Spec spec = problem.spec(scope);
+        cnf = Translator.translate(spec.formula, spec.bounds, options).cnf();
+    }
+
+    /**
+     * Solves the CNF.
+     */
+    @Benchmark
+    public boolean solve() {
+        return cnf.solve();
+    }
+
+    /**
+     * Releases the solver.
+     */
+    @TearDown(Level.Iteration )
+    public void free() {
+        cnf.free();
+        cnf = null;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import static kodkod.util.nodes.AnnotatedNode.annotate;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kodkod.ast.Formula;
+import kodkod.engine.bool.BooleanAccumulator;
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.BooleanVisitor;
+import kodkod.engine.bool.ITEGate;
+import kodkod.engine.bool.MultiGate;
+import kodkod.engine.bool.NotGate;
+import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.util.ints.IntSet;
+import kodkod.util.nodes.AnnotatedNode;
+
+/**
+ * Measures the stages of the {@linkplain Translator translation} of a
+ * {@linkplain Problem problem} to CNF separately:
+ * <ol>
+ * <li>{@link #partition()}: symmetry detection with
+ * {@link SymmetryDetector#partition(Bounds)};</li>
+ * <li>{@link #fol2bool()}: translation of the optimized formula to a circuit
+ * with {@link FOL2BoolTranslator};</li>
+ * <li>{@link #circuit()}: construction of the gates of that circuit by a fresh
+ * {@link BooleanFactory};</li>
+ * <li>{@link #cnf()}: emission of the circuit's clauses with
+ * {@link Bool2CNFTranslator}.</li>
+ * </ol>
+ * The input to each stage is computed once per trial, the way the
+ * {@link Translator} computes it, so that each benchmark times its stage alone.
+ */
+@State(Scope.Benchmark )
+@BenchmarkMode(Mode.AverageTime )
+@OutputTimeUnit(TimeUnit.MILLISECONDS )
+@Warmup(iterations = 5 )
+@Measurement(iterations = 5 )
+@Fork(1 )
+public class TranslationBenchmark {
+
+    @Param({
+            "TREES", "LISTS", "DIJKSTRA", "RING_ELECTION", "FILE_SYSTEM", "HANDSHAKE", "ALG212", "COM008", "GEO091", "LAT258", "MED007", "BIGCONFIG"
+    } )
+    public Problem       problem;
+
+    @Param({
+            "SMALL", "MEDIUM", "LARGE"
+    } )
+    public Problem.Scope scope;
+
+    private Options                options;
+    private Bounds                 original;
+    private AnnotatedNode<Formula> optimized;
+    private Bounds                 bounds;
+    private BooleanFormula         circuit;
+    private int                    maxPrimaryVar, maxFormula;
+
+    /**
+     * Computes the inputs to the translation stages.
+     */
+    @Setup
+    public void setup() {
+        final Problem.Spec spec = problem.spec(scope);
+        options = new Options();
+        original = spec.bounds;
+
+        // annotate, drop unused relations, and optimize the formula and bounds
+        // as done by the Translator when logging is disabled, except that the
+        // broken predicates are not inlined
+        final AnnotatedNode<Formula> annotated = annotate(spec.formula);
+        bounds = spec.bounds.clone();
+        bounds.relations().retainAll(annotated.relations());
+        if (!annotated.usesInts())
+            bounds.ints().clear();
+        final SymmetryBreaker breaker = new SymmetryBreaker(bounds, annotated, options.reporter());
+        breaker.breakMatrixSymmetries(annotated.predicates(), true);
+        optimized = options.skolemDepth() >= 0 ? Skolemizer.skolemize(annotated, bounds, options) : annotated;
+
+        // translate the optimized formula and conjoin it with the SBP
+        final LeafInterpreter interpreter = LeafInterpreter.exact(bounds, options, false);
+        final BooleanValue value = FOL2BoolTranslator.translate(optimized, interpreter);
+        final BooleanValue sbp = breaker.generateSBP(interpreter, options);
+        final BooleanValue full = interpreter.factory().and(value, sbp);
+        if (full.op() == Operator.CONST)
+            throw new IllegalStateException(problem + " is trivial at scope " + scope);
+        circuit = (BooleanFormula) full;
+        maxPrimaryVar = interpreter.factory().maxVariable();
+        maxFormula = interpreter.factory().maxFormula();
+    }
+
+    /**
+     * Detects the symmetries of the problem's bounds.
+     */
+    @Benchmark
+    public Set<IntSet> partition() {
+        return SymmetryDetector.partition(original);
+    }
+
+    /**
+     * Translates the optimized formula to a circuit.
+     */
+    @Benchmark
+    public BooleanValue fol2bool() {
+        final LeafInterpreter interpreter = LeafInterpreter.exact(bounds, options, false);
+        return FOL2BoolTranslator.translate(optimized, interpreter);
+    }
+
+    /**
+     * Rebuilds the translated circuit, gate by gate, in a fresh factory.
+     */
+    @Benchmark
+    public BooleanValue circuit() {
+        final BooleanFactory factory = BooleanFactory.factory(maxPrimaryVar, options);
+        return circuit.accept(new CircuitBuilder(factory, maxFormula), null);
+    }
+
+    /**
+     * Translates the circuit to CNF, discarding the clauses.
+     */
+    @Benchmark
+    public int cnf() {
+        return Bool2CNFTranslator.translate(circuit, maxPrimaryVar, ClauseCounter.FACTORY.instance(), null).numberOfClauses();
+    }
+
+    /**
+     * Copies a circuit into a given factory. The copy of each gate is cached,
+     * so that every shared gate is rebuilt once.
+     */
+    private static final class CircuitBuilder implements BooleanVisitor<BooleanValue,Object> {
+
+        private final BooleanFactory factory;
+        private final BooleanValue[] cache;
+
+        /**
+         * @requires factory.maxVariable() = circuit.factory.maxVariable()
+         */
+        CircuitBuilder(BooleanFactory factory, int maxFormula) {
+            this.factory = factory;
+            this.cache = new BooleanValue[maxFormula + 1];
+        }
+
+        @Override
+        public BooleanValue visit(MultiGate multigate, Object arg) {
+            BooleanValue ret = cache[multigate.label()];
+            if (ret == null) {
+                final BooleanAccumulator acc = BooleanAccumulator.treeGate(multigate.op());
+                for (BooleanFormula input : multigate) {
+                    acc.add(input.accept(this, arg));
+                }
+                ret = cache[multigate.label()] = factory.accumulate(acc);
+            }
+            return ret;
+        }
+
+        @Override
+        public BooleanValue visit(ITEGate ite, Object arg) {
+            BooleanValue ret = cache[ite.label()];
+            if (ret == null) {
+                ret = cache[ite.label()] = factory.ite(ite.input(0).accept(this, arg), ite.input(1).accept(this, arg), ite.input(2).accept(this, arg));
+            }
+            return ret;
+        }
+
+        @Override
+        public BooleanValue visit(NotGate negation, Object arg) {
+            return factory.not(negation.input(0).accept(this, arg));
+        }
+
+        @Override
+        public BooleanValue visit(BooleanVariable variable, Object arg) {
+            return factory.variable(variable.label());
+        }
+    }
+
+    /**
+     * A SATSolver that counts the clauses added to it, without storing them. It
+     * only serves as the sink of the CNF emission benchmark and cannot solve.
+     */
+    private static final class ClauseCounter implements SATSolver {
+
+        static final SATFactory FACTORY = new SATFactory() {
+
+                                            @Override
+                                            public SATSolver instance() {
+                                                return new ClauseCounter();
+                                            }
+                                        };
+
+        private int             vars, clauses;
+
+        @Override
+        public int numberOfVariables() {
+            return vars;
+        }
+
+        @Override
+        public int numberOfClauses() {
+            return clauses;
+        }
+
+        @Override
+        public void addVariables(int numVars) {
+            vars += numVars;
+        }
+
+        @Override
+        public boolean addClause(int[] lits) {
+            clauses++;
+            return true;
+        }
+
+        @Override
+        public boolean solve() {
+            throw new UnsupportedOperationException("ClauseCounter only counts the emitted CNF and cannot solve it");
+        }
+
+        @Override
+        public boolean valueOf(int variable) {
+            throw new UnsupportedOperationException("ClauseCounter only counts the emitted CNF and has no model");
+        }
+
+        @Override
+        public void free() {}
+    }
+}
@@ -21,25 +21,34 @@
  */
 package kodkod.engine;
 
+import kodkod.engine.config.Budget;
+
 /**
- * Indicates that a solving or evaluation task has been aborted.
+ * Indicates that a solving or evaluation task has been aborted. If the task was
+ * aborted by, or while running under, a {@linkplain Budget budget}, the
+ * exception also describes the resources that the task had used.
  *
  * @author Emina Torlak
  */
 public final class AbortedException extends RuntimeException {
 
-    private static final long serialVersionUID = 201522560152091247L;
+    private static final long            serialVersionUID = 201522560152091247L;
+
+    private final transient Budget.Usage usage;
 
     /**
      * Constructs an aborted exception with no message.
      */
-    AbortedException() {}
+    AbortedException() {
+        this.usage = null;
+    }
 
     /**
      * Constructs an aborted exception with the given message.
      */
     AbortedException(String message) {
         super(message);
+        this.usage = null;
     }
 
     /**
@@ -47,6 +56,7 @@ public final class AbortedException extends RuntimeException {
      */
     AbortedException(Throwable cause) {
         super(cause);
+        this.usage = null;
     }
 
     /**
@@ -54,6 +64,28 @@ public final class AbortedException extends RuntimeException {
      */
     AbortedException(String message, Throwable cause) {
         super(message, cause);
+        this.usage = null;
+    }
+
+    /**
+     * Constructs an aborted exception with the given usage, which also serves as
+     * its message, and the given cause, which may be null.
+     *
+     * @throws NullPointerException usage = null
+     */
+    public AbortedException(Budget.Usage usage, Throwable cause) {
+        super(usage.toString(), cause);
+        this.usage = usage;
+    }
+
+    /**
+     * Returns the resources that the aborted task had used, or null if it was not
+     * running under a budget.
+     *
+     * @return the usage of the aborted task, if known
+     */
+    public Budget.Usage usage() {
+        return usage;
     }
 
 }
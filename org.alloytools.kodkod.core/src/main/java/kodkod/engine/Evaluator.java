@@ -46,16 +46,28 @@ import kodkod.instance.TupleSet;
  * e.instance = i, but e.options is an Options object with different integer
  * settings than o, e.evalate(f) may return false.
  * </p>
+ * <p>
+ * A cached evaluator evaluates formulas and expressions directly on the tuples
+ * of its instance, and remembers the values of the subformulas and
+ * subexpressions that do not depend on quantified variables until the instance
+ * is changed. It is faster when many formulas or expressions are evaluated
+ * against the same instance. The nodes that it cannot evaluate directly, such
+ * as integer division or integer expressions under the
+ * {@link kodkod.engine.config.Options#noOverflow() noOverflow} option, are
+ * evaluated by translation as usual.
+ * </p>
  *
  * @specfield options: Options
  * @specfield instance: Instance
+ * @specfield cached: boolean
  * @author Emina Torlak
  */
 public final class Evaluator {
 
-    private final Instance instance;
-    private final Options  options;
-    private boolean        wasOverflow;	// [AM] was overflow detected during
+    private final Instance            instance;
+    private final Options             options;
+    private final RelationalEvaluator engine;
+    private boolean                   wasOverflow;	// [AM] was overflow detected during
     // evaluation
 
     /**
@@ -72,14 +84,28 @@ public final class Evaluator {
     /**
      * Constructs a new Evaluator for the given instance and options
      *
-     * @ensures this.instance' = instance && this.options' = options
+     * @ensures this.instance' = instance && this.options' = options &&
+     *          this.cached' = false
      * @throws NullPointerException instance = null || options = null
      */
     public Evaluator(Instance instance, Options options) {
+        this(instance, options, false);
+    }
+
+    /**
+     * Constructs a new Evaluator for the given instance and options, which caches
+     * the values of subformulas and subexpressions if cached is true.
+     *
+     * @ensures this.instance' = instance && this.options' = options &&
+     *          this.cached' = cached
+     * @throws NullPointerException instance = null || options = null
+     */
+    public Evaluator(Instance instance, Options options, boolean cached) {
         if (instance == null || options == null)
             throw new NullPointerException();
         this.instance = instance;
         this.options = options;
+        this.engine = cached ? new RelationalEvaluator(instance, options) : null;
     }
 
     /**
@@ -101,6 +127,16 @@ public final class Evaluator {
         return instance;
     }
 
+    /**
+     * Returns true if this evaluator caches the values of subformulas and
+     * subexpressions.
+     *
+     * @return this.cached
+     */
+    public boolean cached() {
+        return engine != null;
+    }
+
     /**
      * Evaluates the specified formula with respect to the relation-tuple mappings
      * given by this.instance and using this.options.
@@ -115,6 +151,11 @@ public final class Evaluator {
     public boolean evaluate(Formula formula) {
         if (formula == null)
             throw new NullPointerException("formula");
+        if (engine != null) {
+            final Boolean ret = engine.evaluate(formula);
+            if (ret != null)
+                return ret;
+        }
         return Translator.evaluate(formula, instance, options).booleanValue();
     }
 
@@ -133,6 +174,13 @@ public final class Evaluator {
     public TupleSet evaluate(Expression expression) {
         if (expression == null)
             throw new NullPointerException("expression");
+        if (engine != null) {
+            final TupleSet ret = engine.evaluate(expression);
+            if (ret != null) {
+                this.wasOverflow = false;
+                return ret;
+            }
+        }
         final BooleanMatrix sol = Translator.evaluate(expression, instance, options);
         this.wasOverflow = sol.defCond().getAccumOverflow() == BooleanConstant.TRUE;
         return instance.universe().factory().setOf(expression.arity(), sol.denseIndices());
@@ -152,6 +200,13 @@ public final class Evaluator {
     public int evaluate(IntExpression intExpr) {
         if (intExpr == null)
             throw new NullPointerException("intexpression");
+        if (engine != null) {
+            final Integer ret = engine.evaluate(intExpr);
+            if (ret != null) {
+                this.wasOverflow = false;
+                return ret;
+            }
+        }
         final Int sol = Translator.evaluate(intExpr, instance, options);
         this.wasOverflow = sol.defCond().getAccumOverflow() == BooleanConstant.TRUE;
         return sol.value();
@@ -21,9 +21,13 @@
  */
 package kodkod.engine;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import kodkod.ast.Formula;
+import kodkod.ast.Relation;
 import kodkod.engine.config.Options;
 import kodkod.engine.fol2sat.HigherOrderDeclException;
 import kodkod.engine.fol2sat.SymmetryDetector;
@@ -35,6 +39,10 @@ import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Universe;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+import kodkod.util.ints.IntVector;
 
 /**
  * A computational engine for solving a sequence of related relational
@@ -99,10 +107,19 @@ import kodkod.instance.Universe;
  * {@linkplain SATFactory#incremental() incremental} SAT solver. Note that these
  * restrictions prevent unsat core extraction.
  * </p>
+ * <p>
+ * Given a solver with an {@linkplain SATFactory#assumptions() assumption-based}
+ * SAT solver, many formulas can be checked against one satisfiable state, e.g.
+ * the assertions of a model against its facts, by {@linkplain #push(Formula)
+ * pushing} them, {@linkplain #check() checking} them, and {@linkplain #pop()
+ * popping} them again. The pushed formulas are translated once each, and they
+ * are enforced through assumptions rather than added to the solver's state.
+ * </p>
  *
  * @specfield options: {@link Options}
  * @specfield bounds: lone {@link Bounds}
  * @specfield formulas: set {@link Formula}
+ * @specfield pushed: seq {@link Formula}
  * @invariant formulas.*components & Relation in bounds.relations
  * @invariant some formulas iff some bounds
  * @invariant options.solver.incremental() && options.logTranslation = 0
@@ -115,9 +132,15 @@ import kodkod.instance.Universe;
  */
 public final class IncrementalSolver implements KodkodSolver {
 
+    /** Marks the pushed formulas that are false with respect to the solver's state. */
+    private static final int[]      UNSAT = new int[0];
+
     private final Options           options;
     private Translation.Incremental translation;
     private Boolean                 outcome;
+    private final List<Formula>     pushed;
+    private final List<int[]>       pushedLiterals;
+    private List<Formula>           failed;
 
     /**
      * Initializes the solver with the given options.
@@ -128,6 +151,8 @@ public final class IncrementalSolver implements KodkodSolver {
     private IncrementalSolver(Options options) {
         this.options = options;
         this.outcome = null;
+        this.pushed = new ArrayList<Formula>();
+        this.pushedLiterals = new ArrayList<int[]>();
     }
 
     /**
@@ -232,6 +257,304 @@ public final class IncrementalSolver implements KodkodSolver {
         return solution;
     }
 
+    /**
+     * Adds the specified formula and bounds to the solver's state, as
+     * {@link #solve(Formula, Bounds)} does, and returns a solution to the updated
+     * state that also satisfies the given assumption and lies within the given
+     * assumed bounds. The assumption and the assumed bounds are not added to the
+     * solver's state: they constrain only the returned solution, so this solver
+     * remains usable if the returned solution is unsatisfiable only because of
+     * them. Because the solver's state is translated only once, the underlying
+     * SAT solver keeps the clauses it has learned across calls that differ only in
+     * their assumptions. This solver should not be used again if a call to this
+     * method results in an exception.
+     * <p>
+     * The assumed bounds may only narrow those of the solver's state: they must
+     * share its universe, must not specify any integer bounds, must not bind any
+     * relation that is not bound by this.bounds', and must induce a coarser set of
+     * equivalence classes on the universe than this.bounds'. Since symmetry
+     * breaking predicates are generated for this.bounds' alone, clients that
+     * assume asymmetric bounds should bind this.bounds' so that they induce no
+     * symmetries, or disable symmetry breaking.
+     * </p>
+     *
+     * @requires this.{@link #usable() usable}()
+     * @requires this.options.solver.assumptions()
+     * @requires the preconditions of {@link #solve(Formula, Bounds)} on f and b
+     * @requires assumption.*components & Relation in this.bounds'.relations
+     * @requires assumed.universe = this.bounds'.universe && no assumed.intBound &&
+     *           assumed.relations in this.bounds'.relations
+     * @requires all s: {@link SymmetryDetector#partition(Bounds)
+     *           partition}(this.bounds') | some p:
+     *           {@link SymmetryDetector#partition(Bounds) partition}(assumed) |
+     *           s.elements in p.elements
+     * @ensures this.formulas' = this.formulas + f
+     * @ensures the bounds of this solver are updated with b as in
+     *          {@link #solve(Formula, Bounds)}
+     * @return some sol: Solution | sol.instance() = null =>
+     *         UNSAT(Formula.and(this.formulas') && assumption, this.bounds' &
+     *         assumed, this.options) else sol.instance() in
+     *         MODELS(Formula.and(this.formulas') && assumption, this.bounds' &
+     *         assumed, this.options)
+     * @throws IllegalStateException a prior call returned an UNSAT solution that
+     *             was not due to assumptions, or resulted in an exception
+     * @throws NullPointerException any of the arguments are null
+     * @throws UnboundLeafException a formula refers to an undeclared variable or a
+     *             relation not mapped by this.bounds'
+     * @throws HigherOrderDeclException a formula contains a higher order
+     *             declaration
+     * @throws IllegalArgumentException any of the remaining preconditions on the
+     *             arguments are violated
+     * @throws AbortedException this solving task has been aborted
+     */
+    public Solution solve(Formula f, Bounds b, Formula assumption, Bounds assumed) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+        if (!options.solver().assumptions())
+            throw new IllegalArgumentException("A solver that supports assumptions is required: " + options);
+
+        if (outcome == Boolean.FALSE)
+            throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) produced an UNSAT solution.");
+
+        if (outcome != null && translation == null)
+            throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) resulted in an exception.");
+
+        final Solution solution;
+        try {
+            final long startTransl = System.currentTimeMillis();
+            translation = translation == null ? Translator.translateIncremental(f, b, options) : Translator.translateIncremental(f, b, translation);
+
+            if (translation.trivial()) {
+                if (!translation.cnf().solve()) {
+                    final Statistics stats = new Statistics(translation, System.currentTimeMillis() - startTransl, 0);
+                    outcome = Boolean.FALSE;
+                    free();
+                    return Solution.triviallyUnsatisfiable(stats, null);
+                }
+                solution = solveTrivial(assumption, assumed, startTransl);
+            } else {
+                final int[] assumptions = Translator.translateAssumptions(assumption, assumed, translation);
+                final long endTransl = System.currentTimeMillis();
+                final boolean sat = assumptions != null && solve(translation, assumptions);
+                final Statistics stats = new Statistics(translation, endTransl - startTransl, System.currentTimeMillis() - endTransl);
+                solution = sat ? Solution.satisfiable(stats, translation.interpret()) : Solution.unsatisfiable(stats, null);
+            }
+        } catch (SATAbortedException sae) {
+            free();
+            throw new AbortedException(sae);
+        } catch (RuntimeException e) {
+            free();
+            throw e;
+        }
+
+        outcome = Boolean.TRUE;
+        return solution;
+    }
+
+    /**
+     * Solves the given assumption with respect to this.bounds narrowed by the given
+     * assumed bounds, when the translation of this.formulas is trivially true. The
+     * formulas are then true with respect to this.bounds, and hence with respect
+     * to any narrowing of them, so it suffices to solve the assumption alone. The
+     * state of this solver does not change.
+     *
+     * @requires this.translation.trivial() && this.translation.cnf.solve()
+     * @return some sol: Solution | sol.instance() = null => UNSAT(assumption,
+     *         this.bounds & assumed, this.options) else sol.instance() in
+     *         MODELS(assumption, this.bounds & assumed, this.options)
+     */
+    private Solution solveTrivial(Formula assumption, Bounds assumed, long startTransl) {
+        final Bounds narrowed = translation.bounds().clone();
+        if (!narrowed.relations().containsAll(assumed.relations()))
+            throw new IllegalArgumentException("Expected assumed relations to be a subset of " + narrowed.relations() + ", given " + assumed.relations());
+        for (Relation r : assumed.relations()) {
+            narrowed.bound(r, assumed.lowerBound(r), assumed.upperBound(r));
+        }
+        final Translation.Incremental local = Translator.translateIncremental(assumption, narrowed, options);
+        try {
+            final long endTransl = System.currentTimeMillis();
+            final boolean sat = local.trivial() ? local.cnf().solve() : solve(local, null);
+            final Statistics stats = new Statistics(local, endTransl - startTransl, System.currentTimeMillis() - endTransl);
+            return sat ? Solution.satisfiable(stats, local.interpret()) : Solution.unsatisfiable(stats, null);
+        } finally {
+            local.cnf().free();
+        }
+    }
+
+    /**
+     * Pushes the given formula onto the stack of formulas that are checked against
+     * the solver's state by {@link #check()}. The formula is not added to the
+     * solver's state: it constrains only the solutions returned by
+     * {@link #check()} until it is {@linkplain #pop() popped}. Its translation is
+     * kept, guarded by its own literals, so checking many formulas against the
+     * same state translates the state only once, and the underlying SAT solver
+     * keeps the clauses it has learned across checks.
+     *
+     * @requires this.options.solver.assumptions()
+     * @requires formula.*components & Relation in this.bounds.relations
+     * @ensures this.pushed' = this.pushed.add(formula)
+     * @throws NullPointerException formula = null
+     * @throws IllegalArgumentException !this.options.solver.assumptions()
+     */
+    public void push(Formula formula) {
+        if (!options.solver().assumptions())
+            throw new IllegalArgumentException("A solver that supports assumptions is required: " + options);
+        if (formula == null)
+            throw new NullPointerException("formula");
+        pushed.add(formula);
+        pushedLiterals.add(null);
+    }
+
+    /**
+     * Pops the formula that was most recently {@linkplain #push(Formula) pushed}
+     * from the stack of formulas that are checked against the solver's state, and
+     * returns it.
+     *
+     * @requires some this.pushed
+     * @ensures this.pushed' = this.pushed.delete(#this.pushed - 1)
+     * @return this.pushed.last()
+     * @throws IllegalStateException no this.pushed
+     */
+    public Formula pop() {
+        if (pushed.isEmpty())
+            throw new IllegalStateException("No formula to pop.");
+        pushedLiterals.remove(pushedLiterals.size() - 1);
+        return pushed.remove(pushed.size() - 1);
+    }
+
+    /**
+     * Returns a solution to the solver's state that also satisfies all
+     * {@linkplain #push(Formula) pushed} formulas. If there is no such solution,
+     * {@link #failed()} returns the pushed formulas that conflict with the
+     * solver's state. This solver remains usable unless the returned solution is
+     * unsatisfiable regardless of the pushed formulas. It should not be used again
+     * if a call to this method results in an exception.
+     *
+     * @requires this.{@link #usable() usable}() && some this.bounds
+     * @requires this.options.solver.assumptions()
+     * @return some sol: Solution | sol.instance() = null =>
+     *         UNSAT(Formula.and(this.formulas + this.pushed), this.bounds,
+     *         this.options) else sol.instance() in
+     *         MODELS(Formula.and(this.formulas + this.pushed), this.bounds,
+     *         this.options)
+     * @throws IllegalStateException no prior call to solve(...) returned a
+     *             satisfiable solution, or a prior call resulted in an exception
+     * @throws UnboundLeafException a pushed formula refers to an undeclared
+     *             variable or a relation not mapped by this.bounds
+     * @throws HigherOrderDeclException a pushed formula contains a higher order
+     *             declaration
+     * @throws AbortedException this solving task has been aborted
+     */
+    public Solution check() throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+        if (outcome == null || translation == null)
+            throw new IllegalStateException("Cannot check pushed formulas without a satisfiable solver state.");
+        failed = new ArrayList<Formula>(pushed);
+
+        final Solution solution;
+        try {
+            final long startTransl = System.currentTimeMillis();
+            if (translation.trivial()) {
+                solution = solveTrivial(Formula.and(pushed), new Bounds(translation.bounds().universe()), startTransl);
+            } else {
+                final Bounds none = new Bounds(translation.bounds().universe());
+                final IntVector lits = new ArrayIntVector();
+                boolean trivial = false;
+                for (int i = 0; i < pushed.size(); i++) {
+                    int[] frame = pushedLiterals.get(i);
+                    if (frame == null) {
+                        frame = Translator.translateAssumptions(pushed.get(i), none, translation);
+                        pushedLiterals.set(i, frame == null ? UNSAT : frame);
+                    } else if (frame == UNSAT) {
+                        frame = null;
+                    }
+                    if (frame == null) {
+                        // the formula is false with respect to the solver's state
+                        failed = Collections.singletonList(pushed.get(i));
+                        trivial = true;
+                        break;
+                    }
+                    for (int lit : frame)
+                        lits.add(lit);
+                }
+                final long endTransl = System.currentTimeMillis();
+                final boolean sat = !trivial && solve(translation, lits.toArray());
+                final Statistics stats = new Statistics(translation, endTransl - startTransl, System.currentTimeMillis() - endTransl);
+                if (sat) {
+                    solution = Solution.satisfiable(stats, translation.interpret());
+                } else if (trivial) {
+                    solution = Solution.triviallyUnsatisfiable(stats, null);
+                } else {
+                    failed = failed(translation.cnf().failedAssumptions());
+                    solution = Solution.unsatisfiable(stats, null);
+                }
+            }
+        } catch (SATAbortedException sae) {
+            free();
+            throw new AbortedException(sae);
+        } catch (RuntimeException e) {
+            free();
+            throw e;
+        }
+
+        if (solution.sat()) {
+            failed = Collections.emptyList();
+        } else if (failed.isEmpty()) {
+            outcome = Boolean.FALSE;
+            free();
+        }
+        return solution;
+    }
+
+    /**
+     * Returns the pushed formulas whose literals include some of the given failed
+     * assumptions.
+     */
+    private List<Formula> failed(int[] failedLits) {
+        final IntSet set = new IntTreeSet();
+        for (int lit : failedLits)
+            set.add(StrictMath.abs(lit));
+        final List<Formula> ret = new ArrayList<Formula>();
+        for (int i = 0; i < pushed.size(); i++) {
+            final int[] frame = pushedLiterals.get(i);
+            if (frame == null)
+                continue;
+            for (int lit : frame) {
+                if (set.contains(StrictMath.abs(lit))) {
+                    ret.add(pushed.get(i));
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the pushed formulas that made the last call to {@link #check()}
+     * unsatisfiable, together with the solver's state. The returned formulas need
+     * not be minimal. The result is empty if the last check was satisfiable, or if
+     * the solver's state is unsatisfiable on its own.
+     *
+     * @requires {@link #check()} has been called
+     * @return some fs: set this.pushed | UNSAT(Formula.and(this.formulas + fs),
+     *         this.bounds, this.options), if the last check was unsatisfiable
+     * @throws IllegalStateException {@link #check()} has not been called
+     */
+    public List<Formula> failed() {
+        if (failed == null)
+            throw new IllegalStateException("No formulas have been checked.");
+        return Collections.unmodifiableList(failed);
+    }
+
+    /**
+     * Reports the size of the given translation's CNF and solves it under the
+     * given assumptions, or without assumptions if they are null.
+     *
+     * @return transl.cnf.solve(assumptions)
+     */
+    private static boolean solve(Translation.Incremental transl, int[] assumptions) {
+        final SATSolver cnf = transl.cnf();
+        transl.options().reporter().solvingCNF(transl.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+        return assumptions == null ? cnf.solve() : cnf.solve(assumptions);
+    }
+
     @Override
     public Iterator<Solution> solveAll(Formula formula, Bounds bounds) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
         throw new RuntimeException("not implemented");
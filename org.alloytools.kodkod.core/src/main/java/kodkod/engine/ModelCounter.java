@@ -0,0 +1,245 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.engine.satlab.SearchStatistics;
+import kodkod.instance.Bounds;
+
+/**
+ * Counts the distinct projections of the models of a problem onto a set of
+ * relations, without constructing a {@link Solution} or an instance for each
+ * model.
+ * <p>
+ * The counter enumerates models with blocking clauses that mention only the
+ * primary variables of the projection relations, and only those of them that
+ * occur in the clauses produced by the translation. A projection variable that
+ * occurs in no clause can take either value in every model, so rather than
+ * enumerating both values, the counter leaves it out of the blocking clauses
+ * and multiplies the count of each model by two.
+ * </p>
+ */
+final class ModelCounter {
+
+    private ModelCounter() {}
+
+    /**
+     * Returns the number of distinct projections of the models of the given
+     * problem onto the given relations; that is, the number of solutions that
+     * {@link Solver#solveAll(Formula, Bounds, Set)} would return for the same
+     * arguments, not counting the final unsatisfiable one.
+     *
+     * @requires options.solver.incremental()
+     * @return #{ s: MODELS(formula, bounds, options) | s.tuples[relations] }
+     * @throws ArithmeticException the count does not fit into a long
+     * @throws AbortedException the counting task was aborted, by
+     *             {@code options.budget} or by the sat solver
+     */
+    static long count(Formula formula, Bounds bounds, Options options, Set<Relation> relations) {
+        final Metrics metrics = options.metrics();
+        if (metrics != null)
+            metrics.start(options.reporter());
+        final Budget budget = options.budget();
+        if (budget != null)
+            budget.start();
+
+        SATSolver cnf = null;
+        try {
+            final Options recording = options.clone();
+            final Occurrences occurrences = new Occurrences(options.solver());
+            recording.setSolver(occurrences);
+            final Translation.Whole translation = Translator.translate(formula, bounds, recording);
+            cnf = translation.cnf();
+            if (translation.trivial()) {
+                cnf.free();
+                cnf = null;
+                long count = 0;
+                for (Iterator<Solution> sols = new SolutionIterator(formula, bounds, options, relations); sols.hasNext();) {
+                    if (sols.next().sat())
+                        count++;
+                }
+                return count;
+            }
+
+            final int[] vars = SolutionIterator.blockingVariables(translation, relations);
+            final BitSet occurring = occurrences.last.occurring;
+            int relevant = 0;
+            for (int var : vars) {
+                if (occurring.get(var))
+                    vars[relevant++] = var;
+            }
+            final int free = vars.length - relevant;
+            if (free > 62)
+                throw new ArithmeticException("too many models: 2^" + free);
+            final long weight = 1L << free;
+
+            options.reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+            if (metrics != null) {
+                metrics.observe(cnf);
+                metrics.stage(Metrics.Stage.SOLVING);
+            }
+            if (budget != null)
+                budget.observe(cnf);
+            final int[] notModel = new int[relevant];
+            long count = 0;
+            while (cnf.solve()) {
+                count = Math.addExact(count, weight);
+                if (relevant == 0)
+                    break;
+                for (int i = 0; i < relevant; i++) {
+                    final int var = vars[i];
+                    notModel[i] = cnf.valueOf(var) ? -var : var;
+                }
+                cnf.addClause(notModel);
+            }
+            if (metrics != null)
+                metrics.stop(); // before the solver is freed
+            return count;
+        } catch (SATAbortedException sae) {
+            throw budget == null ? new AbortedException(sae) : budget.aborted(sae);
+        } finally {
+            if (metrics != null)
+                metrics.stop();
+            if (budget != null)
+                budget.stop();
+            if (cnf != null)
+                cnf.free();
+        }
+    }
+
+    /**
+     * A factory for solvers that record which variables occur in the clauses
+     * added to them.
+     *
+     * @specfield last: lone Recorder // the last solver produced by this factory
+     */
+    private static final class Occurrences extends SATFactory {
+
+        private final SATFactory factory;
+        Recorder                 last;
+
+        Occurrences(SATFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public SATSolver instance() {
+            return last = new Recorder(factory.instance());
+        }
+
+        @Override
+        public boolean incremental() {
+            return factory.incremental();
+        }
+
+        @Override
+        public String toString() {
+            return factory.toString();
+        }
+    }
+
+    /**
+     * A solver that passes all calls to another solver, recording the variables
+     * that occur in the clauses added to it.
+     *
+     * @specfield occurring: set int
+     */
+    private static final class Recorder implements SATSolver {
+
+        private final SATSolver solver;
+        final BitSet            occurring = new BitSet();
+
+        Recorder(SATSolver solver) {
+            this.solver = solver;
+        }
+
+        @Override
+        public int numberOfVariables() {
+            return solver.numberOfVariables();
+        }
+
+        @Override
+        public int numberOfClauses() {
+            return solver.numberOfClauses();
+        }
+
+        @Override
+        public void addVariables(int numVars) {
+            solver.addVariables(numVars);
+        }
+
+        @Override
+        public boolean addClause(int[] lits) {
+            for (int lit : lits) {
+                occurring.set(StrictMath.abs(lit));
+            }
+            return solver.addClause(lits);
+        }
+
+        @Override
+        public int addClauses(IntBuffer clauses) {
+            for (int i = clauses.position(), limit = clauses.limit(); i < limit; i++) {
+                occurring.set(StrictMath.abs(clauses.get(i)));
+            }
+            return solver.addClauses(clauses);
+        }
+
+        @Override
+        public boolean solve() throws SATAbortedException {
+            return solver.solve();
+        }
+
+        @Override
+        public boolean valueOf(int variable) {
+            return solver.valueOf(variable);
+        }
+
+        @Override
+        public boolean abort() {
+            return solver.abort();
+        }
+
+        @Override
+        public SearchStatistics statistics() {
+            return solver.statistics();
+        }
+
+        @Override
+        public void free() {
+            solver.free();
+        }
+    }
+}
@@ -0,0 +1,897 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.Comprehension;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.Expression;
+import kodkod.ast.FixFormula;
+import kodkod.ast.Formula;
+import kodkod.ast.IfExpression;
+import kodkod.ast.IfIntExpression;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntExpression;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.NotFormula;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.SumExpression;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.operator.IntOperator;
+import kodkod.ast.operator.Multiplicity;
+import kodkod.ast.visitor.ReturnVisitor;
+import kodkod.engine.config.Options;
+import kodkod.instance.Instance;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+import kodkod.util.ints.SparseSequence;
+
+/**
+ * Evaluates formulas and expressions directly on the index sets of the tuples
+ * in a given instance, rather than by translating them into boolean matrices of
+ * constants. The value of each node that does not depend on a quantified
+ * variable is cached, so evaluating the same nodes again, or other nodes that
+ * share them, does not recompute them. The cache is discarded when the
+ * instance is changed.
+ * <p>
+ * Nodes that are not evaluated natively (higher-order declarations,
+ * projections, fixpoints, unbound leaves, division, remainder and shifts, as
+ * well as all integer expressions when overflow is prevented) make the
+ * evaluate methods return null, so that the caller can fall back to the
+ * translation-based evaluation.
+ * </p>
+ *
+ * @specfield instance: Instance
+ * @specfield options: Options
+ */
+final class RelationalEvaluator implements ReturnVisitor<RelationalEvaluator.Value,Boolean,Object,Integer> {
+
+    /** The number of cached values past which the cache is discarded. */
+    private static final int                        MAX_CACHED = 1 << 16;
+
+    private final Instance                          instance;
+    private final Options                           options;
+    private final int                               usize;
+
+    /** The cached values of closed nodes. */
+    private final Map<Node,Object>                  cache      = new IdentityHashMap<Node,Object>();
+    /** The constraints of the relation predicates evaluated so far. */
+    private final Map<RelationPredicate,Formula>    predicates = new IdentityHashMap<RelationPredicate,Formula>();
+
+    /** The relation tuples and int tuples of this.instance when cached. */
+    private final Map<Relation,TupleSet>            relations  = new IdentityHashMap<Relation,TupleSet>();
+    private int[]                                   intIndices = new int[0];
+    private TupleSet[]                              intTuples  = new TupleSet[0];
+    /** The atoms of this.instance.ints, and the integer of each such atom. */
+    private IntSet                                  intAtoms;
+    private int[]                                   atomInts;
+
+    /** The variables in scope, innermost last, and their values. */
+    private Variable[]                              vars       = new Variable[8];
+    private Value[]                                 vals       = new Value[8];
+    private int                                     depth      = 0;
+    /** The least depth of the variables read by the node being evaluated. */
+    private int                                     reads      = Integer.MAX_VALUE;
+
+    /**
+     * Constructs a new evaluator for the given instance and options.
+     *
+     * @ensures this.instance' = instance && this.options' = options
+     */
+    RelationalEvaluator(Instance instance, Options options) {
+        this.instance = instance;
+        this.options = options;
+        this.usize = instance.universe().size();
+    }
+
+    /**
+     * Returns the value of the given formula in this.instance, or null if it
+     * cannot be evaluated natively.
+     */
+    Boolean evaluate(Formula formula) {
+        start();
+        try {
+            return formula(formula);
+        } catch (Unsupported e) {
+            return null;
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Returns the value of the given expression in this.instance, or null if it
+     * cannot be evaluated natively.
+     */
+    TupleSet evaluate(Expression expression) {
+        start();
+        try {
+            final Value ret = expr(expression);
+            return instance.universe().factory().setOf(ret.arity, ret.indices);
+        } catch (Unsupported e) {
+            return null;
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Returns the value of the given int expression in this.instance, or null if
+     * it cannot be evaluated natively.
+     */
+    Integer evaluate(IntExpression intExpr) {
+        start();
+        try {
+            return integer(intExpr);
+        } catch (Unsupported e) {
+            return null;
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Discards the cache if this.instance has changed since it was filled, or if
+     * it has grown too large.
+     */
+    private void start() {
+        if (cache.size() > MAX_CACHED) {
+            cache.clear();
+            predicates.clear();
+        }
+        if (intAtoms != null && current())
+            return;
+        cache.clear();
+        relations.clear();
+        relations.putAll(instance.relationTuples());
+        final SparseSequence<TupleSet> ints = instance.intTuples();
+        intIndices = new int[ints.size()];
+        intTuples = new TupleSet[ints.size()];
+        intAtoms = Ints.bestSet(usize);
+        atomInts = new int[usize];
+        int i = 0;
+        for (IndexedEntry<TupleSet> e : ints) {
+            intIndices[i] = e.index();
+            intTuples[i++] = e.value();
+            final int atom = e.value().indexView().min();
+            intAtoms.add(atom);
+            atomInts[atom] = e.index();
+        }
+    }
+
+    /**
+     * Returns true if the relation and int tuples of this.instance are those
+     * recorded by the last call to start().
+     */
+    private boolean current() {
+        final Map<Relation,TupleSet> now = instance.relationTuples();
+        if (now.size() != relations.size())
+            return false;
+        for (Map.Entry<Relation,TupleSet> e : now.entrySet()) {
+            if (relations.get(e.getKey()) != e.getValue())
+                return false;
+        }
+        final SparseSequence<TupleSet> ints = instance.intTuples();
+        if (ints.size() != intIndices.length)
+            return false;
+        int i = 0;
+        for (IndexedEntry<TupleSet> e : ints) {
+            if (e.index() != intIndices[i] || e.value() != intTuples[i++])
+                return false;
+        }
+        return true;
+    }
+
+    /** Clears the variable bindings. */
+    private void end() {
+        for (int i = 0; i < depth; i++) {
+            vars[i] = null;
+            vals[i] = null;
+        }
+        depth = 0;
+        reads = Integer.MAX_VALUE;
+    }
+
+    // Evaluation with caching ----------------------------------------------
+
+    /**
+     * Returns the cached value of the given node, if any, or null.
+     */
+    private Object lookup(Node node) {
+        return cache.get(node);
+    }
+
+    /**
+     * Caches the given value of the given node, if it does not depend on any
+     * variable bound outside of it, and returns it.
+     *
+     * @requires outer = the value of this.reads before the node was evaluated
+     */
+    private <T> T cache(Node node, T value, int entry, int outer) {
+        if (reads >= entry)
+            cache.put(node, value);
+        reads = Math.min(reads, outer);
+        return value;
+    }
+
+    private Value expr(Expression expr) {
+        final Object cached = lookup(expr);
+        if (cached != null)
+            return (Value) cached;
+        final int outer = reads, entry = depth;
+        reads = Integer.MAX_VALUE;
+        return cache(expr, expr.accept(this), entry, outer);
+    }
+
+    private boolean formula(Formula formula) {
+        final Object cached = lookup(formula);
+        if (cached != null)
+            return (Boolean) cached;
+        final int outer = reads, entry = depth;
+        reads = Integer.MAX_VALUE;
+        return cache(formula, formula.accept(this), entry, outer);
+    }
+
+    private int integer(IntExpression intExpr) {
+        if (options.noOverflow())
+            throw Unsupported.INSTANCE;
+        final Object cached = lookup(intExpr);
+        if (cached != null)
+            return (Integer) cached;
+        final int outer = reads, entry = depth;
+        reads = Integer.MAX_VALUE;
+        return cache(intExpr, intExpr.accept(this), entry, outer);
+    }
+
+    /**
+     * Binds the given variable to the given value.
+     */
+    private void bind(Variable var, Value val) {
+        if (depth == vars.length) {
+            vars = Arrays.copyOf(vars, depth * 2);
+            vals = Arrays.copyOf(vals, depth * 2);
+        }
+        vars[depth] = var;
+        vals[depth++] = val;
+    }
+
+    /**
+     * Removes the innermost binding.
+     */
+    private void unbind() {
+        vars[--depth] = null;
+        vals[depth] = null;
+    }
+
+    /**
+     * Returns the value of the given declaration's expression.
+     */
+    private Value decl(Decl decl) {
+        if (decl.multiplicity() != Multiplicity.ONE)
+            throw Unsupported.INSTANCE;
+        return expr(decl.expression());
+    }
+
+    // Index set operations -------------------------------------------------
+
+    /** Returns |this.instance.universe|^arity. */
+    private int capacity(int arity) {
+        long cap = 1;
+        for (int i = 0; i < arity; i++) {
+            cap *= usize;
+            if (cap > Integer.MAX_VALUE)
+                throw Unsupported.INSTANCE;
+        }
+        return (int) cap;
+    }
+
+    /** Returns an empty set for tuples of the given arity. */
+    private IntSet empty(int arity) {
+        return Ints.bestSet(capacity(arity));
+    }
+
+    /** Returns a mutable copy of the given set. */
+    private IntSet copy(Value v) {
+        final IntSet ret = empty(v.arity);
+        ret.addAll(v.indices);
+        return ret;
+    }
+
+    private Value union(Value left, Value right) {
+        final boolean small = left.indices.size() < right.indices.size();
+        final IntSet ret = copy(small ? right : left);
+        ret.addAll(small ? left.indices : right.indices);
+        return new Value(left.arity, ret);
+    }
+
+    private Value intersection(Value left, Value right) {
+        final boolean small = left.indices.size() < right.indices.size();
+        final IntSet ret = copy(small ? left : right);
+        ret.retainAll(small ? right.indices : left.indices);
+        return new Value(left.arity, ret);
+    }
+
+    private Value difference(Value left, Value right) {
+        final IntSet ret = copy(left);
+        ret.removeAll(right.indices);
+        return new Value(left.arity, ret);
+    }
+
+    private Value override(Value left, Value right) {
+        if (right.indices.isEmpty())
+            return left;
+        final int m = capacity(left.arity - 1);
+        final IntSet domain = empty(1);
+        for (IntIterator itr = right.indices.iterator(); itr.hasNext();)
+            domain.add(itr.next() / m);
+        final IntSet ret = copy(right);
+        for (IntIterator itr = left.indices.iterator(); itr.hasNext();) {
+            final int i = itr.next();
+            if (!domain.contains(i / m))
+                ret.add(i);
+        }
+        return new Value(left.arity, ret);
+    }
+
+    private Value product(Value left, Value right) {
+        final int m = capacity(right.arity);
+        final IntSet ret = empty(left.arity + right.arity);
+        for (IntIterator l = left.indices.iterator(); l.hasNext();) {
+            final int base = l.next() * m;
+            for (IntIterator r = right.indices.iterator(); r.hasNext();)
+                ret.add(base + r.next());
+        }
+        return new Value(left.arity + right.arity, ret);
+    }
+
+    private Value join(Value left, Value right) {
+        final int arity = left.arity + right.arity - 2;
+        final int m = capacity(right.arity - 1);
+        final IntSet ret = empty(arity);
+        if (!right.indices.isEmpty()) {
+            for (IntIterator l = left.indices.iterator(); l.hasNext();) {
+                final int i = l.next();
+                final int base = (i % usize) * m, prefix = (i / usize) * m;
+                for (IntIterator r = right.indices.iterator(base, base + m - 1); r.hasNext();)
+                    ret.add(prefix + r.next() - base);
+            }
+        }
+        return new Value(arity, ret);
+    }
+
+    private Value transpose(Value v) {
+        final IntSet ret = empty(2);
+        for (IntIterator itr = v.indices.iterator(); itr.hasNext();) {
+            final int i = itr.next();
+            ret.add((i % usize) * usize + i / usize);
+        }
+        return new Value(2, ret);
+    }
+
+    private Value closure(Value v) {
+        Value ret = v;
+        for (int size = -1; size != ret.indices.size();) {
+            size = ret.indices.size();
+            ret = union(ret, join(ret, ret));
+        }
+        return ret;
+    }
+
+    private Value iden() {
+        final IntSet ret = empty(2);
+        for (int i = 0; i < usize; i++)
+            ret.add(i * usize + i);
+        return new Value(2, ret);
+    }
+
+    /** Returns the integer value of the given long, truncated to the bitwidth. */
+    private int wrap(long value) {
+        final int shift = 64 - options.bitwidth();
+        return (int) ((value << shift) >> shift);
+    }
+
+    // Leaves ---------------------------------------------------------------
+
+    @Override
+    public Object visit(Decls decls) {
+        throw Unsupported.INSTANCE;
+    }
+
+    @Override
+    public Object visit(Decl decl) {
+        throw Unsupported.INSTANCE;
+    }
+
+    @Override
+    public Value visit(Relation relation) {
+        final TupleSet ts = relations.get(relation);
+        if (ts == null)
+            throw Unsupported.INSTANCE;
+        return new Value(relation.arity(), ts.indexView());
+    }
+
+    @Override
+    public Value visit(Variable variable) {
+        for (int i = depth - 1; i >= 0; i--) {
+            if (vars[i] == variable) {
+                reads = Math.min(reads, i);
+                return vals[i];
+            }
+        }
+        throw Unsupported.INSTANCE;
+    }
+
+    @Override
+    public Value visit(ConstantExpression constExpr) {
+        if (constExpr == Expression.UNIV)
+            return new Value(1, Ints.rangeSet(Ints.range(0, usize - 1)));
+        if (constExpr == Expression.IDEN)
+            return iden();
+        if (constExpr == Expression.NONE)
+            return new Value(1, Ints.EMPTY_SET);
+        if (constExpr == Expression.INTS)
+            return new Value(1, intAtoms);
+        throw Unsupported.INSTANCE;
+    }
+
+    // Expressions ----------------------------------------------------------
+
+    @Override
+    public Value visit(UnaryExpression unaryExpr) {
+        final Value child = expr(unaryExpr.expression());
+        switch (unaryExpr.op()) {
+            case TRANSPOSE :
+                return transpose(child);
+            case CLOSURE :
+                return closure(child);
+            case REFLEXIVE_CLOSURE :
+                return union(closure(child), iden());
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Value visit(BinaryExpression binExpr) {
+        final Value left = expr(binExpr.left()), right = expr(binExpr.right());
+        switch (binExpr.op()) {
+            case UNION :
+                return union(left, right);
+            case INTERSECTION :
+                return intersection(left, right);
+            case DIFFERENCE :
+                return difference(left, right);
+            case OVERRIDE :
+                return override(left, right);
+            case PRODUCT :
+                return product(left, right);
+            case JOIN :
+                return join(left, right);
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Value visit(NaryExpression expr) {
+        Value ret = expr(expr.child(0));
+        for (int i = 1, size = expr.size(); i < size; i++) {
+            final Value child = expr(expr.child(i));
+            switch (expr.op()) {
+                case UNION :
+                    ret = union(ret, child);
+                    break;
+                case INTERSECTION :
+                    ret = intersection(ret, child);
+                    break;
+                case OVERRIDE :
+                    ret = override(ret, child);
+                    break;
+                case PRODUCT :
+                    ret = product(ret, child);
+                    break;
+                default :
+                    throw Unsupported.INSTANCE;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public Value visit(Comprehension comprehension) {
+        final IntSet ret = empty(comprehension.decls().size());
+        comprehension(comprehension.decls(), comprehension.formula(), 0, 0, ret);
+        return new Value(comprehension.decls().size(), ret);
+    }
+
+    /**
+     * Adds to ret the index of each tuple, extending the given partial index,
+     * whose atoms bound to decls[current..] satisfy the given formula.
+     */
+    private void comprehension(Decls decls, Formula formula, int current, int partial, IntSet ret) {
+        if (current == decls.size()) {
+            if (formula(formula))
+                ret.add(partial);
+            return;
+        }
+        final Decl decl = decls.get(current);
+        final Value domain = decl(decl);
+        if (domain.arity != 1)
+            throw Unsupported.INSTANCE;
+        for (IntIterator itr = domain.indices.iterator(); itr.hasNext();) {
+            final int i = itr.next();
+            bind(decl.variable(), new Value(1, Ints.singleton(i)));
+            comprehension(decls, formula, current + 1, partial * usize + i, ret);
+            unbind();
+        }
+    }
+
+    @Override
+    public Value visit(IfExpression ifExpr) {
+        return formula(ifExpr.condition()) ? expr(ifExpr.thenExpr()) : expr(ifExpr.elseExpr());
+    }
+
+    @Override
+    public Value visit(ProjectExpression project) {
+        throw Unsupported.INSTANCE;
+    }
+
+    @Override
+    public Value visit(IntToExprCast castExpr) {
+        final int value = integer(castExpr.intExpr());
+        final IntSet ret = empty(1);
+        final SparseSequence<TupleSet> ints = instance.intTuples();
+        switch (castExpr.op()) {
+            case INTCAST :
+                for (IntIterator itr = intAtoms.iterator(); itr.hasNext();) {
+                    final int atom = itr.next();
+                    if (wrap(atomInts[atom]) == value)
+                        ret.add(atom);
+                }
+                break;
+            case BITSETCAST :
+                final int msb = options.bitwidth() - 1;
+                for (int i = 0; i < msb; i++) {
+                    if ((value & (1 << i)) != 0 && ints.containsIndex(1 << i))
+                        ret.add(ints.get(1 << i).indexView().min());
+                }
+                if (value < 0 && ints.containsIndex(-1 << msb))
+                    ret.add(ints.get(-1 << msb).indexView().min());
+                break;
+            default :
+                throw Unsupported.INSTANCE;
+        }
+        return new Value(1, ret);
+    }
+
+    // Integer expressions --------------------------------------------------
+
+    @Override
+    public Integer visit(IntConstant intConst) {
+        return wrap(intConst.value());
+    }
+
+    @Override
+    public Integer visit(IfIntExpression intExpr) {
+        return formula(intExpr.condition()) ? integer(intExpr.thenExpr()) : integer(intExpr.elseExpr());
+    }
+
+    @Override
+    public Integer visit(ExprToIntCast intExpr) {
+        final Value child = expr(intExpr.expression());
+        switch (intExpr.op()) {
+            case CARDINALITY :
+                return wrap(child.indices.size());
+            case SUM :
+                long sum = 0;
+                for (IntIterator itr = child.indices.iterator(); itr.hasNext();) {
+                    final int atom = itr.next();
+                    if (intAtoms.contains(atom))
+                        sum += atomInts[atom];
+                }
+                return wrap(sum);
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    /**
+     * Returns the value of the given binary operator applied to the given
+     * integers, truncated to the bitwidth.
+     */
+    private int apply(IntOperator op, int left, int right) {
+        switch (op) {
+            case PLUS :
+                return wrap((long) left + right);
+            case MINUS :
+                return wrap((long) left - right);
+            case MULTIPLY :
+                return wrap((long) left * right);
+            case AND :
+                return left & right;
+            case OR :
+                return left | right;
+            case XOR :
+                return left ^ right;
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Integer visit(NaryIntExpression intExpr) {
+        int ret = integer(intExpr.child(0));
+        for (int i = 1, size = intExpr.size(); i < size; i++)
+            ret = apply(intExpr.op(), ret, integer(intExpr.child(i)));
+        return ret;
+    }
+
+    @Override
+    public Integer visit(BinaryIntExpression intExpr) {
+        return apply(intExpr.op(), integer(intExpr.left()), integer(intExpr.right()));
+    }
+
+    @Override
+    public Integer visit(UnaryIntExpression intExpr) {
+        final int child = integer(intExpr.intExpr());
+        switch (intExpr.op()) {
+            case NEG :
+                return wrap(-(long) child);
+            case NOT :
+                return ~child;
+            case ABS :
+                return wrap(Math.abs((long) child));
+            case SGN :
+                return Integer.signum(child);
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Integer visit(SumExpression intExpr) {
+        return wrap(sum(intExpr.decls(), intExpr.intExpr(), 0));
+    }
+
+    /**
+     * Returns the sum of the values of the given int expression for all bindings
+     * of decls[current..].
+     */
+    private long sum(Decls decls, IntExpression intExpr, int current) {
+        if (current == decls.size())
+            return integer(intExpr);
+        final Decl decl = decls.get(current);
+        final Value domain = decl(decl);
+        long ret = 0;
+        for (IntIterator itr = domain.indices.iterator(); itr.hasNext();) {
+            bind(decl.variable(), new Value(domain.arity, Ints.singleton(itr.next())));
+            ret += sum(decls, intExpr, current + 1);
+            unbind();
+        }
+        return ret;
+    }
+
+    // Formulas -------------------------------------------------------------
+
+    @Override
+    public Boolean visit(IntComparisonFormula intComp) {
+        final int left = integer(intComp.left()), right = integer(intComp.right());
+        switch (intComp.op()) {
+            case EQ :
+                return left == right;
+            case NEQ :
+                return left != right;
+            case LT :
+                return left < right;
+            case LTE :
+                return left <= right;
+            case GT :
+                return left > right;
+            case GTE :
+                return left >= right;
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Boolean visit(QuantifiedFormula quantFormula) {
+        switch (quantFormula.quantifier()) {
+            case ALL :
+                return quantified(quantFormula, 0, true);
+            case SOME :
+                return quantified(quantFormula, 0, false);
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    /**
+     * Returns true if the domain and body of the given formula hold for all
+     * bindings of its decls[current..], if universal; or for some binding, if
+     * not.
+     */
+    private boolean quantified(QuantifiedFormula quantFormula, int current, boolean universal) {
+        final Decls decls = quantFormula.decls();
+        if (current == decls.size()) {
+            final boolean domain = formula(quantFormula.domain());
+            if (universal)
+                return !domain || formula(quantFormula.body());
+            return domain && formula(quantFormula.body());
+        }
+        final Decl decl = decls.get(current);
+        final Value domain = decl(decl);
+        for (IntIterator itr = domain.indices.iterator(); itr.hasNext();) {
+            bind(decl.variable(), new Value(domain.arity, Ints.singleton(itr.next())));
+            final boolean holds = quantified(quantFormula, current + 1, universal);
+            unbind();
+            if (holds != universal)
+                return !universal;
+        }
+        return universal;
+    }
+
+    @Override
+    public Boolean visit(NaryFormula formula) {
+        switch (formula.op()) {
+            case AND :
+                for (Formula child : formula) {
+                    if (!formula(child))
+                        return false;
+                }
+                return true;
+            case OR :
+                for (Formula child : formula) {
+                    if (formula(child))
+                        return true;
+                }
+                return false;
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Boolean visit(BinaryFormula binFormula) {
+        final boolean left = formula(binFormula.left());
+        switch (binFormula.op()) {
+            case AND :
+                return left && formula(binFormula.right());
+            case OR :
+                return left || formula(binFormula.right());
+            case IMPLIES :
+                return !left || formula(binFormula.right());
+            case IFF :
+                return left == formula(binFormula.right());
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Boolean visit(NotFormula not) {
+        return !formula(not.formula());
+    }
+
+    @Override
+    public Boolean visit(ConstantFormula constant) {
+        return constant.booleanValue();
+    }
+
+    @Override
+    public Boolean visit(ComparisonFormula compFormula) {
+        final IntSet left = expr(compFormula.left()).indices, right = expr(compFormula.right()).indices;
+        switch (compFormula.op()) {
+            case SUBSET :
+                return right.containsAll(left);
+            case EQUALS :
+                return left.size() == right.size() && right.containsAll(left);
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Boolean visit(MultiplicityFormula multFormula) {
+        final int size = expr(multFormula.expression()).indices.size();
+        switch (multFormula.multiplicity()) {
+            case NO :
+                return size == 0;
+            case LONE :
+                return size <= 1;
+            case ONE :
+                return size == 1;
+            case SOME :
+                return size > 0;
+            default :
+                throw Unsupported.INSTANCE;
+        }
+    }
+
+    @Override
+    public Boolean visit(RelationPredicate predicate) {
+        Formula constraints = predicates.get(predicate);
+        if (constraints == null) {
+            constraints = predicate.toConstraints();
+            predicates.put(predicate, constraints);
+        }
+        return formula(constraints);
+    }
+
+    @Override
+    public Boolean visit(FixFormula fixFormula) {
+        throw Unsupported.INSTANCE;
+    }
+
+    /**
+     * The value of an expression: the indices of its tuples, and their arity.
+     * The indices must not be modified.
+     */
+    static final class Value {
+
+        final int    arity;
+        final IntSet indices;
+
+        Value(int arity, IntSet indices) {
+            this.arity = arity;
+            this.indices = indices;
+        }
+    }
+
+    /**
+     * Thrown when a node cannot be evaluated natively.
+     */
+    private static final class Unsupported extends RuntimeException {
+
+        private static final long        serialVersionUID = 1L;
+        static final Unsupported INSTANCE         = new Unsupported();
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -88,6 +88,11 @@ final class ResolutionBasedProof extends Proof {
             public boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env) {
                 return coreVars.contains(StrictMath.abs(literal));
             }
+
+            @Override
+            public IntSet variables() {
+                return coreVars;
+            }
         };
         for (Iterator<TranslationRecord> itr = log().replay(filter); itr.hasNext();) {
             coreNodes.add(itr.next().translated());
@@ -139,6 +144,16 @@ final class ResolutionBasedProof extends Proof {
                 public boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env) {
                     return coreNodes.contains(translated) && coreVariables.contains(StrictMath.abs(literal));
                 }
+
+                @Override
+                public IntSet variables() {
+                    return coreVariables;
+                }
+
+                @Override
+                public Set<Formula> formulas() {
+                    return coreNodes;
+                }
             };
         }
         return log().replay(coreFilter);
@@ -162,6 +177,16 @@ final class ResolutionBasedProof extends Proof {
                     return roots.contains(translated) && coreUnits.contains(Math.abs(literal));
                 }
 
+                @Override
+                public IntSet variables() {
+                    return coreUnits;
+                }
+
+                @Override
+                public Set<Formula> formulas() {
+                    return roots;
+                }
+
             };
             coreRoots = new LinkedHashMap<Formula,Node>();
             final IntSet seenUnits = new IntTreeSet();
@@ -1,12 +1,16 @@
 package kodkod.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
 import kodkod.engine.config.Options;
 import kodkod.engine.fol2sat.Translation;
 import kodkod.engine.fol2sat.Translator;
@@ -14,26 +18,97 @@ import kodkod.engine.satlab.SATAbortedException;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntIterator;
 
 /**
- * An iterator over all solutions of a model.
+ * An iterator over all solutions of a model. If the iterator has a projection,
+ * it returns one solution for each distinct valuation of the projection
+ * relations; otherwise, it returns one solution for each distinct valuation of
+ * all primary variables.
  *
+ * @specfield projection: lone set Relation
  * @author Emina Torlak
  */
 public final class SolutionIterator implements Iterator<Solution> {
 
-    private Translation.Whole translation;
-    private long              translTime;
-    private int               trivial;
+    private final Set<Relation> projection;
+    private Translation.Whole   translation;
+    private long                translTime;
+    private int                 trivial;
+    /**
+     * The primary variables on which models of this.translation are blocked, or
+     * null if they have not been computed yet.
+     */
+    private int[]               blocking;
 
     /**
      * Constructs a solution iterator for the given formula, bounds, and options.
+     *
+     * @ensures no this.projection'
      */
     SolutionIterator(Formula formula, Bounds bounds, Options options) {
+        this(formula, bounds, options, null);
+    }
+
+    /**
+     * Constructs a solution iterator for the given formula, bounds, and options
+     * that blocks each model only on the primary variables of the given
+     * relations. A null projection blocks models on all primary variables.
+     *
+     * @ensures this.projection' = projection
+     */
+    SolutionIterator(Formula formula, Bounds bounds, Options options, Set<Relation> projection) {
+        this.projection = projection;
         this.translTime = System.currentTimeMillis();
-        this.translation = Translator.translate(formula, bounds, options);
+        final Metrics metrics = options.metrics();
+        if (metrics != null)
+            metrics.start(options.reporter()); // stopped by the first call to next()
+        final Budget budget = options.budget();
+        if (budget != null)
+            budget.start(); // likewise
+        try {
+            this.translation = Translator.translate(formula, bounds, options);
+        } catch (RuntimeException e) {
+            if (metrics != null)
+                metrics.stop();
+            if (budget != null)
+                budget.stop();
+            throw e;
+        }
         this.translTime = System.currentTimeMillis() - translTime;
         this.trivial = 0;
+        this.blocking = null;
+    }
+
+    /**
+     * Returns the primary variables of the given translation that belong to the
+     * given relations, in increasing order. If the relations are null, returns all
+     * primary variables of the translation.
+     *
+     * @return relations = null => [1..transl.numPrimaryVariables()] else
+     *         transl.primaryVariables(relations)
+     */
+    static int[] blockingVariables(Translation transl, Set<Relation> relations) {
+        if (relations == null) {
+            final int[] vars = new int[transl.numPrimaryVariables()];
+            for (int i = 0; i < vars.length; i++) {
+                vars[i] = i + 1;
+            }
+            return vars;
+        }
+        int size = 0;
+        for (Relation r : relations) {
+            size += transl.primaryVariables(r).size();
+        }
+        final int[] vars = new int[size];
+        int i = 0;
+        for (Relation r : relations) {
+            for (IntIterator iter = transl.primaryVariables(r).iterator(); iter.hasNext();) {
+                vars[i++] = iter.next();
+            }
+        }
+        Arrays.sort(vars);
+        return vars;
     }
 
     /**
@@ -55,11 +130,22 @@ public final class SolutionIterator implements Iterator<Solution> {
     public Solution next() {
         if (!hasNext())
             throw new NoSuchElementException();
+        final Metrics metrics = translation.options().metrics();
+        if (metrics != null)
+            metrics.start(translation.options().reporter());
+        final Budget budget = translation.options().budget();
+        if (budget != null)
+            budget.start();
         try {
             return translation.trivial() ? nextTrivialSolution() : nextNonTrivialSolution();
         } catch (SATAbortedException sae) {
             translation.cnf().free();
-            throw new AbortedException(sae);
+            throw budget == null ? new AbortedException(sae) : budget.aborted(sae);
+        } finally {
+            if (metrics != null)
+                metrics.stop();
+            if (budget != null)
+                budget.stop();
         }
     }
 
@@ -86,12 +172,24 @@ public final class SolutionIterator implements Iterator<Solution> {
 
         final SATSolver cnf = transl.cnf();
         final int primaryVars = transl.numPrimaryVariables();
+        if (blocking == null)
+            blocking = blockingVariables(transl, projection);
 
         transl.options().reporter().solvingCNF(primaryVars, cnf.numberOfVariables(), cnf.numberOfClauses());
+        final Metrics metrics = transl.options().metrics();
+        if (metrics != null) {
+            metrics.observe(cnf);
+            metrics.stage(Metrics.Stage.SOLVING);
+        }
+        final Budget budget = transl.options().budget();
+        if (budget != null)
+            budget.observe(cnf);
 
         final long startSolve = System.currentTimeMillis();
         final boolean isSat = cnf.solve();
         final long endSolve = System.currentTimeMillis();
+        if (metrics != null)
+            metrics.stop(); // before the solver is freed
 
         final Statistics stats = new Statistics(transl, translTime, endSolve - startSolve);
         final Solution sol;
@@ -100,10 +198,12 @@ public final class SolutionIterator implements Iterator<Solution> {
             // extract the current solution; can't use the sat(..) method
             // because it frees the sat solver
             sol = Solution.satisfiable(stats, transl.interpret());
-            // add the negation of the current model to the solver
-            final int[] notModel = new int[primaryVars];
-            for (int i = 1; i <= primaryVars; i++) {
-                notModel[i - 1] = cnf.valueOf(i) ? -i : i;
+            // add the negation of the current model, restricted to the
+            // blocking variables, to the solver
+            final int[] notModel = new int[blocking.length];
+            for (int i = 0; i < blocking.length; i++) {
+                final int var = blocking[i];
+                notModel[i] = cnf.valueOf(var) ? -var : var;
             }
             cnf.addClause(notModel);
         } else {
@@ -147,6 +247,8 @@ public final class SolutionIterator implements Iterator<Solution> {
             final List<Formula> changes = new ArrayList<Formula>();
 
             for (Relation r : bounds.relations()) {
+                if (projection != null && !projection.contains(r))
+                    continue;
                 final TupleSet lower = bounds.lowerBound(r);
 
                 if (lower != bounds.upperBound(r)) { // r may change
@@ -173,6 +275,7 @@ public final class SolutionIterator implements Iterator<Solution> {
 
             final long startTransl = System.currentTimeMillis();
             translation = Translator.translate(formula, newBounds, transl.options());
+            blocking = null;
             translTime += System.currentTimeMillis() - startTransl;
         }
         return sol;
@@ -22,10 +22,13 @@
 package kodkod.engine;
 
 import java.util.Iterator;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
 import kodkod.ast.Relation;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
 import kodkod.engine.config.Options;
 import kodkod.engine.fol2sat.HigherOrderDeclException;
 import kodkod.engine.fol2sat.Translation;
@@ -112,7 +115,8 @@ public final class Solver implements KodkodSolver {
      * problem or, optionally, a {@linkplain Proof proof} of its unsatisfiability.
      * An unsatisfiability proof will be constructed iff {@code this.options.solver}
      * specifies a {@linkplain SATProver} and
-     * {@code this.options.logTranslation > 0}.
+     * {@code this.options.logTranslation > 0}. If {@code this.options.budget} is
+     * set, the method aborts as soon as the budget is cancelled or exceeded.
      *
      * @return some sol: {@link Solution} | some sol.instance() => sol.instance() in
      *         MODELS(formula, bounds, this.options) else UNSAT(formula, bound,
@@ -123,7 +127,8 @@ public final class Solver implements KodkodSolver {
      * @throws HigherOrderDeclException the formula contains a higher order
      *             declaration that cannot be skolemized, or it can be skolemized
      *             but {@code this.options.skolemDepth} is insufficiently large
-     * @throws AbortedException this solving task was aborted
+     * @throws AbortedException this solving task was aborted, by
+     *             {@code this.options.budget} or by the sat solver
      * @see Options
      * @see Solution
      * @see Instance
@@ -132,6 +137,13 @@ public final class Solver implements KodkodSolver {
     @Override
     public Solution solve(Formula formula, Bounds bounds) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
         final long startTransl = System.currentTimeMillis();
+        final Options options = forkBudget(this.options);
+        final Metrics metrics = options.metrics();
+        if (metrics != null)
+            metrics.start(options.reporter());
+        final Budget budget = options.budget();
+        if (budget != null)
+            budget.start();
 
         try {
             final Translation.Whole translation = Translator.translate(formula, bounds, options);
@@ -143,15 +155,28 @@ public final class Solver implements KodkodSolver {
             final SATSolver cnf = translation.cnf();
 
             options.reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+            if (metrics != null) {
+                metrics.observe(cnf); // the translation may have come from a cache
+                metrics.stage(Metrics.Stage.SOLVING);
+            }
+            if (budget != null)
+                budget.observe(cnf);
             final long startSolve = System.currentTimeMillis();
             final boolean isSat = cnf.solve();
             final long endSolve = System.currentTimeMillis();
+            if (metrics != null)
+                metrics.stop(); // before the solver is freed
 
             final Statistics stats = new Statistics(translation, endTransl - startTransl, endSolve - startSolve);
             return isSat ? sat(translation, stats) : unsat(translation, stats);
 
         } catch (SATAbortedException sae) {
-            throw new AbortedException(sae);
+            throw budget == null ? new AbortedException(sae) : budget.aborted(sae);
+        } finally {
+            if (metrics != null)
+                metrics.stop();
+            if (budget != null)
+                budget.stop();
         }
     }
 
@@ -188,7 +213,88 @@ public final class Solver implements KodkodSolver {
         // if (Options.isDebug()) flushFormula(formula, bounds); //[AM]
         if (!options.solver().incremental())
             throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
-        return new SolutionIterator(formula, bounds, options);
+        return new SolutionIterator(formula, bounds, forkBudget(options));
+    }
+
+    /**
+     * Attempts to find all solutions to the given formula with respect to the
+     * specified bounds that differ in the value of at least one of the given
+     * relations, or to prove the formula's unsatisfiability. The method behaves
+     * like {@link #solveAll(Formula, Bounds)}, except that it blocks each solution
+     * only on the primary variables of the projection relations, so solutions that
+     * differ only in the values of other relations (including skolem constants) are
+     * returned once. A null projection stands for {@code bounds.relations()}.
+     *
+     * @return an iterator over Solutions to the formula with respect to the given
+     *         bounds, one for each distinct value of the projection relations
+     * @throws NullPointerException formula = null || bounds = null
+     * @throws kodkod.engine.fol2sat.UnboundLeafException the formula contains an
+     *             undeclared variable or a relation not mapped by the given bounds
+     * @throws kodkod.engine.fol2sat.HigherOrderDeclException the formula contains a
+     *             higher order declaration that cannot be skolemized, or it can be
+     *             skolemized but this.options.skolemize is false.
+     * @throws AbortedException this solving task was interrupted with a call to
+     *             Thread.interrupt on this thread
+     * @throws IllegalArgumentException !this.options.solver().incremental()
+     * @see #solveAll(Formula, Bounds)
+     */
+    public Iterator<Solution> solveAll(Formula formula, Bounds bounds, Set<Relation> projection) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+        if (!options.solver().incremental())
+            throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
+        return new SolutionIterator(formula, bounds, forkBudget(options), projection(bounds, projection));
+    }
+
+    /**
+     * Returns the number of solutions that
+     * {@link #solveAll(Formula, Bounds, Set) solveAll(formula, bounds, relations)}
+     * would produce, not counting the final unsatisfiable one. The models are
+     * counted without constructing a solution or an instance for any of them, and
+     * the primary variables of the given relations that the formula does not
+     * constrain are counted without being enumerated. A null set of relations
+     * stands for {@code bounds.relations()}.
+     *
+     * @return number of distinct values of the given relations in the models of
+     *         the formula with respect to the given bounds
+     * @throws NullPointerException formula = null || bounds = null
+     * @throws kodkod.engine.fol2sat.UnboundLeafException the formula contains an
+     *             undeclared variable or a relation not mapped by the given bounds
+     * @throws kodkod.engine.fol2sat.HigherOrderDeclException the formula contains a
+     *             higher order declaration that cannot be skolemized, or it can be
+     *             skolemized but this.options.skolemize is false.
+     * @throws AbortedException this counting task was aborted, by
+     *             {@code this.options.budget} or by the sat solver
+     * @throws ArithmeticException the number of solutions does not fit into a long
+     * @throws IllegalArgumentException !this.options.solver().incremental()
+     */
+    public long count(Formula formula, Bounds bounds, Set<Relation> relations) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+        if (!options.solver().incremental())
+            throw new IllegalArgumentException("cannot count solutions without an incremental solver.");
+        return ModelCounter.count(formula, bounds, forkBudget(options), projection(bounds, relations));
+    }
+
+    /**
+     * Returns the given options if they have no budget, and otherwise a copy of
+     * them with a fork of their budget, so that concurrent analyses with the same
+     * options are timed and counted separately.
+     *
+     * @return no options.budget => options else {o: Options | o.budget.parent =
+     *         options.budget && o is otherwise a copy of options}
+     */
+    private static Options forkBudget(Options options) {
+        if (options.budget() == null)
+            return options;
+        final Options forked = options.clone();
+        forked.setBudget(options.budget().fork());
+        return forked;
+    }
+
+    /**
+     * Returns the given projection, or bounds.relations() if it is null.
+     *
+     * @return projection = null => bounds.relations() else projection
+     */
+    private static Set<Relation> projection(Bounds bounds, Set<Relation> projection) {
+        return projection == null ? bounds.relations() : projection;
     }
 
     // //[AM]
@@ -38,6 +38,7 @@ public final class Statistics {
 
     private long                procTranslTime = 0;
     private int                 numCandidates  = 1;
+    private long                cacheHits      = 0, cacheMisses = 0, cacheEvictions = 0;
 
     /**
      * Constructs a new Statistics object using the provided values.
@@ -55,6 +56,9 @@ public final class Statistics {
      */
     Statistics(Translation translation, long translationTime, long solvingTime) {
         this(translation.numPrimaryVariables(), translation.cnf().numberOfVariables(), translation.cnf().numberOfClauses(), translationTime, solvingTime);
+        this.cacheHits = translation.cacheHits();
+        this.cacheMisses = translation.cacheMisses();
+        this.cacheEvictions = translation.cacheEvictions();
     }
 
     /**
@@ -106,6 +110,40 @@ public final class Statistics {
         return solving;
     }
 
+    /**
+     * Returns the number of times the translator found the translation of a
+     * subformula or subexpression in its cache while translating this.formula.
+     *
+     * @return the number of translation cache hits.
+     * @see kodkod.engine.config.Options#bindingCacheCapacity()
+     */
+    public long cacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of times the translator did not find the translation of a
+     * cached subformula or subexpression in its cache while translating
+     * this.formula.
+     *
+     * @return the number of translation cache misses.
+     * @see kodkod.engine.config.Options#bindingCacheCapacity()
+     */
+    public long cacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Returns the number of translations the translator evicted from its cache
+     * while translating this.formula.
+     *
+     * @return the number of translation cache evictions.
+     * @see kodkod.engine.config.Options#bindingCacheCapacity()
+     */
+    public long cacheEvictions() {
+        return cacheEvictions;
+    }
+
     public void setProcTranslTime(long procTranslTime) {
         this.procTranslTime = procTranslTime;
     }
@@ -143,7 +181,11 @@ public final class Statistics {
         ret.append(" ms").append(NEW_LINE);
         ret.append("solving time: ");
         ret.append(solving);
-        ret.append(" ms");
+        ret.append(" ms").append(NEW_LINE);
+        ret.append("translation cache: ");
+        ret.append(cacheHits).append(" hits, ");
+        ret.append(cacheMisses).append(" misses, ");
+        ret.append(cacheEvictions).append(" evictions");
         return ret.toString();
     }
 
@@ -27,6 +27,7 @@ import static kodkod.engine.bool.Operator.OR;
 import java.util.Collection;
 import java.util.Iterator;
 
+import kodkod.engine.config.Budget;
 import kodkod.engine.config.Options;
 import kodkod.engine.config.Options.IntEncoding;
 import kodkod.engine.config.Options.OverflowPolicy;
@@ -42,6 +43,8 @@ import kodkod.util.ints.IntSet;
  * @specfield intEncoding: {@link IntEncoding} // the encoding used for
  *            generating integers ({@link #integer(int)}
  * @specfield bitwidth: int // the bitwidth used for integer computations
+ * @specfield primitiveMatrices: boolean // whether matrices use primitive arrays
+ * @specfield budget: lone Budget // checked as gates are created
  * @specfield components: set {@link BooleanValue}
  * @invariant {@link BooleanConstant} in components
  * @invariant no f1, f2: BooleanFactory | f1 != f2 => f1.components &
@@ -66,11 +69,16 @@ public abstract class BooleanFactory {
     /** Whether or not it should forbid overflows */ // [AM]
     final OverflowPolicy     noOverflow;
 
+    /** Whether matrices use the primitive array algorithms */
+    private final boolean    primitiveMatrices;
+
     /**
      * Constructs a boolean factory with the given number of input variables. Gates
      * are checked for semantic equality down to the given depth. Integers are
      * represented using the given number of bits. The noOverflow bit tells whether
-     * or not to forbid overflows.
+     * or not to forbid overflows. The primitiveMatrices bit tells whether matrices
+     * use the primitive array algorithms. The given budget, if any, is checked as
+     * gates are created.
      *
      * @requires 0 <= numVars < Integer.MAX_VALUE
      * @requires checkToDepth >= 0 && bitwidth > 0
@@ -78,12 +86,14 @@ public abstract class BooleanFactory {
      *          BooleanVariable
      * @ensures this.bitwidth' = bitwidth
      * @ensures this.comparisonDepth' = comparisonDepth
+     * @ensures this.budget' = budget
      */
-    private BooleanFactory(int numVars, int comparisonDepth, int bitwidth, OverflowPolicy overflowPolicy) {
-        this.circuits = new CBCFactory(numVars, 1 << comparisonDepth);
+    private BooleanFactory(int numVars, int comparisonDepth, int bitwidth, OverflowPolicy overflowPolicy, boolean primitiveMatrices, Budget budget) {
+        this.circuits = new CBCFactory(numVars, 1 << comparisonDepth, budget);
         this.bitwidth = bitwidth;
         this.numVars = numVars;
         this.noOverflow = overflowPolicy;
+        this.primitiveMatrices = primitiveMatrices;
     }
 
     /**
@@ -103,15 +113,24 @@ public abstract class BooleanFactory {
      * @return {f: BooleanFactory | #(f.components & BooleanVariable) = numVars &&
      *         BooleanConstant in f.components && f.components in BooleanVariable +
      *         BooleanConstant && f.comparisonDepth = options.sharing && f.bitwidth
-     *         = options.bitwidth && f.intEncoding = options.intEncoding && (all i:
-     *         [1..numVars] | one f.components.label & i }}
+     *         = options.bitwidth && f.intEncoding = options.intEncoding &&
+     *         f.budget = options.budget && (all i: [1..numVars] | one
+     *         f.components.label & i }}
      * @throws IllegalArgumentException numVars < 0 || numVars = Integer.MAX_VALUE
      * @throws NullPointerException options = null
      */
     public static BooleanFactory factory(int numVars, Options options) {
+        return factory(numVars, options, options.budget());
+    }
+
+    /**
+     * Returns a boolean factory with the given number of variables and budget,
+     * configured according to the given options.
+     */
+    private static BooleanFactory factory(int numVars, Options options, Budget budget) {
         switch (options.intEncoding()) {
             case TWOSCOMPLEMENT :
-                return new TwosComplementFactory(numVars, options.sharing(), options.bitwidth(), options.overflowPolicy());
+                return new TwosComplementFactory(numVars, options.sharing(), options.bitwidth(), options.overflowPolicy(), options.primitiveMatrices(), budget);
             default :
                 throw new IllegalArgumentException("unknown encoding: " + options.intEncoding());
         }
@@ -119,15 +138,16 @@ public abstract class BooleanFactory {
 
     /**
      * Returns a BooleanFactory with no variables; the returned factory can
-     * manipulate only constants.
+     * manipulate only constants. Since it is used for evaluation rather than
+     * analysis, the returned factory ignores options.budget.
      *
      * @return {f: BooleanFactory | f.components = BooleanConstant &&
      *         f.comparisonDepth = options.sharing && f.bitwidth = options.bitwidth
-     *         && f.intEncoding = options.intEncoding }
+     *         && f.intEncoding = options.intEncoding && no f.budget }
      * @throws NullPointerException options = null
      */
     public static BooleanFactory constantFactory(Options options) {
-        return factory(0, options);
+        return factory(0, options, null);
     }
 
     /**
@@ -168,6 +188,17 @@ public abstract class BooleanFactory {
         return noOverflow;
     }
 
+    /**
+     * Returns true if the matrices whose entries are components of this factory
+     * use the primitive array algorithms.
+     *
+     * @return this.primitiveMatrices
+     * @see Options#primitiveMatrices()
+     */
+    public final boolean primitiveMatrices() {
+        return primitiveMatrices;
+    }
+
     /**
      * Returns the encoding used by this factory to represent integers.
      *
@@ -195,6 +226,15 @@ public abstract class BooleanFactory {
         return circuits.maxVariable();
     }
 
+    /**
+     * Returns the budget that this factory checks as it creates gates, if any.
+     *
+     * @return this.budget
+     */
+    public final Budget budget() {
+        return circuits.budget();
+    }
+
     /**
      * Returns the maximum label of a {@link BooleanFormula formula} in
      * {@code this.components}. Note that {@link #maxFormula()} >=
@@ -515,9 +555,10 @@ public abstract class BooleanFactory {
          * @ensures this.bitwidth' = bitwidth
          * @ensures this.comparisonDepth' = comparisonDepth
          * @ensures this.intEncoding' = BINARY
+         * @ensures this.budget' = budget
          */
-        TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth, OverflowPolicy ofPolicy) {
-            super(numVars, comparisonDepth, bitwidth, ofPolicy);
+        TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth, OverflowPolicy ofPolicy, boolean primitiveMatrices, Budget budget) {
+            super(numVars, comparisonDepth, bitwidth, ofPolicy, primitiveMatrices, budget);
         }
 
         /**
@@ -26,6 +26,7 @@ import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import kodkod.engine.fol2sat.Environment;
@@ -445,6 +446,9 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
         final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
         ret.mergeDefConds(this, other);
 
+        if (factory.primitiveMatrices())
+            return primitiveOr(other, ret);
+
         final SparseSequence<BooleanValue> retSeq = ret.cells;
         for (IndexedEntry<BooleanValue> e0 : cells) {
             BooleanValue v1 = other.cells.get(e0.index());
@@ -460,6 +464,35 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
         return ret;
     }
 
+    /**
+     * Stores the disjunction of this and other matrix into ret, by merging the
+     * entries of both matrices in a single pass over primitive copies of their
+     * indices instead of looking up each entry of one matrix in the other. The
+     * gates are created in the same order as by {@link #or(BooleanMatrix)}.
+     *
+     * @requires no ret.elements && ret.dimensions = this.dimensions =
+     *           other.dimensions
+     * @ensures ret.elements' = this.elements OR other.elements
+     * @return ret
+     */
+    private BooleanMatrix primitiveOr(BooleanMatrix other, BooleanMatrix ret) {
+        final Entries e0 = new Entries(cells), e1 = new Entries(other.cells);
+        for (int i = 0, j = 0; i < e0.size || j < e1.size;) {
+            if (j == e1.size || (i < e0.size && e0.idx[i] < e1.idx[j])) {
+                ret.cells.put(e0.idx[i], e0.val[i]);
+                i++;
+            } else if (i == e0.size || e1.idx[j] < e0.idx[i]) {
+                ret.cells.put(e1.idx[j], e1.val[j]);
+                j++;
+            } else {
+                ret.cells.put(e0.idx[i], factory.or(e0.val[i], e1.val[j]));
+                i++;
+                j++;
+            }
+        }
+        return ret;
+    }
+
     /**
      * Returns a new matrix such that an entry in the returned matrix represents a
      * disjunction of the corresponding entries in this and other matrices.
@@ -521,6 +554,19 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
             return ret;
 
         final int ocap = other.dims.capacity();
+        if (factory.primitiveMatrices()) {
+            final Entries e1 = new Entries(other.cells);
+            for (IndexedEntry<BooleanValue> e0 : cells) {
+                final int i = ocap * e0.index();
+                final BooleanValue v0 = e0.value();
+                for (int j = 0; j < e1.size; j++) {
+                    final BooleanValue conjunction = factory.and(v0, e1.val[j]);
+                    if (conjunction != FALSE)
+                        ret.cells.put(i + e1.idx[j], conjunction);
+                }
+            }
+            return ret;
+        }
         for (IndexedEntry<BooleanValue> e0 : cells) {
             int i = ocap * e0.index();
             for (IndexedEntry<BooleanValue> e1 : other.cells) {
@@ -661,6 +707,11 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
         if (cells.isEmpty() || other.cells.isEmpty())
             return ret;
 
+        // the primitive algorithm copies all of other, which does not pay off
+        // when this matrix selects only a few of its rows (e.g. a variable)
+        if (factory.primitiveMatrices() && cells.size() >= other.dims.dimension(0))
+            return primitiveDot(other, ret);
+
         final SparseSequence<BooleanValue> mutableCells = ret.clone().cells;
         final int b = other.dims.dimension(0);
         final int c = other.dims.capacity() / b;
@@ -702,6 +753,79 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
         return ret;
     }
 
+    /**
+     * Stores the dot product of this and other matrix into ret, using primitive
+     * arrays instead of sparse sequences for the intermediate results. The rows of
+     * the other matrix are copied into compressed arrays once, and each row of the
+     * product is accumulated in a dense array of cells indexed by column. The gates
+     * are created in the same order as by {@link #dot(BooleanMatrix)}, so both
+     * algorithms produce the same circuit.
+     *
+     * @requires no ret.elements && ret.dimensions =
+     *           this.dimensions.dot(other.dimensions)
+     * @requires some this.elements && some other.elements
+     * @ensures ret.elements' = (this*other).elements
+     * @return ret
+     */
+    private BooleanMatrix primitiveDot(BooleanMatrix other, BooleanMatrix ret) {
+        final int b = other.dims.dimension(0);
+        final int c = other.dims.capacity() / b;
+
+        // the rows of other in compressed form: row j occupies the entries
+        // [rowStart[j]..rowStart[j+1])
+        final Entries e1 = new Entries(other.cells);
+        final int[] rowStart = new int[b + 1];
+        for (int j = 0; j < e1.size; j++) {
+            rowStart[e1.idx[j] / c + 1]++;
+            e1.idx[j] %= c;
+        }
+        for (int j = 0; j < b; j++) {
+            rowStart[j + 1] += rowStart[j];
+        }
+
+        // the cells of the current row of the product: null, TRUE, a single
+        // disjunct, or an accumulator of several disjuncts
+        final BooleanValue[] row = new BooleanValue[c];
+        final int[] used = new int[c];
+        int usedSize = 0, rowIndex = -1;
+        final Entries product = new Entries(Math.min(ret.dims.capacity(), 2 * cells.size()));
+
+        for (IndexedEntry<BooleanValue> e0 : cells) {
+            final int i = e0.index();
+            if (i / b != rowIndex) {
+                product.addRow(rowIndex * c, row, used, usedSize);
+                usedSize = 0;
+                rowIndex = i / b;
+            }
+            final BooleanValue iVal = e0.value();
+            for (int j = rowStart[i % b], max = rowStart[i % b + 1]; j < max; j++) {
+                final BooleanValue retVal = factory.and(iVal, e1.val[j]);
+                if (retVal != FALSE) {
+                    final int k = e1.idx[j];
+                    final BooleanValue kVal = row[k];
+                    if (kVal == null) {
+                        used[usedSize++] = k;
+                        row[k] = retVal;
+                    } else if (retVal == TRUE) {
+                        row[k] = TRUE;
+                    } else if (kVal instanceof BooleanAccumulator) {
+                        ((BooleanAccumulator) kVal).add(retVal);
+                    } else if (kVal != TRUE) {
+                        row[k] = BooleanAccumulator.treeGate(OR, kVal, retVal);
+                    }
+                }
+            }
+        }
+        product.addRow(rowIndex * c, row, used, usedSize);
+
+        // make mutable gates immutable
+        for (int k = 0; k < product.size; k++) {
+            final BooleanValue v = product.val[k];
+            ret.fastSet(product.idx[k], v instanceof BooleanAccumulator ? factory.accumulate((BooleanAccumulator) v) : v);
+        }
+        return ret;
+    }
+
     /**
      * Returns a formula stating that the entries in this matrix are a subset of the
      * entries in the given matrix; i.e. the value of every entry in this matrix
@@ -1172,4 +1296,75 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
         return buff.toString();
     }
 
+
+    /**
+     * The non-FALSE entries of a matrix, stored in parallel primitive arrays in
+     * the ascending order of their indices.
+     *
+     * @specfield size: int
+     * @specfield idx: [0..size) -> one int
+     * @specfield val: [0..size) -> one BooleanValue
+     */
+    private static final class Entries {
+
+        int[]          idx;
+        BooleanValue[] val;
+        int            size;
+
+        /**
+         * Creates an empty array of entries with the given initial capacity.
+         */
+        Entries(int capacity) {
+            this.idx = new int[Math.max(capacity, 16)];
+            this.val = new BooleanValue[idx.length];
+            this.size = 0;
+        }
+
+        /**
+         * Creates an array of the entries in the given sequence.
+         */
+        Entries(SparseSequence<BooleanValue> cells) {
+            this.idx = new int[cells.size()];
+            this.val = new BooleanValue[idx.length];
+            for (IndexedEntry<BooleanValue> e : cells) {
+                idx[size] = e.index();
+                val[size++] = e.value();
+            }
+        }
+
+        /**
+         * Appends the used cells of the given row, offset by base, in the ascending
+         * order of their columns, and clears them.
+         *
+         * @requires base >= 0 => base > max(this.idx[0..size))
+         * @ensures all j: [0..usedSize) | row[used[j]] != null
+         * @ensures no row'[int]
+         */
+        void addRow(int base, BooleanValue[] row, int[] used, int usedSize) {
+            if (usedSize == 0)
+                return;
+            if (size + usedSize > idx.length) {
+                final int capacity = Math.max(size + usedSize, idx.length * 2);
+                idx = Arrays.copyOf(idx, capacity);
+                val = Arrays.copyOf(val, capacity);
+            }
+            if (usedSize < row.length >>> 3) {
+                Arrays.sort(used, 0, usedSize);
+                for (int j = 0; j < usedSize; j++) {
+                    idx[size] = base + used[j];
+                    val[size++] = row[used[j]];
+                    row[used[j]] = null;
+                }
+            } else {
+                for (int k = 0; k < row.length; k++) {
+                    if (row[k] != null) {
+                        idx[size] = base + k;
+                        val[size++] = row[k];
+                        row[k] = null;
+                    }
+                }
+            }
+        }
+    }
+
 }
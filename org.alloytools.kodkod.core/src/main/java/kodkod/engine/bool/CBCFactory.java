@@ -37,7 +37,7 @@ import java.util.Set;
 
 import kodkod.ast.operator.ExprOperator;
 import kodkod.engine.bool.Operator.Nary;
-import kodkod.util.collections.CacheSet;
+import kodkod.engine.config.Budget;
 import kodkod.util.collections.IdentityHashSet;
 
 /**
@@ -46,6 +46,7 @@ import kodkod.util.collections.IdentityHashSet;
  * @specfield values: set (BooleanVariable + MultiGate + ITEGate)
  * @specfield cmpMax: int // the maximum number of comparisons made when
  *            comparing circuits for equality
+ * @specfield budget: lone Budget // checked every Budget.GATE_INTERVAL gates
  * @invariant no disj factory, factory' : CircuitFactory | some factory.values &
  *            factory'.values
  * @author Emina Torlak
@@ -56,7 +57,7 @@ final class CBCFactory {
      * Sets used as `scrap paper' for gate comparisons. Its capacity is 2^(depth),
      * where depth is the depth to which gates should be checked for equality.
      */
-    private final Set<BooleanFormula>        scrap0, scrap1;
+    private final Set<BooleanFormula> scrap0, scrap1;
     /**
      * Caches variables. This representation is optimized for infrequent addition of
      * ranges of variables at a time (as opposed to frequent addition of one
@@ -68,28 +69,34 @@ final class CBCFactory {
      *            vars[i-1][vars[i-1].length-1] + 1
      * @invariant vars[0][0].label = 1
      */
-    private BooleanVariable[][]              vars;
+    private BooleanVariable[][]       vars;
     /**
      * Caches AND, OR, and ITE gates.
-     *
-     * @invariant all i: [0..2] | c[i].op.ordinal = i
      */
-    private final CacheSet<BooleanFormula>[] cache;
-    private int                              label, cmpMax;
+    private final GateTable           gates;
+    private int                       label, cmpMax;
+    private final Budget              budget;
+    /**
+     * The number of variables in this.values, and the label at which the budget
+     * is next checked.
+     */
+    private int                       numVars, checkpoint;
 
     /**
-     * Constructs a CircuitFactory using the given max comparison parameter,
-     * initialized to contain the given number of variables.
+     * Constructs a CircuitFactory using the given max comparison parameter and
+     * budget, initialized to contain the given number of variables.
      *
      * @requires cmpMax > 0 && numVars >= 0
      * @ensures #this.values' = numVars && this.values in BooleanVariable
-     * @ensures this.cmpMax' = cmpMax
+     * @ensures this.cmpMax' = cmpMax && this.budget' = budget
      */
-    @SuppressWarnings("unchecked" )
-    CBCFactory(int numVars, int cmpMax) {
+    CBCFactory(int numVars, int cmpMax, Budget budget) {
         assert cmpMax > 0 && numVars >= 0;
         this.cmpMax = cmpMax;
         this.label = numVars + 1;
+        this.numVars = numVars;
+        this.budget = budget;
+        this.checkpoint = checkpoint();
         if (numVars == 0) {
             vars = new BooleanVariable[0][];
         } else {
@@ -100,19 +107,7 @@ final class CBCFactory {
         }
         scrap0 = new IdentityHashSet<BooleanFormula>(cmpMax);
         scrap1 = new IdentityHashSet<BooleanFormula>(cmpMax);
-        cache = new CacheSet[] {
-                                new CacheSet<BooleanFormula>(), new CacheSet<BooleanFormula>(), new CacheSet<BooleanFormula>()
-        };
-    }
-
-    /**
-     * Returns the cache for gates with the given operator.
-     *
-     * @requires op in AND + OR + ITE
-     * @return cache[op.ordinal]
-     */
-    private CacheSet<BooleanFormula> opCache(Operator op) {
-        return cache[op.ordinal];
+        gates = new GateTable();
     }
 
     /**
@@ -135,6 +130,15 @@ final class CBCFactory {
         return cmpMax;
     }
 
+    /**
+     * Returns this.budget.
+     *
+     * @return this.budget
+     */
+    Budget budget() {
+        return budget;
+    }
+
     /**
      * Returns true if the given value is a valid argument to one of the
      * <tt>assemble</tt> methods. Otherwise returns false.
@@ -149,12 +153,7 @@ final class CBCFactory {
         if (v instanceof BooleanVariable) {
             return v == variable(v.label());
         } else {
-            final BooleanFormula g = (BooleanFormula) v;
-            for (Iterator<BooleanFormula> gates = opCache(g.op()).get(g.hashCode()); gates.hasNext();) {
-                if (g == gates.next())
-                    return true;
-            }
-            return false;
+            return gates.contains((BooleanFormula) v);
         }
     }
 
@@ -235,6 +234,39 @@ final class CBCFactory {
             vars = newVars;
         }
         this.label += numVars;
+        this.numVars += numVars;
+        this.checkpoint = checkpoint();
+    }
+
+    /**
+     * Returns the label at which this.budget is next checked: after another
+     * Budget.GATE_INTERVAL gates, or at the first gate over the limit of the
+     * budget, whichever comes first.
+     */
+    private int checkpoint() {
+        if (budget == null)
+            return Integer.MAX_VALUE;
+        long next = (long) label + Budget.GATE_INTERVAL;
+        if (budget.gates() > 0)
+            next = StrictMath.min(next, numVars + budget.gates() + 1);
+        return (int) StrictMath.min(next, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the label of a new gate, checking this.budget first if the gate is
+     * at a checkpoint.
+     *
+     * @ensures this.label' = this.label + 1
+     * @return this.label
+     * @throws kodkod.engine.AbortedException this.budget has been cancelled or
+     *             exceeded
+     */
+    private int nextLabel() {
+        if (label >= checkpoint) {
+            budget.gates(label - numVars); // including the new gate
+            checkpoint = checkpoint();
+        }
+        return label++;
     }
 
     /**
@@ -263,13 +295,13 @@ final class CBCFactory {
             final BooleanFormula f0 = (BooleanFormula) i, f1 = (BooleanFormula) t, f2 = (BooleanFormula) e;
             final int hash = ITE.hash(f0, f1, f2);
 
-            for (Iterator<BooleanFormula> gates = opCache(ITE).get(hash); gates.hasNext();) {
-                BooleanFormula gate = gates.next();
+            for (int slot = gates.first(ITE, hash); slot >= 0; slot = gates.next(slot, ITE, hash)) {
+                BooleanFormula gate = gates.gate(slot);
                 if (gate.input(0) == i && gate.input(1) == t && gate.input(2) == e)
                     return gate;
             }
-            final BooleanFormula ret = new ITEGate(label++, hash, f0, f1, f2);
-            opCache(ITE).add(ret);
+            final BooleanFormula ret = new ITEGate(nextLabel(), hash, f0, f1, f2);
+            gates.add(ret);
             return ret;
         }
     }
@@ -324,15 +356,15 @@ final class CBCFactory {
                 @SuppressWarnings("rawtypes" )
                 final int hash = op.hash((Iterator) acc.iterator());
                 if (asize > cmpMax) {
-                    for (Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext();) {
-                        BooleanFormula g = gates.next();
+                    for (int slot = gates.first(op, hash); slot >= 0; slot = gates.next(slot, op, hash)) {
+                        BooleanFormula g = gates.gate(slot);
                         if (g.size() == asize && ((NaryGate) g).sameInputs(acc.iterator())) {
                             return g;
                         }
                     }
                 } else {
-                    LOOKUP: for (Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext();) {
-                        BooleanFormula g = gates.next();
+                    LOOKUP: for (int slot = gates.first(op, hash); slot >= 0; slot = gates.next(slot, op, hash)) {
+                        BooleanFormula g = gates.gate(slot);
                         if (g.size() == asize && ((NaryGate) g).sameInputs(acc.iterator())) {
                             return g;
                         } else if (g.size() < asize) {
@@ -348,8 +380,8 @@ final class CBCFactory {
                         }
                     }
                 }
-                final BooleanFormula ret = new NaryGate(acc, label++, hash);
-                opCache(acc.op).add(ret);
+                final BooleanFormula ret = new NaryGate(acc, nextLabel(), hash);
+                gates.add(ret);
                 return ret;
         }
     }
@@ -396,8 +428,8 @@ final class CBCFactory {
             scrap0.clear();
             l.flatten(op, scrap0, cmpMax - 1);
             h.flatten(op, scrap0, cmpMax - scrap0.size());
-            for (Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext();) {
-                BooleanFormula gate = gates.next();
+            for (int slot = gates.first(op, hash); slot >= 0; slot = gates.next(slot, op, hash)) {
+                BooleanFormula gate = gates.gate(slot);
                 if (gate.size() == 2 && gate.input(0) == l && gate.input(1) == h)
                     return gate;
                 else {
@@ -408,14 +440,14 @@ final class CBCFactory {
                 }
             }
         } else {
-            for (Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext();) {
-                BooleanFormula gate = gates.next();
+            for (int slot = gates.first(op, hash); slot >= 0; slot = gates.next(slot, op, hash)) {
+                BooleanFormula gate = gates.gate(slot);
                 if (gate.size() == 2 && gate.input(0) == l && gate.input(1) == h)
                     return gate;
             }
         }
-        final BooleanFormula ret = new BinaryGate(op, label++, hash, l, h);
-        opCache(op).add(ret);
+        final BooleanFormula ret = new BinaryGate(op, nextLabel(), hash, l, h);
+        gates.add(ret);
         return ret;
     }
 
@@ -0,0 +1,226 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+/**
+ * A hash-consing table for AND, OR and ITE gates, keyed on the operator and
+ * hashcode of each gate. The table uses open addressing with linear probing:
+ * gates are stored in one array, and their hashcodes in a parallel int array,
+ * so a lookup inspects consecutive slots without allocating and dereferences
+ * only those gates whose hashcode matches the key. Since gates are never
+ * removed from the table, a probe sequence ends at the first empty slot.
+ * <p>
+ * Lookups are performed with a cursor: {@link #first(Operator, int)} returns
+ * the slot of the first gate with a given operator and hashcode, and
+ * {@link #next(int, Operator, int)} the slot of the next one, or -1 if there
+ * are no more such gates.
+ * </p>
+ *
+ * @specfield gates: set BooleanFormula
+ * @invariant gates.op in AND + OR + ITE
+ */
+final class GateTable {
+
+    /**
+     * The initial capacity of the table - MUST be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The maximum capacity of the table.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The gates in this table, at the slots determined by their keys.
+     *
+     * @invariant gates.length = hashes.length && gates.length is a power of two
+     */
+    private BooleanFormula[] gates;
+    /**
+     * The hashcodes of the gates in this table.
+     *
+     * @invariant all i: [0..gates.length) | some gates[i] => hashes[i] =
+     *            gates[i].hashCode()
+     */
+    private int[]            hashes;
+    private int              size, threshold;
+
+    /**
+     * Constructs an empty gate table.
+     *
+     * @ensures no this.gates'
+     */
+    GateTable() {
+        this.gates = new BooleanFormula[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.threshold = threshold(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of gates that a table of the given capacity holds
+     * before it is resized: two thirds of its capacity.
+     */
+    private static int threshold(int capacity) {
+        return capacity == MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY - 1 : (int) ((capacity * 2L) / 3);
+    }
+
+    /**
+     * Returns the index of the slot at which the probe sequence for the given
+     * operator and hashcode starts in a table with the given mask.
+     */
+    private static int indexFor(int opOrdinal, int hash, int mask) {
+        int h = hash * 0x9E3779B9 + opOrdinal;
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    /**
+     * Returns the number of gates in this table.
+     *
+     * @return #this.gates
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the first gate in this table with the given operator
+     * and hashcode, or -1 if there is no such gate.
+     *
+     * @requires op in AND + OR + ITE
+     * @return the slot of the first gate g in this.gates such that g.op = op &&
+     *         g.hashCode() = hash, or -1 if there is no such gate
+     */
+    int first(Operator op, int hash) {
+        return scan(indexFor(op.ordinal, hash, gates.length - 1), op, hash);
+    }
+
+    /**
+     * Returns the slot of the next gate in this table, after the one at the
+     * given slot, with the given operator and hashcode, or -1 if there is no
+     * such gate.
+     *
+     * @requires slot was returned by this.first(op, hash) or this.next(_, op,
+     *           hash), and no gates have been added to this table since then
+     * @return the slot of the next gate g in this.gates such that g.op = op &&
+     *         g.hashCode() = hash, or -1 if there is no such gate
+     */
+    int next(int slot, Operator op, int hash) {
+        return scan((slot + 1) & (gates.length - 1), op, hash);
+    }
+
+    /**
+     * Returns the first slot, at or after the given one in the probe sequence,
+     * that holds a gate with the given operator and hashcode, or -1 if the
+     * sequence reaches an empty slot first.
+     */
+    private int scan(int slot, Operator op, int hash) {
+        final BooleanFormula[] gates = this.gates;
+        final int[] hashes = this.hashes;
+        final int mask = gates.length - 1;
+        for (BooleanFormula g; (g = gates[slot]) != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && g.op() == op)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the gate at the given slot.
+     *
+     * @requires slot was returned by this.first or this.next, and no gates have
+     *           been added to this table since then
+     * @return the gate at the given slot
+     */
+    BooleanFormula gate(int slot) {
+        return gates[slot];
+    }
+
+    /**
+     * Returns true if the given gate is in this table.
+     *
+     * @requires g.op in AND + OR + ITE
+     * @return g in this.gates
+     */
+    boolean contains(BooleanFormula g) {
+        final Operator op = g.op();
+        final int hash = g.hashCode();
+        for (int slot = first(op, hash); slot >= 0; slot = next(slot, op, hash)) {
+            if (gates[slot] == g)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given gate to this table.
+     *
+     * @requires g.op in AND + OR + ITE && g !in this.gates
+     * @ensures this.gates' = this.gates + g
+     */
+    void add(BooleanFormula g) {
+        if (size >= threshold)
+            resize();
+        insert(gates, hashes, g, g.hashCode());
+        size++;
+    }
+
+    /**
+     * Stores the given gate, with the given hashcode, at the first empty slot of
+     * its probe sequence in the given arrays.
+     */
+    private static void insert(BooleanFormula[] gates, int[] hashes, BooleanFormula g, int hash) {
+        final int mask = gates.length - 1;
+        int slot = indexFor(g.op().ordinal, hash, mask);
+        while (gates[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        gates[slot] = g;
+        hashes[slot] = hash;
+    }
+
+    /**
+     * Doubles the capacity of this table, unless it has reached the maximum
+     * capacity.
+     */
+    private void resize() {
+        final int capacity = gates.length;
+        if (capacity == MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("gate table is full");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        final BooleanFormula[] newGates = new BooleanFormula[capacity << 1];
+        final int[] newHashes = new int[capacity << 1];
+        for (int i = 0; i < capacity; i++) {
+            final BooleanFormula g = gates[i];
+            if (g != null)
+                insert(newGates, newHashes, g, hashes[i]);
+        }
+        gates = newGates;
+        hashes = newHashes;
+        threshold = threshold(capacity << 1);
+    }
+}
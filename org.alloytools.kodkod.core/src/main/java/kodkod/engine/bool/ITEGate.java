@@ -41,8 +41,8 @@ import kodkod.util.ints.Ints;
  */
 public final class ITEGate extends BooleanFormula {
 
-    private final BooleanFormula[] inputs;
-    private final int              label, hashcode, labelhash;
+    private final BooleanFormula ifFormula, thenFormula, elseFormula;
+    private final int            label, hashcode;
 
     /**
      * Constructs a new ITEGate from the given formulas and label.
@@ -57,12 +57,10 @@ public final class ITEGate extends BooleanFormula {
         super(null);
         assert label >= 0;
         this.label = label;
-        this.labelhash = Ints.superFastHash(label);
         this.hashcode = hashcode;
-        this.inputs = new BooleanFormula[3];
-        inputs[0] = ifFormula;
-        inputs[1] = thenFormula;
-        inputs[2] = elseFormula;
+        this.ifFormula = ifFormula;
+        this.thenFormula = thenFormula;
+        this.elseFormula = elseFormula;
     }
 
     /**
@@ -72,7 +70,7 @@ public final class ITEGate extends BooleanFormula {
      */
     @Override
     int hash(Operator op) {
-        return labelhash;
+        return Ints.superFastHash(label);
     }
 
     /**
@@ -83,7 +81,7 @@ public final class ITEGate extends BooleanFormula {
      */
     @Override
     public Iterator<BooleanFormula> iterator() {
-        return Containers.iterate(inputs);
+        return Containers.iterate(ifFormula, thenFormula, elseFormula);
     }
 
     /**
@@ -129,7 +127,7 @@ public final class ITEGate extends BooleanFormula {
      */
     @Override
     public String toString() {
-        return "(" + inputs[0] + "?" + inputs[1] + ":" + inputs[2] + ")";
+        return "(" + ifFormula + "?" + thenFormula + ":" + elseFormula + ")";
     }
 
     /**
@@ -160,9 +158,16 @@ public final class ITEGate extends BooleanFormula {
      */
     @Override
     public BooleanFormula input(int i) {
-        if (i < 0 || i > 2)
-            throw new IndexOutOfBoundsException();
-        return inputs[i];
+        switch (i) {
+            case 0 :
+                return ifFormula;
+            case 1 :
+                return thenFormula;
+            case 2 :
+                return elseFormula;
+            default :
+                throw new IndexOutOfBoundsException();
+        }
     }
 
     /**
@@ -185,7 +190,7 @@ public final class ITEGate extends BooleanFormula {
         else if (op != Operator.ITE || k < 3 || f > label || -f > label)
             return -1;
         else
-            return (inputs[0].label() == f || inputs[1].label() == f || inputs[2].label() == f) ? 3 : -3;
+            return (ifFormula.label() == f || thenFormula.label() == f || elseFormula.label() == f) ? 3 : -3;
     }
 
     /**
@@ -200,9 +205,9 @@ public final class ITEGate extends BooleanFormula {
     void flatten(Operator op, Set<BooleanFormula> flat, int k) {
         assert k > 0;
         if (op == Operator.ITE && k > 2) {
-            flat.add(inputs[0]);
-            flat.add(inputs[1]);
-            flat.add(inputs[2]);
+            flat.add(ifFormula);
+            flat.add(thenFormula);
+            flat.add(elseFormula);
         } else {
             flat.add(this);
         }
@@ -40,7 +40,7 @@ public abstract class MultiGate extends BooleanFormula {
 
     final Operator.Nary op;
 
-    private final int   label, labelhash, hashcode;
+    private final int   label, hashcode;
 
     /**
      * Constructs a new MultiGate gate with the given operator and label.
@@ -54,7 +54,6 @@ public abstract class MultiGate extends BooleanFormula {
         assert label >= 0;
         this.op = op;
         this.label = label;
-        this.labelhash = Ints.superFastHash(label);
         this.hashcode = hashcode;
     }
 
@@ -131,6 +130,6 @@ public abstract class MultiGate extends BooleanFormula {
      */
     @Override
     final int hash(Operator op) {
-        return op == this.op ? hashcode : labelhash;
+        return op == this.op ? hashcode : Ints.superFastHash(label);
     }
 }
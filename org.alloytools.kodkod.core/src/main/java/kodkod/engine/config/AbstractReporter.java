@@ -83,6 +83,12 @@ public abstract class AbstractReporter implements Reporter {
     @Override
     public void solvingCNF(int primaryVars, int vars, int clauses) {}
 
+    /**
+     * @see kodkod.engine.config.Reporter#progress(kodkod.engine.config.Metrics)
+     */
+    @Override
+    public void progress(Metrics metrics) {}
+
     /**
      * @see kodkod.engine.config.Reporter#optimizingBoundsAndFormula()
      */
@@ -123,6 +129,9 @@ public abstract class AbstractReporter implements Reporter {
     @Override
     public void holFindingNextCandidate(HOLTranslation tr, Formula inc) {}
 
+    @Override
+    public void holIterationTime(HOLTranslation tr, int iteration, long candidateTime, long verificationTime, long refinementTime) {}
+
     @Override
     public void holSplitStart(HOLTranslation tr, Formula formula) {}
 
@@ -0,0 +1,546 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.config;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import kodkod.engine.AbortedException;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.engine.satlab.SearchStatistics;
+
+/**
+ * A cancellation token and resource budget for the analyses performed with a
+ * given set of options. A budget limits the wall-clock time of each analysis,
+ * the number of gates that its translation to a boolean circuit may create,
+ * and the number of clauses that its translation to CNF may emit; a limit of 0
+ * stands for no limit. A budget can also be {@linkplain #cancel() cancelled}
+ * from any thread.
+ * <p>
+ * The engine checks the budget at safe points: whenever the translation enters
+ * a new stage, at each grounding of a quantified formula, comprehension or sum,
+ * every {@value #GATE_INTERVAL} gates and at the first gate over the limit, and
+ * every time a batch of clauses is passed to the sat solver. A cancelled or
+ * exceeded budget makes the check throw an {@link AbortedException} whose
+ * {@link AbortedException#usage() usage} describes how far the analysis got.
+ * The clause limit may thus be overshot by up to one batch of clauses.
+ * While the sat solver is searching, the budget asks it to
+ * {@linkplain SATSolver#abort() abort} as soon as the budget is cancelled or
+ * runs out of time; a solver that cannot be aborted runs to completion.
+ * </p>
+ * <p>
+ * The wall-clock limit applies to the analyses started by
+ * {@link kodkod.engine.Solver#solve(kodkod.ast.Formula, kodkod.instance.Bounds)
+ * Solver.solve} and by each call to the next method of the iterators returned
+ * by its solveAll methods. Cancellation is permanent: once cancelled, a budget
+ * aborts every analysis that uses it.
+ * </p>
+ * <p>
+ * A budget times and counts one analysis at a time. The solver therefore runs
+ * each analysis under its own {@linkplain #fork() fork} of the budget in its
+ * options, so options with a budget may be shared by concurrent analyses: each
+ * of them gets the full limits, and cancelling the shared budget aborts all of
+ * them.
+ * </p>
+ *
+ * @specfield millis: long // the wall-clock limit, in milliseconds
+ * @specfield gates: long // the gate limit
+ * @specfield clauses: long // the clause limit
+ * @specfield parent: lone Budget // the budget that this one was forked from
+ * @specfield cancelled: boolean
+ * @specfield running: boolean // whether an analysis is in progress
+ * @see Options#budget()
+ */
+public final class Budget {
+
+    /**
+     * The limits of a budget.
+     */
+    public static enum Limit {
+                              /**
+                               * The budget was cancelled.
+                               */
+                              CANCELLED,
+                              /**
+                               * The analysis ran out of time.
+                               */
+                              TIME,
+                              /**
+                               * The translation created too many gates.
+                               */
+                              GATES,
+                              /**
+                               * The translation emitted too many clauses.
+                               */
+                              CLAUSES;
+    }
+
+    /**
+     * The resources that an analysis had used when it was aborted.
+     *
+     * @specfield limit: lone Limit // the limit that was exceeded, if any
+     * @specfield stage: Metrics.Stage
+     * @specfield millis, gates, clauses: long
+     * @specfield search: lone SearchStatistics
+     */
+    public static final class Usage {
+
+        private final Limit            limit;
+        private final Metrics.Stage    stage;
+        private final long             millis, gates, clauses;
+        private final SearchStatistics search;
+
+        private Usage(Limit limit, Metrics.Stage stage, long millis, long gates, long clauses, SearchStatistics search) {
+            this.limit = limit;
+            this.stage = stage;
+            this.millis = millis;
+            this.gates = gates;
+            this.clauses = clauses;
+            this.search = search;
+        }
+
+        /**
+         * Returns the limit of the budget that was exceeded, or null if the
+         * analysis was aborted for another reason, such as an interrupted sat
+         * solver.
+         *
+         * @return this.limit
+         */
+        public Limit limit() {
+            return limit;
+        }
+
+        /**
+         * Returns the stage that the analysis was in.
+         *
+         * @return this.stage
+         */
+        public Metrics.Stage stage() {
+            return stage;
+        }
+
+        /**
+         * Returns the number of milliseconds that the analysis had run for, or 0
+         * if it was not timed.
+         *
+         * @return this.millis
+         */
+        public long millis() {
+            return millis;
+        }
+
+        /**
+         * Returns the number of gates that the translation had created when the
+         * budget was last checked.
+         *
+         * @return this.gates
+         */
+        public long gates() {
+            return gates;
+        }
+
+        /**
+         * Returns the number of clauses that the translation had emitted when the
+         * budget was last checked.
+         *
+         * @return this.clauses
+         */
+        public long clauses() {
+            return clauses;
+        }
+
+        /**
+         * Returns the search statistics of the sat solver, or null if the
+         * analysis had not started solving or the solver keeps none.
+         *
+         * @return this.search
+         */
+        public SearchStatistics search() {
+            return search;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            final StringBuilder b = new StringBuilder();
+            if (limit == null)
+                b.append("aborted");
+            else if (limit == Limit.CANCELLED)
+                b.append("cancelled");
+            else
+                b.append(limit.name().toLowerCase()).append(" limit exceeded");
+            b.append(" after ").append(millis).append(" ms in ").append(stage);
+            b.append(" (gates: ").append(gates).append(", clauses: ").append(clauses);
+            if (search != null)
+                b.append(", ").append(search);
+            b.append(")");
+            return b.toString();
+        }
+    }
+
+    /**
+     * The number of gates created between two checks of a budget.
+     */
+    public static final int                 GATE_INTERVAL = 1 << 10;
+
+    /**
+     * How often, in milliseconds, an abort request is re-sent to a sat solver
+     * that has not yet stopped.
+     */
+    private static final long               ABORT_POLL    = 10;
+
+    private static ScheduledExecutorService watchdog;
+
+    private final long                      millis, gates, clauses;
+    private final Budget                    parent;
+    private final Set<Budget>               forks         = new HashSet<Budget>();
+    private volatile boolean                cancelled;
+    private boolean                         running;
+    private long                            started, deadline;
+    private Metrics.Stage                   stage;
+    private long                            usedGates, usedClauses;
+    private SATSolver                       solver;
+    private ScheduledFuture< ? >            aborting;
+
+    /**
+     * Constructs a budget with the given limits, each of which is disabled if it
+     * is 0.
+     *
+     * @ensures this.millis' = millis && this.gates' = gates && this.clauses' =
+     *          clauses && !this.cancelled' && !this.running'
+     * @throws IllegalArgumentException millis < 0 || gates < 0 || clauses < 0
+     */
+    public Budget(long millis, long gates, long clauses) {
+        if (millis < 0 || gates < 0 || clauses < 0)
+            throw new IllegalArgumentException("negative limit: " + millis + ", " + gates + ", " + clauses);
+        this.millis = millis;
+        this.gates = gates;
+        this.clauses = clauses;
+        this.parent = null;
+        this.stage = Metrics.Stage.IDLE;
+    }
+
+    /**
+     * Constructs a fork of the given budget.
+     *
+     * @ensures this.millis' = parent.millis && this.gates' = parent.gates &&
+     *          this.clauses' = parent.clauses && this.parent' = parent &&
+     *          !this.cancelled' && !this.running'
+     */
+    private Budget(Budget parent) {
+        this.millis = parent.millis;
+        this.gates = parent.gates;
+        this.clauses = parent.clauses;
+        this.parent = parent;
+        this.stage = Metrics.Stage.IDLE;
+    }
+
+    /**
+     * Constructs an unlimited budget, which serves only as a cancellation token.
+     *
+     * @ensures this.millis' = 0 && this.gates' = 0 && this.clauses' = 0 &&
+     *          !this.cancelled' && !this.running'
+     */
+    public Budget() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * Returns the thread that sends abort requests to the sat solvers of all
+     * budgets.
+     */
+    private static synchronized ScheduledExecutorService watchdog() {
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "kodkod-budget");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return watchdog;
+    }
+
+    /**
+     * Returns the wall-clock limit of this budget, in milliseconds.
+     *
+     * @return this.millis
+     */
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * Returns the gate limit of this budget.
+     *
+     * @return this.gates
+     */
+    public long gates() {
+        return gates;
+    }
+
+    /**
+     * Returns the clause limit of this budget.
+     *
+     * @return this.clauses
+     */
+    public long clauses() {
+        return clauses;
+    }
+
+    /**
+     * Returns a new budget for one analysis, with the limits of this budget. The
+     * fork has its own clock and usage counters, and it is cancelled whenever
+     * this budget is.
+     *
+     * @return some b: Budget | b.millis = this.millis && b.gates = this.gates &&
+     *         b.clauses = this.clauses && b.parent = this && !b.running
+     */
+    public Budget fork() {
+        return new Budget(this);
+    }
+
+    /**
+     * Cancels this budget, aborting the running analyses of this budget and of
+     * its forks, if any, at their next safe points. This method may be called by
+     * any thread.
+     *
+     * @ensures this.cancelled'
+     */
+    public void cancel() {
+        cancelled = true;
+        final Budget[] running;
+        synchronized (this) {
+            if (solver != null)
+                abort(0);
+            running = forks.toArray(new Budget[forks.size()]);
+        }
+        for (Budget fork : running) {
+            fork.cancel();
+        }
+    }
+
+    /**
+     * Returns true if this budget, or the budget that it was forked from, has
+     * been cancelled.
+     *
+     * @return this.cancelled || (some this.parent && this.parent.cancelled())
+     */
+    public boolean cancelled() {
+        return cancelled || (parent != null && parent.cancelled());
+    }
+
+    /**
+     * Starts the clock of a new analysis, unless one is already running.
+     *
+     * @ensures !this.running => (this.running' && the usage counters are reset)
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        started = System.nanoTime();
+        deadline = started + TimeUnit.MILLISECONDS.toNanos(millis);
+        stage = Metrics.Stage.STARTED;
+        usedGates = usedClauses = 0;
+        if (parent != null) {
+            synchronized (parent) {
+                parent.forks.add(this);
+            }
+        }
+    }
+
+    /**
+     * Stops the clock of the running analysis, if any, and withdraws any pending
+     * abort requests for its sat solver.
+     *
+     * @ensures !this.running'
+     */
+    public synchronized void stop() {
+        running = false;
+        solver = null;
+        if (aborting != null) {
+            aborting.cancel(false);
+            aborting = null;
+        }
+        if (parent != null) {
+            synchronized (parent) {
+                parent.forks.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Returns true if this budget is running out of time.
+     */
+    private boolean expired() {
+        return running && millis > 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Checks that this budget has not been cancelled and that the running
+     * analysis, if any, has time left.
+     *
+     * @throws AbortedException this.cancelled or the running analysis has run out
+     *             of time
+     */
+    public void check() {
+        if (cancelled())
+            throw exceeded(Limit.CANCELLED);
+        if (expired())
+            throw exceeded(Limit.TIME);
+    }
+
+    /**
+     * Records that the analysis has entered the given stage, and checks this
+     * budget.
+     *
+     * @throws AbortedException this.cancelled or the running analysis has run out
+     *             of time
+     * @see #check()
+     */
+    public void stage(Metrics.Stage stage) {
+        this.stage = stage;
+        check();
+    }
+
+    /**
+     * Records that the translation has created the given number of gates, and
+     * checks this budget.
+     *
+     * @throws AbortedException this.cancelled, or the translation has created more
+     *             than this.gates gates, or the running analysis has run out of
+     *             time
+     * @see #check()
+     */
+    public void gates(long created) {
+        usedGates = created;
+        if (gates > 0 && created > gates)
+            throw exceeded(Limit.GATES);
+        check();
+    }
+
+    /**
+     * Records that the translation has emitted the given number of clauses, and
+     * checks this budget.
+     *
+     * @throws AbortedException this.cancelled, or the translation has emitted more
+     *             than this.clauses clauses, or the running analysis has run out
+     *             of time
+     * @see #check()
+     */
+    public void clauses(long emitted) {
+        usedClauses = emitted;
+        if (clauses > 0 && emitted > clauses)
+            throw exceeded(Limit.CLAUSES);
+        check();
+    }
+
+    /**
+     * Checks this budget and then tells it that the running analysis is about to
+     * search the given sat solver, which will be asked to abort as soon as this
+     * budget is cancelled or runs out of time.
+     *
+     * @throws AbortedException this.cancelled or the running analysis has run out
+     *             of time
+     */
+    public synchronized void observe(SATSolver solver) {
+        stage(Metrics.Stage.SOLVING);
+        this.solver = solver;
+        if (running && millis > 0)
+            abort(Math.max(0, deadline - System.nanoTime()));
+    }
+
+    /**
+     * Schedules the abort requests for this.solver, starting after the given
+     * number of nanoseconds, and replacing any requests scheduled earlier.
+     *
+     * @requires this.solver != null && Thread.holdsLock(this)
+     */
+    private void abort(long delay) {
+        if (aborting != null)
+            aborting.cancel(false);
+        aborting = watchdog().scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                final SATSolver s;
+                synchronized (Budget.this) {
+                    s = solver;
+                }
+                if (s != null)
+                    s.abort(); // re-sent, since a request may arrive before the search starts
+            }
+        }, delay, TimeUnit.MILLISECONDS.toNanos(ABORT_POLL), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the resources used by the running or last analysis, attributing
+     * its end to the given limit.
+     */
+    private synchronized Usage usage(Limit limit) {
+        final long elapsed = running ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) : 0;
+        return new Usage(limit, stage, elapsed, usedGates, usedClauses, solver == null ? null : solver.statistics());
+    }
+
+    /**
+     * Returns an exception reporting that the given limit has been exceeded.
+     */
+    private AbortedException exceeded(Limit limit) {
+        return new AbortedException(usage(limit), null);
+    }
+
+    /**
+     * Returns an exception reporting that the running analysis was aborted
+     * because of the given cause, such as a {@link kodkod.engine.satlab.SATAbortedException}.
+     * The exception blames this budget if it has been cancelled or has run out of
+     * time.
+     *
+     * @return an exception with the given cause and the usage of the running
+     *         analysis
+     */
+    public AbortedException aborted(Throwable cause) {
+        return new AbortedException(usage(cancelled() ? Limit.CANCELLED : expired() ? Limit.TIME : null), cause);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "budget(millis: " + millis + ", gates: " + gates + ", clauses: " + clauses + (cancelled() ? ", cancelled)" : ")");
+    }
+}
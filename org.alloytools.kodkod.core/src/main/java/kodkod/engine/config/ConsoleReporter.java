@@ -73,6 +73,14 @@ public final class ConsoleReporter implements Reporter {
         System.out.println("solving p cnf " + vars + " " + clauses);
     }
 
+    /**
+     * @see kodkod.engine.config.Reporter#progress(kodkod.engine.config.Metrics)
+     */
+    @Override
+    public void progress(Metrics metrics) {
+        System.out.println("progress: " + metrics);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -162,6 +170,11 @@ public final class ConsoleReporter implements Reporter {
         System.out.println(String.format("  [%s] continuing cegis loop", tr.getClass()));
     }
 
+    @Override
+    public void holIterationTime(HOLTranslation tr, int iteration, long candidateTime, long verificationTime, long refinementTime) {
+        System.out.println(String.format("  [%s] iteration %d: candidate %d ms, verification %d ms, refinement %d ms", tr, iteration, candidateTime, verificationTime, refinementTime));
+    }
+
     @Override
     public void holSplitStart(HOLTranslation tr, Formula formula) {
         System.out.println(String.format("starting split (%s) ...", tr));
@@ -0,0 +1,560 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.config;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.engine.satlab.SearchStatistics;
+
+/**
+ * The live metrics of an analysis: the stage that the analysis is in and the
+ * time spent in each stage, the number of gates created by the translation to
+ * a boolean circuit and the hit rate of its cache, the number of clauses
+ * emitted by the translation to CNF, and the search statistics of the sat
+ * solver. The engine tells the metrics about each stage as it enters it, and
+ * about the boolean factory, translation cache and sat solver that it uses; the
+ * metrics poll these for their counters whenever they are read, so they can be
+ * read by any thread while the analysis is running.
+ * <p>
+ * While an analysis is running, its metrics are registered with the platform
+ * MBean server under {@link #name()}. If the sampling interval of the metrics
+ * is positive, a daemon sampling thread also passes them to
+ * {@link Reporter#progress(Metrics)} every interval milliseconds, and once more
+ * when the analysis completes. The metrics are started and stopped by
+ * {@link kodkod.engine.Solver#solve(kodkod.ast.Formula, kodkod.instance.Bounds)
+ * Solver.solve} and by each call to the next method of the iterators returned
+ * by its solveAll methods.
+ * </p>
+ *
+ * @specfield interval: long // the sampling interval, in milliseconds
+ * @specfield running: boolean // whether an analysis is in progress
+ * @specfield stage: Stage
+ * @see Options#metrics()
+ */
+public final class Metrics implements MetricsMBean {
+
+    /**
+     * The stages of an analysis.
+     */
+    public static enum Stage {
+                              /**
+                               * No analysis has been started.
+                               */
+                              IDLE,
+                              /**
+                               * The analysis has started but not yet reached symmetry detection.
+                               */
+                              STARTED,
+                              /**
+                               * The symmetries of the bounds are being detected.
+                               */
+                              SYMMETRY_DETECTION,
+                              /**
+                               * The bounds and formula are being optimized.
+                               */
+                              OPTIMIZATION,
+                              /**
+                               * The formula is being skolemized.
+                               */
+                              SKOLEMIZATION,
+                              /**
+                               * The formula is being translated to a boolean circuit.
+                               */
+                              TRANSLATION_TO_BOOLEAN,
+                              /**
+                               * The symmetry breaking predicate is being generated.
+                               */
+                              SBP_GENERATION,
+                              /**
+                               * The circuit is being translated to CNF.
+                               */
+                              TRANSLATION_TO_CNF,
+                              /**
+                               * The sat solver is searching for a model of the CNF.
+                               */
+                              SOLVING,
+                              /**
+                               * The analysis has completed.
+                               */
+                              DONE;
+    }
+
+    /**
+     * A counter that the metrics poll for its current value.
+     */
+    public static interface Counter {
+
+        /**
+         * Returns the current value of this counter.
+         */
+        public long value();
+    }
+
+    private static final AtomicInteger     ids = new AtomicInteger();
+    private static ScheduledExecutorService sampler;
+
+    private final long                     interval;
+    private final ObjectName               name;
+    private final long[]                   nanos;
+    private boolean                        running;
+    private Stage                          stage;
+    private long                           started, entered, finished;
+    private Reporter                       reporter;
+    private ScheduledFuture< ? >           sampling;
+
+    private BooleanFactory                 factory;
+    private Counter                        hits, misses;
+    private SATSolver                      solver;
+    private long                           variables, gates, cacheHits, cacheMisses, clauses;
+    private SearchStatistics               search;
+
+    /**
+     * Constructs metrics that are sampled every {@code interval} milliseconds
+     * while an analysis is running, or never if the interval is 0.
+     *
+     * @ensures this.interval' = interval && !this.running' && this.stage' = IDLE
+     * @throws IllegalArgumentException interval < 0
+     */
+    public Metrics(long interval) {
+        if (interval < 0)
+            throw new IllegalArgumentException("interval < 0: " + interval);
+        this.interval = interval;
+        this.nanos = new long[Stage.values().length];
+        this.stage = Stage.IDLE;
+        try {
+            this.name = new ObjectName("kodkod:type=Metrics,id=" + ids.incrementAndGet());
+        } catch (JMException e) {
+            throw new AssertionError(e); // the name is well-formed
+        }
+    }
+
+    /**
+     * Constructs metrics that are never sampled; they can still be read through
+     * JMX or by the client.
+     *
+     * @ensures this.interval' = 0 && !this.running' && this.stage' = IDLE
+     */
+    public Metrics() {
+        this(0);
+    }
+
+    /**
+     * Returns the thread that samples all metrics with a positive interval.
+     */
+    private static synchronized ScheduledExecutorService sampler() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "kodkod-metrics");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sampler;
+    }
+
+    /**
+     * Returns the sampling interval of these metrics, in milliseconds.
+     *
+     * @return this.interval
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * Returns the name under which these metrics are registered with the platform
+     * MBean server while an analysis is running.
+     *
+     * @return the JMX name of this
+     */
+    public ObjectName name() {
+        return name;
+    }
+
+    /**
+     * Starts the metrics of a new analysis, whose progress will be reported to the
+     * given reporter, unless an analysis is already running. This registers these
+     * metrics with the platform MBean server and, if this.interval is positive,
+     * schedules their sampling.
+     *
+     * @ensures !this.running => (this.running' && this.stage' = STARTED && all
+     *          counters are reset)
+     */
+    public synchronized void start(Reporter reporter) {
+        if (running)
+            return;
+        running = true;
+        this.reporter = reporter;
+        Arrays.fill(nanos, 0);
+        factory = null;
+        hits = misses = null;
+        solver = null;
+        variables = gates = cacheHits = cacheMisses = clauses = 0;
+        search = null;
+        started = entered = finished = System.nanoTime();
+        stage = Stage.STARTED;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {} // the metrics remain available to the reporter
+        if (interval > 0) {
+            sampling = sampler().scheduleAtFixedRate(new Runnable() {
+
+                @Override
+                public void run() {
+                    report();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Passes these metrics to the reporter of the current analysis, if any.
+     */
+    private void report() {
+        final Reporter r;
+        synchronized (this) {
+            r = reporter;
+        }
+        if (r != null)
+            r.progress(this);
+    }
+
+    /**
+     * Records that the running analysis has entered the given stage.
+     *
+     * @ensures this.running => this.stage' = stage
+     */
+    public synchronized void stage(Stage stage) {
+        if (!running)
+            return;
+        final long now = System.nanoTime();
+        nanos[this.stage.ordinal()] += now - entered;
+        entered = now;
+        this.stage = stage;
+    }
+
+    /**
+     * Tells these metrics that the running analysis is translating to a boolean
+     * circuit with the given factory, and counting the hits and misses of its
+     * translation cache with the given counters.
+     */
+    public synchronized void observe(BooleanFactory factory, Counter hits, Counter misses) {
+        if (!running)
+            return;
+        this.factory = factory;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Tells these metrics that the running analysis is emitting clauses to, or
+     * solving, the given sat solver. This takes a last reading of the boolean
+     * factory and cache, if any, and then releases them so that the circuit can
+     * be garbage collected.
+     */
+    public synchronized void observe(SATSolver solver) {
+        if (!running)
+            return;
+        refresh();
+        this.factory = null;
+        this.hits = this.misses = null;
+        this.solver = solver;
+    }
+
+    /**
+     * Stops the metrics of the running analysis, if any, unregisters them from
+     * the platform MBean server, and reports them one last time if this.interval
+     * is positive.
+     *
+     * @ensures this.running => (!this.running' && this.stage' = DONE)
+     */
+    public void stop() {
+        final Reporter r;
+        synchronized (this) {
+            if (!running)
+                return;
+            stage(Stage.DONE);
+            refresh();
+            factory = null;
+            hits = misses = null;
+            solver = null;
+            running = false;
+            finished = System.nanoTime();
+            if (sampling != null) {
+                sampling.cancel(false);
+                sampling = null;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {} // was not registered
+            r = interval > 0 ? reporter : null;
+            reporter = null;
+        }
+        if (r != null)
+            r.progress(this);
+    }
+
+    /**
+     * Reads the counters of the factory, cache and solver of the running
+     * analysis, if any.
+     */
+    private void refresh() {
+        if (factory != null) {
+            final int vars = factory.maxVariable();
+            variables = vars;
+            gates = factory.maxFormula() - vars;
+        }
+        if (hits != null) {
+            cacheHits = hits.value();
+            cacheMisses = misses.value();
+        }
+        if (solver != null) {
+            variables = solver.numberOfVariables();
+            clauses = solver.numberOfClauses();
+            final SearchStatistics stats = solver.statistics();
+            if (stats != null)
+                search = stats;
+        }
+    }
+
+    /**
+     * Returns true if an analysis is running.
+     *
+     * @return this.running
+     */
+    public synchronized boolean running() {
+        return running;
+    }
+
+    /**
+     * Returns the stage that the running analysis is in, or that the last one
+     * ended in.
+     *
+     * @return this.stage
+     */
+    public synchronized Stage stage() {
+        return stage;
+    }
+
+    /**
+     * Returns the number of nanoseconds that the current or last analysis has
+     * spent in the given stage.
+     */
+    private long nanos(Stage s) {
+        return nanos[s.ordinal()] + (running && s == stage ? System.nanoTime() - entered : 0);
+    }
+
+    /**
+     * Returns the number of milliseconds that the current or last analysis has
+     * spent in the given stage.
+     *
+     * @return the time spent in the given stage, in milliseconds
+     */
+    public synchronized long millis(Stage s) {
+        return nanos(s) / 1000000;
+    }
+
+    /**
+     * Returns the search statistics of the sat solver, or null if it keeps none
+     * or the analysis has not started solving.
+     *
+     * @return the search statistics of the sat solver
+     */
+    public synchronized SearchStatistics search() {
+        if (running)
+            refresh();
+        return search;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getStage()
+     */
+    @Override
+    public synchronized String getStage() {
+        return stage.name();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getElapsedMillis()
+     */
+    @Override
+    public synchronized long getElapsedMillis() {
+        return ((running ? System.nanoTime() : finished) - started) / 1000000;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getStageMillis()
+     */
+    @Override
+    public synchronized long getStageMillis() {
+        return running ? millis(stage) : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getVariables()
+     */
+    @Override
+    public synchronized long getVariables() {
+        if (running)
+            refresh();
+        return variables;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getGates()
+     */
+    @Override
+    public synchronized long getGates() {
+        if (running)
+            refresh();
+        return gates;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getCacheHitRate()
+     */
+    @Override
+    public synchronized double getCacheHitRate() {
+        if (running)
+            refresh();
+        final long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getClauses()
+     */
+    @Override
+    public synchronized long getClauses() {
+        if (running)
+            refresh();
+        return clauses;
+    }
+
+    /**
+     * Returns the number of clauses emitted per second of the translation to CNF,
+     * so far if the translation is in progress.
+     *
+     * @see kodkod.engine.config.MetricsMBean#getClausesPerSecond()
+     */
+    @Override
+    public synchronized double getClausesPerSecond() {
+        if (running)
+            refresh();
+        final long n = nanos(Stage.TRANSLATION_TO_CNF);
+        return n == 0 ? 0 : clauses * 1e9 / n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getConflicts()
+     */
+    @Override
+    public synchronized long getConflicts() {
+        final SearchStatistics s = search();
+        return s == null ? -1 : s.conflicts();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getDecisions()
+     */
+    @Override
+    public synchronized long getDecisions() {
+        final SearchStatistics s = search();
+        return s == null ? -1 : s.decisions();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getPropagations()
+     */
+    @Override
+    public synchronized long getPropagations() {
+        final SearchStatistics s = search();
+        return s == null ? -1 : s.propagations();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.config.MetricsMBean#getRestarts()
+     */
+    @Override
+    public synchronized long getRestarts() {
+        final SearchStatistics s = search();
+        return s == null ? -1 : s.restarts();
+    }
+
+    /**
+     * Returns a one-line summary of these metrics.
+     *
+     * @return a string representation of this
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder ret = new StringBuilder();
+        ret.append(stage).append(" for ").append(getStageMillis()).append(" ms");
+        ret.append(", elapsed: ").append(getElapsedMillis()).append(" ms");
+        ret.append(", variables: ").append(getVariables());
+        ret.append(", gates: ").append(gates);
+        ret.append(", cache hit rate: ").append(String.format("%.2f", getCacheHitRate()));
+        ret.append(", clauses: ").append(clauses);
+        ret.append(" (").append(Math.round(getClausesPerSecond())).append(" per second)");
+        if (search != null)
+            ret.append(", ").append(search);
+        return ret.toString();
+    }
+}
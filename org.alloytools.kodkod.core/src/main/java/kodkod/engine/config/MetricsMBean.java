@@ -0,0 +1,97 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.config;
+
+/**
+ * The management interface of {@link Metrics}, through which the progress of a
+ * running analysis can be observed with JMX.
+ *
+ * @see Metrics
+ */
+public interface MetricsMBean {
+
+    /**
+     * Returns the name of the stage that the analysis is in.
+     */
+    public String getStage();
+
+    /**
+     * Returns the number of milliseconds since the analysis started.
+     */
+    public long getElapsedMillis();
+
+    /**
+     * Returns the number of milliseconds that the analysis has spent in its
+     * current stage.
+     */
+    public long getStageMillis();
+
+    /**
+     * Returns the number of boolean variables allocated so far.
+     */
+    public long getVariables();
+
+    /**
+     * Returns the number of gates created so far by the translation to a boolean
+     * circuit.
+     */
+    public long getGates();
+
+    /**
+     * Returns the fraction of lookups in the translation cache that were hits, or
+     * 0 if there were no lookups.
+     */
+    public double getCacheHitRate();
+
+    /**
+     * Returns the number of clauses emitted so far by the translation to CNF.
+     */
+    public long getClauses();
+
+    /**
+     * Returns the number of clauses emitted per second by the translation to CNF.
+     */
+    public double getClausesPerSecond();
+
+    /**
+     * Returns the number of conflicts encountered by the sat solver, or -1 if
+     * unknown.
+     */
+    public long getConflicts();
+
+    /**
+     * Returns the number of decisions made by the sat solver, or -1 if unknown.
+     */
+    public long getDecisions();
+
+    /**
+     * Returns the number of propagations performed by the sat solver, or -1 if
+     * unknown.
+     */
+    public long getPropagations();
+
+    /**
+     * Returns the number of restarts performed by the sat solver, or -1 if
+     * unknown.
+     */
+    public long getRestarts();
+}
@@ -21,6 +21,7 @@
  */
 package kodkod.engine.config;
 
+import kodkod.engine.fol2sat.TranslationCache;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.util.ints.IntRange;
 import kodkod.util.ints.Ints;
@@ -33,8 +34,14 @@ import kodkod.util.ints.Ints;
  * @specfield reporter: Reporter // reporter to use
  * @specfield symmetryBreaking: int // the amount of symmetry breaking to
  *            perform
+ * @specfield symmetryThreads: int // the number of threads used for symmetry
+ *            detection and breaking
  * @specfield sharing: int // the depth to which circuits should be checked for
  *            equivalence during translation
+ * @specfield bindingCacheCapacity: int // the total weight of the translations
+ *            cached for the bindings of free variables during translation
+ * @specfield internNodes: boolean // whether structurally identical nodes are
+ *            interned before translation
  * @specfield intEncoding: IntEncoding // encoding to use for translating int
  *            expressions
  * @specfield bitwidth: int // the bitwidth to use for integer representation /
@@ -48,6 +55,14 @@ import kodkod.util.ints.Ints;
  *            (only top-level conjuncts are considered)
  * @specfield allowHOL: boolean // allow higher-order quantification
  * @specfield holSome4AllMaxIter: boolean // allow higher-order quantification
+ * @specfield holOrThreads: int // the number of threads used to solve the
+ *            disjuncts of a higher-order disjunction
+ * @specfield deterministic: boolean // whether parallel analyses must produce
+ *            the same results as sequential ones
+ * @specfield metrics: lone Metrics // the live metrics of the analyses
+ *            performed with these options
+ * @specfield budget: lone Budget // the cancellation token and resource limits
+ *            of the analyses performed with these options
  * @author Emina Torlak
  */
 public final class Options implements Cloneable {
@@ -66,20 +81,29 @@ public final class Options implements Cloneable {
         }
     }
 
-    private Reporter       reporter           = new AbstractReporter() {};
-    private SATFactory     solver             = SATFactory.DefaultSAT4J;
-    private int            symmetryBreaking   = 20;
-    private IntEncoding    intEncoding        = IntEncoding.TWOSCOMPLEMENT;
-    private int            bitwidth           = 4;
-    private int            sharing            = 3;
-    private OverflowPolicy ofPolicy           = OverflowPolicy.NONE;
-    private boolean        allowHOL           = false;
-    private boolean        holFullIncrements  = true;
-    private int            holSome4AllMaxIter = -1;
-    private int            holFixpointMaxIter = -1;
-    private int            skolemDepth        = 0;
-    private int            logTranslation     = 0;
-    private int            coreGranularity    = 0;
+    private Reporter         reporter             = new AbstractReporter() {};
+    private SATFactory       solver               = SATFactory.DefaultSAT4J;
+    private int              symmetryBreaking     = 20;
+    private int              symmetryThreads      = 1;
+    private IntEncoding      intEncoding          = IntEncoding.TWOSCOMPLEMENT;
+    private int              bitwidth             = 4;
+    private int              sharing              = 3;
+    private int              bindingCacheCapacity = 0;
+    private boolean          internNodes          = false;
+    private OverflowPolicy   ofPolicy             = OverflowPolicy.NONE;
+    private boolean          allowHOL             = false;
+    private boolean          holFullIncrements    = true;
+    private int              holSome4AllMaxIter   = -1;
+    private int              holFixpointMaxIter   = -1;
+    private int              holOrThreads         = 1;
+    private boolean          deterministic        = false;
+    private int              skolemDepth          = 0;
+    private int              logTranslation       = 0;
+    private int              coreGranularity      = 0;
+    private TranslationCache translationCache     = null;
+    private boolean          primitiveMatrices    = false;
+    private Metrics          metrics              = null;
+    private Budget           budget               = null;
 
     // [AM]
     public static boolean isDebug() {
@@ -191,6 +215,50 @@ public final class Options implements Cloneable {
     public void setHolFixpointMaxIter(int val) {
         this.holFixpointMaxIter = val;
     }
+
+    /**
+     * Returns the number of threads used to solve the disjuncts of a higher-order
+     * disjunction. If it is 1, the disjuncts are solved one after the other, in
+     * order. Otherwise, each disjunct is solved by its own SAT solver, and the
+     * reporter may be called from several threads at once. The default is 1.
+     *
+     * @return this.holOrThreads
+     */
+    public int getHolOrThreads() {
+        return holOrThreads;
+    }
+
+    /**
+     * Sets the holOrThreads option to the given value.
+     *
+     * @ensures this.holOrThreads' = val
+     * @throws IllegalArgumentException val !in [1..Integer.MAX_VALUE]
+     */
+    public void setHolOrThreads(int val) {
+        checkRange(val, 1, Integer.MAX_VALUE);
+        this.holOrThreads = val;
+    }
+
+    /**
+     * Returns the value of the deterministic flag. If it is true, the analyses
+     * that run on several threads produce the same solutions, in the same order,
+     * as the sequential ones, at the cost of waiting for the slowest thread. The
+     * default is false.
+     *
+     * @return this.deterministic
+     */
+    public boolean deterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Sets the deterministic flag to the given value.
+     *
+     * @ensures this.deterministic' = deterministic
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
     // ============
 
     /**
@@ -289,6 +357,29 @@ public final class Options implements Cloneable {
         this.symmetryBreaking = symmetryBreaking;
     }
 
+    /**
+     * Returns the number of threads used to detect symmetries and to generate the
+     * lex-leader symmetry breaking predicate. The detected symmetries and the
+     * generated predicate do not depend on this value. The default is 1, which
+     * performs both steps in the calling thread.
+     *
+     * @return this.symmetryThreads
+     */
+    public int symmetryThreads() {
+        return symmetryThreads;
+    }
+
+    /**
+     * Sets the symmetryThreads option to the given value.
+     *
+     * @ensures this.symmetryThreads' = symmetryThreads
+     * @throws IllegalArgumentException symmetryThreads !in [1..Integer.MAX_VALUE]
+     */
+    public void setSymmetryThreads(int symmetryThreads) {
+        checkRange(symmetryThreads, 1, Integer.MAX_VALUE);
+        this.symmetryThreads = symmetryThreads;
+    }
+
     /**
      * Returns the depth to which circuits are checked for equivalence during
      * translation. The default depth is 3, and the minimum allowed depth is 1.
@@ -312,6 +403,54 @@ public final class Options implements Cloneable {
         this.sharing = sharing;
     }
 
+    /**
+     * Returns the capacity of the cache that holds the translations of
+     * subformulas and subexpressions with free variables, for the bindings of
+     * those variables. The weight of a cached matrix is its density, and that of
+     * any other cached translation is 1. When the total weight exceeds the
+     * capacity, the least recently used translations are evicted. The default
+     * capacity of 0 means that only the translation for the most recent binding of
+     * each subformula or subexpression is cached.
+     *
+     * @return this.bindingCacheCapacity
+     */
+    public int bindingCacheCapacity() {
+        return bindingCacheCapacity;
+    }
+
+    /**
+     * Sets the bindingCacheCapacity option to the given value.
+     *
+     * @ensures this.bindingCacheCapacity' = capacity
+     * @throws IllegalArgumentException capacity !in [0..Integer.MAX_VALUE]
+     */
+    public void setBindingCacheCapacity(int capacity) {
+        checkRange(capacity, 0, Integer.MAX_VALUE);
+        this.bindingCacheCapacity = capacity;
+    }
+
+    /**
+     * Returns true if structurally identical subformulas and subexpressions of a
+     * formula, up to the names of their bound variables, are replaced with one
+     * shared node before translation, so that they are translated once. Interning
+     * is not performed when translation logging is enabled. The default is false.
+     *
+     * @return this.internNodes
+     * @see kodkod.util.nodes.NodeInterner
+     */
+    public boolean internNodes() {
+        return internNodes;
+    }
+
+    /**
+     * Sets the internNodes option to the given value.
+     *
+     * @ensures this.internNodes' = internNodes
+     */
+    public void setInternNodes(boolean internNodes) {
+        this.internNodes = internNodes;
+    }
+
     /**
      * Returns the depth to which existential quantifiers are skolemized. A negative
      * depth means that no skolemization is performed. The default depth of 0 means
@@ -394,6 +533,93 @@ public final class Options implements Cloneable {
         this.coreGranularity = coreGranularity;
     }
 
+    /**
+     * Returns the cache used to store and retrieve the translations of problems
+     * that are solved with these options, or null if translations are not cached.
+     * The default is null. Translations are never cached when
+     * {@linkplain #logTranslation() logging} is enabled.
+     *
+     * @return this.translationCache
+     * @see kodkod.engine.fol2sat.Translator#translate(kodkod.ast.Formula,
+     *      kodkod.instance.Bounds, Options)
+     */
+    public TranslationCache translationCache() {
+        return translationCache;
+    }
+
+    /**
+     * Sets the translation cache; null disables caching.
+     *
+     * @ensures this.translationCache' = translationCache
+     */
+    public void setTranslationCache(TranslationCache translationCache) {
+        this.translationCache = translationCache;
+    }
+
+    /**
+     * Returns true if the boolean matrices that represent relational expressions
+     * during translation compute joins and products over primitive arrays rather
+     * than through the iterators of their sparse cell sequences. Both algorithms
+     * produce the same circuits, but the primitive one allocates less and is
+     * faster on dense matrices at larger scopes. The default is false.
+     *
+     * @return this.primitiveMatrices
+     */
+    public boolean primitiveMatrices() {
+        return primitiveMatrices;
+    }
+
+    /**
+     * Sets the primitiveMatrices flag.
+     *
+     * @ensures this.primitiveMatrices' = primitiveMatrices
+     */
+    public void setPrimitiveMatrices(boolean primitiveMatrices) {
+        this.primitiveMatrices = primitiveMatrices;
+    }
+
+    /**
+     * Returns the metrics that the analyses performed with these options update
+     * as they progress, or null if no metrics are gathered. The default is null.
+     * Since a metrics object describes one analysis at a time, options with
+     * metrics should not be shared by concurrent analyses.
+     *
+     * @return this.metrics
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics; null disables them.
+     *
+     * @ensures this.metrics' = metrics
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the budget that limits, and can cancel, the analyses performed with
+     * these options, or null if they are unlimited. The default is null. Each
+     * analysis runs under its own {@linkplain Budget#fork() fork} of the budget,
+     * so options with a budget may be shared by concurrent analyses.
+     *
+     * @return this.budget
+     */
+    public Budget budget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget; null removes all limits.
+     *
+     * @ensures this.budget' = budget
+     */
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
     /**
      * Returns a shallow copy of this Options object. In particular, the returned
      * options shares the same {@linkplain #reporter()} and {@linkplain #solver()}
@@ -409,15 +635,24 @@ public final class Options implements Cloneable {
         c.setBitwidth(bitwidth);
         c.setIntEncoding(intEncoding);
         c.setSharing(sharing);
+        c.setBindingCacheCapacity(bindingCacheCapacity);
+        c.setInternNodes(internNodes);
         c.setSymmetryBreaking(symmetryBreaking);
+        c.setSymmetryThreads(symmetryThreads);
         c.setSkolemDepth(skolemDepth);
         c.setLogTranslation(logTranslation);
         c.setCoreGranularity(coreGranularity);
+        c.setTranslationCache(translationCache);
+        c.setPrimitiveMatrices(primitiveMatrices);
+        c.setMetrics(metrics);
+        c.setBudget(budget);
         c.setOverflowPolicy(ofPolicy);
         c.setAllowHOL(allowHOL);
         c.setHolFullIncrements(holFullIncrements);
         c.setHolSome4AllMaxIter(holSome4AllMaxIter);
         c.setHolFixpointMaxIter(holFixpointMaxIter);
+        c.setHolOrThreads(holOrThreads);
+        c.setDeterministic(deterministic);
         return c;
     }
 
@@ -440,14 +675,28 @@ public final class Options implements Cloneable {
         b.append(bitwidth);
         b.append("\n sharing: ");
         b.append(sharing);
+        b.append("\n bindingCacheCapacity: ");
+        b.append(bindingCacheCapacity);
+        b.append("\n internNodes: ");
+        b.append(internNodes);
         b.append("\n symmetryBreaking: ");
         b.append(symmetryBreaking);
+        b.append("\n symmetryThreads: ");
+        b.append(symmetryThreads);
         b.append("\n skolemDepth: ");
         b.append(skolemDepth);
         b.append("\n logTranslation: ");
         b.append(logTranslation);
         b.append("\n coreGranularity: ");
         b.append(coreGranularity);
+        b.append("\n translationCache: ");
+        b.append(translationCache == null ? null : translationCache.directory());
+        b.append("\n primitiveMatrices: ");
+        b.append(primitiveMatrices);
+        b.append("\n metrics: ");
+        b.append(metrics != null);
+        b.append("\n budget: ");
+        b.append(budget);
         b.append("\n noOverflow: ");
         b.append(ofPolicy);
         b.append("\n allowHOL: ");
@@ -458,6 +707,10 @@ public final class Options implements Cloneable {
         b.append(holSome4AllMaxIter);
         b.append("\n holFixpointMaxIter: ");
         b.append(holFixpointMaxIter);
+        b.append("\n holOrThreads: ");
+        b.append(holOrThreads);
+        b.append("\n deterministic: ");
+        b.append(deterministic);
         return b.toString();
     }
 
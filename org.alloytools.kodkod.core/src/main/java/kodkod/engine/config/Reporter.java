@@ -103,6 +103,16 @@ public interface Reporter {
      */
     public void solvingCNF(int primaryVars, int vars, int clauses);
 
+    /**
+     * Reports the given metrics of the running analysis. This method is called
+     * every {@code metrics.interval()} milliseconds by the sampling thread of the
+     * metrics, rather than by the thread performing the analysis, if the options
+     * of the analysis have metrics with a positive interval.
+     *
+     * @see Options#metrics()
+     */
+    public void progress(Metrics metrics);
+
     public void convertingToNNF();
 
     public void holLoopStart(HOLTranslation tr, Formula formula, Bounds bounds);
@@ -117,6 +127,15 @@ public interface Reporter {
 
     public void holFindingNextCandidate(HOLTranslation tr, Formula inc);
 
+    /**
+     * Reports that the given iteration (starting at 1) of the cegis loop of the
+     * given translation has completed, having spent the given number of
+     * milliseconds finding the candidate, verifying it, and, unless it was
+     * verified, refining the search with the counterexample. The default
+     * implementation does nothing, so that existing reporters need not change.
+     */
+    public default void holIterationTime(HOLTranslation tr, int iteration, long candidateTime, long verificationTime, long refinementTime) {}
+
     public void holFixpointStart(HOLTranslation tr, Formula formula, Bounds bounds);
 
     public void holFixpointNoSolution(HOLTranslation tr);
@@ -23,6 +23,10 @@ package kodkod.engine.fol2sat;
 
 import static kodkod.engine.bool.Operator.AND;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
 import kodkod.engine.bool.BooleanFormula;
@@ -32,6 +36,7 @@ import kodkod.engine.bool.ITEGate;
 import kodkod.engine.bool.MultiGate;
 import kodkod.engine.bool.NotGate;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Budget;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.util.ints.IntSet;
@@ -43,6 +48,7 @@ import kodkod.util.ints.IntTreeSet;
  * @specfield factory: {@link BooleanFactory}
  * @specfield roots: some factory.components
  * @specfield cnf: {@link SATSolver}
+ * @specfield budget: lone {@link Budget} // checked as clauses are emitted
  * @invariant max(abs(roots.label)) = max(cnf.variables)
  * @invariant meaning(roots) = meaning(cnf.clauses)
  * @author Emina Torlak
@@ -50,23 +56,28 @@ import kodkod.util.ints.IntTreeSet;
 abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
 
     /**
-     * Creates a new instance of SATSolver using the provided factory and uses it to
-     * translate the given circuit into conjunctive normal form using the
-     * <i>definitional translation algorithm</i>. The {@code maxPrimaryVar}
+     * Translates the given circuit into conjunctive normal form using the
+     * <i>definitional translation algorithm</i>, adding the resulting clauses to
+     * the given empty solver, which is returned. The {@code maxPrimaryVar}
      * parameter is required to contain the maximum label of any primary variable
      * allocated during translation from FOL to boolean. This method assumes that
-     * all variables allocated during translation have contiguous labels.
+     * all variables allocated during translation have contiguous labels. The given
+     * budget, if any, is checked each time a batch of clauses is added to the
+     * solver.
      *
      * @requires let boolFactory = components.circuit | boolFactory.maxVariable() =
      *           maxPrimaryVar && no f: boolFactory.components - BooleanVariable | 1
      *           <= f.label <= maxPrimaryVar
-     * @return some cnf: SATSolver | cnf in factory.instance() && max(cnf.variables)
-     *         = max(abs(circuit.label), maxPrimaryVar) && meaning(circuit) =
-     *         meaning(cnf.clauses)
+     * @requires no cnf.variables && no cnf.clauses
+     * @return cnf
+     * @ensures max(cnf.variables') = max(abs(circuit.label), maxPrimaryVar) &&
+     *          meaning(circuit) = meaning(cnf.clauses')
+     * @throws kodkod.engine.AbortedException the budget has been cancelled or
+     *             exceeded
      */
-    static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
+    static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATSolver cnf, final Budget budget) {
         final int maxLiteral = StrictMath.abs(circuit.label());
-        final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) {
+        final Bool2CNFTranslator translator = new Bool2CNFTranslator(cnf, budget) {
 
             final PolarityDetector pdetector = (new PolarityDetector(maxPrimaryVar, maxLiteral)).apply(circuit);
 
@@ -105,19 +116,30 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
      * Returns a new Bool2CNFTranslator that is initialized with the translation of
      * the given circuit. The {@code maxPrimaryVar} parameter is required to contain
      * the maximum label of any primary variable allocated during translation from
-     * FOL to boolean.
+     * FOL to boolean. The given budget, if any, is checked each time a batch of
+     * clauses is added to the solver, by this and all later translations with the
+     * returned translator; the solver is freed if the budget aborts this
+     * translation.
      *
      * @requires let boolFactory = components.circuit | boolFactory.maxVariable() =
      *           maxPrimaryVar
      * @requires factory.incremental
      * @return some t: Bool2CNFTranslator | t.roots = circuit && t.factory =
      *         components.circuit && max(t.cnf.variables) = max(abs(circuit.label),
-     *         maxPrimaryVar) && meaning(circuit) = meaning(t.cnf.clauses)
+     *         maxPrimaryVar) && meaning(circuit) = meaning(t.cnf.clauses) &&
+     *         t.budget = budget
+     * @throws kodkod.engine.AbortedException the budget has been cancelled or
+     *             exceeded
      */
-    static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
+    static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory, final Budget budget) {
         assert factory.incremental();
-        final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) {};
-        return translator.translate(circuit, maxPrimaryVar);
+        final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance(), budget) {};
+        try {
+            return translator.translate(circuit, maxPrimaryVar);
+        } catch (RuntimeException e) {
+            translator.solver.free();
+            throw e;
+        }
     }
 
     /**
@@ -134,7 +156,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
      */
     static Bool2CNFTranslator translateIncremental(BooleanConstant value, final SATFactory factory) {
         assert factory.incremental();
-        return new Bool2CNFTranslator(translate(value, factory)) {};
+        return new Bool2CNFTranslator(translate(value, factory), null) {};
     }
 
     /**
@@ -158,8 +180,37 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
         return translator.translate(circuit, maxPrimaryVar);
     }
 
+    /**
+     * Updates the given Bool2CNFTranslator with clauses that define the value of
+     * the given circuit, without asserting it, and returns the literal that
+     * represents the circuit. Passing the returned literal to
+     * {@link SATSolver#solve(int[])} as an assumption has the same effect on the
+     * outcome of that call as asserting the circuit, but the circuit does not
+     * constrain any later call. The behavior of this method is undefined if it is
+     * called after translator.solver has returned UNSAT without assumptions.
+     *
+     * @requires circuit in translator.factory.components
+     * @requires maxPrimaryVar = translator.factory.maxVariable()
+     * @ensures max(translator.cnf.variables) = max(abs(circuit.label),
+     *          max(translator.cnf.variables), maxPrimaryVar) &&
+     *          translator.cnf.clauses in translator.cnf.clauses' &&
+     *          translator.cnf.clauses' = translator.cnf.clauses + DEFINITION(circuit)
+     * @return circuit.label
+     */
+    static int defineIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final Bool2CNFTranslator translator) {
+        return translator.define(circuit, maxPrimaryVar);
+    }
+
+    /**
+     * The number of literals and terminating zeros in a full batch.
+     */
+    private static final int BATCH_SIZE = 1 << 16;
+
     private final SATSolver solver;
+    private final Budget    budget;
     private final IntSet    visited;
+    private final IntBuffer batch;
+    private long            emitted;
     private final int[]     unaryClause   = new int[1];
     private final int[]     binaryClause  = new int[2];
     private final int[]     ternaryClause = new int[3];
@@ -168,11 +219,14 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
      * Constructs a translator for the given circuit.
      *
      * @requires no solver.variables && solver.clauses
-     * @ensures this.solver' = solver
+     * @ensures this.solver' = solver && this.budget' = budget
      */
-    private Bool2CNFTranslator(SATSolver solver) {
+    private Bool2CNFTranslator(SATSolver solver, Budget budget) {
         this.solver = solver;
+        this.budget = budget;
+        this.emitted = 0;
         this.visited = new IntTreeSet();
+        this.batch = ByteBuffer.allocateDirect(BATCH_SIZE * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
     }
 
     /**
@@ -200,15 +254,36 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
                 input.accept(this, null);
             }
             for (BooleanFormula input : circuit) {
-                unaryClause[0] = input.label();
-                solver.addClause(unaryClause);
+                add(clause(input.label()));
             }
         } else {
-            solver.addClause(circuit.accept(this, null));
+            add(circuit.accept(this, null));
         }
+        flush();
         return this;
     }
 
+    /**
+     * Adds the clauses that define the given circuit to this.solver, without
+     * asserting the circuit, and returns the circuit's label.
+     *
+     * @requires circuit in this.factory.components
+     * @requires maxPrimaryVar = this.factory.maxPrimaryVariable()
+     * @ensures this.solver.variables' = this.solver.variables + { i: int |
+     *          solver.numberOfVariables() < i <= max(abs(circuit.label),
+     *          maxPrimaryVar) }
+     * @effects this.solver.clauses' = this.solver.clauses + DEFINITION(circuit)
+     * @return circuit.label
+     */
+    private int define(BooleanFormula circuit, int maxPrimaryVar) {
+        final int newVars = Math.max(Math.abs(circuit.label()), maxPrimaryVar) - solver.numberOfVariables();
+        if (newVars > 0)
+            solver.addVariables(newVars);
+        final int lit = circuit.accept(this, null)[0];
+        flush();
+        return lit;
+    }
+
     /**
      * Returns this.solver.
      *
@@ -244,6 +319,45 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
         return true;
     }
 
+    /**
+     * Appends the given clause to this.batch, flushing the batch to the solver
+     * first if the clause does not fit. A clause that does not fit into an empty
+     * batch is added to the solver directly.
+     *
+     * @ensures the clause is added to this.solver before any clause added after it
+     */
+    private final void add(int[] lits) {
+        emitted++;
+        if (batch.remaining() <= lits.length) {
+            flush();
+            if (batch.remaining() <= lits.length) {
+                solver.addClause(lits);
+                return;
+            }
+        }
+        batch.put(lits);
+        batch.put(0);
+    }
+
+    /**
+     * Adds the clauses in this.batch to the solver, empties the batch, and then
+     * checks this.budget, if any.
+     *
+     * @ensures this.solver.clauses' = this.solver.clauses + this.batch.clauses &&
+     *          no this.batch.clauses'
+     * @throws kodkod.engine.AbortedException this.budget has been cancelled or
+     *             exceeded
+     */
+    private final void flush() {
+        if (batch.position() > 0) {
+            batch.flip();
+            solver.addClauses(batch);
+            batch.clear();
+        }
+        if (budget != null)
+            budget.clauses(emitted);
+    }
+
     /** @return 0->lit */
     private final int[] clause(int lit) {
         unaryClause[0] = lit;
@@ -298,7 +412,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
             for (BooleanFormula input : multigate) {
                 int iLit = input.accept(this, arg)[0];
                 if (p) {
-                    solver.addClause(clause(iLit * sgn, output));
+                    add(clause(iLit * sgn, output));
                 }
                 if (n) {
                     lastClause[i++] = iLit * -sgn;
@@ -306,7 +420,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
             }
             if (n) {
                 lastClause[i] = oLit * sgn;
-                solver.addClause(lastClause);
+                add(lastClause);
             }
         }
         return clause(oLit);
@@ -332,16 +446,16 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[],Object> {
             final int e = itegate.input(2).accept(this, arg)[0];
             final boolean p = positive(oLit), n = negative(oLit);
             if (p) {
-                solver.addClause(clause(-i, t, -oLit));
-                solver.addClause(clause(i, e, -oLit));
+                add(clause(-i, t, -oLit));
+                add(clause(i, e, -oLit));
                 // redundant clause that strengthens unit propagation
-                solver.addClause(clause(t, e, -oLit));
+                add(clause(t, e, -oLit));
             }
             if (n) {
-                solver.addClause(clause(-i, -t, oLit));
-                solver.addClause(clause(i, -e, oLit));
+                add(clause(-i, -t, oLit));
+                add(clause(i, -e, oLit));
                 // redundant clause that strengthens unit propagation
-                solver.addClause(clause(-t, -e, oLit));
+                add(clause(-t, -e, oLit));
             }
         }
         return clause(oLit);
@@ -21,7 +21,10 @@
  */
 package kodkod.engine.fol2sat;
 
+import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,25 +39,57 @@ import kodkod.util.nodes.AnnotatedNode;
  * Manages the caching policy for a translation from FOL to boolean. In
  * particular it determines which translations to cache, when to throw them out
  * of the cache, etc.
+ * <p>
+ * The translation of a node without free variables is cached once. If
+ * this.capacity is 0, the translation of a node with free variables is cached
+ * only for the most recent binding of those variables. Otherwise, it is cached
+ * for every binding, until the total weight of the cached translations
+ * exceeds this.capacity, at which point the least recently used ones are
+ * evicted. The weight of a matrix is its density, and that of any other
+ * translation is 1.
+ * </p>
  *
  * @specfield node: Node // node being translated
  * @specfield cached: node.*children // the nodes whose translations are cached
  * @specfield cache: cached -> (Object ->lone Environment)
+ * @specfield capacity: int
+ * @specfield hits, misses, evictions: long
  * @author Emina Torlak
  */
 final class FOL2BoolCache {
 
-    private final Map<Node,Record> cache;
+    private final Map<Node,Record>              cache;
+    private final int                           capacity;
+    /**
+     * The translations of the nodes with free variables, in access order, if
+     * this.capacity > 0; null otherwise.
+     */
+    private final LinkedHashMap<Binding,Object> bindings;
+    private long                                weight, hits, misses, evictions;
 
     /**
-     * Constructs a new translation cache for the given annotated node.
+     * Constructs a new translation cache for the given annotated node, which
+     * caches the translations of nodes with free variables only for the most
+     * recent binding of those variables.
      *
-     * @ensures this.node' = annotated.node
+     * @ensures this.node' = annotated.node && this.capacity' = 0
      */
     FOL2BoolCache(AnnotatedNode< ? extends Node> annotated) {
+        this(annotated, 0);
+    }
+
+    /**
+     * Constructs a new translation cache for the given annotated node, with the
+     * given capacity.
+     *
+     * @ensures this.node' = annotated.node && this.capacity' = capacity
+     */
+    FOL2BoolCache(AnnotatedNode< ? extends Node> annotated, int capacity) {
         final CacheCollector collector = new CacheCollector(annotated.sharedNodes());
         annotated.node().accept(collector);
 
+        this.capacity = capacity;
+        this.bindings = capacity > 0 ? new LinkedHashMap<Binding,Object>(16, 0.75f, true) : null;
         this.cache = new IdentityHashMap<Node,Record>(collector.cache().size());
         for (Map.Entry<Node,Set<Variable>> e : collector.cache().entrySet()) {
             Set<Variable> freeVars = e.getValue();
@@ -65,6 +100,34 @@ final class FOL2BoolCache {
         }
     }
 
+    /**
+     * Returns the number of lookups of cached nodes that found a translation.
+     *
+     * @return this.hits
+     */
+    long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups of cached nodes that found no translation.
+     *
+     * @return this.misses
+     */
+    long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of translations that were evicted from this cache, or, if
+     * this.capacity is 0, replaced by the translation for another binding.
+     *
+     * @return this.evictions
+     */
+    long evictions() {
+        return evictions;
+    }
+
     /**
      * If the translation of the given node, with its free variables bound as they
      * are in the given environment, has been cached, the cached value is returned.
@@ -75,7 +138,14 @@ final class FOL2BoolCache {
     @SuppressWarnings("unchecked" )
     <T> T lookup(Node node, Environment<BooleanMatrix,Expression> env) {
         final Record info = cache.get(node);
-        return info == null ? null : (T) info.get(env);
+        if (info == null)
+            return null;
+        final Object ret = bindings != null && info instanceof MultiVarRecord ? bindings.get(new Binding((MultiVarRecord) info, env)) : info.get(env);
+        if (ret == null)
+            misses++;
+        else
+            hits++;
+        return (T) ret;
     }
 
     /**
@@ -89,12 +159,34 @@ final class FOL2BoolCache {
      */
     final <T> T cache(Node node, T translation, Environment<BooleanMatrix,Expression> env) {
         final Record info = cache.get(node);
-        if (info != null) {
+        if (info == null)
+            return translation;
+        if (bindings != null && info instanceof MultiVarRecord) {
+            final MultiVarRecord record = (MultiVarRecord) info;
+            final Object old = bindings.put(new Binding(record, env), record.own(translation, env));
+            weight += weight(translation) - (old == null ? 0 : weight(old));
+            for (Iterator<Object> itr = bindings.values().iterator(); weight > capacity && bindings.size() > 1;) {
+                weight -= weight(itr.next());
+                itr.remove();
+                evictions++;
+            }
+        } else {
+            if (info.translation != null && info instanceof MultiVarRecord)
+                evictions++;
             info.set(translation, env);
         }
         return translation;
     }
 
+    /**
+     * Returns the weight of the given translation.
+     *
+     * @return translation in BooleanMatrix => max(1, translation.density()), 1
+     */
+    private static long weight(Object translation) {
+        return translation instanceof BooleanMatrix ? Math.max(1, ((BooleanMatrix) translation).density()) : 1;
+    }
+
     /**
      * Collects the free variables of the nodes in a given AST whose translations
      * should be cached.
@@ -224,14 +316,25 @@ final class FOL2BoolCache {
          */
         @Override
         void set(Object transl, Environment<BooleanMatrix,Expression> env) {
-            translation = transl;
+            translation = own(transl, env);
+            for (int i = 0; i < vars.length; i++) {
+                tuples[i] = env.lookup(vars[i]).iterator().next().index();
+            }
+        }
+
+        /**
+         * Returns the given translation, or a copy of it if it is the value of one of
+         * the free variables in the given environment, which changes as the
+         * variable is bound to other tuples.
+         */
+        Object own(Object transl, Environment<BooleanMatrix,Expression> env) {
             for (int i = 0; i < vars.length; i++) {
                 final BooleanMatrix varVal = env.lookup(vars[i]);
-                tuples[i] = varVal.iterator().next().index();
                 if (transl == varVal) {
-                    translation = varVal.clone();
+                    return varVal.clone();
                 }
             }
+            return transl;
         }
 
         /**
@@ -283,4 +386,41 @@ final class FOL2BoolCache {
             return "{" + translation + "}";
         }
     }
+
+    /**
+     * The binding of the free variables of a node, given by the index of the
+     * tuple to which each variable is bound.
+     */
+    private static final class Binding {
+
+        final MultiVarRecord record;
+        final int[]          tuples;
+        final int            hash;
+
+        /**
+         * Constructs the binding of the free variables of the given record in the
+         * given environment.
+         */
+        Binding(MultiVarRecord record, Environment<BooleanMatrix,Expression> env) {
+            this.record = record;
+            this.tuples = new int[record.vars.length];
+            for (int i = 0; i < tuples.length; i++) {
+                tuples[i] = env.lookup(record.vars[i]).iterator().next().index();
+            }
+            this.hash = System.identityHashCode(record) * 31 + Arrays.hashCode(tuples);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Binding))
+                return false;
+            final Binding b = (Binding) o;
+            return record == b.record && Arrays.equals(tuples, b.tuples);
+        }
+    }
 }
@@ -75,6 +75,7 @@ import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.Dimensions;
 import kodkod.engine.bool.Int;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Budget;
 import kodkod.util.ints.IndexedEntry;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
@@ -104,9 +105,26 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
      *             declaration
      * @throws UnboundLeafException annotated.node refers to an undeclared variable
      **/
-    @SuppressWarnings("unchecked" )
     static final <T> T translate(AnnotatedNode< ? extends Node> annotated, LeafInterpreter interpreter) {
-        final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+        return translate(annotated, new FOL2BoolCache(annotated), interpreter);
+    }
+
+    /**
+     * Translates the given annotated formula or expression into a boolean formula
+     * or matrix, using the provided interpreter and caching the translations of
+     * its subformulas and subexpressions in the given cache.
+     *
+     * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+     * @requires cache.node = annotated.node
+     * @return {transl: T | annotated.node in Formula => transl in BooleanValue,
+     *         annotated.node in Expression => transl in BooleanMatrix,
+     *         annotated.node in IntExpression => transl in Int}
+     * @throws HigherOrderDeclException annotated.node contains a higher order
+     *             declaration
+     * @throws UnboundLeafException annotated.node refers to an undeclared variable
+     **/
+    @SuppressWarnings("unchecked" )
+    static final <T> T translate(AnnotatedNode< ? extends Node> annotated, FOL2BoolCache cache, LeafInterpreter interpreter) {
         final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {};
         translator.addSkolems(annotated.skolemRelations());
         return (T) annotated.node().accept(translator);
@@ -118,6 +136,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
      * logger.
      *
      * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+     * @requires cache.node = annotated.node
      * @requires annotated.source[annotated.sourceSensitiveRoots()] =
      *           Nodes.roots(annotated.source[annotated.node])
      * @return BooleanAccumulator that is the meaning of the given annotated formula
@@ -128,8 +147,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
      *             declaration
      * @throws UnboundLeafException annotated.node refers to an undeclared variable
      **/
-    static final BooleanAccumulator translate(final AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, final TranslationLogger logger) {
-        final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+    static final BooleanAccumulator translate(final AnnotatedNode<Formula> annotated, FOL2BoolCache cache, LeafInterpreter interpreter, final TranslationLogger logger) {
         final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {
 
             @Override
@@ -237,6 +255,11 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
 
     private final FOL2BoolCache                     cache;
 
+    /*
+     * Checked at each grounding of a quantified formula, comprehension or sum.
+     */
+    private final Budget                            budget;
+
     /*
      * Holds variables discovered while visiting an expression to be cast to Int.
      * (because, for the new "overflow" semantics of quantifiers, we want to know
@@ -256,6 +279,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
     private FOL2BoolTranslator(FOL2BoolCache cache, LeafInterpreter interpreter) {
         this.cache = cache;
         this.interpreter = interpreter;
+        this.budget = interpreter.factory().budget();
         this.env = Environment.empty();
         this.leafCache = new HashMap<LeafExpression,BooleanMatrix>(64);
     }
@@ -268,6 +292,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
      */
     private FOL2BoolTranslator(FOL2BoolCache cache, LeafInterpreter interpreter, Environment<BooleanMatrix,Expression> env) {
         this.interpreter = interpreter;
+        this.budget = interpreter.factory().budget();
         this.env = env;
         this.cache = cache;
         this.leafCache = new HashMap<LeafExpression,BooleanMatrix>(64);
@@ -546,6 +571,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
         final BooleanFactory factory = interpreter.factory();
 
         if (currentDecl == decls.size()) {
+            if (budget != null)
+                budget.check();
             // TODO: what about this and overflow???
             matrix.set(partialIndex, factory.and(declConstraints, formula.accept(this)));
             return;
@@ -668,6 +695,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
         final BooleanFactory factory = interpreter.factory();
 
         if (decls.size() == currentDecl) {
+            if (budget != null)
+                budget.check();
             BooleanValue formulaCircuit = formula.accept(this);
             BooleanValue finalCircuit = factory.or(declConstraints, formulaCircuit);
             acc.add(finalCircuit);
@@ -717,6 +746,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
         final BooleanFactory factory = interpreter.factory();
 
         if (decls.size() == currentDecl) {
+            if (budget != null)
+                budget.check();
             BooleanValue formulaCircuit = formula.accept(this);
             BooleanValue finalCircuit = factory.and(declConstraints, formulaCircuit);
             acc.add(finalCircuit);
@@ -1235,6 +1266,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix,Boolean
     private final void sum(Decls decls, IntExpression expr, int currentDecl, BooleanValue declConstraints, List<Int> values) {
         final BooleanFactory factory = interpreter.factory();
         if (decls.size() == currentDecl) {
+            if (budget != null)
+                budget.check();
             Int intExpr = expr.accept(this);
             Int newInt = intExpr.choice(declConstraints, factory.integer(0));
             values.add(newInt);
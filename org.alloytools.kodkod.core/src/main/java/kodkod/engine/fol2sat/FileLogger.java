@@ -21,15 +21,16 @@
  */
 package kodkod.engine.fol2sat;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -50,6 +51,8 @@ import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.util.collections.Containers;
 import kodkod.util.collections.FixedMap;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
 import kodkod.util.ints.Ints;
 import kodkod.util.nodes.AnnotatedNode;
 import kodkod.util.nodes.Nodes;
@@ -57,6 +60,17 @@ import kodkod.util.nodes.Nodes;
 /**
  * A file-based translation logger that logs translation events to a temporary
  * file.
+ * <p>
+ * Each record is written as the index of its formula, its literal and the atom
+ * bound to each free variable of the formula, all encoded as variable-length
+ * ints. When the logger is closed, it appends an index of the records to the
+ * file: the offsets of the records sorted by the absolute values of their
+ * literals, and the offsets of the records for each formula. The log uses the
+ * index to {@linkplain TranslationLog#replay(RecordFilter) replay} only the
+ * records for the {@linkplain RecordFilter#variables() variables} or
+ * {@linkplain RecordFilter#formulas() formulas} of a filter, so that extracting
+ * a core takes time proportional to the core rather than to the log.
+ * </p>
  *
  * @specfield originalFormula: Formula // the
  *            {@linkplain Solver#solve(Formula, kodkod.instance.Bounds)
@@ -79,6 +93,10 @@ final class FileLogger extends TranslationLogger {
     private final File                         file;
     private DataOutputStream                   out;
     private final Bounds                       bounds;
+    private long                               position, indexStart;
+    private int                                records;
+    private long[]                             offsets;
+    private int[]                              variables, nodes, nodeStart;
 
     /**
      * Constructs a new file logger from the given annotated formula.
@@ -113,6 +131,11 @@ final class FileLogger extends TranslationLogger {
             }
         }
         this.bounds = bounds.unmodifiableView();
+        this.position = 0;
+        this.records = 0;
+        this.offsets = new long[64];
+        this.variables = new int[64];
+        this.nodes = new int[64];
     }
 
     /**
@@ -146,21 +169,79 @@ final class FileLogger extends TranslationLogger {
     }
 
     /**
+     * Writes the index of the logged records and closes the log file.
+     *
      * @see kodkod.engine.fol2sat.TranslationLogger#close()
      */
     @Override
     void close() {
         try {
             if (out != null) {
+                writeIndex();
                 out.close();
             }
         } catch (IOException e1) {
-            /* unused */
+            throw new RuntimeException(e1);
         } finally {
             out = null;
+            offsets = null;
+            variables = null;
+            nodes = null;
+        }
+    }
+
+    /**
+     * Appends the index of the logged records to the log file. The index consists
+     * of the (variable, offset) pairs of all records, sorted by variable and then
+     * by offset, followed by the offsets of the records for each formula, grouped
+     * by formula and sorted by offset.
+     *
+     * @ensures this.indexStart' = this.position and this.nodeStart' contains the
+     *          positions of the formula groups in the list of record offsets
+     */
+    private void writeIndex() throws IOException {
+        indexStart = position;
+        final long[] keys = new long[records];
+        for (int i = 0; i < records; i++) {
+            keys[i] = ((long) variables[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            out.writeInt((int) (key >>> 32));
+            out.writeLong(offsets[(int) key]);
+        }
+
+        nodeStart = new int[logMap.size() + 1];
+        for (int i = 0; i < records; i++) {
+            nodeStart[nodes[i] + 1]++;
+        }
+        for (int i = 1; i < nodeStart.length; i++) {
+            nodeStart[i] += nodeStart[i - 1];
+        }
+        final long[] byNode = keys;
+        final int[] next = Arrays.copyOf(nodeStart, nodeStart.length - 1);
+        for (int i = 0; i < records; i++) {
+            byNode[next[nodes[i]]++] = offsets[i];
+        }
+        for (long offset : byNode) {
+            out.writeLong(offset);
         }
     }
 
+    /**
+     * Writes the given int to this.out as an unsigned variable-length int, and
+     * updates this.position accordingly.
+     */
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+            position++;
+        }
+        out.write(value);
+        position++;
+    }
+
     /**
      * Records the translation of the source of the given transformed formula to the
      * given boolean value in the specified environment.
@@ -182,11 +263,23 @@ final class FileLogger extends TranslationLogger {
 
         final Variable[] vars = logMap.get(index);
 
+        final int literal = v.label();
+        if (records == offsets.length) {
+            final int capacity = records + (records >> 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            variables = Arrays.copyOf(variables, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+        }
+        offsets[records] = position;
+        variables[records] = StrictMath.abs(literal);
+        nodes[records] = index;
+        records++;
+
         try {
-            out.writeInt(index);
-            out.writeInt(v.label());
+            writeVarint(index);
+            writeVarint((literal << 1) ^ (literal >> 31));
             for (Variable var : vars) {
-                out.writeInt(env.lookup(var).denseIndices().min());
+                writeVarint(env.lookup(var).denseIndices().min());
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -198,7 +291,8 @@ final class FileLogger extends TranslationLogger {
      */
     @Override
     TranslationLog log() {
-        return new FileLog(annotated, logMap, file, bounds);
+        close();
+        return new FileLog(annotated, logMap, file, bounds, indexStart, nodeStart);
     }
 
     /**
@@ -216,12 +310,15 @@ final class FileLogger extends TranslationLogger {
      */
     private static final class FileLog extends TranslationLog {
 
-        private final Set<Formula> roots;
-        private final Node[]       original;
-        private final Formula[]    translated;
-        private final Variable[][] freeVars;
-        private final File         file;
-        private final Bounds       bounds;
+        private final Set<Formula>              roots;
+        private final Node[]                    original;
+        private final Formula[]                 translated;
+        private final Variable[][]              freeVars;
+        private final Map<Formula,Integer>      indices;
+        private final File                      file;
+        private final Bounds                    bounds;
+        private final long                      indexStart, nodeIndexStart;
+        private final int[]                     nodeStart;
 
         /**
          * Constructs a new file log for the sources of the given annotated formula,
@@ -229,22 +326,29 @@ final class FileLogger extends TranslationLogger {
          *
          * @requires all f: annotated.node.*children & Formula | logMap.get(f) =
          *           freeVariables(f)
-         * @requires the file was written by a FileLogger using the given map
+         * @requires the file was written by a FileLogger using the given map, and its
+         *           index starts at the given position and groups the records of the
+         *           ith formula at nodeStart[i]..nodeStart[i+1]
          */
-        FileLog(AnnotatedNode<Formula> annotated, FixedMap<Formula,Variable[]> logMap, File file, Bounds bounds) {
+        FileLog(AnnotatedNode<Formula> annotated, FixedMap<Formula,Variable[]> logMap, File file, Bounds bounds, long indexStart, int[] nodeStart) {
             this.file = file;
             this.bounds = bounds;
             this.roots = Nodes.conjuncts(annotated.node());
+            this.indexStart = indexStart;
+            this.nodeStart = nodeStart;
+            this.nodeIndexStart = indexStart + 12L * nodeStart[nodeStart.length - 1];
 
             final int size = logMap.entrySet().size();
             this.original = new Node[size];
             this.translated = new Formula[size];
             this.freeVars = new Variable[size][];
+            this.indices = new IdentityHashMap<Formula,Integer>(size);
             int index = 0;
             for (Map.Entry<Formula,Variable[]> e : logMap.entrySet()) {
                 translated[index] = e.getKey();
                 original[index] = annotated.sourceOf(e.getKey());
                 freeVars[index] = e.getValue();
+                indices.put(e.getKey(), index);
                 index++;
             }
         }
@@ -279,6 +383,68 @@ final class FileLogger extends TranslationLogger {
             return bounds;
         }
 
+        /**
+         * Returns the sorted offsets of the records that may be accepted by a filter
+         * with the given variables and formulas, or null if the records cannot be
+         * narrowed down. If both are given, the offsets are looked up through whichever
+         * is expected to yield fewer records.
+         *
+         * @requires some vars + formulas
+         * @return sorted offsets of a superset of the records r such that
+         *         abs(r.literal) in vars and r.translated in formulas
+         */
+        private long[] candidates(RecordReader reader, IntSet vars, Set<Formula> formulas) throws IOException {
+            int formulaRecords = 0;
+            if (formulas != null) {
+                for (Formula f : formulas) {
+                    final Integer index = indices.get(f);
+                    if (index != null)
+                        formulaRecords += nodeStart[index + 1] - nodeStart[index];
+                }
+            }
+            long[] ret = new long[16];
+            int size = 0;
+            if (formulas != null && (vars == null || formulaRecords <= vars.size())) {
+                ret = new long[formulaRecords];
+                for (Formula f : formulas) {
+                    final Integer index = indices.get(f);
+                    if (index != null) {
+                        reader.seek(nodeIndexStart + 8L * nodeStart[index]);
+                        for (int i = nodeStart[index], max = nodeStart[index + 1]; i < max; i++) {
+                            ret[size++] = reader.readLong();
+                        }
+                    }
+                }
+            } else {
+                // the (variable, offset) pairs are sorted, so each variable is
+                // searched for among the pairs that follow those of the previous one
+                final int pairs = nodeStart[nodeStart.length - 1];
+                int low = 0;
+                for (IntIterator itr = vars.iterator(); itr.hasNext() && low < pairs;) {
+                    final int var = itr.next();
+                    int high = pairs;
+                    while (low < high) {
+                        final int mid = (low + high) >>> 1;
+                        reader.seek(indexStart + 12L * mid);
+                        if (reader.readInt() < var)
+                            low = mid + 1;
+                        else
+                            high = mid;
+                    }
+                    reader.seek(indexStart + 12L * low);
+                    for (; low < pairs && reader.readInt() == var; low++) {
+                        if (size == ret.length)
+                            ret = Arrays.copyOf(ret, size << 1);
+                        ret[size++] = reader.readLong();
+                    }
+                }
+            }
+            if (size < ret.length)
+                ret = Arrays.copyOf(ret, size);
+            Arrays.sort(ret);
+            return ret;
+        }
+
         /**
          * {@inheritDoc}
          *
@@ -287,20 +453,37 @@ final class FileLogger extends TranslationLogger {
         @Override
         public Iterator<TranslationRecord> replay(final RecordFilter filter) {
             try {
+                final RecordReader reader = new RecordReader(file);
+                final IntSet vars = filter.variables();
+                final Set<Formula> formulas = filter.formulas();
+                final long[] offsets = vars == null && formulas == null ? null : candidates(reader, vars, formulas);
+                reader.seek(0);
                 return new Iterator<TranslationRecord>() {
 
-                    final TupleFactory    factory   = bounds.universe().factory();
-                    final DataInputStream in        = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-                    final MutableRecord   current   = new MutableRecord(), next = new MutableRecord();
-                    long                  remaining = file.length();
+                    final TupleFactory  factory = bounds.universe().factory();
+                    final MutableRecord current = new MutableRecord(), next = new MutableRecord();
+                    int                 candidate = 0;
+
+                    /**
+                     * Positions the reader at the next record to read, if any, and returns true
+                     * if there is such a record.
+                     */
+                    private boolean advance() throws IOException {
+                        if (offsets == null)
+                            return reader.position() < indexStart;
+                        if (candidate == offsets.length)
+                            return false;
+                        reader.seek(offsets[candidate++]);
+                        return true;
+                    }
 
                     @Override
                     public boolean hasNext() {
-                        while (remaining > 0 && next.node == null) {
-                            try {
-                                final long indexLiteral = in.readLong();
-                                final int literal = (int) (indexLiteral);
-                                final int index = (int) (indexLiteral >>> 32);
+                        try {
+                            while (next.node == null && advance()) {
+                                final int index = reader.readVarint();
+                                final int zigzag = reader.readVarint();
+                                final int literal = (zigzag >>> 1) ^ -(zigzag & 1);
                                 final Variable[] freeVars = FileLog.this.freeVars[index];
                                 final Map<Variable,TupleSet> env;
                                 if (freeVars.length == 0) {
@@ -308,27 +491,21 @@ final class FileLogger extends TranslationLogger {
                                 } else {
                                     env = new FixedMap<Variable,TupleSet>(freeVars);
                                     for (int i = 0; i < freeVars.length; i++) {
-                                        env.put(freeVars[i], factory.setOf(1, Ints.singleton(in.readInt())));
+                                        env.put(freeVars[i], factory.setOf(1, Ints.singleton(reader.readVarint())));
                                     }
                                 }
                                 if (filter.accept(original[index], translated[index], literal, env)) {
                                     next.setAll(original[index], translated[index], literal, env);
                                 }
-                                remaining -= (8 + (freeVars.length << 2));
-
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
                             }
-                        }
-                        if (next.node == null) {
-                            try {
-                                in.close();
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
+                            if (next.node == null) {
+                                reader.close();
+                                return false;
+                            } else {
+                                return true;
                             }
-                            return false;
-                        } else {
-                            return true;
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
                         }
                     }
 
@@ -347,16 +524,109 @@ final class FileLogger extends TranslationLogger {
                     @Override
                     protected final void finalize() {
                         try {
-                            in.close();
+                            reader.close();
                         } catch (IOException e) { /* unused */ }
                     }
                 };
-            } catch (FileNotFoundException e) {
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * A buffered reader for the records and the index in a log file, which can be
+     * positioned at any offset in the file.
+     */
+    private static final class RecordReader {
+
+        private final RandomAccessFile file;
+        private final FileChannel      channel;
+        private final ByteBuffer       buffer;
+        private long                   bufferStart;
+
+        /**
+         * Constructs a reader for the given file, positioned at its start.
+         */
+        RecordReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.channel = this.file.getChannel();
+            this.buffer = ByteBuffer.allocate(8192);
+            this.bufferStart = 0;
+            buffer.limit(0);
+        }
+
+        /**
+         * Returns the position in the file of the next byte to be read.
+         */
+        long position() {
+            return bufferStart + buffer.position();
+        }
+
+        /**
+         * Sets the position in the file of the next byte to be read, filling the
+         * buffer from that position if it is not already buffered.
+         */
+        void seek(long position) throws IOException {
+            if (position >= bufferStart && position < bufferStart + buffer.limit()) {
+                buffer.position((int) (position - bufferStart));
+            } else {
+                bufferStart = position;
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {}
+                buffer.flip();
+            }
+        }
+
+        /**
+         * Reads the next byte.
+         *
+         * @throws EOFException the end of the file has been reached
+         */
+        private int read() throws IOException {
+            if (!buffer.hasRemaining()) {
+                seek(position());
+                if (!buffer.hasRemaining())
+                    throw new EOFException();
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        /**
+         * Reads an unsigned variable-length int.
+         */
+        int readVarint() throws IOException {
+            int ret = 0;
+            for (int shift = 0;; shift += 7) {
+                final int b = read();
+                ret |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return ret;
+            }
+        }
+
+        /**
+         * Reads a big-endian int.
+         */
+        int readInt() throws IOException {
+            return (read() << 24) | (read() << 16) | (read() << 8) | read();
+        }
+
+        /**
+         * Reads a big-endian long.
+         */
+        long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Closes the underlying file.
+         */
+        void close() throws IOException {
+            file.close();
+        }
+    }
+
     /**
      * A mutable translation record.
      *
@@ -0,0 +1,508 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.Comprehension;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.FixFormula;
+import kodkod.ast.Formula;
+import kodkod.ast.IfExpression;
+import kodkod.ast.IfIntExpression;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.NotFormula;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.SumExpression;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.visitor.VoidVisitor;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+
+/**
+ * A structural hash of a formula, bounds and the options that affect their
+ * translation to CNF. Two problems with the same fingerprint have the same
+ * {@linkplain Translation.Whole translation}, up to the identity of the
+ * relations and variables that they use.
+ * <p>
+ * The formula is hashed as a DAG: the first occurrence of each node is hashed
+ * in full, and subsequent occurrences are hashed as references to the first.
+ * Relations are hashed by their position in {@code bounds.relations()}, and
+ * variables by their arity, name and the position of their first occurrence.
+ * Atoms are hashed by their index in the universe.
+ * </p>
+ *
+ * @specfield formula: Formula
+ * @specfield bounds: Bounds
+ * @specfield options: Options
+ */
+final class Fingerprint implements VoidVisitor {
+
+    /**
+     * Increment this whenever the translation changes in a way that affects the
+     * produced CNF, so that previously computed fingerprints become stale.
+     */
+    private static final int VERSION = 1;
+
+    private final MessageDigest         digest;
+    private final Map<Node,Integer>     visited;
+    private final Map<Relation,Integer> relations;
+    private final List<Variable>        variables;
+    private final Map<Variable,Decl>    decls;
+    private boolean                     unbound;
+
+    private Fingerprint(Bounds bounds) {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM supports SHA-256
+        }
+        this.visited = new IdentityHashMap<Node,Integer>();
+        this.relations = new HashMap<Relation,Integer>();
+        for (Relation r : bounds.relations()) {
+            relations.put(r, relations.size());
+        }
+        this.variables = new ArrayList<Variable>();
+        this.decls = new HashMap<Variable,Decl>();
+        this.unbound = false;
+    }
+
+    /**
+     * The result of fingerprinting a problem: the hash itself, and the
+     * declarations of the problem's variables, in the order in which they were
+     * first encountered.
+     */
+    static final class Key {
+
+        final byte[]     hash;
+        final List<Decl> decls;
+
+        private Key(byte[] hash, List<Decl> decls) {
+            this.hash = hash;
+            this.decls = decls;
+        }
+
+        /**
+         * Returns the hash as a string of hex digits.
+         *
+         * @return hash as a string of hex digits
+         */
+        String hex() {
+            final StringBuilder s = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                s.append(Character.forDigit((b >> 4) & 0xf, 16));
+                s.append(Character.forDigit(b & 0xf, 16));
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the given problem, or null if the formula refers
+     * to a relation that is not bound by the given bounds.
+     *
+     * @return fingerprint of the given problem, or null if the formula refers to a
+     *         relation that is not bound by the given bounds.
+     */
+    static Key of(Formula formula, Bounds bounds, Options options) {
+        final Fingerprint f = new Fingerprint(bounds);
+        f.integer(VERSION);
+        f.options(options);
+        f.bounds(bounds);
+        formula.accept(f);
+        if (f.unbound)
+            return null;
+        final List<Decl> decls = new ArrayList<Decl>(f.variables.size());
+        for (Variable v : f.variables) {
+            decls.add(f.decls.get(v));
+        }
+        return new Key(f.digest.digest(), decls);
+    }
+
+    private void integer(int i) {
+        digest.update((byte) (i >>> 24));
+        digest.update((byte) (i >>> 16));
+        digest.update((byte) (i >>> 8));
+        digest.update((byte) i);
+    }
+
+    private void string(String s) {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        integer(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void options(Options options) {
+        integer(options.bitwidth());
+        string(options.intEncoding().name());
+        string(options.overflowPolicy().name());
+        integer(options.sharing());
+        integer(options.symmetryBreaking());
+        integer(options.skolemDepth());
+    }
+
+    private void tuples(TupleSet set) {
+        integer(set.size());
+        for (IntIterator itr = set.indexView().iterator(); itr.hasNext();) {
+            integer(itr.next());
+        }
+    }
+
+    private void bounds(Bounds bounds) {
+        integer(bounds.universe().size());
+        integer(bounds.relations().size());
+        for (Relation r : bounds.relations()) {
+            integer(r.arity());
+            tuples(bounds.lowerBound(r));
+            tuples(bounds.upperBound(r));
+        }
+        integer(bounds.intBounds().size());
+        for (IndexedEntry<TupleSet> entry : bounds.intBounds()) {
+            integer(entry.index());
+            tuples(entry.value());
+        }
+    }
+
+    /**
+     * Hashes a reference to the given node if it has been visited before;
+     * otherwise, marks it as visited and hashes the given tag.
+     *
+     * @return true if the node has been visited before
+     */
+    private boolean visited(Node node, char tag) {
+        final Integer id = visited.get(node);
+        if (id != null) {
+            digest.update((byte) '#');
+            integer(id);
+            return true;
+        }
+        visited.put(node, visited.size());
+        digest.update((byte) tag);
+        return false;
+    }
+
+    @Override
+    public void visit(Decls decls) {
+        if (visited(decls, 'D'))
+            return;
+        integer(decls.size());
+        for (Decl d : decls) {
+            d.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Decl decl) {
+        if (visited(decl, 'd'))
+            return;
+        if (!decls.containsKey(decl.variable()))
+            decls.put(decl.variable(), decl);
+        string(decl.multiplicity().name());
+        decl.variable().accept(this);
+        decl.expression().accept(this);
+    }
+
+    @Override
+    public void visit(Relation relation) {
+        if (visited(relation, 'r'))
+            return;
+        final Integer index = relations.get(relation);
+        if (index == null)
+            unbound = true;
+        else
+            integer(index);
+    }
+
+    @Override
+    public void visit(Variable variable) {
+        if (visited(variable, 'v'))
+            return;
+        variables.add(variable);
+        integer(variable.arity());
+        string(variable.name());
+    }
+
+    @Override
+    public void visit(ConstantExpression constExpr) {
+        if (visited(constExpr, 'c'))
+            return;
+        string(constExpr.name());
+    }
+
+    @Override
+    public void visit(UnaryExpression unaryExpr) {
+        if (visited(unaryExpr, 'u'))
+            return;
+        string(unaryExpr.op().name());
+        unaryExpr.expression().accept(this);
+    }
+
+    @Override
+    public void visit(BinaryExpression binExpr) {
+        if (visited(binExpr, 'b'))
+            return;
+        string(binExpr.op().name());
+        binExpr.left().accept(this);
+        binExpr.right().accept(this);
+    }
+
+    @Override
+    public void visit(NaryExpression expr) {
+        if (visited(expr, 'n'))
+            return;
+        string(expr.op().name());
+        integer(expr.size());
+        for (int i = 0; i < expr.size(); i++) {
+            expr.child(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Comprehension comprehension) {
+        if (visited(comprehension, 'x'))
+            return;
+        comprehension.decls().accept(this);
+        comprehension.formula().accept(this);
+    }
+
+    @Override
+    public void visit(IfExpression ifExpr) {
+        if (visited(ifExpr, 'i'))
+            return;
+        ifExpr.condition().accept(this);
+        ifExpr.thenExpr().accept(this);
+        ifExpr.elseExpr().accept(this);
+    }
+
+    @Override
+    public void visit(ProjectExpression project) {
+        if (visited(project, 'p'))
+            return;
+        project.expression().accept(this);
+        integer(project.arity());
+        for (int i = 0; i < project.arity(); i++) {
+            project.column(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visit(IntToExprCast castExpr) {
+        if (visited(castExpr, 'e'))
+            return;
+        string(castExpr.op().name());
+        castExpr.intExpr().accept(this);
+    }
+
+    @Override
+    public void visit(IntConstant intConst) {
+        if (visited(intConst, 'k'))
+            return;
+        integer(intConst.value());
+    }
+
+    @Override
+    public void visit(ExprToIntCast intExpr) {
+        if (visited(intExpr, 'E'))
+            return;
+        string(intExpr.op().name());
+        intExpr.expression().accept(this);
+    }
+
+    @Override
+    public void visit(IfIntExpression intExpr) {
+        if (visited(intExpr, 'I'))
+            return;
+        intExpr.condition().accept(this);
+        intExpr.thenExpr().accept(this);
+        intExpr.elseExpr().accept(this);
+    }
+
+    @Override
+    public void visit(NaryIntExpression intExpr) {
+        if (visited(intExpr, 'N'))
+            return;
+        string(intExpr.op().name());
+        integer(intExpr.size());
+        for (int i = 0; i < intExpr.size(); i++) {
+            intExpr.child(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visit(BinaryIntExpression intExpr) {
+        if (visited(intExpr, 'B'))
+            return;
+        string(intExpr.op().name());
+        intExpr.left().accept(this);
+        intExpr.right().accept(this);
+    }
+
+    @Override
+    public void visit(UnaryIntExpression intExpr) {
+        if (visited(intExpr, 'U'))
+            return;
+        string(intExpr.op().name());
+        intExpr.intExpr().accept(this);
+    }
+
+    @Override
+    public void visit(SumExpression intExpr) {
+        if (visited(intExpr, 'S'))
+            return;
+        intExpr.decls().accept(this);
+        intExpr.intExpr().accept(this);
+    }
+
+    @Override
+    public void visit(IntComparisonFormula intComp) {
+        if (visited(intComp, 'C'))
+            return;
+        string(intComp.op().name());
+        intComp.left().accept(this);
+        intComp.right().accept(this);
+    }
+
+    @Override
+    public void visit(QuantifiedFormula quantFormula) {
+        if (visited(quantFormula, 'Q'))
+            return;
+        string(quantFormula.quantifier().name());
+        quantFormula.decls().accept(this);
+        quantFormula.domain().accept(this);
+        quantFormula.body().accept(this);
+    }
+
+    @Override
+    public void visit(NaryFormula formula) {
+        if (visited(formula, 'F'))
+            return;
+        string(formula.op().name());
+        integer(formula.size());
+        for (int i = 0; i < formula.size(); i++) {
+            formula.child(i).accept(this);
+        }
+    }
+
+    @Override
+    public void visit(BinaryFormula binFormula) {
+        if (visited(binFormula, 'G'))
+            return;
+        string(binFormula.op().name());
+        binFormula.left().accept(this);
+        binFormula.right().accept(this);
+    }
+
+    @Override
+    public void visit(NotFormula not) {
+        if (visited(not, '!'))
+            return;
+        not.formula().accept(this);
+    }
+
+    @Override
+    public void visit(ConstantFormula constant) {
+        if (visited(constant, 'T'))
+            return;
+        digest.update((byte) (constant.booleanValue() ? 1 : 0));
+    }
+
+    @Override
+    public void visit(ComparisonFormula compFormula) {
+        if (visited(compFormula, '='))
+            return;
+        string(compFormula.op().name());
+        compFormula.left().accept(this);
+        compFormula.right().accept(this);
+    }
+
+    @Override
+    public void visit(MultiplicityFormula multFormula) {
+        if (visited(multFormula, 'M'))
+            return;
+        string(multFormula.multiplicity().name());
+        multFormula.expression().accept(this);
+    }
+
+    @Override
+    public void visit(RelationPredicate predicate) {
+        if (visited(predicate, 'P'))
+            return;
+        string(predicate.name().name());
+        predicate.relation().accept(this);
+        switch (predicate.name()) {
+            case ACYCLIC :
+                break;
+            case FUNCTION :
+                final RelationPredicate.Function fun = (RelationPredicate.Function) predicate;
+                string(fun.targetMult().name());
+                fun.domain().accept(this);
+                fun.range().accept(this);
+                break;
+            case TOTAL_ORDERING :
+                final RelationPredicate.TotalOrdering ord = (RelationPredicate.TotalOrdering) predicate;
+                ord.ordered().accept(this);
+                ord.first().accept(this);
+                ord.last().accept(this);
+                break;
+            default :
+                throw new IllegalArgumentException("unknown relation predicate: " + predicate.name());
+        }
+    }
+
+    @Override
+    public void visit(FixFormula fixFormula) {
+        if (visited(fixFormula, 'X'))
+            return;
+        fixFormula.formula().accept(this);
+        fixFormula.condition().accept(this);
+    }
+}
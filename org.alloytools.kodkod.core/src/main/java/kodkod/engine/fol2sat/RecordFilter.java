@@ -22,11 +22,13 @@
 package kodkod.engine.fol2sat;
 
 import java.util.Map;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.Node;
 import kodkod.ast.Variable;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntSet;
 
 /**
  * A filter for TranslationRecords, based on the value of a record's node and
@@ -45,6 +47,32 @@ public interface RecordFilter {
      */
     public abstract boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env);
 
+    /**
+     * Returns the variables of the literals accepted by this filter, or null if
+     * they are not known in advance. Logs that index their records may use this
+     * set to replay only the records whose literals are on the given variables.
+     * The default implementation returns null.
+     *
+     * @return null or a set of ints such that, for all records r accepted by this
+     *         filter, abs(r.literal) is in the returned set
+     */
+    public default IntSet variables() {
+        return null;
+    }
+
+    /**
+     * Returns the translated formulas of the records accepted by this filter, or
+     * null if they are not known in advance. Logs that index their records may use
+     * this set to replay only the records for the given formulas. The default
+     * implementation returns null.
+     *
+     * @return null or a set of formulas such that, for all records r accepted by
+     *         this filter, r.translated is in the returned set
+     */
+    public default Set<Formula> formulas() {
+        return null;
+    }
+
     /**
      * A record filter that accepts all records.
      */
@@ -33,6 +33,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
@@ -82,11 +84,25 @@ public final class SymmetryBreaker {
      *          SymmetryDetector.partition(bounds) && no this.broken'
      **/
     public SymmetryBreaker(Bounds bounds, AnnotatedNode<Formula> annotated, Reporter reporter) {
+        this(bounds, annotated, reporter, 1);
+    }
+
+    /**
+     * Constructs a new symmetry breaker for the given Bounds, as described above,
+     * detecting symmetries with the given number of threads. The detected
+     * symmetries do not depend on the number of threads.
+     *
+     * @requires threads > 0
+     * @ensures reporter.detectedSymmetries(this.symmteries')
+     * @ensures this.bounds' = bounds && this.symmetries' =
+     *          SymmetryDetector.partition(bounds) && no this.broken'
+     **/
+    public SymmetryBreaker(Bounds bounds, AnnotatedNode<Formula> annotated, Reporter reporter, int threads) {
         this.bounds = bounds;
         this.formula = annotated;
         this.usize = bounds.universe().size();
         reporter.detectingSymmetries(bounds);
-        this.symmetries = SymmetryDetector.partition(bounds, formula != null ? formula.atomRelations() : null, null);
+        this.symmetries = SymmetryDetector.partition(bounds, formula != null ? formula.atomRelations() : null, null, threads);
         reporter.detectedSymmetries(symmetries);
         // System.out.println(symmetries);
     }
@@ -174,8 +190,10 @@ public final class SymmetryBreaker {
 
     /**
      * Generates a lex leader symmetry breaking predicate for this.symmetries (if
-     * any), using the specified leaf interpreter and options.symmetryBreaking. It
-     * also invokes options.reporter().generatingSBP() if a non-constant predicate
+     * any), using the specified leaf interpreter and options.symmetryBreaking. The
+     * pairs of values compared by the predicate are collected with
+     * options.symmetryThreads threads; the predicate itself does not depend on the
+     * number of threads. It also invokes options.reporter().generatingSBP() if a non-constant predicate
      * is generated.
      *
      * @requires interpreter.relations in this.bounds.relations
@@ -190,42 +208,40 @@ public final class SymmetryBreaker {
         options.reporter().generatingSBP();
 
         final List<RelationParts> relParts = relParts();
-        final BooleanFactory factory = interpreter.factory();
-        final BooleanAccumulator sbp = BooleanAccumulator.treeGate(Operator.AND);
-        final List<BooleanValue> original = new ArrayList<BooleanValue>(predLength);
-        final List<BooleanValue> permuted = new ArrayList<BooleanValue>(predLength);
+        final BooleanMatrix[] matrices = new BooleanMatrix[relParts.size()];
+        for (int i = 0; i < matrices.length; i++) {
+            matrices[i] = interpreter.interpret(relParts.get(i).relation);
+        }
 
+        final List<LexPairs> pairs = new ArrayList<LexPairs>();
         for (IntSet sym : symmetries) {
-
             IntIterator indeces = sym.iterator();
             for (int prevIndex = indeces.next(); indeces.hasNext();) {
                 int curIndex = indeces.next();
-                for (Iterator<RelationParts> rIter = relParts.iterator(); rIter.hasNext() && original.size() < predLength;) {
-
-                    RelationParts rparts = rIter.next();
-                    Relation r = rparts.relation;
-
-                    if (!rparts.representatives.contains(sym.min()))
-                        continue; // r does not range over sym
-
-                    BooleanMatrix m = interpreter.interpret(r);
-                    for (IndexedEntry<BooleanValue> entry : m) {
-                        int permIndex = permutation(r.arity(), entry.index(), prevIndex, curIndex);
-                        BooleanValue permValue = m.get(permIndex);
-                        if (permIndex == entry.index() || atSameIndex(original, permValue, permuted, entry.value()))
-                            continue;
-
-                        original.add(entry.value());
-                        permuted.add(permValue);
-                    }
-                }
-
-                sbp.add(leq(factory, original, permuted));
-                original.clear();
-                permuted.clear();
+                pairs.add(new LexPairs(sym.min(), prevIndex, curIndex, predLength));
                 prevIndex = curIndex;
             }
         }
+
+        final int threads = options.symmetryThreads();
+        if (threads > 1 && pairs.size() > 1) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new LexPairsTask(pairs, relParts, matrices, 0, pairs.size()));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (LexPairs p : pairs) {
+                p.compute(relParts, matrices);
+            }
+        }
+
+        final BooleanFactory factory = interpreter.factory();
+        final BooleanAccumulator sbp = BooleanAccumulator.treeGate(Operator.AND);
+        for (LexPairs p : pairs) {
+            sbp.add(leq(factory, p.original, p.permuted));
+        }
         symmetries.clear(); // no symmetries left to break (this is
                            // conservative)
         return factory.accumulate(sbp);
@@ -531,6 +547,90 @@ public final class SymmetryBreaker {
         return colParts;
     }
 
+    /**
+     * The pairs of boolean values that are compared by the lex-leader predicate
+     * for the transposition of two consecutive atoms in a symmetry class. The
+     * pairs are computed without creating any gates, so those for different
+     * transpositions can be computed in parallel.
+     *
+     * @specfield rep, prevIndex, curIndex: int
+     * @specfield original, permuted: seq BooleanValue
+     */
+    private final class LexPairs {
+
+        final int                rep, prevIndex, curIndex, predLength;
+        final List<BooleanValue> original, permuted;
+
+        LexPairs(int rep, int prevIndex, int curIndex, int predLength) {
+            this.rep = rep;
+            this.prevIndex = prevIndex;
+            this.curIndex = curIndex;
+            this.predLength = predLength;
+            this.original = new ArrayList<BooleanValue>(predLength);
+            this.permuted = new ArrayList<BooleanValue>(predLength);
+        }
+
+        /**
+         * Collects the values of the given matrices, which interpret the relations
+         * in the given list, into this.original and this.permuted.
+         *
+         * @requires all i: [0..relParts.size()) | matrices[i] =
+         *           interpret(relParts[i].relation)
+         */
+        void compute(List<RelationParts> relParts, BooleanMatrix[] matrices) {
+            for (int i = 0, n = relParts.size(); i < n && original.size() < predLength; i++) {
+
+                RelationParts rparts = relParts.get(i);
+                Relation r = rparts.relation;
+
+                if (!rparts.representatives.contains(rep))
+                    continue; // r does not range over sym
+
+                BooleanMatrix m = matrices[i];
+                for (IndexedEntry<BooleanValue> entry : m) {
+                    int permIndex = permutation(r.arity(), entry.index(), prevIndex, curIndex);
+                    BooleanValue permValue = m.get(permIndex);
+                    if (permIndex == entry.index() || atSameIndex(original, permValue, permuted, entry.value()))
+                        continue;
+
+                    original.add(entry.value());
+                    permuted.add(permValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the LexPairs in a given range of a list by splitting the range into
+     * halves until it contains a single element.
+     */
+    @SuppressWarnings("serial")
+    private static final class LexPairsTask extends RecursiveAction {
+
+        private final List<LexPairs>      pairs;
+        private final List<RelationParts> relParts;
+        private final BooleanMatrix[]     matrices;
+        private final int                 from, to;
+
+        LexPairsTask(List<LexPairs> pairs, List<RelationParts> relParts, BooleanMatrix[] matrices, int from, int to) {
+            this.pairs = pairs;
+            this.relParts = relParts;
+            this.matrices = matrices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                pairs.get(from).compute(relParts, matrices);
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new LexPairsTask(pairs, relParts, matrices, from, mid), new LexPairsTask(pairs, relParts, matrices, mid, to));
+            }
+        }
+    }
+
     /**
      * An entry for a relation and the representative (least atom) for each symmetry
      * class in the relation's upper bound.
@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import kodkod.ast.Relation;
 import kodkod.instance.Bounds;
@@ -48,11 +50,23 @@ import kodkod.util.ints.Ints;
  * tupleset in <code>b.lowerBound</code>, <code>b.upperBound</code>, and
  * <code>b.intBound</code> can be expressed as a union of cross-products of sets
  * drawn from <code>{ s0, ..., sn }</code>.
+ * <p>
+ * A detector can use a fork-join pool to compute, in parallel, the rows of a
+ * tupleset that start with each atom of a part. The parts are refined with
+ * these rows in the same order as by a sequential detector, so the computed
+ * partition does not depend on the number of threads.
+ * </p>
  *
  * @author Emina Torlak
  */
 public final class SymmetryDetector {
 
+    /**
+     * The least number of atoms in a part whose rows are computed in parallel, and
+     * the number of rows computed by each parallel task.
+     */
+    private static final int           GRAIN = 64;
+
     private final Bounds               bounds;
     /*
      * invariant: representatives always holds a sequence of IntSets that partition
@@ -62,14 +76,17 @@ public final class SymmetryDetector {
     private final int                  usize;
     private final Collection<Relation> ignoreAllAtomRelsExcept;
     private final Collection<Relation> ignoreRels;
+    private final ForkJoinPool         pool;
 
     /**
-     * Constructs a new SymmetryDetector for the given bounds.
+     * Constructs a new SymmetryDetector for the given bounds, which uses the given
+     * pool, if any, to refine partitions.
      *
      * @ensures this.bounds' = bounds
      */
-    private SymmetryDetector(Bounds bounds, Collection<Relation> ignoreAllAtomRelsExcept, Collection<Relation> ignoreRels) {
+    private SymmetryDetector(Bounds bounds, Collection<Relation> ignoreAllAtomRelsExcept, Collection<Relation> ignoreRels, ForkJoinPool pool) {
         this.bounds = bounds;
+        this.pool = pool;
         this.usize = bounds.universe().size();
         this.ignoreAllAtomRelsExcept = ignoreAllAtomRelsExcept;
         this.ignoreRels = ignoreRels;
@@ -109,11 +126,30 @@ public final class SymmetryDetector {
     }
 
     public static Set<IntSet> partition(Bounds bounds, Collection<Relation> ignoreAllAtomRelsExcept, Collection<Relation> ignoreRelations) {
-        final SymmetryDetector detector = new SymmetryDetector(bounds, ignoreAllAtomRelsExcept, ignoreRelations);
-        detector.computePartitions();
-        final Set<IntSet> parts = new LinkedHashSet<IntSet>(detector.parts);
-        assert parts.size() == detector.parts.size(); // sanity check
-        return parts;
+        return partition(bounds, ignoreAllAtomRelsExcept, ignoreRelations, 1);
+    }
+
+    /**
+     * Returns the same partition as
+     * {@link #partition(Bounds, Collection, Collection) partition(bounds,
+     * ignoreAllAtomRelsExcept, ignoreRelations)}, computed with the given number of
+     * threads.
+     *
+     * @requires threads > 0
+     * @return partition(bounds, ignoreAllAtomRelsExcept, ignoreRelations)
+     */
+    public static Set<IntSet> partition(Bounds bounds, Collection<Relation> ignoreAllAtomRelsExcept, Collection<Relation> ignoreRelations, int threads) {
+        final ForkJoinPool pool = threads > 1 && bounds.universe().size() >= GRAIN ? new ForkJoinPool(threads) : null;
+        try {
+            final SymmetryDetector detector = new SymmetryDetector(bounds, ignoreAllAtomRelsExcept, ignoreRelations, pool);
+            detector.computePartitions();
+            final Set<IntSet> parts = new LinkedHashSet<IntSet>(detector.parts);
+            assert parts.size() == detector.parts.size(); // sanity check
+            return parts;
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
     }
 
     /**
@@ -224,12 +260,16 @@ public final class SymmetryDetector {
             if (firstCol.contains(part.min())) { // contains one, contains them
                                                 // all
                 range2domain.clear();
-                for (IntIterator atoms = part.iterator(); atoms.hasNext();) {
-                    int atom = atoms.next();
-                    IntSet atomRange = Ints.bestSet(firstColFactor);
-                    for (IntIterator rbIter = set.iterator(atom * firstColFactor, (atom + 1) * firstColFactor - 1); rbIter.hasNext();) {
-                        atomRange.add(rbIter.next() % firstColFactor);
-                    }
+                final int[] atoms = part.toArray();
+                final IntSet[] ranges = new IntSet[atoms.length];
+                if (pool == null || atoms.length < GRAIN) {
+                    ranges(set, firstColFactor, atoms, ranges, 0, atoms.length);
+                } else {
+                    pool.invoke(new RangesTask(set, firstColFactor, atoms, ranges, 0, atoms.length));
+                }
+                for (int i = 0; i < atoms.length; i++) {
+                    int atom = atoms[i];
+                    IntSet atomRange = ranges[i];
                     IntSet atomDomain = range2domain.get(atomRange);
                     if (atomDomain != null)
                         atomDomain.add(atom);
@@ -257,6 +297,57 @@ public final class SymmetryDetector {
         }
     }
 
+    /**
+     * Stores into ranges[i], for each i in [from..to), the set of indices of the
+     * tuples in the given set that start with atoms[i], with the first atom
+     * removed.
+     *
+     * @ensures all i: [from..to) | ranges'[i].ints = { j: [0..firstColFactor) |
+     *          atoms[i] * firstColFactor + j in set.ints }
+     */
+    private static void ranges(IntSet set, int firstColFactor, int[] atoms, IntSet[] ranges, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final int atom = atoms[i];
+            final IntSet atomRange = Ints.bestSet(firstColFactor);
+            for (IntIterator rbIter = set.iterator(atom * firstColFactor, (atom + 1) * firstColFactor - 1); rbIter.hasNext();) {
+                atomRange.add(rbIter.next() % firstColFactor);
+            }
+            ranges[i] = atomRange;
+        }
+    }
+
+    /**
+     * Computes {@link #ranges(IntSet, int, int[], IntSet[], int, int)} by splitting
+     * [from..to) into halves until each task handles at most {@link #GRAIN} atoms.
+     */
+    @SuppressWarnings("serial")
+    private static final class RangesTask extends RecursiveAction {
+
+        private final IntSet   set;
+        private final int      firstColFactor, from, to;
+        private final int[]    atoms;
+        private final IntSet[] ranges;
+
+        RangesTask(IntSet set, int firstColFactor, int[] atoms, IntSet[] ranges, int from, int to) {
+            this.set = set;
+            this.firstColFactor = firstColFactor;
+            this.atoms = atoms;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                ranges(set, firstColFactor, atoms, ranges, from, to);
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new RangesTask(set, firstColFactor, atoms, ranges, from, mid), new RangesTask(set, firstColFactor, atoms, ranges, mid, to));
+            }
+        }
+    }
+
     /**
      * Refines the atomic partitions this.parts based on the contents of the given
      * set.
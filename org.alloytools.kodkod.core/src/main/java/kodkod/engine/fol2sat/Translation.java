@@ -75,6 +75,7 @@ public abstract class Translation {
 
     protected final Bounds  bounds;
     protected final Options options;
+    private long            cacheHits, cacheMisses, cacheEvictions;
 
     /**
      * Creates a translation using the given bounds and options.
@@ -157,6 +158,52 @@ public abstract class Translation {
         return cnf().numberOfVariables() == 0;
     }
 
+    /**
+     * Returns the number of times that the translator found the translation of a
+     * subformula or subexpression in its cache while generating this translation.
+     *
+     * @return number of cache hits during the translation to boolean
+     * @see Options#bindingCacheCapacity()
+     */
+    public final long cacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of times that the translator looked for the translation
+     * of a cached subformula or subexpression and did not find it while generating
+     * this translation.
+     *
+     * @return number of cache misses during the translation to boolean
+     * @see Options#bindingCacheCapacity()
+     */
+    public final long cacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Returns the number of translations that the translator evicted from its
+     * cache while generating this translation.
+     *
+     * @return number of cache evictions during the translation to boolean
+     * @see Options#bindingCacheCapacity()
+     */
+    public final long cacheEvictions() {
+        return cacheEvictions;
+    }
+
+    /**
+     * Records the given cache statistics.
+     *
+     * @ensures this.cacheHits() = hits && this.cacheMisses() = misses &&
+     *          this.cacheEvictions() = evictions
+     */
+    final void setCacheStatistics(long hits, long misses, long evictions) {
+        this.cacheHits = hits;
+        this.cacheMisses = misses;
+        this.cacheEvictions = evictions;
+    }
+
     /**
      * If {@code this.solver.solve()} is true, returns an interpretation of the CNF
      * solution as a mapping from Relations to sets of Tuples. The returned instance
@@ -0,0 +1,681 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kodkod.ast.Decl;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.config.Metrics;
+import kodkod.engine.config.Options;
+import kodkod.engine.config.Reporter;
+import kodkod.engine.hol.HOLTranslation;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+/**
+ * A persistent cache of {@linkplain Translation.Whole whole translations},
+ * stored as files in a directory. Translations are keyed on a structural
+ * {@linkplain Fingerprint fingerprint} of the formula, the bounds, and the
+ * options that affect the translation. Each file holds the CNF of a
+ * translation, together with the optimized bounds (including any skolem
+ * relations) and the primary variables that are needed to
+ * {@linkplain Translation#interpret() interpret} a model of that CNF.
+ * <p>
+ * A cache hit skips translation entirely: the stored clauses are added to a
+ * fresh instance of {@code options.solver()}, and the skolemization events
+ * that took place during the original translation are replayed to
+ * {@code options.reporter()}. No other reporter events are generated on a hit.
+ * Translations with logging enabled are never cached. Files that cannot be
+ * read or written are ignored, so a broken cache only costs a translation.
+ * </p>
+ * <p>
+ * A single cache may be used by several threads, and several processes may
+ * share a cache directory; files are written under a temporary name and then
+ * renamed.
+ * </p>
+ *
+ * @specfield directory: File
+ * @see Options#setTranslationCache(TranslationCache)
+ */
+public final class TranslationCache {
+
+    private static final int MAGIC  = 0x4b4b5443;      // "KKTC"
+    private static final int EOC    = -1, VARS = -2;   // clause stream markers
+    private static final int ORIGINAL = 0, SKOLEM = 1; // relation kinds
+
+    private final File       directory;
+    private final AtomicLong hits, misses;
+
+    /**
+     * Constructs a cache that stores translations in the given directory. The
+     * directory is created when the first translation is stored.
+     *
+     * @ensures this.directory' = directory
+     * @throws NullPointerException directory = null
+     */
+    public TranslationCache(File directory) {
+        if (directory == null)
+            throw new NullPointerException();
+        this.directory = directory;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Returns the directory in which translations are stored.
+     *
+     * @return this.directory
+     */
+    public File directory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of translations that were read from this cache.
+     *
+     * @return number of translations that were read from this cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of translations that were computed because they were not
+     * in this cache.
+     *
+     * @return number of translations that were not found in this cache
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the translation of the given formula with respect to the given
+     * bounds and options, reading it from this cache if possible. Otherwise, the
+     * problem is translated and its translation is stored in this cache.
+     *
+     * @return some t: Translation.Whole | t.originalFormula = formula &&
+     *         t.originalBounds = bounds && t.options = options
+     * @throws NullPointerException any of the arguments are null
+     * @throws UnboundLeafException the formula refers to an undeclared variable or
+     *             a relation not mapped by the given bounds.
+     * @throws HigherOrderDeclException the formula contains a higher order
+     *             declaration that cannot be skolemized, or it can be skolemized
+     *             but options.skolemize is false.
+     * @see Translator#translate(Formula, Bounds, Options)
+     */
+    public Translation.Whole translate(Formula formula, Bounds bounds, Options options) {
+        final Fingerprint.Key key = options.logTranslation() == 0 ? Fingerprint.of(formula, bounds, options) : null;
+        if (key == null)
+            return Translator.translateWhole(formula, bounds, options);
+        final File file = new File(directory, key.hex() + ".cnf");
+        if (file.isFile()) {
+            final Translation.Whole cached = read(file, key, bounds, options);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        return translateAndWrite(formula, bounds, options, key, file);
+    }
+
+    /**
+     * Reads the translation stored in the given file, or returns null if the file
+     * cannot be read.
+     *
+     * @requires file stores the translation of a problem with the given key
+     * @requires key = Fingerprint.of(_, bounds, options)
+     * @return translation stored in the given file, or null if it cannot be read
+     */
+    private static Translation.Whole read(File file, Fingerprint.Key key, Bounds bounds, Options options) {
+        SATSolver solver = null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC)
+                return null;
+
+            solver = options.solver().instance();
+            int[] clause = new int[16];
+            for (int n = in.readInt(); n != EOC; n = in.readInt()) {
+                if (n == VARS) {
+                    solver.addVariables(in.readInt());
+                    continue;
+                }
+                if (clause.length != n)
+                    clause = new int[n];
+                for (int i = 0; i < n; i++) {
+                    clause[i] = in.readInt();
+                }
+                solver.addClause(clause);
+            }
+
+            final int maxPrimaryVar = in.readInt();
+            final List<Relation> original = new ArrayList<Relation>(bounds.relations());
+            final TupleFactory f = bounds.universe().factory();
+            final Bounds optimized = new Bounds(bounds.universe());
+            final List<Relation> rels = new ArrayList<Relation>();
+            final Map<Relation,IntSet> varUsage = new LinkedHashMap<Relation,IntSet>();
+            for (int i = 0, size = in.readInt(); i < size; i++) {
+                final Relation r = in.readByte() == ORIGINAL ? original.get(in.readInt()) : Relation.nary(in.readUTF(), in.readInt());
+                optimized.bound(r, f.setOf(r.arity(), readInts(in)), f.setOf(r.arity(), readInts(in)));
+                final int min = in.readInt(), max = in.readInt();
+                if (min <= max)
+                    varUsage.put(r, Ints.rangeSet(Ints.range(min, max)));
+                rels.add(r);
+            }
+            for (IndexedEntry<TupleSet> entry : bounds.intBounds()) {
+                optimized.boundExactly(entry.index(), entry.value());
+            }
+
+            final Reporter reporter = options.reporter();
+            for (int i = 0, size = in.readInt(); i < size; i++) {
+                final Relation skolem = rels.get(in.readInt());
+                final Decl decl = key.decls.get(in.readInt());
+                final int n = in.readInt();
+                final List<Decl> context = n < 0 ? null : new ArrayList<Decl>(n);
+                for (int j = 0; j < n; j++) {
+                    context.add(key.decls.get(in.readInt()));
+                }
+                reporter.skolemizing(decl, skolem, context);
+            }
+            return new Translation.Whole(optimized, options, solver, varUsage, maxPrimaryVar, null);
+        } catch (IOException | RuntimeException e) {
+            // a stale, truncated or corrupted file; translate from scratch
+            if (solver != null)
+                solver.free();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Translates the given problem and writes its translation to the given file.
+     *
+     * @requires key = Fingerprint.of(formula, bounds, options)
+     * @return Translator.translateWhole(formula, bounds, options)
+     */
+    private Translation.Whole translateAndWrite(Formula formula, Bounds bounds, Options options, Fingerprint.Key key, File file) {
+        final File tmp;
+        final DataOutputStream out;
+        try {
+            directory.mkdirs();
+            tmp = File.createTempFile("kodkod", ".tmp", directory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        } catch (IOException e) {
+            return Translator.translateWhole(formula, bounds, options);
+        }
+
+        final Options recording = options.clone();
+        final Recorder recorder = new Recorder(options.solver(), out);
+        final SkolemRecorder skolems = new SkolemRecorder(options.reporter());
+        recording.setSolver(recorder);
+        recording.setReporter(skolems);
+
+        final Translation.Whole transl;
+        try {
+            out.writeInt(MAGIC);
+            transl = Translator.translateWhole(formula, bounds, recording);
+        } catch (IOException e) {
+            close(out);
+            tmp.delete();
+            return Translator.translateWhole(formula, bounds, options);
+        } catch (RuntimeException e) {
+            close(out);
+            tmp.delete();
+            throw e;
+        }
+
+        final Map<Relation,IntSet> varUsage = new LinkedHashMap<Relation,IntSet>();
+        final Set<Relation> rels = transl.bounds().relations();
+        for (Relation r : rels) {
+            final IntSet vars = transl.primaryVariables(r);
+            if (!vars.isEmpty())
+                varUsage.put(r, vars);
+        }
+        final Translation.Whole ret = new Translation.Whole(transl.bounds(), options, recorder.solver, varUsage, transl.numPrimaryVariables(), null);
+
+        try {
+            if (recorder.failure != null)
+                throw recorder.failure;
+            out.writeInt(EOC);
+            out.writeInt(transl.numPrimaryVariables());
+            writeBounds(out, bounds, transl.bounds(), varUsage);
+            writeSkolems(out, key, new ArrayList<Relation>(rels), skolems.events);
+            out.close();
+            move(tmp, file);
+        } catch (IOException e) {
+            close(out);
+            tmp.delete();
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the relations of the given optimized bounds, together with their
+     * bounds and primary variables.
+     */
+    private static void writeBounds(DataOutputStream out, Bounds original, Bounds optimized, Map<Relation,IntSet> varUsage) throws IOException {
+        final Map<Relation,Integer> index = new HashMap<Relation,Integer>();
+        for (Relation r : original.relations()) {
+            index.put(r, index.size());
+        }
+        out.writeInt(optimized.relations().size());
+        for (Relation r : optimized.relations()) {
+            final Integer i = index.get(r);
+            if (i == null) {
+                out.writeByte(SKOLEM);
+                out.writeUTF(r.name());
+                out.writeInt(r.arity());
+            } else {
+                out.writeByte(ORIGINAL);
+                out.writeInt(i);
+            }
+            writeInts(out, optimized.lowerBound(r).indexView());
+            writeInts(out, optimized.upperBound(r).indexView());
+            final IntSet vars = varUsage.get(r);
+            out.writeInt(vars == null ? 1 : vars.min());
+            out.writeInt(vars == null ? 0 : vars.max());
+        }
+    }
+
+    /**
+     * Writes the given skolemization events, identifying the skolems by their
+     * position in the given list and the declarations by their position in
+     * key.decls. Events whose declarations are not in key.decls cannot be
+     * replayed and are skipped.
+     */
+    private static void writeSkolems(DataOutputStream out, Fingerprint.Key key, List<Relation> rels, List<SkolemEvent> events) throws IOException {
+        final Map<Variable,Integer> index = new HashMap<Variable,Integer>();
+        for (Decl d : key.decls) {
+            index.put(d.variable(), index.size());
+        }
+        final List<int[]> encoded = new ArrayList<int[]>(events.size());
+        EVENTS: for (SkolemEvent e : events) {
+            final int n = e.context == null ? 0 : e.context.size();
+            final int[] enc = new int[3 + n];
+            enc[0] = rels.indexOf(e.skolem);
+            final Integer decl = index.get(e.decl.variable());
+            if (enc[0] < 0 || decl == null)
+                continue;
+            enc[1] = decl;
+            enc[2] = e.context == null ? -1 : n;
+            for (int i = 0; i < n; i++) {
+                final Integer d = index.get(e.context.get(i).variable());
+                if (d == null)
+                    continue EVENTS;
+                enc[3 + i] = d;
+            }
+            encoded.add(enc);
+        }
+        out.writeInt(encoded.size());
+        for (int[] enc : encoded) {
+            for (int i : enc) {
+                out.writeInt(i);
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntSet ints) throws IOException {
+        out.writeInt(ints.size());
+        for (IntIterator itr = ints.iterator(); itr.hasNext();) {
+            out.writeInt(itr.next());
+        }
+    }
+
+    private static IntSet readInts(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final int[] ints = new int[size];
+        for (int i = 0; i < size; i++) {
+            ints[i] = in.readInt();
+        }
+        return Ints.asSet(ints);
+    }
+
+    /**
+     * Renames the given temporary file to the given target, atomically if the
+     * file system supports it.
+     */
+    private static void move(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {} // ignore
+        }
+    }
+
+    /**
+     * A SATFactory whose solvers write the variables and clauses that are added to
+     * them to a stream, before passing them on to a solver produced by the wrapped
+     * factory. The factory is used for a single translation, so it produces a
+     * single solver.
+     */
+    private static final class Recorder extends SATFactory {
+
+        private final SATFactory       factory;
+        private final DataOutputStream out;
+        SATSolver                      solver;
+        IOException                    failure;
+
+        Recorder(SATFactory factory, DataOutputStream out) {
+            this.factory = factory;
+            this.out = out;
+        }
+
+        @Override
+        public SATSolver instance() {
+            solver = factory.instance();
+            return new SATSolver() {
+
+                @Override
+                public int numberOfVariables() {
+                    return solver.numberOfVariables();
+                }
+
+                @Override
+                public int numberOfClauses() {
+                    return solver.numberOfClauses();
+                }
+
+                @Override
+                public void addVariables(int numVars) {
+                    if (failure == null) {
+                        try {
+                            out.writeInt(VARS);
+                            out.writeInt(numVars);
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    solver.addVariables(numVars);
+                }
+
+                @Override
+                public boolean addClause(int[] lits) {
+                    // write the clause first, since the solver may modify it
+                    if (failure == null) {
+                        try {
+                            out.writeInt(lits.length);
+                            for (int lit : lits) {
+                                out.writeInt(lit);
+                            }
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    return solver.addClause(lits);
+                }
+
+                @Override
+                public int addClauses(IntBuffer clauses) {
+                    if (failure == null) {
+                        try {
+                            final IntBuffer lits = clauses.duplicate();
+                            for (int start = lits.position(); lits.hasRemaining();) {
+                                if (lits.get() == 0) {
+                                    final int end = lits.position() - 1;
+                                    out.writeInt(end - start);
+                                    for (int i = start; i < end; i++) {
+                                        out.writeInt(lits.get(i));
+                                    }
+                                    start = lits.position();
+                                }
+                            }
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    return solver.addClauses(clauses);
+                }
+
+                @Override
+                public boolean solve() throws SATAbortedException {
+                    return solver.solve();
+                }
+
+                @Override
+                public boolean valueOf(int variable) {
+                    return solver.valueOf(variable);
+                }
+
+                @Override
+                public void free() {
+                    solver.free();
+                }
+            };
+        }
+
+        @Override
+        public boolean prover() {
+            return factory.prover();
+        }
+
+        @Override
+        public boolean incremental() {
+            return factory.incremental();
+        }
+    }
+
+    /**
+     * A call to {@link Reporter#skolemizing(Decl, Relation, List)}.
+     */
+    private static final class SkolemEvent {
+
+        final Decl       decl;
+        final Relation   skolem;
+        final List<Decl> context;
+
+        SkolemEvent(Decl decl, Relation skolem, List<Decl> context) {
+            this.decl = decl;
+            this.skolem = skolem;
+            this.context = context == null ? null : new ArrayList<Decl>(context);
+        }
+    }
+
+    /**
+     * A reporter that records the skolemization events that it receives, and
+     * forwards all events to a wrapped reporter.
+     */
+    private static final class SkolemRecorder implements Reporter {
+
+        private final Reporter  reporter;
+        final List<SkolemEvent> events;
+
+        SkolemRecorder(Reporter reporter) {
+            this.reporter = reporter;
+            this.events = new ArrayList<SkolemEvent>();
+        }
+
+        @Override
+        public void skolemizing(Decl decl, Relation skolem, List<Decl> context) {
+            events.add(new SkolemEvent(decl, skolem, context));
+            reporter.skolemizing(decl, skolem, context);
+        }
+
+        @Override
+        public void detectingSymmetries(Bounds bounds) {
+            reporter.detectingSymmetries(bounds);
+        }
+
+        @Override
+        public void detectedSymmetries(Set<IntSet> parts) {
+            reporter.detectedSymmetries(parts);
+        }
+
+        @Override
+        public void optimizingBoundsAndFormula() {
+            reporter.optimizingBoundsAndFormula();
+        }
+
+        @Override
+        public void translatingToBoolean(Formula formula, Bounds bounds) {
+            reporter.translatingToBoolean(formula, bounds);
+        }
+
+        @Override
+        public void generatingSBP() {
+            reporter.generatingSBP();
+        }
+
+        @Override
+        public void translatingToCNF(BooleanFormula circuit) {
+            reporter.translatingToCNF(circuit);
+        }
+
+        @Override
+        public void solvingCNF(int primaryVars, int vars, int clauses) {
+            reporter.solvingCNF(primaryVars, vars, clauses);
+        }
+
+        @Override
+        public void progress(Metrics metrics) {
+            reporter.progress(metrics);
+        }
+
+        @Override
+        public void convertingToNNF() {
+            reporter.convertingToNNF();
+        }
+
+        @Override
+        public void holLoopStart(HOLTranslation tr, Formula formula, Bounds bounds) {
+            reporter.holLoopStart(tr, formula, bounds);
+        }
+
+        @Override
+        public void holCandidateFound(HOLTranslation tr, Instance candidate) {
+            reporter.holCandidateFound(tr, candidate);
+        }
+
+        @Override
+        public void holVerifyingCandidate(HOLTranslation tr, Instance candidate, Formula checkFormula, Bounds bounds) {
+            reporter.holVerifyingCandidate(tr, candidate, checkFormula, bounds);
+        }
+
+        @Override
+        public void holCandidateVerified(HOLTranslation tr, Instance candidate) {
+            reporter.holCandidateVerified(tr, candidate);
+        }
+
+        @Override
+        public void holCandidateNotVerified(HOLTranslation tr, Instance candidate, Instance cex) {
+            reporter.holCandidateNotVerified(tr, candidate, cex);
+        }
+
+        @Override
+        public void holFindingNextCandidate(HOLTranslation tr, Formula inc) {
+            reporter.holFindingNextCandidate(tr, inc);
+        }
+
+        @Override
+        public void holIterationTime(HOLTranslation tr, int iteration, long candidateTime, long verificationTime, long refinementTime) {
+            reporter.holIterationTime(tr, iteration, candidateTime, verificationTime, refinementTime);
+        }
+
+        @Override
+        public void holFixpointStart(HOLTranslation tr, Formula formula, Bounds bounds) {
+            reporter.holFixpointStart(tr, formula, bounds);
+        }
+
+        @Override
+        public void holFixpointNoSolution(HOLTranslation tr) {
+            reporter.holFixpointNoSolution(tr);
+        }
+
+        @Override
+        public void holFixpointFirstSolution(HOLTranslation tr, Instance candidate) {
+            reporter.holFixpointFirstSolution(tr, candidate);
+        }
+
+        @Override
+        public void holFixpointIncrementing(HOLTranslation tr, Formula inc) {
+            reporter.holFixpointIncrementing(tr, inc);
+        }
+
+        @Override
+        public void holFixpointIncrementingOutcome(HOLTranslation tr, Instance next) {
+            reporter.holFixpointIncrementingOutcome(tr, next);
+        }
+
+        @Override
+        public void holSplitStart(HOLTranslation tr, Formula formula) {
+            reporter.holSplitStart(tr, formula);
+        }
+
+        @Override
+        public void holSplitChoice(HOLTranslation tr, Formula formula, Bounds bounds) {
+            reporter.holSplitChoice(tr, formula, bounds);
+        }
+
+        @Override
+        public void holSplitChoiceSAT(HOLTranslation tr, Instance inst) {
+            reporter.holSplitChoiceSAT(tr, inst);
+        }
+
+        @Override
+        public void holSplitChoiceUNSAT(HOLTranslation tr) {
+            reporter.holSplitChoiceUNSAT(tr);
+        }
+    }
+}
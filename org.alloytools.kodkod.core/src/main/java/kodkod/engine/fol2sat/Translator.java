@@ -48,6 +48,8 @@ import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.Int;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
 import kodkod.engine.config.Options;
 import kodkod.engine.hol.HOLTranslation;
 import kodkod.engine.hol.HOLTranslator;
@@ -56,9 +58,13 @@ import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.ArrayIntVector;
 import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntVector;
 import kodkod.util.nodes.AnnotatedNode;
+import kodkod.util.nodes.NodeInterner;
 
 /**
  * Translates, evaluates, and approximates {@link Node nodes} with respect to
@@ -170,7 +176,9 @@ public final class Translator {
      * representation of the given formula and bounds is generated so that the
      * magnitude of the literal representing the truth value of a given circuit is
      * strictly larger than the magnitudes of the literals representing the truth
-     * values of the circuit's descendants.
+     * values of the circuit's descendants. If {@code options.translationCache()} is
+     * not null, the translation is read from that cache if possible, and stored in
+     * it otherwise.
      *
      * @return some t: Translation.Whole | t.originalFormula = formula &&
      *         t.originalBounds = bounds && t.options = options
@@ -180,8 +188,20 @@ public final class Translator {
      * @throws HigherOrderDeclException the formula contains a higher order
      *             declaration that cannot be skolemized, or it can be skolemized
      *             but options.skolemize is false.
+     * @see TranslationCache
      */
     public static Translation.Whole translate(Formula formula, Bounds bounds, Options options) {
+        final TranslationCache cache = options.translationCache();
+        return cache == null ? translateWhole(formula, bounds, options) : cache.translate(formula, bounds, options);
+    }
+
+    /**
+     * Translates the given formula using the specified bounds and options,
+     * ignoring {@code options.translationCache()}.
+     *
+     * @see #translate(Formula, Bounds, Options)
+     */
+    static Translation.Whole translateWhole(Formula formula, Bounds bounds, Options options) {
         return (Translation.Whole) (new Translator(formula, bounds, options)).translate();
     }
 
@@ -377,6 +397,117 @@ public final class Translator {
         return transl;
     }
 
+    /**
+     * Translates the given formula and bounds into an array of literals over the
+     * variables of the given translation, without asserting either of them. The
+     * returned literals are meant to be passed as assumptions to
+     * {@code translation.cnf.solve(int[])}: an assignment to the variables of
+     * {@code translation.cnf} that makes all of them true corresponds to an
+     * instance of {@code translation.originalFormula} that satisfies
+     * {@code formula} and lies within {@code bounds}. Translations of later
+     * formulas and bounds, whether assumed or not, are unaffected by this call.
+     * This method returns null if the given formula and bounds are unsatisfiable
+     * with respect to the given translation regardless of the values of its
+     * variables.
+     * <p>
+     * The given bounds narrow those of the translation: {@code bounds} and
+     * {@code translation.bounds} share the same universe; {@code bounds} do not
+     * specify any integer bounds; every relation in {@code bounds} is bound by
+     * {@code translation.bounds}, and its new lower (upper) bound is a superset
+     * (subset) of its current lower (upper) bound; and {@code bounds} induce a
+     * coarser set of equivalence classes on the shared universe than
+     * {@code translation.originalBounds}. Relations that are not in
+     * {@code bounds} keep their current bounds.
+     * </p>
+     *
+     * @requires !translation.trivial() && translation.cnf.solve()
+     * @requires formula.*components & Relation in translation.bounds.relations
+     * @requires translation.bounds.universe = bounds.universe && no bounds.intBound
+     *           && bounds.relations in translation.bounds.relations
+     * @requires all s: translation.symmetries | some p:
+     *           {@link SymmetryDetector#partition(Bounds) partition}(bounds) |
+     *           s.ints in p.ints
+     * @ensures translation.cnf.clauses in translation.cnf.clauses'
+     * @return some lits: int[] | translation.cnf.solve(lits) =>
+     *         translation.interpret() in MODELS(formula, bounds,
+     *         translation.options), or null if formula and bounds are trivially
+     *         unsatisfiable with respect to translation
+     * @throws NullPointerException any of the arguments are null
+     * @throws UnboundLeafException the formula refers to an undeclared variable or
+     *             a relation not mapped by translation.bounds
+     * @throws HigherOrderDeclException the formula contains a higher order
+     *             declaration
+     * @throws IllegalArgumentException any of the other preconditions on the
+     *             arguments are violated
+     */
+    public static int[] translateAssumptions(Formula formula, Bounds bounds, Translation.Incremental translation) {
+        checkIncrementalOptions(translation.options());
+        if (translation.trivial())
+            throw new IllegalArgumentException("Expected a non-trivial translation, given " + translation);
+        final Bounds tBounds = translation.bounds();
+        if (!tBounds.universe().equals(bounds.universe()))
+            incBoundErr(bounds.universe(), "universe", "equal to", tBounds.universe());
+        if (!bounds.intBounds().isEmpty())
+            incBoundErr(bounds.intBounds(), "intBound", "empty, with integer bounds fully specified by", tBounds.intBounds());
+        if (!tBounds.relations().containsAll(bounds.relations()))
+            incBoundErr(bounds.relations(), "relations", "a subset of", tBounds.relations());
+        checkIncrementalSymmetries(bounds, translation);
+
+        final LeafInterpreter interpreter = translation.interpreter();
+        final IntVector lits = new ArrayIntVector();
+
+        // assume the tuples that the new lower bounds add to the current ones,
+        // and the negations of those that the new upper bounds remove. the
+        // interpreter maps each tuple to a variable or to a constant, which
+        // reflects any tightening of tBounds by symmetry breaking.
+        for (Relation r : bounds.relations()) {
+            final BooleanMatrix m = interpreter.interpret(r);
+            final IntSet lower = bounds.lowerBound(r).indexView(), upper = bounds.upperBound(r).indexView();
+            if (!upper.containsAll(lower))
+                incBoundErr(bounds.lowerBound(r), "lowerBound", "a subset of", bounds.upperBound(r));
+            for (IntIterator itr = lower.iterator(); itr.hasNext();) {
+                final BooleanValue v = m.get(itr.next());
+                if (v == BooleanConstant.FALSE)
+                    return null;
+                if (v != BooleanConstant.TRUE)
+                    lits.add(((BooleanFormula) v).label());
+            }
+            for (IntIterator itr = tBounds.upperBound(r).indexView().iterator(); itr.hasNext();) {
+                final int i = itr.next();
+                if (upper.contains(i))
+                    continue;
+                final BooleanValue v = m.get(i);
+                if (v == BooleanConstant.TRUE)
+                    return null;
+                if (v != BooleanConstant.FALSE)
+                    lits.add(-((BooleanFormula) v).label());
+            }
+        }
+
+        // define, but do not assert, the circuit for the given formula. as in
+        // translateIncrementalNonTrivial, skolemization may bind new relations in
+        // tBounds; their variables are unconstrained unless the formula's literal
+        // is assumed.
+        final Options tOptions = translation.options();
+        final Set<Relation> oldRelations = new LinkedHashSet<Relation>(tBounds.relations());
+        final AnnotatedNode<Formula> annotated = (tOptions.skolemDepth() < 0) ? annotate(formula) : skolemize(annotate(formula), tBounds, tOptions);
+        interpreter.extend(setDifference(tBounds.relations(), oldRelations), tBounds.lowerBounds(), tBounds.upperBounds());
+
+        final BooleanValue circuit = FOL2BoolTranslator.translate(annotated, interpreter);
+        if (circuit == BooleanConstant.FALSE) {
+            return null;
+        } else if (circuit == BooleanConstant.TRUE) {
+            final int maxVar = interpreter.factory().maxVariable();
+            final int cnfVar = translation.cnf().numberOfVariables();
+            if (maxVar > cnfVar) {
+                translation.cnf().addVariables(maxVar - cnfVar);
+            }
+        } else {
+            lits.add(Bool2CNFTranslator.defineIncremental((BooleanFormula) circuit, interpreter.factory().maxVariable(), translation.incrementer()));
+        }
+        return lits.toArray();
+    }
+
     // [HOL]
     public static Proc translate2proc(Formula formula, Bounds bounds, Options options) {
         return new Translator(formula, bounds, options, true, true).toProc();
@@ -436,6 +567,19 @@ public final class Translator {
                 incBoundErr(inc.relations(), "relations", "disjoint from", baseRels);
             }
         }
+        checkIncrementalSymmetries(inc, translation);
+    }
+
+    /**
+     * Checks that the given {@code inc} bounds induce a coarser set of equivalence
+     * classes on the universe than the given {@code translation}.
+     *
+     * @requires all s: translation.symmetries | some p:
+     *           {@link SymmetryDetector#partition(Bounds) partition}(inc) |
+     *           s.elements in p.elements
+     * @throws IllegalArgumentException the precondition is violated
+     */
+    private static void checkIncrementalSymmetries(Bounds inc, Translation.Incremental translation) {
         final Set<IntSet> symmetries = translation.symmetries();
         final Set<IntSet> incSymmetries = SymmetryDetector.partition(inc);
         EQUIV_CHECK: for (IntSet part : symmetries) {
@@ -540,7 +684,8 @@ public final class Translator {
                 bounds.ints().clear();
         }
         // Detect symmetries.
-        final SymmetryBreaker breaker = new SymmetryBreaker(bounds, annotated, options.reporter());
+        stage(Metrics.Stage.SYMMETRY_DETECTION);
+        final SymmetryBreaker breaker = new SymmetryBreaker(bounds, annotated, options.reporter(), options.symmetryThreads());
         // Optimize formula and bounds by using symmetry information to tighten
         // bounds and
         // eliminate top-level predicates, and also by skolemizing. Then
@@ -560,7 +705,8 @@ public final class Translator {
      * formulas generated by
      * {@linkplain SymmetryBreaker#breakMatrixSymmetries(Map, boolean)
      * breaker.breakMatrixSymmetries(...)}, and skolemizing the result, if
-     * applicable.
+     * applicable. If this.options.internNodes is set, the structurally identical
+     * descendants of the skolemized formula are then interned.
      * </p>
      * <p>
      * When logging is enabled, optimizes annotated.node by first flattening it into
@@ -587,6 +733,7 @@ public final class Translator {
      */
     private AnnotatedNode<Formula> optimizeFormulaAndBounds(AnnotatedNode<Formula> annotated, SymmetryBreaker breaker) {
         options.reporter().optimizingBoundsAndFormula();
+        stage(Metrics.Stage.OPTIMIZATION);
         if (logging) { // yes logging
             // logging; inlining of predicates *must* happen last when logging
             // is enabled
@@ -595,7 +742,9 @@ public final class Translator {
                 annotated = FormulaFlattener.flatten(annotated, false);
             }
             if (options.skolemDepth() >= 0) {
+                stage(Metrics.Stage.SKOLEMIZATION);
                 annotated = skolemize(annotated, bounds, options);
+                stage(Metrics.Stage.OPTIMIZATION);
             }
             if (coreGranularity > 1) {
                 annotated = flatten(annotated, coreGranularity == 3);
@@ -603,7 +752,13 @@ public final class Translator {
             return inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), false));
         } else {
             annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
-            annotated = options.skolemDepth() >= 0 ? Skolemizer.skolemize(annotated, bounds, options) : annotated;
+            if (options.skolemDepth() >= 0) {
+                stage(Metrics.Stage.SKOLEMIZATION);
+                annotated = Skolemizer.skolemize(annotated, bounds, options);
+                stage(Metrics.Stage.OPTIMIZATION);
+            }
+            if (options.internNodes())
+                annotated = annotate(new NodeInterner().intern(annotated.node()));
             return annotated;
         }
     }
@@ -700,7 +855,7 @@ public final class Translator {
 
     private Proc toProc() {
         final AnnotatedNode<Formula> annotated = annotate(originalFormula);
-        final SymmetryBreaker breaker = new SymmetryBreaker(bounds, annotated, options.reporter());
+        final SymmetryBreaker breaker = new SymmetryBreaker(bounds, annotated, options.reporter(), options.symmetryThreads());
         int oldSkolemDepth = options.skolemDepth();
         options.setSkolemDepth(-1);
         AnnotatedNode<Formula> optimized = optimizeFormulaAndBounds(annotated, breaker);
@@ -749,30 +904,57 @@ public final class Translator {
     private Translation toBoolean(AnnotatedNode<Formula> annotated, SymmetryBreaker breaker) {
 
         options.reporter().translatingToBoolean(annotated.node(), bounds);
+        stage(Metrics.Stage.TRANSLATION_TO_BOOLEAN);
 
         final LeafInterpreter interpreter = LeafInterpreter.exact(bounds, options, incremental);
         final BooleanFactory factory = interpreter.factory();
         // final BooleanFactory factory = interpreter.factory();
+        final FOL2BoolCache cache = new FOL2BoolCache(annotated, options.bindingCacheCapacity());
+        final Translation ret;
+
+        final Metrics metrics = options.metrics();
+        if (metrics != null) {
+            metrics.observe(factory, new Metrics.Counter() {
+
+                @Override
+                public long value() {
+                    return cache.hits();
+                }
+            }, new Metrics.Counter() {
+
+                @Override
+                public long value() {
+                    return cache.misses();
+                }
+            });
+        }
 
         if (logging) {
             assert !incremental;
             final TranslationLogger logger = options.logTranslation() == 1 ? new MemoryLogger(annotated, bounds) : new FileLogger(annotated, bounds);
-            BooleanAccumulator circuit = FOL2BoolTranslator.translate(annotated, interpreter, logger);
+            BooleanAccumulator circuit = FOL2BoolTranslator.translate(annotated, cache, interpreter, logger);
             final TranslationLog log = logger.log();
             if (circuit.isShortCircuited()) {
-                return trivial(circuit.op().shortCircuit(), log);
+                ret = trivial(circuit.op().shortCircuit(), log);
             } else if (circuit.size() == 0) {
-                return trivial(circuit.op().identity(), log);
+                ret = trivial(circuit.op().identity(), log);
+            } else {
+                stage(Metrics.Stage.SBP_GENERATION);
+                circuit.add(breaker.generateSBP(interpreter, options));
+                ret = toCNF((BooleanFormula) factory.accumulate(circuit), interpreter, log);
             }
-            circuit.add(breaker.generateSBP(interpreter, options));
-            return toCNF((BooleanFormula) factory.accumulate(circuit), interpreter, log);
         } else {
-            BooleanValue circuit = (BooleanValue) FOL2BoolTranslator.translate(annotated, interpreter);
+            BooleanValue circuit = (BooleanValue) FOL2BoolTranslator.translate(annotated, cache, interpreter);
             if (circuit.op() == Operator.CONST) {
-                return trivial((BooleanConstant) circuit, null);
+                ret = trivial((BooleanConstant) circuit, null);
+            } else {
+                stage(Metrics.Stage.SBP_GENERATION);
+                final BooleanValue sbp = breaker.generateSBP(interpreter, options);
+                ret = toCNF((BooleanFormula) factory.and(circuit, sbp), interpreter, null);
             }
-            return toCNF((BooleanFormula) factory.and(circuit, breaker.generateSBP(interpreter, options)), interpreter, null);
         }
+        ret.setCacheStatistics(cache.hits(), cache.misses(), cache.evictions());
+        return ret;
     }
 
     /**
@@ -799,14 +981,29 @@ public final class Translator {
      */
     private Translation toCNF(BooleanFormula circuit, LeafInterpreter interpreter, TranslationLog log) {
         options.reporter().translatingToCNF(circuit);
+        stage(Metrics.Stage.TRANSLATION_TO_CNF);
+        final Metrics metrics = options.metrics();
         final int maxPrimaryVar = interpreter.factory().maxVariable();
+        final Budget budget = options.budget();
+        if (budget != null)
+            budget.gates(interpreter.factory().maxFormula() - maxPrimaryVar);
         if (incremental) {
-            final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, options.solver());
+            final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, options.solver(), options.budget());
+            if (metrics != null)
+                metrics.observe(incrementer.solver());
             return new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds), interpreter, incrementer);
         } else {
             final Map<Relation,IntSet> varUsage = interpreter.vars();
             interpreter = null; // enable gc
-            final SATSolver cnf = Bool2CNFTranslator.translate(circuit, maxPrimaryVar, options.solver());
+            final SATSolver cnf = options.solver().instance();
+            if (metrics != null)
+                metrics.observe(cnf); // counts the clauses as they are emitted
+            try {
+                Bool2CNFTranslator.translate(circuit, maxPrimaryVar, cnf, options.budget());
+            } catch (RuntimeException e) {
+                cnf.free();
+                throw e;
+            }
             return new Translation.Whole(completeBounds(), options, cnf, varUsage, maxPrimaryVar, log);
         }
     }
@@ -834,6 +1031,22 @@ public final class Translator {
         }
     }
 
+    /**
+     * Records that the translation has entered the given stage in
+     * {@code this.options.metrics} and {@code this.options.budget}, if any.
+     *
+     * @throws kodkod.engine.AbortedException this.options.budget has been
+     *             cancelled or exceeded
+     */
+    private void stage(Metrics.Stage stage) {
+        final Metrics metrics = options.metrics();
+        if (metrics != null)
+            metrics.stage(stage);
+        final Budget budget = options.budget();
+        if (budget != null)
+            budget.stage(stage);
+    }
+
     /**
      * Completes {@code this.bounds} using the bindings from
      * {@code this.originalBounds} so that the result satisfies the
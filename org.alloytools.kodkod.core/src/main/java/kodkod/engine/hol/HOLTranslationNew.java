@@ -4,12 +4,23 @@ import static kodkod.engine.hol.Proc.foldPlus;
 import static kodkod.engine.hol.Proc.map;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import kodkod.ast.Decl;
 import kodkod.ast.Expression;
@@ -33,6 +44,7 @@ import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
 import kodkod.util.collections.Pair;
 import kodkod.util.ints.IntSet;
 import kodkod.util.nodes.AnnotatedNode;
@@ -126,9 +138,16 @@ public abstract class HOLTranslationNew extends HOLTranslation {
      */
     public static class Some4All extends HOLTranslationNew {
 
-        public final Proc.Some4All proc;
-        private HOLTranslation     candTr;
-        private int                numCandidates;
+        public final Proc.Some4All      proc;
+        private HOLTranslation          candTr;
+        private int                     numCandidates;
+        /**
+         * The translation that verifies the candidates, kept across iterations, or
+         * null if it has not been created or cannot be used.
+         */
+        private Translation.Incremental verifier;
+        /** True once this.verifier has been created or found unusable. */
+        private boolean                 verifierTried;
 
         public Some4All(Proc.Some4All proc, Options options, int depth) {
             super(proc.bounds(), options, depth);
@@ -232,13 +251,19 @@ public abstract class HOLTranslationNew extends HOLTranslation {
             @Override
             public void free() {
                 candTr.cnf().free();
+                if (verifier != null) {
+                    verifier.cnf().free();
+                    verifier = null;
+                }
             }
 
             public boolean solveNext() {
                 // finding the next candidate
                 int iterCnt = 0;
                 int maxIter = options.getHolSome4AllMaxIter();
-                while (candTr.cnf().solve()) {
+                long start = System.currentTimeMillis();
+                while (search(candTr.cnf())) {
+                    final long found = System.currentTimeMillis();
                     iterCnt++;
                     Instance cand = candTr.interpret();
                     rep.holCandidateFound(Some4All.this, cand);
@@ -251,17 +276,16 @@ public abstract class HOLTranslationNew extends HOLTranslation {
                         pi.boundExactly(r, cand.tuples(r));
                     }
                     rep.holVerifyingCandidate(Some4All.this, cand, checkFormula, pi);
-                    Options opt = options.clone();
-                    // opt.setOverflowPolicy(opt.overflowPolicy().dual);
-                    HOLTranslation checkTr = HOLTranslator.translateHOL(checkFormula, pi, opt);
-                    if (!checkTr.cnf().solve()) {
+                    Instance cex = counterexample(checkFormula, pi);
+                    final long verified = System.currentTimeMillis();
+                    if (cex == null) {
                         numCandidates = iterCnt;
                         rep.holCandidateVerified(Some4All.this, cand);
+                        rep.holIterationTime(Some4All.this, iterCnt, found - start, verified - found, 0);
                         return true;
                     } else {
                         if (maxIter > 0 && iterCnt > maxIter)
                             throw new HOLException("[Some4All] Max number of iterations reached: " + maxIter);
-                        Instance cex = checkTr.interpret();
                         rep.holCandidateNotVerified(Some4All.this, cand, cex);
 
                         Collection<Relation> holSkolems = cand.skolems();
@@ -317,6 +341,9 @@ public abstract class HOLTranslationNew extends HOLTranslation {
                         } catch (HigherOrderDeclException e) {
                             candTr = HOLTranslator.translateHOL(candTr.formulaWithInc().and(fInc), candTr.bounds(), options);
                         }
+                        final long refined = System.currentTimeMillis();
+                        rep.holIterationTime(Some4All.this, iterCnt, found - start, verified - found, refined - verified);
+                        start = refined;
                     }
                 }
                 numCandidates = iterCnt;
@@ -326,8 +353,92 @@ public abstract class HOLTranslationNew extends HOLTranslation {
             @Override
             public boolean solve() throws SATAbortedException {
                 rep.holLoopStart(Some4All.this, candTr.formula(), candTr.bounds());
+                startSearch();
                 return solveNext();
             }
+
+            @Override
+            public boolean abort() {
+                return abortSearch();
+            }
+        }
+
+        /**
+         * Returns a model of the given check formula in the given bounds, which fix
+         * this.bounds.relations to a candidate, or null if there is none. If the
+         * SAT solver can solve under assumptions, the check formula is translated
+         * once, with the relations of the candidates left free, and each candidate
+         * is then fixed through assumptions; so the verifier keeps its clauses,
+         * learned ones included, from one candidate to the next.
+         */
+        private Instance counterexample(Formula checkFormula, Bounds pi) {
+            if (!verifierTried) {
+                verifierTried = true;
+                verifier = verifier(checkFormula);
+            }
+            if (verifier != null && narrows(pi)) {
+                final Bounds assumed = new Bounds(pi.universe());
+                for (Relation r : bounds.relations()) {
+                    assumed.boundExactly(r, pi.upperBound(r));
+                }
+                final int[] lits = Translator.translateAssumptions(Formula.TRUE, assumed, verifier);
+                if (lits == null)
+                    return null;
+                return search(verifier.cnf(), lits) ? verifier.interpret() : null;
+            }
+            Options opt = options.clone();
+            // opt.setOverflowPolicy(opt.overflowPolicy().dual);
+            HOLTranslation checkTr = HOLTranslator.translateHOL(checkFormula, pi, opt);
+            return search(checkTr.cnf()) ? checkTr.interpret() : null;
+        }
+
+        /**
+         * Returns true if the candidate bounds pi, which fix this.bounds.relations,
+         * narrow the bounds of this.verifier, so that they can be assumed instead
+         * of translated anew.
+         *
+         * @requires this.verifier != null
+         */
+        private boolean narrows(Bounds pi) {
+            final Bounds vBounds = verifier.bounds();
+            if (!vBounds.universe().equals(pi.universe()))
+                return false;
+            for (Relation r : bounds.relations()) {
+                final TupleSet fixed = pi.upperBound(r);
+                if (fixed == null || !vBounds.relations().contains(r))
+                    return false;
+                if (!fixed.containsAll(vBounds.lowerBound(r)) || !vBounds.upperBound(r).containsAll(fixed))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns an incremental translation of the given check formula in
+         * this.bounds, or null if the check formula is higher-order, its
+         * translation is trivial, or the SAT solver cannot solve under assumptions.
+         * As in the translation of a candidate, each atom is bound to a singleton
+         * relation, so that the translation has no symmetries and the candidates
+         * need not respect any.
+         */
+        private Translation.Incremental verifier(Formula checkFormula) {
+            final Options opt = options.clone();
+            if (!opt.solver().incremental() || !opt.solver().assumptions() || opt.logTranslation() != 0)
+                return null;
+            opt.setSymmetryBreaking(0);
+            final Bounds b = bounds.clone();
+            final Universe universe = b.universe();
+            for (int i = 0; i < universe.size(); i++) {
+                final Object atom = universe.atom(i);
+                b.boundExactly(Relation.unary(atom.toString()), universe.factory().setOf(atom));
+            }
+            try {
+                final Translation.Incremental tr = Translator.translateIncremental(checkFormula, b, opt);
+                if (!tr.trivial())
+                    return tr;
+                tr.cnf().free();
+            } catch (HigherOrderDeclException e) {}
+            return null;
         }
 
         public Relation findSkolemRelation(Collection<Relation> holSkolems, Variable variable) {
@@ -458,7 +569,7 @@ public abstract class HOLTranslationNew extends HOLTranslation {
                 iterCnt = 0;
                 int maxIter = options.getHolSome4AllMaxIter();
                 HOLTranslation currTr = convTr;
-                while (currTr.cnf().solve()) {
+                while (search(currTr.cnf())) {
                     final Instance currInst = currTr.interpret();
                     final Evaluator eval = new Evaluator(currInst);
                     convTr = currTr;
@@ -505,8 +616,14 @@ public abstract class HOLTranslationNew extends HOLTranslation {
             @Override
             public boolean solve() throws SATAbortedException {
                 rep.holFixpointStart(Fixpoint.this, convTr.formula(), convTr.bounds());
+                startSearch();
                 return solveNext();
             }
+
+            @Override
+            public boolean abort() {
+                return abortSearch();
+            }
         }
 
         public Relation findSkolemRelation(Collection<Relation> holSkolems, Variable variable) {
@@ -525,8 +642,21 @@ public abstract class HOLTranslationNew extends HOLTranslation {
      */
     public static class OR extends HOLTranslationNew {
 
+        /**
+         * How long to wait, in milliseconds, for a disjunct to be solved before
+         * checking for abort requests or re-sending them.
+         */
+        private static final long      ABORT_POLL = 10;
+
         public final Proc.OR           proc;
         private final HOLTranslation[] splitTransl;
+        /** exhausted[i] is set once the i-th disjunct is known to be UNSAT. */
+        private final boolean[]        exhausted;
+        /**
+         * satisfied[i] is set while the last model found for the i-th disjunct is
+         * still a model of it.
+         */
+        private final boolean[]        satisfied;
         private HOLTranslation         solTr     = null;
         private int                    currTrIdx = 0;
 
@@ -546,6 +676,8 @@ public abstract class HOLTranslationNew extends HOLTranslation {
                     return a.translate(options, depth + 1);
                 }
             });
+            this.exhausted = new boolean[splitTransl.length];
+            this.satisfied = new boolean[splitTransl.length];
         }
 
         public HOLTranslation currTr() {
@@ -564,18 +696,21 @@ public abstract class HOLTranslationNew extends HOLTranslation {
 
         @Override
         public HOLTranslation next() {
+            satisfied[currTrIdx] = false;
             splitTransl[currTrIdx] = currTr().next();
             return this;
         }
 
         @Override
         public HOLTranslation next(Formula f) {
+            satisfied[currTrIdx] = false;
             splitTransl[currTrIdx] = currTr().next(f);
             return this;
         }
 
         @Override
         public HOLTranslation next(Formula f, Bounds b) {
+            satisfied[currTrIdx] = false;
             splitTransl[currTrIdx] = currTr().next(f, b);
             return this;
         }
@@ -622,6 +757,14 @@ public abstract class HOLTranslationNew extends HOLTranslation {
 
         // SATSolver methods -------------
 
+        /**
+         * Solves the disjuncts one after the other, in order, or, if
+         * options.holOrThreads > 1, each with its own SAT solver on a worker
+         * thread. In the latter case, the first disjunct found SAT wins and the
+         * others are aborted; unless options.deterministic is set, in which case
+         * all of them are solved to completion and the first SAT one in order
+         * wins, as it would if they were solved one after the other.
+         */
         class Solver implements SATSolver {
 
             @Override
@@ -655,32 +798,197 @@ public abstract class HOLTranslationNew extends HOLTranslation {
             }
 
             public boolean solveNext() throws SATAbortedException {
-                for (int i = currTrIdx; i < splitTransl.length; i++) {
+                // the first disjunct whose last model can be reused, if any
+                int known = splitTransl.length;
+                for (int i = 0; i < splitTransl.length; i++) {
+                    if (!exhausted[i] && satisfied[i]) {
+                        known = i;
+                        break;
+                    }
+                }
+                final List<Integer> pending = new ArrayList<Integer>();
+                if (known == splitTransl.length || options.deterministic()) {
+                    for (int i = 0; i < known; i++) {
+                        if (!exhausted[i])
+                            pending.add(i);
+                    }
+                }
+                int winner = options.getHolOrThreads() > 1 && pending.size() > 1 ? solveParallel(pending) : solveSequential(pending);
+                if (winner < 0 && known < splitTransl.length) {
+                    winner = known;
+                    rep.holSplitChoice(OR.this, splitTransl[known].formula(), splitTransl[known].bounds());
+                }
+                if (winner < 0) {
+                    solTr = null;
+                    return false;
+                }
+                currTrIdx = winner;
+                solTr = currTr();
+                rep.holSplitChoiceSAT(OR.this, solTr.interpret());
+                return true;
+            }
+
+            /**
+             * Solves the given disjuncts one after the other, and returns the first
+             * SAT one, or -1 if none is SAT.
+             */
+            private int solveSequential(List<Integer> pending) throws SATAbortedException {
+                for (int i : pending) {
                     currTrIdx = i;
                     HOLTranslation tr = currTr();
                     rep.holSplitChoice(OR.this, tr.formula(), tr.bounds());
-                    if (tr.cnf().solve()) {
-                        solTr = tr;
-                        rep.holSplitChoiceSAT(OR.this, solTr.interpret());
-                        return true;
+                    if (search(tr.cnf())) {
+                        satisfied[i] = true;
+                        return i;
                     } else {
+                        exhausted[i] = true;
                         rep.holSplitChoiceUNSAT(OR.this);
                     }
-                    ;
                 }
-                solTr = null;
-                return false;
+                return -1;
+            }
+
+            /**
+             * Solves the given disjuncts on options.holOrThreads worker threads, and
+             * returns the winning SAT one, or -1 if none is SAT.
+             */
+            private int solveParallel(List<Integer> pending) throws SATAbortedException {
+                final boolean deterministic = options.deterministic();
+                final int n = pending.size();
+                final SATSolver[] cnfs = new SATSolver[n];
+                for (int k = 0; k < n; k++) {
+                    final HOLTranslation tr = splitTransl[pending.get(k)];
+                    rep.holSplitChoice(OR.this, tr.formula(), tr.bounds());
+                    cnfs[k] = tr.cnf();
+                }
+                final AtomicBoolean cancelled = new AtomicBoolean(false);
+                final ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.getHolOrThreads(), n), new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "kodkod-hol-or");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                final CompletionService<Boolean> service = new ExecutorCompletionService<Boolean>(pool);
+                final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(n);
+                for (int k = 0; k < n; k++) {
+                    final SATSolver cnf = cnfs[k];
+                    futures.add(service.submit(new Callable<Boolean>() {
+
+                        @Override
+                        public Boolean call() {
+                            return cancelled.get() ? null : cnf.solve();
+                        }
+                    }));
+                }
+                int first = -1; // the first disjunct found SAT
+                boolean interrupted = false;
+                try {
+                    for (int done = 0; done < n && (first < 0 || deterministic) && !searchAborted();) {
+                        final Future<Boolean> future = service.poll(ABORT_POLL, TimeUnit.MILLISECONDS);
+                        if (future == null)
+                            continue;
+                        done++;
+                        if (first < 0 && outcome(future) == Boolean.TRUE)
+                            first = futures.indexOf(future);
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                // stop the remaining searches; in deterministic mode, only if aborted
+                final boolean stop = !deterministic || interrupted || searchAborted();
+                if (stop)
+                    cancelled.set(true);
+                pool.shutdown();
+                while (!pool.isTerminated()) {
+                    if (stop) {
+                        for (int k = 0; k < n; k++) {
+                            if (!futures.get(k).isDone())
+                                cnfs[k].abort();
+                        }
+                    }
+                    try {
+                        pool.awaitTermination(ABORT_POLL, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+                if (interrupted || searchAborted())
+                    throw new SATAbortedException("Aborted.");
+                // record the outcomes in order; a failure matters only if it comes
+                // before the winner, which, in deterministic mode, is the first SAT
+                // disjunct in order
+                int winner = deterministic ? -1 : first;
+                Throwable failure = null;
+                for (int k = 0; k < n; k++) {
+                    final int i = pending.get(k);
+                    final Boolean outcome;
+                    try {
+                        outcome = futures.get(k).get();
+                    } catch (ExecutionException e) {
+                        if (failure == null && winner < 0)
+                            failure = e.getCause();
+                        continue;
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e); // the pool has terminated
+                    }
+                    if (outcome == Boolean.TRUE) {
+                        satisfied[i] = true;
+                        if (winner < 0)
+                            winner = k;
+                    } else if (outcome == Boolean.FALSE) {
+                        exhausted[i] = true;
+                        rep.holSplitChoiceUNSAT(OR.this);
+                    }
+                }
+                if (failure instanceof Error)
+                    throw (Error) failure;
+                if (failure != null)
+                    throw (RuntimeException) failure; // the searches throw no checked exceptions
+                return winner < 0 ? -1 : pending.get(winner);
             }
 
             @Override
             public boolean solve() throws SATAbortedException {
                 rep.holSplitStart(OR.this, formula());
+                startSearch();
                 currTrIdx = 0;
+                Arrays.fill(exhausted, false);
+                Arrays.fill(satisfied, false);
                 return solveNext();
             }
+
+            @Override
+            public boolean abort() {
+                return abortSearch();
+            }
+        }
+
+        /**
+         * Returns the outcome of the given completed search, or null if it failed or
+         * was cancelled.
+         */
+        private static Boolean outcome(Future<Boolean> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                return null;
+            }
         }
     }
 
+    /** Set when the current search of this translation has been aborted. */
+    private volatile boolean   aborted;
+
+    /** The SAT solver whose search is in progress on behalf of this translation. */
+    private volatile SATSolver running;
+
     protected HOLTranslationNew(Bounds bounds, Options options) {
         this(bounds, options, 0);
     }
@@ -688,4 +996,56 @@ public abstract class HOLTranslationNew extends HOLTranslation {
     protected HOLTranslationNew(Bounds bounds, Options options, int depth) {
         super(bounds, options, depth);
     }
+
+    /**
+     * Starts a new search of this translation, forgetting earlier abort requests.
+     */
+    final void startSearch() {
+        aborted = false;
+    }
+
+    /**
+     * Returns true if the current search of this translation has been aborted.
+     */
+    final boolean searchAborted() {
+        return aborted;
+    }
+
+    /**
+     * Solves the given cnf as part of the current search of this translation.
+     *
+     * @throws SATAbortedException the current search has been aborted
+     */
+    final boolean search(SATSolver cnf) throws SATAbortedException {
+        return search(cnf, null);
+    }
+
+    /**
+     * Solves the given cnf under the given assumptions, if any, as part of the
+     * current search of this translation.
+     *
+     * @throws SATAbortedException the current search has been aborted
+     */
+    final boolean search(SATSolver cnf, int[] assumptions) throws SATAbortedException {
+        running = cnf;
+        try {
+            if (aborted)
+                throw new SATAbortedException("Aborted.");
+            return assumptions == null ? cnf.solve() : cnf.solve(assumptions);
+        } finally {
+            running = null;
+        }
+    }
+
+    /**
+     * Aborts the current search of this translation, and returns true if the SAT
+     * solver running on its behalf, if any, can be aborted.
+     *
+     * @see SATSolver#abort()
+     */
+    final boolean abortSearch() {
+        aborted = true;
+        final SATSolver cnf = running;
+        return cnf == null || cnf.abort();
+    }
 }
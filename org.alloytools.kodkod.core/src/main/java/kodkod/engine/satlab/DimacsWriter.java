@@ -0,0 +1,254 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes clauses to a file in the DIMACS CNF format. Literals are encoded as
+ * ASCII directly into a large direct buffer, which is written to the file
+ * through a {@link FileChannel}. Since the number of variables and clauses is
+ * known only at the end, the writer reserves space for the longest possible
+ * problem line at the start of the file and fills it in when it is
+ * {@linkplain #finish(int) finished}.
+ * <p>
+ * A writer for a file whose name ends in ".gz" produces gzip-compressed output.
+ * Because a compressed stream cannot be patched in place, such a writer spools
+ * the clauses to an uncompressed temporary file next to the target and
+ * compresses the problem line and the clauses into the target when it is
+ * finished.
+ * </p>
+ *
+ * @specfield file: File
+ * @specfield clauses: seq Clause
+ */
+public final class DimacsWriter implements Closeable {
+
+    /**
+     * The size, in bytes, of the output buffer.
+     */
+    private static final int  CAPACITY    = 1 << 20;
+
+    /**
+     * The longest encoding of a literal: a sign, ten digits and a space.
+     */
+    private static final int  MAX_LITERAL = 12;
+
+    /**
+     * The length of the longest possible problem line, excluding the newline: p
+     * cnf Integer.MAX_VALUE Integer.MAX_VALUE
+     */
+    private static final int  HEADER      = String.valueOf(Integer.MAX_VALUE).length() * 2 + 8;
+
+    private final File        file, spool;
+    private final FileChannel channel;
+    private final ByteBuffer  buffer;
+    private final byte[]      digits      = new byte[10];
+    private int               clauses;
+    private boolean           closed;
+
+    /**
+     * Creates a writer that writes clauses to the given file, replacing its
+     * contents.
+     *
+     * @ensures this.file' = file && no this.clauses'
+     * @throws IOException the file could not be opened for writing
+     */
+    public DimacsWriter(File file) throws IOException {
+        this.file = file;
+        this.spool = file.getName().endsWith(".gz") ? File.createTempFile("kodkod", ".cnf", file.getAbsoluteFile().getParentFile()) : null;
+        this.channel = FileChannel.open((spool == null ? file : spool).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(CAPACITY);
+        this.clauses = 0;
+        this.closed = false;
+        if (spool == null) {
+            for (int i = 0; i < HEADER; i++) {
+                buffer.put((byte) ' ');
+            }
+            buffer.put((byte) '\n');
+        }
+    }
+
+    /**
+     * Returns the file to which this writer writes.
+     *
+     * @return this.file
+     */
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Returns the number of clauses written so far.
+     *
+     * @return #this.clauses
+     */
+    public int clauses() {
+        return clauses;
+    }
+
+    /**
+     * Writes the given clause.
+     *
+     * @ensures this.clauses' = this.clauses.add(lits)
+     * @throws IOException an I/O error occurred
+     */
+    public void addClause(int[] lits) throws IOException {
+        for (int lit : lits) {
+            if (buffer.remaining() < MAX_LITERAL)
+                drain();
+            put(lit);
+            buffer.put((byte) ' ');
+        }
+        terminate();
+    }
+
+    /**
+     * Writes the 0-terminated clauses stored in the remaining elements of the
+     * given buffer, advances the buffer's position to its limit, and returns the
+     * number of clauses written.
+     *
+     * @ensures this.clauses' = this.clauses + the clauses in
+     *          lits[lits.position..lits.limit)
+     * @return number of clauses written
+     * @throws IOException an I/O error occurred
+     */
+    public int addClauses(IntBuffer lits) throws IOException {
+        final int before = clauses;
+        while (lits.hasRemaining()) {
+            final int lit = lits.get();
+            if (lit == 0) {
+                terminate();
+            } else {
+                if (buffer.remaining() < MAX_LITERAL)
+                    drain();
+                put(lit);
+                buffer.put((byte) ' ');
+            }
+        }
+        return clauses - before;
+    }
+
+    /**
+     * Writes the terminating zero and newline of a clause.
+     */
+    private void terminate() throws IOException {
+        if (buffer.remaining() < 2)
+            drain();
+        buffer.put((byte) '0').put((byte) '\n');
+        clauses++;
+    }
+
+    /**
+     * Encodes the given literal in ASCII into this.buffer.
+     *
+     * @requires lit != Integer.MIN_VALUE && this.buffer.remaining() >= 11
+     */
+    private void put(int lit) {
+        if (lit < 0) {
+            buffer.put((byte) '-');
+            lit = -lit;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + lit % 10);
+            lit /= 10;
+        } while (lit > 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+    }
+
+    /**
+     * Writes the contents of this.buffer to the channel and clears the buffer.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the problem line for the given number of variables and the clauses
+     * written so far, and closes this writer.
+     *
+     * @requires vars >= 0
+     * @ensures this.file contains the DIMACS encoding of this.clauses over vars
+     *          variables
+     * @throws IOException an I/O error occurred
+     * @throws IllegalStateException this writer is closed
+     */
+    public void finish(int vars) throws IOException {
+        if (closed)
+            throw new IllegalStateException("closed");
+        try {
+            drain();
+            final String header = "p cnf " + vars + " " + clauses;
+            if (spool == null) {
+                final ByteBuffer line = ByteBuffer.wrap(header.getBytes("US-ASCII"));
+                for (long pos = 0; line.hasRemaining();) {
+                    pos += channel.write(line, pos);
+                }
+            } else {
+                channel.close();
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), 1 << 16)) {
+                    out.write((header + "\n").getBytes("US-ASCII"));
+                    Files.copy(spool.toPath(), out);
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes this writer without writing the problem line. The contents of
+     * this.file are unspecified unless {@link #finish(int)} has been called.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            if (spool != null)
+                spool.delete();
+        }
+    }
+}
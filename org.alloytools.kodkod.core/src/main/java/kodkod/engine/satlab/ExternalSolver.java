@@ -24,11 +24,10 @@ package kodkod.engine.satlab;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
@@ -41,15 +40,15 @@ import java.util.List;
  */
 final class ExternalSolver implements SATSolver {
 
-    private final StringBuilder    buffer;
-    private final int              capacity = 8192;
-    private final boolean          deleteTemp;
-    private final String           executable, inTemp;
-    private final String[]         options;
-    private final RandomAccessFile cnf;
-    private final BitSet           solution;
-    private volatile Boolean       sat;
-    private volatile int           vars, clauses;
+    private final boolean      deleteTemp;
+    private final String       executable, inTemp;
+    private final String[]     options;
+    private final DimacsWriter cnf;
+    private final BitSet       solution;
+    private volatile Boolean   sat;
+    private volatile int       vars, clauses;
+    private volatile Process   process;
+    private volatile boolean   aborted;
 
     /**
      * Constructs an ExternalSolver that will execute the specified binary with the
@@ -57,28 +56,18 @@ final class ExternalSolver implements SATSolver {
      * initialized to contain all clauses added to this solver via the
      * {@link #addClause(int[])} method. The solver is assumed to write its output
      * to standard out. The {@code deleteTemp} flag indicates whether the temporary
-     * files should be deleted when they are no longer needed by this solver.
+     * files should be deleted when they are no longer needed by this solver. If
+     * the name of the {@code inTemp} file ends in ".gz", the file is compressed.
+     *
+     * @see DimacsWriter
      */
     ExternalSolver(String executable, String inTemp, boolean deleteTemp, String... options) {
-        RandomAccessFile file = null;
         try {
-            file = new RandomAccessFile(inTemp, "rw");
-            file.setLength(0);
-        } catch (FileNotFoundException e) {
-            throw new SATAbortedException(e);
+            this.cnf = new DimacsWriter(new File(inTemp));
         } catch (IOException e) {
-            close(file);
             throw new SATAbortedException(e);
         }
         this.deleteTemp = deleteTemp;
-        this.cnf = file;
-        // get enough space into the buffer for the cnf header, which will be
-        // written last
-        this.buffer = new StringBuilder();
-        for (int i = headerLength(); i > 0; i--) {
-            buffer.append(" ");
-        }
-        buffer.append("\n");
         this.sat = null;
         this.solution = new BitSet();
         this.vars = 0;
@@ -105,46 +94,38 @@ final class ExternalSolver implements SATSolver {
     }
 
     /**
-     * Returns the length, in characters, of the longest possible header for a cnf
-     * file: p cnf Integer.MAX_VALUE Integer.MAX_VALUE
+     * {@inheritDoc}
      *
-     * @return the length, in characters, of the longest possible header for a cnf
-     *         file: p cnf Integer.MAX_VALUE Integer.MAX_VALUE
-     */
-    private static final int headerLength() {
-        return String.valueOf(Integer.MAX_VALUE).length() * 2 + 8;
-    }
-
-    /**
-     * Flushes the contents of the string buffer to the cnf file.
+     * @see kodkod.engine.satlab.SATSolver#addClause(int[])
      */
-    private final void flush() {
+    @Override
+    public boolean addClause(int[] lits) {
         try {
-            cnf.writeBytes(buffer.toString());
+            cnf.addClause(lits);
         } catch (IOException e) {
             close(cnf);
             throw new SATAbortedException(e);
-        } finally {
-            buffer.setLength(0);
         }
+        clauses++;
+        return true;
     }
 
     /**
      * {@inheritDoc}
      *
-     * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+     * @see kodkod.engine.satlab.SATSolver#addClauses(java.nio.IntBuffer)
      */
     @Override
-    public boolean addClause(int[] lits) {
-        clauses++;
-        if (buffer.length() > capacity)
-            flush();
-        for (int lit : lits) {
-            buffer.append(lit);
-            buffer.append(" ");
+    public int addClauses(IntBuffer lits) {
+        final int added;
+        try {
+            added = cnf.addClauses(lits);
+        } catch (IOException e) {
+            close(cnf);
+            throw new SATAbortedException(e);
         }
-        buffer.append("0\n");
-        return true;
+        clauses += added;
+        return added;
     }
 
     /**
@@ -205,6 +186,85 @@ final class ExternalSolver implements SATSolver {
             throw new SATAbortedException("Invalid variable value: |" + lit + "| !in [1.." + vars + "]");
     }
 
+    /**
+     * Parses the given line of solver output, updating this.sat and this.solution
+     * accordingly, and returns true if the line ends the model. Lines other than
+     * outcome ("s") and value ("v") lines are ignored. The line is scanned in
+     * place rather than split into tokens, since models of large problems span
+     * many long value lines.
+     *
+     * @return true if the line is a value line containing 0 and the outcome is
+     *         known
+     * @throws SATAbortedException the line is not valid solver output
+     * @throws NumberFormatException a value line contains a non-integer token
+     */
+    private boolean parse(String line) {
+        final int length = line.length();
+        int i = skipWhitespace(line, 0);
+        final int end = skipToken(line, i);
+        if (end - i != 1)
+            return false;
+        final char kind = Character.toLowerCase(line.charAt(i));
+        if (kind == 's') {
+            i = skipWhitespace(line, end);
+            final String outcome = line.substring(i, skipToken(line, i));
+            if (skipWhitespace(line, i + outcome.length()) == length) {
+                if (outcome.equalsIgnoreCase("SATISFIABLE")) {
+                    sat = Boolean.TRUE;
+                    return false;
+                } else if (outcome.equalsIgnoreCase("UNSATISFIABLE")) {
+                    sat = Boolean.FALSE;
+                    return false;
+                }
+            }
+            throw new SATAbortedException("Invalid " + executable + " output. Line: " + line);
+        } else if (kind == 'v') {
+            for (i = skipWhitespace(line, end); i < length; i = skipWhitespace(line, i)) {
+                final boolean negative = line.charAt(i) == '-';
+                int j = negative ? i + 1 : i, lit = 0;
+                final int last = skipToken(line, i);
+                if (j == last)
+                    throw new NumberFormatException(line.substring(i, last));
+                for (; j < last; j++) {
+                    final int digit = line.charAt(j) - '0';
+                    if (digit < 0 || digit > 9)
+                        throw new NumberFormatException(line.substring(i, last));
+                    lit = lit * 10 + digit;
+                }
+                if (lit != 0)
+                    updateSolution(negative ? -lit : lit);
+                else if (sat != null)
+                    return true;
+                i = last;
+            }
+        } // not a solution line or a variable line, so ignore it.
+        return false;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character in the given line at
+     * or after the given index, or the length of the line if there is none.
+     */
+    private static int skipWhitespace(String line, int i) {
+        final int length = line.length();
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the first whitespace character in the given line at or
+     * after the given index, or the length of the line if there is none.
+     */
+    private static int skipToken(String line, int i) {
+        final int length = line.length();
+        while (i < length && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
     /**
      * @see kodkod.engine.satlab.SATSolver#solve()
      */
@@ -214,59 +274,41 @@ final class ExternalSolver implements SATSolver {
                                   // block)
     public boolean solve() throws SATAbortedException {
         if (sat == null) {
-            flush();
             Process p = null;
             BufferedReader out = null;
             try {
-                cnf.seek(0);
-                cnf.writeBytes("p cnf " + vars + " " + clauses);
-                cnf.close();
+                cnf.finish(vars);
 
                 final String[] command = new String[options.length + 2];
                 command[0] = executable;
                 System.arraycopy(options, 0, command, 1, options.length);
                 command[command.length - 1] = inTemp;
                 p = Runtime.getRuntime().exec(command);
+                process = p;
+                if (aborted)
+                    p.destroy();
                 new Thread(drain(p.getErrorStream())).start();
                 out = outputReader(p);
                 String line = null;
                 while ((line = out.readLine()) != null) {
-                    String[] tokens = line.split("\\s");
-                    int tlength = tokens.length;
-                    if (tlength > 0) {
-                        if (tokens[0].compareToIgnoreCase("s") == 0) {
-                            if (tlength == 2) {
-                                if (tokens[1].compareToIgnoreCase("SATISFIABLE") == 0) {
-                                    sat = Boolean.TRUE;
-                                    continue;
-                                } else if (tokens[1].compareToIgnoreCase("UNSATISFIABLE") == 0) {
-                                    sat = Boolean.FALSE;
-                                    continue;
-                                }
-                            }
-                            throw new SATAbortedException("Invalid " + executable + " output. Line: " + line);
-                        } else if (tokens[0].compareToIgnoreCase("v") == 0) {
-                            int last = tlength - 1;
-                            for (int i = 1; i < last; i++) {
-                                updateSolution(Integer.parseInt(tokens[i]));
-                            }
-                            int lit = Integer.parseInt(tokens[last]);
-                            if (lit != 0)
-                                updateSolution(lit);
-                            else if (sat != null)
-                                break;
-                        } // not a solution line or a variable line, so ignore
-                         // it.
-                    }
+                    if (parse(line))
+                        break;
+                }
+                if (aborted) {
+                    sat = null;
+                    throw new SATAbortedException("Aborted.");
                 }
                 if (sat == null) {
                     throw new SATAbortedException("Invalid " + executable + " output: no line specifying the outcome.");
                 }
             } catch (IOException e) {
+                if (aborted)
+                    throw new SATAbortedException("Aborted.", e);
                 throw new SATAbortedException(e);
             } catch (NumberFormatException e) {
                 throw new SATAbortedException("Invalid " + executable + " output: encountered a non-integer variable token.", e);
             } finally {
+                process = null;
                 close(cnf);
                 close(out);
             }
@@ -274,6 +316,23 @@ final class ExternalSolver implements SATSolver {
         return sat;
     }
 
+    /**
+     * Kills the external process started by the call to {@link #solve()} that is
+     * currently in progress, if any. The interrupted call throws a
+     * {@link SATAbortedException}. Since external solvers are not incremental,
+     * this solver cannot be used after it has been aborted.
+     *
+     * @return true
+     */
+    @Override
+    public boolean abort() {
+        aborted = true;
+        final Process p = process;
+        if (p != null)
+            p.destroy();
+        return true;
+    }
+
     /**
      * Returns a runnable that drains the specified input stream.
      *
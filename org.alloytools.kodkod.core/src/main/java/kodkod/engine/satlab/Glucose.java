@@ -21,6 +21,8 @@
  */
 package kodkod.engine.satlab;
 
+import java.nio.IntBuffer;
+
 /**
  * Java wrapper for the Glucose solver by G. Audemard and L. Simon.
  *
@@ -80,6 +82,14 @@ final class Glucose extends NativeSolver {
     @Override
     native boolean addClause(long peer, int[] lits);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#addClauses(long, IntBuffer, int, int)
+     */
+    @Override
+    native int addClauses(long peer, IntBuffer clauses, int offset, int length);
+
     /**
      * {@inheritDoc}
      *
@@ -88,6 +98,22 @@ final class Glucose extends NativeSolver {
     @Override
     native boolean solve(long peer);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+     */
+    @Override
+    native boolean solveAssuming(long peer, int[] assumptions);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#failed(long, int[])
+     */
+    @Override
+    native int[] failed(long peer, int[] assumptions);
+
     /**
      * {@inheritDoc}
      *
@@ -96,4 +122,19 @@ final class Glucose extends NativeSolver {
     @Override
     native boolean valueOf(long peer, int literal);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#interrupt(long, boolean)
+     */
+    @Override
+    native boolean interrupt(long peer, boolean on);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#statistics(long)
+     */
+    @Override
+    native long[] statistics(long peer);
 }
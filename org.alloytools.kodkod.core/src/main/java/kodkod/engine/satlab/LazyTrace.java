@@ -21,43 +21,58 @@
  */
 package kodkod.engine.satlab;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import kodkod.util.collections.Containers;
 import kodkod.util.ints.IntBitSet;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.Ints;
 
 /**
- * An array-backed implementation of the {@linkplain ResolutionTrace} interface.
- * Resolvent literals are computed on-demand, and only the resolvents reachable
- * from the conflict clause are stored.
+ * A packed implementation of the {@linkplain ResolutionTrace} interface. All
+ * clauses are stored in a single int buffer outside of the Java heap, indexed by
+ * an array of offsets, so that a trace takes a few ints per clause rather than
+ * an array object per clause. Resolvent literals are computed on-demand, and
+ * only the resolvents reachable from the conflict clause are stored.
+ * <p>
+ * If the system property <tt>kodkod.trace.mapped</tt> is set to a non-negative
+ * integer n, the buffers of traces with more than n ints are mapped onto
+ * temporary files instead, so that the operating system can page them out.
+ * </p>
  *
  * @author Emina Torlak
  */
 final class LazyTrace implements ResolutionTrace {
 
     /*
-     * The trace array encodes the resolution trace as follows. The first
-     * <tt>axioms</tt> entries in the trace array contain the literals of the
-     * clauses added to the prover, in the order in which they were added. The
-     * remaining entries encode the resolvents as follows. Let i >= <tt>axioms</tt>
-     * represent the ith resolvent. If resolved.contains(i-axioms), then trace[i][0]
-     * contains the number of the resolvent's antecedents; trace[i][1..trace[i][0]]
-     * contains the indices of the resolvent's antecedents in the trace; and
-     * trace[i][trace[i][0]+1..trace[i].length-1] contains the literals of the ith
-     * resolvent. Otherwise, the literals for the given resolvent have not yet been
-     * computed so trace[i][0..trace[i].length-1] contains the indices of the
-     * resolvent's antecedents. All computed and axiom literals are sorted in the
-     * increasing order of absolute values. All antecedents of a given resolvent
-     * precede it in the trace, and the conflict clause should be the last trace
-     * element.
-     */
-    private final int[][] trace;
-    private final int     axioms;
-    private final IntSet  core, resolved;
+     * The data buffer encodes the resolution trace as follows. The ith clause in
+     * the trace is stored in data[start[i]..start[i+1]). The first <tt>axioms</tt>
+     * clauses contain the literals of the clauses added to the prover, in the order
+     * in which they were added. The remaining clauses are resolvents, and contain
+     * the indices of the resolvent's antecedents in the trace. Let i >=
+     * <tt>axioms</tt> represent the ith resolvent. If resolved.contains(i-axioms),
+     * then literals[litStart[i-axioms]] contains the number of the resolvent's
+     * literals, and the following entries contain the literals themselves.
+     * Otherwise, the literals for the given resolvent have not yet been computed.
+     * All computed and axiom literals are sorted in the increasing order of
+     * absolute values. All antecedents of a given resolvent precede it in the
+     * trace, and the conflict clause should be the last trace element.
+     */
+    private final IntBuffer data;
+    private final int[]     start;
+    private final int       axioms;
+    private final IntSet    core, resolved;
+    private final int[]     litStart;
+    private IntBuffer       literals;
+    private int             literalsSize;
 
     /**
      * Constructs a resolution trace view for the given raw trace. The first
@@ -70,118 +85,200 @@ final class LazyTrace implements ResolutionTrace {
      * array. All antecedents of a given resolvent should precede it in the trace,
      * and the conflict clause should be the last trace element.
      * <p>
-     * <b>Note: </b> the given array's contents must not be modified while in use by
-     * this resolution trace object.
+     * <b>Note: </b> the given array is emptied as its entries are packed into this
+     * resolution trace object.
      * </p>
      */
     LazyTrace(int[][] trace, int axioms) {
-        this.axioms = axioms;
-
-        // find all the clauses that are reachable from the conflict
-        final IntSet reachable = reachable(trace, axioms);
-
-        // get the core clauses
-        this.core = core(reachable, axioms);
-
-        // trim the trace so that it contains all axioms but only those
-        // resolvents that are reachable from the conflict
-        this.trace = compress(trace, axioms, reachable, core);
-
-        // we haven't computed any resolvent literals yet ...
-        this.resolved = new IntBitSet(this.trace.length - axioms);
+        this(pack(trace), axioms);
     }
 
     /**
      * Constructs a resolution trace from the given subtrace and partial trace. This
      * constructor assumes that <tt>partial</tt> is the result of solving the
      * subtrace of the <tt>original</tt> trace that is given by the specified set of
-     * indices. The first indices.size() of the partial trace are assumed to
-     * represent the clauses given by original.trace[indices], in the increasing
-     * order of indices; the remaining entries should encode the resolvents computed
-     * from original.trace[indices], as specified by
+     * indices. The first indices.size() of the partial trace are assumed to be
+     * empty placeholders for the clauses given by original[indices], in the
+     * increasing order of indices; the remaining entries should encode the
+     * resolvents computed from original[indices], as specified by
      * {@linkplain #LazyTrace(int[][], int)}. The given subtrace of the original
      * trace must be self-contained, i.e.
      * original.reachable(indices).equals(indices).
      * <p>
-     * <b>Note: </b> the given array's contents must not be modified while in use by
-     * this resolution trace object.
+     * <b>Note: </b> the given array is emptied as its entries are packed into this
+     * resolution trace object.
      * </p>
      */
     LazyTrace(LazyTrace original, IntSet indices, int[][] partial) {
-        this.axioms = reconstruct(original, indices, partial);
+        this(reconstruct(original, indices, partial), indices.size() - original.resolvents(indices));
+    }
+
+    /**
+     * Constructs a resolution trace from the given packed clauses, the first
+     * <tt>axioms</tt> of which are axioms, and the rest of which are resolvents.
+     *
+     * @ensures invalidates the contents of packed
+     */
+    private LazyTrace(Packed packed, int axioms) {
+        this.axioms = axioms;
 
         // find all the clauses that are reachable from the conflict
-        final IntSet reachable = reachable(partial, axioms);
+        final IntSet reachable = reachable(packed, axioms);
 
         // get the core clauses
         this.core = core(reachable, axioms);
 
         // trim the trace so that it contains all axioms but only those
         // resolvents that are reachable from the conflict
-        this.trace = compress(partial, axioms, reachable, core);
+        compress(packed, axioms, reachable);
+        this.data = packed.data;
+        this.start = packed.start;
 
         // we haven't computed any resolvent literals yet ...
-        this.resolved = new IntBitSet(this.trace.length - axioms);
+        this.resolved = new IntBitSet(size() - axioms);
+        this.litStart = new int[size() - axioms];
+        this.literals = null;
+        this.literalsSize = 0;
+    }
+
+    /**
+     * Returns a new int buffer with the given capacity. The buffer is allocated
+     * outside of the Java heap, and it is mapped onto a temporary file if its
+     * capacity exceeds the value of the <tt>kodkod.trace.mapped</tt> property. If
+     * the capacity is too large for a single direct buffer, the buffer is
+     * allocated on the heap.
+     *
+     * @return an int buffer with the given capacity
+     */
+    static IntBuffer allocate(int capacity) {
+        if (capacity > Integer.MAX_VALUE / 4)
+            return IntBuffer.allocate(capacity);
+        final int mapped = Integer.getInteger("kodkod.trace.mapped", -1);
+        if (mapped >= 0 && capacity > mapped) {
+            try {
+                return map(capacity);
+            } catch (IOException e) {
+                // fall through to a direct buffer
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Returns a new int buffer with the given capacity, mapped onto a temporary
+     * file. The file is deleted immediately if the platform allows it, and on exit
+     * otherwise.
+     *
+     * @requires capacity <= Integer.MAX_VALUE / 4
+     * @return an int buffer with the given capacity, mapped onto a temporary file
+     */
+    private static IntBuffer map(int capacity) throws IOException {
+        final File file = File.createTempFile("kodkod", ".trace");
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity * 4L).order(ByteOrder.nativeOrder()).asIntBuffer();
+            } finally {
+                raf.close();
+            }
+        } finally {
+            if (!file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Packs the given raw trace, as specified by
+     * {@linkplain #LazyTrace(int[][], int)}, and returns the result. The entries of
+     * the raw trace are cleared as they are packed, so that they can be garbage
+     * collected.
+     *
+     * @ensures no trace'[int]
+     * @return packed form of the given trace
+     */
+    private static Packed pack(int[][] trace) {
+        long ints = 0;
+        for (int[] clause : trace) {
+            ints += clause.length;
+        }
+        final Packed packed = new Packed(trace.length, ints);
+        for (int i = 0; i < trace.length; i++) {
+            packed.add(trace[i]);
+            trace[i] = null;
+        }
+        return packed;
     }
 
     /**
-     * Fills the first indices.size() empty positions of the partial trace with the
-     * corresponding clauses from the original trace and returns the number of
-     * axioms in the reconstructed trace.
+     * Packs the clauses original[indices], followed by the resolvents in the given
+     * partial trace, and returns the result.
      *
      * @requires original, indices, and partial are as specified by
      *           {@linkplain #LazyTrace(LazyTrace, IntSet, int[][])} constructor
-     * @ensures modifies partial so that it conforms to the {@linkplain #trace
-     *          LazyTrace.trace} spec using the provided original trace and indices.
-     * @return number of axioms in the modified partial trace
-     */
-    private static int reconstruct(LazyTrace original, IntSet indices, int[][] partial) {
-        int axiomCount = indices.size();
-        // fill the partial[0..indices.size()-1] with the corresponding clauses
-        // from original.trace[indices]
-        final int[][] originalTrace = original.trace;
-        final int[] position = new int[indices.max() + 1];
+     * @ensures no partial'[int]
+     * @return packed form of the trace reconstructed from the original trace, the
+     *         indices and the partial trace
+     */
+    private static Packed reconstruct(LazyTrace original, IntSet indices, int[][] partial) {
+        final int length = indices.size();
+        long ints = 0;
+        for (IntIterator itr = indices.iterator(); itr.hasNext();) {
+            final int index = itr.next();
+            ints += original.start[index + 1] - original.start[index];
+        }
+        for (int i = length; i < partial.length; i++) {
+            ints += partial[i].length;
+        }
+        final Packed packed = new Packed(partial.length, ints);
 
-        IntIterator itr = indices.iterator();
-        for (int i = 0, length = indices.size(); i < length; i++) {
-            int index = itr.next();
+        // copy the clauses from original[indices], adjusting the antecedent
+        // indices of the resolvents
+        final int[] position = new int[indices.max() + 1];
+        final IntIterator itr = indices.iterator();
+        for (int i = 0; i < length; i++) {
+            final int index = itr.next();
             position[index] = i;
-            if (original.axiom(index)) { // just set the ith pointer to original
-                                        // literals
-                partial[i] = originalTrace[index];
-            } else { // copy the resolvent and adjust copy's antecedent indices
-                int antes = originalTrace[index][0];
-                int[] resolvent = new int[antes];
-                for (int j = 0; j < antes; j++) {
-                    resolvent[j] = position[originalTrace[index][j + 1]];
-                }
-                partial[i] = resolvent;
-                axiomCount--;
-            }
+            packed.add(original.data, original.start[index], original.start[index + 1], original.axiom(index) ? null : position);
         }
+        for (int i = length; i < partial.length; i++) {
+            packed.add(partial[i]);
+            partial[i] = null;
+        }
+        return packed;
+    }
 
-        return axiomCount;
+    /**
+     * Returns the number of resolvents in the given set of indices.
+     *
+     * @return #(indices - this.axioms())
+     */
+    private int resolvents(IntSet indices) {
+        int count = 0;
+        for (IntIterator itr = indices.iterator(axioms, Integer.MAX_VALUE); itr.hasNext(); itr.next()) {
+            count++;
+        }
+        return count;
     }
 
     /**
-     * Returns the indices of all clauses in the given trace that are reachable from
-     * the conflict clause through the resolvents in trace[roots..trace.length-1].
-     * This method assumes that that the last trace[roots..trace.length-1] clauses
-     * encode resolvents as specified by the {@linkplain #LazyTrace(int[][], int)}
-     * constructor.
+     * Returns the indices of all clauses in the given packed trace that are
+     * reachable from the conflict clause through the resolvents in
+     * trace[roots..trace.size-1]. This method assumes that that the last
+     * trace[roots..trace.size-1] clauses encode resolvents as specified by the
+     * {@linkplain #LazyTrace(int[][], int)} constructor.
      *
      * @return indices of all clauses in the given trace that are reachable from the
-     *         conflict clause through the resolvents in
-     *         trace[roots..trace.length-1]
+     *         conflict clause through the resolvents in trace[roots..trace.size-1]
      */
-    private static IntSet reachable(int[][] trace, int roots) {
-        final IntSet reachable = new IntBitSet(trace.length);
-        reachable.add(trace.length - 1);
-        for (int i = trace.length - 1; i >= roots; i--) {
+    private static IntSet reachable(Packed trace, int roots) {
+        final IntBuffer data = trace.data;
+        final int[] start = trace.start;
+        final IntSet reachable = new IntBitSet(trace.size);
+        reachable.add(trace.size - 1);
+        for (int i = trace.size - 1; i >= roots; i--) {
             if (reachable.contains(i)) {
-                int[] resolvent = trace[i];
-                for (int j = 0; j < resolvent.length; j++) {
-                    reachable.add(resolvent[j]);
+                for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                    reachable.add(data.get(j));
                 }
             }
         }
@@ -204,64 +301,59 @@ final class LazyTrace implements ResolutionTrace {
     }
 
     /**
-     * Compresses the given src trace into a destination trace that contains the
-     * same axioms as the source but only the resolvents that are reachable from the
-     * conflict clause.
+     * Compresses the given packed trace, in place, so that it contains the same
+     * axioms as before but only the resolvents that are reachable from the conflict
+     * clause. Since the retained resolvents keep their relative order, each one is
+     * moved to a position no greater than its original one, and the antecedent
+     * indices it refers to have already been moved when it is reached. If the
+     * retained clauses occupy less than three quarters of the data buffer, they are
+     * copied into a smaller one.
      *
-     * @requires src and axioms are as specified by the
+     * @requires trace and axioms are as specified by the
      *           {@linkplain #LazyTrace(int[][], int)} constructor
-     * @requires reachable.elts = reachable(src, axioms).elts
-     * @requires core.elts = core(reachable, axioms).elts
-     * @ensures invalidates the contents of src; src should not be used after this
-     *          method returns
-     * @return a new trace that contains the same axioms as the source but only the
-     *         resolvents that are reachable from the conflict clause.
-     */
-    private static int[][] compress(int[][] src, int axioms, IntSet reachable, IntSet core) {
-        final int[][] dest = new int[reachable.size() - core.size() + axioms][];
-        System.arraycopy(src, 0, dest, 0, axioms);
-
-        final int[] pos = new int[src.length - axioms];
-        final IntIterator srcIdxs = reachable.iterator(axioms, src.length);
-        for (int i = axioms; srcIdxs.hasNext(); i++) {
-            int srcIdx = srcIdxs.next();
+     * @requires reachable.elts = reachable(trace, axioms).elts
+     * @ensures modifies trace so that it contains the same axioms as before but only
+     *          the resolvents that are reachable from the conflict clause.
+     */
+    private static void compress(Packed trace, int axioms, IntSet reachable) {
+        final IntBuffer data = trace.data;
+        final int[] start = trace.start;
+        final int[] pos = new int[trace.size - axioms];
+        final IntIterator srcIdxs = reachable.iterator(axioms, trace.size);
+        int i = axioms, write = start[axioms];
+        for (; srcIdxs.hasNext(); i++) {
+            final int srcIdx = srcIdxs.next();
+            final int from = start[srcIdx], to = start[srcIdx + 1];
             pos[srcIdx - axioms] = i;
+            start[i] = write;
             // move the resolvent and adjust its antecedent indices
-            int[] resolvent = src[srcIdx];
-            dest[i] = resolvent;
-            for (int j = 0, lastAnte = resolvent.length; j < lastAnte; j++) {
-                int ante = resolvent[j];
-                resolvent[j] = ante < axioms ? ante : pos[ante - axioms];
+            for (int j = from; j < to; j++) {
+                final int ante = data.get(j);
+                data.put(write++, ante < axioms ? ante : pos[ante - axioms]);
             }
         }
-        return dest;
+        start[i] = write;
+        trace.trim(i, write);
     }
 
     /**
      * Returns an array of integers representing the result of resolving the clauses
-     * c1 and c2, sorted in the increasing order of absolute values. The parameters
-     * axiom1 and axiom2 specify whether c1 and c2 encode axioms or resolvents. In
-     * particular, if axiom1 (resp. axiom2) is true, then all integers in c1 (resp.
-     * c2) are assumed to be literals, sorted in the increasing order of absolute
-     * values. If axiom1 (resp. axiom2) is false, then the integers starting at
-     * c1[0]+1 (resp. c2[0]+1) are assumed to be literals, sorted in the increasing
-     * order of absolute values.
-     *
-     * @requires let off1 = axiom1 ? 0 : c1[0] + 1, off2 = axiom2 ? 0 : c2[0]+1 |
-     *           (all i: [off1..c1.length), j: [off1..c1.length) | i < j =>
-     *           abs(c1[i]) < abs(c1[j])) and (all i: [off2..c2.length), j:
-     *           [off2..c2.length) | i < j => abs(c2[i]) < abs(c2[j])) and (one i:
-     *           [off1..c1.length), j: [off2..c2.length) | c1[i] = -c2[j])
+     * c1 and c2, sorted in the increasing order of absolute values. All integers in
+     * c1 and c2 are assumed to be literals, sorted in the increasing order of
+     * absolute values.
+     *
+     * @requires (all i: [0..c1.length), j: [0..c1.length) | i < j => abs(c1[i]) <
+     *           abs(c1[j])) and (all i: [0..c2.length), j: [0..c2.length) | i < j =>
+     *           abs(c2[i]) < abs(c2[j])) and (one i: [0..c1.length), j:
+     *           [0..c2.length) | c1[i] = -c2[j])
      * @return an array of integers representing the result of resolving the clauses
      *         c1 and c2, sorted in the increasing order of absolute values
      */
-    private static int[] resolve(int[] c1, boolean axiom1, int[] c2, boolean axiom2) {
+    private static int[] resolve(int[] c1, int[] c2) {
         final int len1 = c1.length, len2 = c2.length;
-        int i = axiom1 ? 0 : c1[0] + 1;
-        int j = axiom2 ? 0 : c2[0] + 1;
-        int k = 0;
+        int i = 0, j = 0, k = 0;
 
-        final int[] tmp = new int[(len1 - i + len2 - j) - 2];
+        final int[] tmp = new int[(len1 + len2) - 2];
 
         while (i < len1 && j < len2) {
             int lit1 = c1[i], lit2 = c2[j];
@@ -300,28 +392,87 @@ final class LazyTrace implements ResolutionTrace {
     }
 
     /**
-     * Computes the resolvent at the given index, sets this.trace index to the
-     * computed resolvent and returns it.
+     * Computes the literals of the resolvent at the given index, if they have not
+     * been computed yet, and appends them to this.literals.
      *
-     * @ensures computes the resolvent at the given index and sets trace[index] to
-     *          the computed array.
-     * @return this.trace'[index]
+     * @ensures computes the literals of the resolvent at the given index and stores
+     *          them in this.literals
      */
-    private int[] resolve(int index) {
-        if (index < axioms || resolved(index))
-            return trace[index];
-        int[] ante = trace[index];
-        int[] lits = resolve(resolve(ante[0]), ante[0] < axioms, resolve(ante[1]), ante[1] < axioms);
-        for (int j = 2; j < ante.length; j++) {
-            lits = resolve(lits, true, resolve(ante[j]), ante[j] < axioms);
+    private void resolve(int index) {
+        if (axiom(index) || resolved(index))
+            return;
+        final int from = start[index], to = start[index + 1];
+        int[] lits = resolve(literals(data.get(from)), literals(data.get(from + 1)));
+        for (int j = from + 2; j < to; j++) {
+            lits = resolve(lits, literals(data.get(j)));
+        }
+        ensureCapacity(lits.length + 1);
+        litStart[index - axioms] = literalsSize;
+        literals.put(literalsSize++, lits.length);
+        for (int lit : lits) {
+            literals.put(literalsSize++, lit);
         }
-        int[] resolvent = new int[ante.length + lits.length + 1];
-        resolvent[0] = ante.length;
-        System.arraycopy(ante, 0, resolvent, 1, ante.length);
-        System.arraycopy(lits, 0, resolvent, ante.length + 1, lits.length);
-        trace[index] = resolvent;
         resolved.add(index - axioms);
-        return resolvent;
+    }
+
+    /**
+     * Ensures that this.literals has room for the given number of additional ints,
+     * by copying it into a larger buffer if necessary.
+     */
+    private void ensureCapacity(int ints) {
+        final long min = (long) literalsSize + ints;
+        if (min > Integer.MAX_VALUE)
+            throw new IllegalStateException("resolution trace too large");
+        if (literals == null) {
+            literals = allocate(StrictMath.max((int) min, 1024));
+        } else if (min > literals.capacity()) {
+            final IntBuffer larger = allocate((int) StrictMath.min(Integer.MAX_VALUE, StrictMath.max(min, 2L * literals.capacity())));
+            final IntBuffer used = literals.duplicate();
+            used.position(0);
+            used.limit(literalsSize);
+            larger.put(used);
+            literals = larger;
+        }
+    }
+
+    /**
+     * Returns a new array containing the literals of the clause at the given index,
+     * computing them first if necessary.
+     *
+     * @return literals of the clause at the given index
+     */
+    private int[] literals(int index) {
+        final int size = length(index);
+        final int[] ret = new int[size];
+        for (int i = 0; i < size; i++) {
+            ret[i] = literal(index, i);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of literals in the clause at the given index, computing
+     * them first if necessary.
+     *
+     * @return number of literals in the clause at the given index
+     */
+    private int length(int index) {
+        if (axiom(index))
+            return start[index + 1] - start[index];
+        resolve(index);
+        return literals.get(litStart[index - axioms]);
+    }
+
+    /**
+     * Returns the ith literal of the clause at the given index. The literals of the
+     * clause, if it is a resolvent, must have already been computed.
+     *
+     * @requires axiom(index) || resolved(index)
+     * @requires 0 <= i < length(index)
+     * @return ith literal of the clause at the given index
+     */
+    private int literal(int index, int i) {
+        return axiom(index) ? data.get(start[index] + i) : literals.get(litStart[index - axioms] + 1 + i);
     }
 
     /**
@@ -341,16 +492,6 @@ final class LazyTrace implements ResolutionTrace {
         return index < axioms;
     }
 
-    /**
-     * Returns the offset in this.trace[index] array where literal data is stored,
-     * if any.
-     *
-     * @return axiom(index) ? 0 : resolved(index) ? this.trace[index][0] + 1 : -1
-     */
-    private int litOffset(int index) {
-        return axiom(index) ? 0 : resolved(index) ? trace[index][0] + 1 : -1;
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -358,7 +499,7 @@ final class LazyTrace implements ResolutionTrace {
      */
     @Override
     public int size() {
-        return trace.length;
+        return start.length - 1;
     }
 
     /**
@@ -388,8 +529,8 @@ final class LazyTrace implements ResolutionTrace {
      */
     @Override
     public IntSet resolvents() {
-        if (trace.length > axioms)
-            return Ints.rangeSet(Ints.range(axioms, trace.length - 1));
+        if (size() > axioms)
+            return Ints.rangeSet(Ints.range(axioms, size() - 1));
         else
             return Ints.EMPTY_SET;
     }
@@ -401,55 +542,8 @@ final class LazyTrace implements ResolutionTrace {
      */
     @Override
     public Clause get(final int index) {
-        if (index >= 0 && index < trace.length) {
-            if (axiom(index)) { // return a self-contained clause
-                return new Clause() {
-
-                    final int[] literals = trace[index];
-                    final int   hashCode = Ints.superFastHash(literals);
-
-                    @Override
-                    public Iterator<Clause> antecedents() {
-                        return Containers.emptyIterator();
-                    }
-
-                    @Override
-                    public IntIterator literals() {
-                        return new IntArrayIterator(literals, 0, literals.length);
-                    }
-
-                    @Override
-                    public int maxVariable() {
-                        return StrictMath.abs(literals[literals.length - 1]);
-                    }
-
-                    @Override
-                    public int numberOfAntecedents() {
-                        return 0;
-                    }
-
-                    @Override
-                    public int size() {
-                        return literals.length;
-                    }
-
-                    @Override
-                    public int[] toArray(int[] array) {
-                        if (array.length < literals.length) {
-                            array = new int[literals.length];
-                        }
-                        System.arraycopy(literals, 0, array, 0, literals.length);
-                        return array;
-                    }
-
-                    @Override
-                    public int hashCode() {
-                        return hashCode;
-                    }
-                };
-            } else {
-                return new ClauseView(index);
-            }
+        if (index >= 0 && index < size()) {
+            return new ClauseView(index);
         }
         throw new IndexOutOfBoundsException("invalid index: " + index);
     }
@@ -467,7 +561,7 @@ final class LazyTrace implements ResolutionTrace {
 
             @Override
             public boolean hasNext() {
-                return index >= 0 && index < trace.length;
+                return index >= 0 && index < size();
             }
 
             @Override
@@ -491,7 +585,7 @@ final class LazyTrace implements ResolutionTrace {
      * @return indices.min() >= 0 && indices.max() < this.size()
      */
     private boolean valid(IntSet indices) {
-        return indices.min() >= 0 && indices.max() < trace.length;
+        return indices.min() >= 0 && indices.max() < size();
     }
 
     /**
@@ -530,19 +624,12 @@ final class LazyTrace implements ResolutionTrace {
         if (indices.isEmpty())
             return Ints.EMPTY_SET;
         else if (valid(indices)) {
-            final IntSet ret = new IntBitSet(trace.length);
+            final IntSet ret = new IntBitSet(size());
             ret.addAll(indices);
             for (int i = indices.max(); i >= axioms; i--) {
                 if (ret.contains(i)) {
-                    int[] resolvent = trace[i];
-                    if (resolved(i)) {
-                        for (int j = 1, antes = resolvent[0]; j <= antes; j++) {
-                            ret.add(resolvent[j]);
-                        }
-                    } else {
-                        for (int j = 0; j < resolvent.length; j++) {
-                            ret.add(resolvent[j]);
-                        }
+                    for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                        ret.add(data.get(j));
                     }
                 }
             }
@@ -561,23 +648,13 @@ final class LazyTrace implements ResolutionTrace {
         if (indices.isEmpty())
             return Ints.EMPTY_SET;
         else if (valid(indices)) {
-            final IntSet ret = new IntBitSet(trace.length);
+            final IntSet ret = new IntBitSet(size());
             ret.addAll(indices);
-            for (int i = axioms, length = trace.length; i < length; i++) {
-                int[] resolvent = trace[i];
-                if (resolved(i)) {
-                    for (int j = 1, antes = resolvent[0]; j <= antes; j++) {
-                        if (ret.contains(resolvent[j])) {
-                            ret.add(i);
-                            break;
-                        }
-                    }
-                } else {
-                    for (int j = 0; j < resolvent.length; j++) {
-                        if (ret.contains(resolvent[j])) {
-                            ret.add(i);
-                            break;
-                        }
+            for (int i = axioms, length = size(); i < length; i++) {
+                for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                    if (ret.contains(data.get(j))) {
+                        ret.add(i);
+                        break;
                     }
                 }
             }
@@ -596,21 +673,12 @@ final class LazyTrace implements ResolutionTrace {
         if (indices.isEmpty())
             return Ints.EMPTY_SET;
         else if (valid(indices)) {
-            final IntSet ret = new IntBitSet(trace.length);
+            final IntSet ret = new IntBitSet(size());
             ret.addAll(indices);
-            TOP: for (int i = axioms, length = trace.length; i < length; i++) {
-                int[] resolvent = trace[i];
-                if (resolved(i)) {
-                    for (int j = 1, antes = resolvent[0]; j <= antes; j++) {
-                        if (!ret.contains(resolvent[j])) {
-                            continue TOP;
-                        }
-                    }
-                } else {
-                    for (int j = 0; j < resolvent.length; j++) {
-                        if (!ret.contains(resolvent[j])) {
-                            continue TOP;
-                        }
+            TOP: for (int i = axioms, length = size(); i < length; i++) {
+                for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                    if (!ret.contains(data.get(j))) {
+                        continue TOP;
                     }
                 }
                 ret.add(i);
@@ -630,21 +698,12 @@ final class LazyTrace implements ResolutionTrace {
         if (indices.isEmpty())
             return Ints.EMPTY_SET;
         else if (valid(indices)) {
-            final IntSet ret = new IntBitSet(trace.length);
+            final IntSet ret = new IntBitSet(size());
             ret.addAll(indices);
-            TOP: for (int i = axioms, length = trace.length; i < length; i++) {
-                int[] resolvent = trace[i];
-                if (resolved(i)) {
-                    for (int j = 1, antes = resolvent[0]; j <= antes; j++) {
-                        if (!indices.contains(resolvent[j])) {
-                            continue TOP;
-                        }
-                    }
-                } else {
-                    for (int j = 0; j < resolvent.length; j++) {
-                        if (!indices.contains(resolvent[j])) {
-                            continue TOP;
-                        }
+            TOP: for (int i = axioms, length = size(); i < length; i++) {
+                for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                    if (!indices.contains(data.get(j))) {
+                        continue TOP;
                     }
                 }
                 ret.add(i);
@@ -664,53 +723,34 @@ final class LazyTrace implements ResolutionTrace {
     @Override
     public String toString() {
         final StringBuilder ret = new StringBuilder();
-        for (int i = 0; i < axioms; i++) {
-            ret.append("AXIOM.  Literals: ");
-            int[] clause = trace[i];
-            for (int j = 0, c = clause.length; j < c; j++) {
-                ret.append(clause[j]);
+        for (int i = 0, max = size(); i < max; i++) {
+            ret.append(axiom(i) ? "AXIOM.  Literals: " : "RESOLVENT.  Antecedents:  ");
+            for (int j = start[i], end = start[i + 1]; j < end; j++) {
+                ret.append(data.get(j));
                 ret.append(" ");
             }
             ret.append("\n");
         }
-        for (int i = axioms, max = trace.length; i < max; i++) {
-            ret.append("RESOLVENT.  Antecedents:  ");
-            int[] clause = trace[i];
-            if (resolved(i)) {
-                for (int j = 1, c = clause[0]; j <= c; j++) {
-                    ret.append(clause[j]);
-                    ret.append(" ");
-                }
-            } else {
-                for (int j = 0; j < clause.length; j++) {
-                    ret.append(clause[j]);
-                    ret.append(" ");
-                }
-            }
-            ret.append("\n");
-        }
         return ret.toString();
     }
 
     /**
-     * A mutable implementation of the Clause interface.
+     * A mutable flyweight implementation of the Clause interface, which reads the
+     * clause at a given index from the packed trace.
      *
      * @author Emina Torlak
      */
     private class ClauseView extends Clause {
 
-        private int[] clause;
-        private int   litOffset, index;
+        private int index;
 
         /**
          * Constructs a clause view for the ith clause.
          *
-         * @requires 0 <= index < trace.length
+         * @requires 0 <= index < size()
          */
         ClauseView(int index) {
             this.index = index;
-            this.clause = trace[index];
-            this.litOffset = litOffset(index);
         }
 
         /**
@@ -730,54 +770,51 @@ final class LazyTrace implements ResolutionTrace {
          */
         ClauseView set(int index) {
             this.index = index;
-            this.clause = trace[index];
-            this.litOffset = litOffset(index);
             return this;
         }
 
-        void ensureLiterals() {
-            if (litOffset < 0) {
-                resolve(index);
-                this.clause = trace[index];
-                this.litOffset = litOffset(index);
-            }
-        }
-
         @Override
         public int maxVariable() {
-            ensureLiterals();
-            return StrictMath.abs(clause[clause.length - 1]);
+            return StrictMath.abs(literal(index, length(index) - 1));
         }
 
         @Override
         public int numberOfAntecedents() {
-            return litOffset < 0 ? clause.length : StrictMath.max(0, litOffset - 1);
+            return axiom(index) ? 0 : start[index + 1] - start[index];
         }
 
         @Override
         public int size() {
-            ensureLiterals();
-            return clause.length - litOffset;
+            return length(index);
         }
 
         @Override
         public Iterator<Clause> antecedents() {
-            return new ClauseIterator(new IntArrayIterator(clause, 1, litOffset));
+            final int from = start[index];
+            return new ClauseIterator(new IntBufferIterator(data, from, from + numberOfAntecedents()));
         }
 
         @Override
         public IntIterator literals() {
-            ensureLiterals();
-            return new IntArrayIterator(clause, litOffset, clause.length);
+            final int size = length(index);
+            if (axiom(index)) {
+                final int from = start[index];
+                return new IntBufferIterator(data, from, from + size);
+            } else {
+                final int from = litStart[index - axioms] + 1;
+                return new IntBufferIterator(literals, from, from + size);
+            }
         }
 
         @Override
         public int[] toArray(int[] array) {
-            final int size = size();
+            final int size = length(index);
             if (array.length < size) {
                 array = new int[size];
             }
-            System.arraycopy(clause, litOffset, array, 0, size);
+            for (int i = 0; i < size; i++) {
+                array[i] = literal(index, i);
+            }
             return array;
         }
     }
@@ -792,7 +829,7 @@ final class LazyTrace implements ResolutionTrace {
         private final IntIterator itr;
 
         /**
-         * Constructs a clause iterator that will iterate over the clauses in this.trace
+         * Constructs a clause iterator that will iterate over the clauses in this trace
          * located at the indices given by itr. The given iterator must return valid
          * indices.
          */
@@ -817,25 +854,25 @@ final class LazyTrace implements ResolutionTrace {
     }
 
     /**
-     * An int iterator that iterates over the portion of an integer array in the
+     * An int iterator that iterates over the portion of an int buffer in the
      * increasing order of indices.
      *
      * @author Emina Torlak
      */
-    private static final class IntArrayIterator implements IntIterator {
+    private static final class IntBufferIterator implements IntIterator {
 
-        private final int[] array;
-        private int         from;
-        private final int   to;
+        private final IntBuffer buffer;
+        private int             from;
+        private final int       to;
 
         /**
-         * Constructs an int iterator that iterates over the given array, returning the
+         * Constructs an int iterator that iterates over the given buffer, returning the
          * elements between from, inclusive, and to, exclusive.
          *
-         * @requires 0 <= from < array.length < Integer.MAX_VALUE
+         * @requires 0 <= from <= to <= buffer.capacity()
          */
-        IntArrayIterator(int[] array, int from, int to) {
-            this.array = array;
+        IntBufferIterator(IntBuffer buffer, int from, int to) {
+            this.buffer = buffer;
             this.from = from;
             this.to = to;
         }
@@ -849,7 +886,7 @@ final class LazyTrace implements ResolutionTrace {
         public int next() {
             if (!hasNext())
                 throw new NoSuchElementException();
-            return array[from++];
+            return buffer.get(from++);
         }
 
         @Override
@@ -857,4 +894,75 @@ final class LazyTrace implements ResolutionTrace {
             throw new UnsupportedOperationException();
         }
     }
+
+    /**
+     * A trace under construction, packed into a single int buffer. The ith clause
+     * is stored in data[start[i]..start[i+1]).
+     *
+     * @specfield size: int
+     */
+    private static final class Packed {
+
+        IntBuffer data;
+        int[]     start;
+        int       size;
+
+        /**
+         * Constructs an empty packed trace with room for the given number of clauses
+         * and ints.
+         *
+         * @throws IllegalStateException ints > Integer.MAX_VALUE
+         */
+        Packed(int clauses, long ints) {
+            if (ints > Integer.MAX_VALUE)
+                throw new IllegalStateException("resolution trace too large: " + ints + " ints");
+            this.data = allocate((int) ints);
+            this.start = new int[clauses + 1];
+            this.size = 0;
+        }
+
+        /**
+         * Appends the given clause to this trace.
+         */
+        void add(int[] clause) {
+            final int from = start[size];
+            data.position(from);
+            data.put(clause);
+            start[++size] = from + clause.length;
+        }
+
+        /**
+         * Appends the clause src[from..to) to this trace, mapping each of its ints
+         * through the given position array, if any.
+         */
+        void add(IntBuffer src, int from, int to, int[] position) {
+            int write = start[size];
+            for (int i = from; i < to; i++) {
+                final int val = src.get(i);
+                data.put(write++, position == null ? val : position[val]);
+            }
+            start[++size] = write;
+        }
+
+        /**
+         * Truncates this trace to its first clauses clauses, which occupy the first
+         * ints ints of its buffer, and releases the space beyond them.
+         */
+        void trim(int clauses, int ints) {
+            if (clauses + 1 < start.length) {
+                final int[] trimmed = new int[clauses + 1];
+                System.arraycopy(start, 0, trimmed, 0, clauses + 1);
+                start = trimmed;
+            }
+            if (ints < data.capacity() / 4 * 3) {
+                final IntBuffer trimmed = allocate(ints);
+                final IntBuffer used = data.duplicate();
+                used.position(0);
+                used.limit(ints);
+                trimmed.put(used);
+                data = trimmed;
+            }
+            size = clauses;
+        }
+    }
 }
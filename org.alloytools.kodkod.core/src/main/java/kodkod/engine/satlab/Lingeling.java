@@ -21,6 +21,8 @@
  */
 package kodkod.engine.satlab;
 
+import java.nio.IntBuffer;
+
 /**
  * Java wrapper for the Lingeling solver by Armin Biere.
  *
@@ -80,6 +82,14 @@ final class Lingeling extends NativeSolver {
     @Override
     native boolean addClause(long peer, int[] lits);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#addClauses(long, IntBuffer, int, int)
+     */
+    @Override
+    native int addClauses(long peer, IntBuffer clauses, int offset, int length);
+
     /**
      * {@inheritDoc}
      *
@@ -88,6 +98,29 @@ final class Lingeling extends NativeSolver {
     @Override
     native boolean solve(long peer);
 
+    /**
+     * {@inheritDoc} This version of Lingeling accepts only one assumption per
+     * call.
+     *
+     * @throws UnsupportedOperationException assumptions.length > 1
+     * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+     */
+    @Override
+    boolean solveAssuming(long peer, int[] assumptions) {
+        if (assumptions.length > 1)
+            throw new UnsupportedOperationException("Lingeling accepts only one assumption per call, given " + assumptions.length);
+        return solveAssuming(peer, assumptions[0]);
+    }
+
+    /**
+     * Calls the solve method on the given native peer, assuming the given literal
+     * for the duration of the call.
+     *
+     * @return true if the clauses in the solver and the given literal are SAT;
+     *         otherwise returns false.
+     */
+    private native boolean solveAssuming(long peer, int assumption);
+
     /**
      * {@inheritDoc}
      *
@@ -95,4 +128,20 @@ final class Lingeling extends NativeSolver {
      */
     @Override
     native boolean valueOf(long peer, int literal);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#interrupt(long, boolean)
+     */
+    @Override
+    native boolean interrupt(long peer, boolean on);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#statistics(long)
+     */
+    @Override
+    native long[] statistics(long peer);
 }
@@ -21,6 +21,8 @@
  */
 package kodkod.engine.satlab;
 
+import java.nio.IntBuffer;
+
 /**
  * Java wrapper for the MiniSat solver by Niklas E&eacute;n and Niklas
  * S&ouml;rensson.
@@ -81,6 +83,14 @@ final class MiniSat extends NativeSolver {
     @Override
     native boolean addClause(long peer, int[] lits);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#addClauses(long, IntBuffer, int, int)
+     */
+    @Override
+    native int addClauses(long peer, IntBuffer clauses, int offset, int length);
+
     /**
      * {@inheritDoc}
      *
@@ -89,6 +99,22 @@ final class MiniSat extends NativeSolver {
     @Override
     native boolean solve(long peer);
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+     */
+    @Override
+    native boolean solveAssuming(long peer, int[] assumptions);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#failed(long, int[])
+     */
+    @Override
+    native int[] failed(long peer, int[] assumptions);
+
     /**
      * {@inheritDoc}
      *
@@ -96,4 +122,20 @@ final class MiniSat extends NativeSolver {
      */
     @Override
     native boolean valueOf(long peer, int literal);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#interrupt(long, boolean)
+     */
+    @Override
+    native boolean interrupt(long peer, boolean on);
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.NativeSolver#statistics(long)
+     */
+    @Override
+    native long[] statistics(long peer);
 }
@@ -22,6 +22,8 @@
 package kodkod.engine.satlab;
 
 import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 
 import org.alloytools.nativecode.util.NativeCode;
 
@@ -35,9 +37,12 @@ abstract class NativeSolver implements SATSolver {
     /**
      * The memory address of the native instance wrapped by this wrapper.
      */
-    private long    peer;
-    private Boolean sat;
-    private int     clauses, vars;
+    private long             peer;
+    private Boolean          sat;
+    private int              clauses, vars;
+    private int[]            failed;
+    private volatile boolean aborted, interruptible;
+    private boolean          batched, monitored;
 
     /**
      * Constructs a new wrapper for the given instance of the native solver.
@@ -46,6 +51,7 @@ abstract class NativeSolver implements SATSolver {
         this.peer = peer;
         this.clauses = this.vars = 0;
         this.sat = null;
+        this.batched = this.monitored = true;
         // System.out.println("created " + peer);
     }
 
@@ -147,6 +153,34 @@ abstract class NativeSolver implements SATSolver {
         return false;
     }
 
+    /**
+     * {@inheritDoc} If the given buffer is direct and in native byte order, the
+     * whole batch is passed to the native peer in a single call. Otherwise, or if
+     * the native library does not provide a batch entry point, the clauses are
+     * added one at a time.
+     *
+     * @see kodkod.engine.satlab.SATSolver#addClauses(IntBuffer)
+     * @see #addClauses(long, IntBuffer, int, int)
+     */
+    @Override
+    public final int addClauses(IntBuffer lits) {
+        if (batched && lits.isDirect() && lits.order() == ByteOrder.nativeOrder()) {
+            int added;
+            try {
+                added = addClauses(peer, lits, lits.position(), lits.remaining());
+            } catch (UnsatisfiedLinkError e) { // library predates batching
+                added = -1;
+            }
+            if (added >= 0) {
+                lits.position(lits.limit());
+                clauses += added;
+                return added;
+            }
+            batched = false;
+        }
+        return SATSolver.super.addClauses(lits);
+    }
+
     /**
      * Returns a pointer to the C++ peer class (the native instance wrapped by this
      * object).
@@ -176,10 +210,121 @@ abstract class NativeSolver implements SATSolver {
      */
     @Override
     public final boolean solve() {
-        if (sat == Boolean.FALSE)
+        failed = null;
+        if (sat == Boolean.FALSE) {
+            failed = new int[0];
             return sat;
-        else
-            return (sat = Boolean.valueOf(solve(peer)));
+        }
+        aborted = false;
+        if (interruptible)
+            interrupt(peer, false); // clear a request that arrived too late
+        final boolean result = solve(peer);
+        if (aborted) {
+            sat = null;
+            throw new SATAbortedException("Aborted.");
+        }
+        if (!result)
+            failed = new int[0];
+        return (sat = Boolean.valueOf(result));
+    }
+
+    /**
+     * {@inheritDoc} An outcome of false leaves this solver usable, unless none of
+     * the assumptions {@linkplain #failedAssumptions() failed}.
+     *
+     * @throws UnsupportedOperationException assumptions.length > 0 and the native
+     *             library does not provide an entry point for solving under
+     *             assumptions
+     * @see kodkod.engine.satlab.SATSolver#solve(int[])
+     * @see #solveAssuming(long, int[])
+     */
+    @Override
+    public final boolean solve(int[] assumptions) {
+        if (assumptions.length == 0)
+            return solve();
+        failed = null;
+        if (sat == Boolean.FALSE) {
+            failed = new int[0];
+            return false;
+        }
+        aborted = false;
+        if (interruptible)
+            interrupt(peer, false); // clear a request that arrived too late
+        final boolean result;
+        try {
+            result = solveAssuming(peer, assumptions);
+        } catch (UnsatisfiedLinkError e) { // library predates assumptions
+            throw new UnsupportedOperationException("solving under assumptions is not supported by this version of the " + this + " library", e);
+        }
+        if (aborted) {
+            sat = null;
+            throw new SATAbortedException("Aborted.");
+        }
+        if (result) {
+            sat = Boolean.TRUE;
+        } else {
+            failed = failed(peer, assumptions);
+            sat = failed.length == 0 ? Boolean.FALSE : null;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+     * @see #failed(long, int[])
+     */
+    @Override
+    public final int[] failedAssumptions() {
+        if (failed == null)
+            throw new IllegalStateException();
+        return failed.clone();
+    }
+
+    /**
+     * Asks the native peer to stop the call to {@link #solve()} that is currently
+     * in progress, if any, and returns true if the peer supports interruption. The
+     * interrupted call throws a {@link SATAbortedException}, and the solver
+     * remains usable afterwards. A request that arrives before the peer starts its
+     * search may be lost, so callers waiting for termination should repeat it.
+     * Returns false, without interrupting anything, if the native library does not
+     * provide an interrupt entry point.
+     *
+     * @return true if the native peer supports interruption
+     */
+    @Override
+    public final synchronized boolean abort() {
+        if (peer == 0)
+            return false;
+        aborted = true;
+        try {
+            if (interrupt(peer, true)) {
+                interruptible = true;
+                return true;
+            }
+        } catch (UnsatisfiedLinkError e) {} // library predates interruption
+        aborted = false;
+        return false;
+    }
+
+    /**
+     * Returns the search statistics of the native peer, or null if the peer has
+     * been freed or the native library does not provide a statistics entry point.
+     * This method may be called while another thread is solving.
+     *
+     * @see kodkod.engine.satlab.SATSolver#statistics()
+     */
+    @Override
+    public final synchronized SearchStatistics statistics() {
+        if (peer == 0 || !monitored)
+            return null;
+        try {
+            return SearchStatistics.valueOf(statistics(peer));
+        } catch (UnsatisfiedLinkError e) { // library predates statistics
+            monitored = false;
+            return null;
+        }
     }
 
     /**
@@ -261,6 +406,26 @@ abstract class NativeSolver implements SATSolver {
      */
     abstract boolean addClause(long peer, int[] lits);
 
+    /**
+     * Adds the clauses stored in the given direct buffer to the given native peer,
+     * and returns the number of clauses for which
+     * {@link #addClause(long, int[]) addClause(peer, clause)} would have returned
+     * true. The clauses occupy the elements [offset..offset+length) of the buffer,
+     * each terminated by 0. The buffer's position is not changed. The default
+     * implementation returns -1 to indicate that the peer cannot accept clauses in
+     * batches.
+     *
+     * @requires clauses.isDirect() && clauses.order() = ByteOrder.nativeOrder()
+     * @requires length > 0 => clauses.get(offset+length-1) = 0
+     * @ensures ensures that the given native peer logically contains the specified
+     *          clauses
+     * @return the number of clauses that changed the peer's clause database, or -1
+     *         if the peer does not support batches
+     */
+    int addClauses(long peer, IntBuffer clauses, int offset, int length) {
+        return -1;
+    }
+
     /**
      * Calls the solve method on the given native peer.
      *
@@ -268,6 +433,36 @@ abstract class NativeSolver implements SATSolver {
      */
     abstract boolean solve(long peer);
 
+    /**
+     * Calls the solve method on the given native peer with the given assumptions,
+     * which hold only for the duration of the call. The default implementation
+     * throws an UnsatisfiedLinkError to indicate that the peer cannot solve under
+     * assumptions.
+     *
+     * @requires assumptions.length > 0
+     * @return true if the clauses in the solver and the given assumptions are SAT;
+     *         otherwise returns false.
+     */
+    boolean solveAssuming(long peer, int[] assumptions) {
+        throw new UnsatisfiedLinkError("solveAssuming");
+    }
+
+    /**
+     * Returns a subset of the given assumptions that is unsatisfiable together
+     * with the clauses of the given native peer. A peer that can tell may return
+     * an empty array if its clauses are unsatisfiable on their own, in which case
+     * this solver becomes unusable. The default implementation returns all of the
+     * given assumptions, so it never tells the two cases apart and leaves this
+     * solver usable after every failed call.
+     *
+     * @requires the last call to {@link #solveAssuming(long, int[])
+     *           solveAssuming(peer, assumptions)} returned false
+     * @return some lits: set assumptions | UNSAT(peer.clauses && lits)
+     */
+    int[] failed(long peer, int[] assumptions) {
+        return assumptions.clone();
+    }
+
     /**
      * Returns the assignment for the given literal by the specified native peer
      *
@@ -277,4 +472,28 @@ abstract class NativeSolver implements SATSolver {
      */
     abstract boolean valueOf(long peer, int literal);
 
+    /**
+     * Returns the conflicts, decisions, propagations and restarts of the given
+     * native peer so far, in that order, with -1 for the counters it does not
+     * keep. The default implementation throws an UnsatisfiedLinkError to indicate
+     * that the peer keeps no statistics.
+     *
+     * @return {conflicts, decisions, propagations, restarts}
+     */
+    long[] statistics(long peer) {
+        throw new UnsatisfiedLinkError("statistics");
+    }
+
+    /**
+     * Raises or clears the interrupt flag of the given native peer, and returns
+     * true if the peer supports interruption. While the flag is raised, calls to
+     * {@link #solve(long) solve(peer)} return as soon as possible. The default
+     * implementation returns false.
+     *
+     * @return true if the peer supports interruption
+     */
+    boolean interrupt(long peer, boolean on) {
+        return false;
+    }
+
 }
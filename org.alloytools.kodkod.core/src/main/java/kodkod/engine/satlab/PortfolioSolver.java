@@ -0,0 +1,401 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A SATSolver that runs several solvers on the same clauses in parallel. Every
+ * variable and clause added to a portfolio is added to each of its members.
+ * Each call to {@link #solve()} starts all members on separate threads and
+ * returns the outcome of the first member to finish; the remaining members are
+ * then aborted, and the satisfying assignment, if any, is read from the
+ * winner.
+ * <p>
+ * Members that cannot be aborted (e.g. native solvers loaded from a library
+ * without an interrupt entry point) are dropped from the portfolio once they
+ * lose a race, and freed as soon as their search terminates. Members that are
+ * not incremental are dropped as soon as clauses or variables are added after
+ * the first call to {@link #solve()}.
+ * </p>
+ *
+ * @specfield members: set SATSolver
+ */
+final class PortfolioSolver implements SATSolver {
+
+    /**
+     * How long to wait, in milliseconds, for an aborted member to stop before
+     * re-sending the abort request.
+     */
+    private static final long  ABORT_POLL = 10;
+
+    private final List<Member> members;
+    private ExecutorService    pool;
+    private Member             winner;
+    private Boolean            sat;
+    private boolean            solved;
+    private int                vars, clauses;
+
+    /**
+     * Constructs a new portfolio with one member for each of the given factories.
+     *
+     * @requires factories.length > 0
+     */
+    PortfolioSolver(SATFactory[] factories) {
+        this.members = new ArrayList<Member>(factories.length);
+        for (SATFactory factory : factories) {
+            members.add(new Member(factory.instance(), factory.incremental()));
+        }
+        this.pool = null;
+        this.winner = null;
+        this.sat = null;
+        this.solved = false;
+        this.vars = this.clauses = 0;
+    }
+
+    /**
+     * Returns a thread pool for running the members of this portfolio,
+     * constructing it if needed. The pool uses daemon threads so that a member
+     * that is still running cannot keep the JVM alive.
+     *
+     * @return a thread pool for running the members of this portfolio
+     */
+    private ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "kodkod-portfolio");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+     */
+    @Override
+    public int numberOfVariables() {
+        return vars;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+     */
+    @Override
+    public int numberOfClauses() {
+        return clauses;
+    }
+
+    /**
+     * Drops the members that are not incremental if this portfolio has already
+     * been solved.
+     */
+    private void dropNonIncremental() {
+        if (!solved)
+            return;
+        for (Iterator<Member> itr = members.iterator(); itr.hasNext();) {
+            final Member m = itr.next();
+            if (!m.incremental) {
+                itr.remove();
+                m.solver.free();
+                if (m == winner)
+                    winner = null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+     */
+    @Override
+    public void addVariables(int numVars) {
+        if (numVars < 0)
+            throw new IllegalArgumentException("numVars < 0: " + numVars);
+        else if (numVars > 0) {
+            dropNonIncremental();
+            vars += numVars;
+            for (Member m : members) {
+                m.solver.addVariables(numVars);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+     */
+    @Override
+    public boolean addClause(int[] lits) {
+        if (Boolean.FALSE.equals(sat))
+            return false;
+        dropNonIncremental();
+        boolean changed = false;
+        for (Member m : members) {
+            // each member gets its own copy, since solvers may modify the array
+            changed |= m.solver.addClause(lits.clone());
+        }
+        if (changed)
+            clauses++;
+        return changed;
+    }
+
+    /**
+     * {@inheritDoc} Each member reads the batch through its own view of the
+     * buffer, so native members still receive it in a single call.
+     *
+     * @see kodkod.engine.satlab.SATSolver#addClauses(java.nio.IntBuffer)
+     */
+    @Override
+    public int addClauses(IntBuffer lits) {
+        if (Boolean.FALSE.equals(sat)) {
+            lits.position(lits.limit());
+            return 0;
+        }
+        dropNonIncremental();
+        int added = 0;
+        for (Member m : members) {
+            added = Math.max(added, m.solver.addClauses(lits.duplicate()));
+        }
+        lits.position(lits.limit());
+        clauses += added;
+        return added;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#solve()
+     */
+    @Override
+    public boolean solve() throws SATAbortedException {
+        if (Boolean.FALSE.equals(sat))
+            return false;
+        if (members.isEmpty())
+            throw new SATAbortedException("No solvers left in the portfolio.");
+
+        winner = null;
+        sat = null;
+        solved = true;
+
+        final CompletionService<Boolean> service = new ExecutorCompletionService<Boolean>(pool());
+        final Map<Future<Boolean>,Member> running = new LinkedHashMap<Future<Boolean>,Member>();
+        for (Member m : members) {
+            running.put(service.submit(m), m);
+        }
+
+        RuntimeException failure = null;
+        try {
+            while (winner == null && !running.isEmpty()) {
+                final Future<Boolean> done = service.take();
+                final Member m = running.remove(done);
+                try {
+                    sat = done.get();
+                    winner = m;
+                } catch (ExecutionException e) {
+                    // a member that failed on its own is of no further use
+                    members.remove(m);
+                    m.solver.free();
+                    if (failure == null)
+                        failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new SATAbortedException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new SATAbortedException("Interrupted.", e);
+        } finally {
+            stop(running);
+        }
+
+        if (winner == null) {
+            sat = null;
+            if (failure instanceof SATAbortedException)
+                throw (SATAbortedException) failure;
+            throw new SATAbortedException("No solver in the portfolio terminated normally.", failure);
+        }
+        return sat;
+    }
+
+    /**
+     * Aborts the given running members and waits for them to stop. Members that
+     * cannot be aborted are removed from this.members and freed once they
+     * terminate.
+     *
+     * @ensures all m: running.values() | m's search has stopped || m !in
+     *          this.members'
+     */
+    private void stop(Map<Future<Boolean>,Member> running) {
+        for (Map.Entry<Future<Boolean>,Member> entry : running.entrySet()) {
+            final Future<Boolean> future = entry.getKey();
+            final Member m = entry.getValue();
+            boolean interrupted = false;
+            while (!future.isDone()) {
+                if (!m.solver.abort()) {
+                    members.remove(m);
+                    pool().submit(release(future, m.solver));
+                    break;
+                }
+                try {
+                    future.get(ABORT_POLL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    continue; // the request may have been lost; re-send it
+                } catch (ExecutionException e) {
+                    break; // the expected SATAbortedException
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a runnable that waits for the given search to finish and then frees
+     * the given solver.
+     *
+     * @return a runnable that frees the given solver once the given search is
+     *         done
+     */
+    private static Runnable release(final Future<Boolean> search, final SATSolver solver) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    search.get();
+                } catch (InterruptedException e) {
+                    return; // the pool is being shut down; leave the solver to the finalizer
+                } catch (ExecutionException e) {} // ignore
+                solver.free();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+     */
+    @Override
+    public boolean valueOf(int variable) {
+        if (!Boolean.TRUE.equals(sat) || winner == null)
+            throw new IllegalStateException();
+        if (variable < 1 || variable > vars)
+            throw new IllegalArgumentException(variable + " !in [1.." + vars + "]");
+        return winner.solver.valueOf(variable);
+    }
+
+    /**
+     * Returns the sum of the search statistics of the members that keep them, or
+     * null if none do.
+     *
+     * @see kodkod.engine.satlab.SATSolver#statistics()
+     */
+    @Override
+    public SearchStatistics statistics() {
+        SearchStatistics ret = null;
+        for (Member m : members.toArray(new Member[0])) { // members may change while we look
+            final SearchStatistics stats = m == null ? null : m.solver.statistics();
+            if (stats != null)
+                ret = ret == null ? stats : ret.plus(stats);
+        }
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#free()
+     */
+    @Override
+    public synchronized void free() {
+        for (Member m : members) {
+            m.solver.free();
+        }
+        members.clear();
+        winner = null;
+        sat = Boolean.FALSE;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final List<SATSolver> solvers = new ArrayList<SATSolver>(members.size());
+        for (Member m : members) {
+            solvers.add(m.solver);
+        }
+        return "Portfolio" + solvers;
+    }
+
+    /**
+     * A member of the portfolio: a solver, together with a flag indicating
+     * whether it can be used incrementally. Calling a member solves its solver.
+     */
+    private static final class Member implements Callable<Boolean> {
+
+        final SATSolver solver;
+        final boolean   incremental;
+
+        Member(SATSolver solver, boolean incremental) {
+            this.solver = solver;
+            this.incremental = incremental;
+        }
+
+        @Override
+        public Boolean call() {
+            return Boolean.valueOf(solver.solve());
+        }
+    }
+}
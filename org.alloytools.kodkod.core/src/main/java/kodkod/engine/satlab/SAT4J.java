@@ -21,8 +21,11 @@
  */
 package kodkod.engine.satlab;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
+import org.sat4j.core.VecInt;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.IVecInt;
@@ -40,6 +43,8 @@ final class SAT4J implements SATSolver {
     private final ReadOnlyIVecInt wrapper;
     private Boolean               sat;
     private int                   vars, clauses;
+    private int[]                 failed;
+    private volatile boolean      aborted;
 
     /**
      * Constructs a wrapper for the given instance of ISolver.
@@ -124,14 +129,140 @@ final class SAT4J implements SATSolver {
         try {
             if (solver == null)
                 return false;
+            aborted = false;
+            failed = null;
             if (!Boolean.FALSE.equals(sat))
                 sat = Boolean.valueOf(solver.isSatisfiable());
+            if (!sat)
+                failed = new int[0];
             return sat;
         } catch (org.sat4j.specs.TimeoutException e) {
-            throw new RuntimeException("timed out");
+            sat = null;
+            if (aborted)
+                throw new SATAbortedException("Aborted.", e);
+            throw new SATAbortedException("Timed out.", e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#solve(int[])
+     */
+    @Override
+    public boolean solve(int[] assumptions) {
+        try {
+            if (solver == null)
+                return false;
+            aborted = false;
+            failed = null;
+            if (Boolean.FALSE.equals(sat)) {
+                failed = new int[0];
+                return false;
+            }
+            final boolean outcome = solver.isSatisfiable(new VecInt(assumptions));
+            if (outcome) {
+                sat = Boolean.TRUE;
+            } else {
+                failed = failed(assumptions, explanation());
+                // an outcome of false may be due to the assumptions alone, so it
+                // makes this.clauses unsatisfiable only if none of them failed
+                sat = failed.length == 0 ? Boolean.FALSE : null;
+            }
+            return outcome;
+        } catch (org.sat4j.specs.TimeoutException e) {
+            sat = null;
+            if (aborted)
+                throw new SATAbortedException("Aborted.", e);
+            throw new SATAbortedException("Timed out.", e);
+        }
+    }
+
+    /**
+     * Returns the wrapped solver's explanation of the last unsatisfiable outcome
+     * in terms of its assumptions, or null if it has none.
+     */
+    private IVecInt explanation() {
+        try {
+            return solver.unsatExplanation();
+        } catch (NullPointerException e) { // sat4j keeps no explanation when the
+            return null;                   // clauses are unsatisfiable on their own
+        }
+    }
+
+    /**
+     * Returns the given assumptions whose variables occur in the given explanation
+     * of their inconsistency with the clauses of the wrapped solver. The wrapped
+     * solver explains a conflict that does not depend on any assumptions with an
+     * empty or missing explanation.
+     */
+    private static int[] failed(int[] assumptions, IVecInt explanation) {
+        if (explanation == null || explanation.isEmpty())
+            return new int[0];
+        final int[] ret = new int[assumptions.length];
+        int size = 0;
+        for (int lit : assumptions) {
+            if (explanation.contains(lit) || explanation.contains(-lit))
+                ret[size++] = lit;
+        }
+        return size == 0 ? assumptions.clone() : Arrays.copyOf(ret, size);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+     */
+    @Override
+    public int[] failedAssumptions() {
+        if (failed == null)
+            throw new IllegalStateException();
+        return failed.clone();
+    }
+
+    /**
+     * Asks the wrapped solver to stop the call to {@link #solve()} that is
+     * currently in progress, if any. The interrupted call throws a
+     * {@link SATAbortedException}, and the solver remains usable afterwards. A
+     * request that arrives before the wrapped solver starts its search may be
+     * lost, so callers waiting for termination should repeat it.
+     *
+     * @return true
+     */
+    @Override
+    public boolean abort() {
+        final ISolver s = solver;
+        if (s != null) {
+            aborted = true;
+            s.expireTimeout();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the search statistics of the wrapped solver, which reports them as
+     * a map from the names of its counters to their values.
+     *
+     * @see kodkod.engine.satlab.SATSolver#statistics()
+     */
+    @Override
+    public SearchStatistics statistics() {
+        final ISolver s = solver;
+        if (s == null)
+            return null;
+        final Map<String,Number> stats = s.getStat();
+        return new SearchStatistics(stat(stats, "conflicts"), stat(stats, "decisions"), stat(stats, "propagations"), stat(stats, "starts"));
+    }
+
+    /**
+     * Returns the value of the given counter in the given statistics, or -1 if
+     * there is no such counter.
+     */
+    private static long stat(Map<String,Number> stats, String name) {
+        final Number value = stats == null ? null : stats.get(name);
+        return value == null ? -1 : value.longValue();
+    }
+
     /**
      * {@inheritDoc}
      *
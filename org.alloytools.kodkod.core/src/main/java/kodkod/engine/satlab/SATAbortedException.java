@@ -39,7 +39,7 @@ public final class SATAbortedException extends RuntimeException {
     /**
      * Constructs an aborted exception with the given message.
      */
-    SATAbortedException(String message) {
+    public SATAbortedException(String message) {
         super(message);
     }
 
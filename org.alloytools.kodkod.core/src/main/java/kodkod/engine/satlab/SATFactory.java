@@ -63,7 +63,39 @@ public abstract class SATFactory {
             return solver.solve();
         } catch (RuntimeException e) {
             return false;
-        } catch (UnsatisfiedLinkError t) {
+        } catch (LinkageError t) {
+            return false;
+        } finally {
+            if (solver != null) {
+                solver.free();
+            }
+        }
+    }
+
+    /**
+     * Returns true iff the solvers generated by the given factory can solve their
+     * clauses under assumptions. Native solvers loaded from a library that
+     * predates solving under assumptions cannot.
+     *
+     * @return true iff the solvers generated by the given factory support
+     *         {@link SATSolver#solve(int[])} with a non-empty array of literals
+     */
+    static final boolean solvesUnderAssumptions(SATFactory factory) {
+        SATSolver solver = null;
+        try {
+            solver = factory.instance();
+            solver.addVariables(2);
+            solver.addClause(new int[] {
+                                        1, 2
+            });
+            return !solver.solve(new int[] {
+                                            -1, -2
+            }) && solver.solve(new int[] {
+                                          -1
+            }) && solver.valueOf(2);
+        } catch (RuntimeException e) {
+            return false;
+        } catch (LinkageError t) {
             return false;
         } finally {
             if (solver != null) {
@@ -84,6 +116,11 @@ public abstract class SATFactory {
                                                          return new SAT4J(SolverFactory.instance().defaultSolver());
                                                      }
 
+                                                     @Override
+                                                     public boolean assumptions() {
+                                                         return true;
+                                                     }
+
                                                      @Override
                                                      public String toString() {
                                                          return "DefaultSAT4J";
@@ -103,6 +140,11 @@ public abstract class SATFactory {
                                                          return new SAT4J(SolverFactory.instance().lightSolver());
                                                      }
 
+                                                     @Override
+                                                     public boolean assumptions() {
+                                                         return true;
+                                                     }
+
                                                      @Override
                                                      public String toString() {
                                                          return "LightSAT4J";
@@ -115,11 +157,20 @@ public abstract class SATFactory {
      */
     public static final SATFactory MiniSat       = new SATFactory() {
 
+                                                     private Boolean assumptions;
+
                                                      @Override
                                                      public SATSolver instance() {
                                                          return new MiniSat();
                                                      }
 
+                                                     @Override
+                                                     public synchronized boolean assumptions() {
+                                                         if (assumptions == null)
+                                                             assumptions = solvesUnderAssumptions(this);
+                                                         return assumptions;
+                                                     }
+
                                                      @Override
                                                      public String toString() {
                                                          return "MiniSat";
@@ -156,11 +207,20 @@ public abstract class SATFactory {
      */
     public static final SATFactory Glucose       = new SATFactory() {
 
+                                                     private Boolean assumptions;
+
                                                      @Override
                                                      public SATSolver instance() {
                                                          return new Glucose();
                                                      }
 
+                                                     @Override
+                                                     public synchronized boolean assumptions() {
+                                                         if (assumptions == null)
+                                                             assumptions = solvesUnderAssumptions(this);
+                                                         return assumptions;
+                                                     }
+
                                                      @Override
                                                      public String toString() {
                                                          return "Glucose";
@@ -204,6 +264,45 @@ public abstract class SATFactory {
                                                      }
                                                  };
 
+    /**
+     * The factory that produces portfolios of all available solvers among
+     * {@link #MiniSat}, {@link #Glucose}, {@link #Lingeling} and
+     * {@link #DefaultSAT4J}. Since SAT4J is always available, the produced
+     * portfolios are never empty. The availability of the native solvers is
+     * determined the first time that this factory is used.
+     *
+     * @see #portfolio(SATFactory...)
+     */
+    public static final SATFactory Portfolio     = new SATFactory() {
+
+                                                     private SATFactory[] members;
+
+                                                     private synchronized SATFactory[] members() {
+                                                         if (members == null) {
+                                                             final List<SATFactory> available = new ArrayList<SATFactory>(4);
+                                                             for (SATFactory f : new SATFactory[] {
+                                                                                                   MiniSat, Glucose, Lingeling
+                                                             }) {
+                                                                 if (available(f))
+                                                                     available.add(f);
+                                                             }
+                                                             available.add(DefaultSAT4J);
+                                                             members = available.toArray(new SATFactory[available.size()]);
+                                                         }
+                                                         return members;
+                                                     }
+
+                                                     @Override
+                                                     public SATSolver instance() {
+                                                         return new PortfolioSolver(members());
+                                                     }
+
+                                                     @Override
+                                                     public String toString() {
+                                                         return "Portfolio";
+                                                     }
+                                                 };
+
     /**
      * Returns a SATFactory that produces SATSolver wrappers for Armin Biere's
      * Plingeling solver. This is a parallel solver that is invoked as an external
@@ -275,6 +374,59 @@ public abstract class SATFactory {
         return null;
     }
 
+    /**
+     * Returns a SATFactory that produces portfolios of solvers generated by the
+     * given factories. A portfolio adds every clause to each of its members, runs
+     * all members in parallel on each call to {@link SATSolver#solve()}, and
+     * returns the answer of the first member to finish, aborting the others.
+     * Members that are not incremental take part only in the first call to
+     * {@link SATSolver#solve()}, so the returned factory is incremental iff at
+     * least one of the given factories is incremental. Proof-logging factories
+     * cannot be members of a portfolio.
+     *
+     * @requires factories.length > 0
+     * @return a SATFactory that produces portfolios of solvers generated by the
+     *         given factories
+     * @throws IllegalArgumentException factories.length = 0 || some f: factories |
+     *             f.prover()
+     * @throws NullPointerException some f: factories | f = null
+     */
+    public static final SATFactory portfolio(final SATFactory... factories) {
+        if (factories.length == 0)
+            throw new IllegalArgumentException("A portfolio needs at least one solver.");
+        boolean incremental = false;
+        for (SATFactory f : factories) {
+            if (f.prover())
+                throw new IllegalArgumentException("Proof-logging solvers cannot be used in a portfolio: " + f);
+            incremental |= f.incremental();
+        }
+        final SATFactory[] members = factories.clone();
+        final boolean anyIncremental = incremental;
+        return new SATFactory() {
+
+            @Override
+            public SATSolver instance() {
+                return new PortfolioSolver(members);
+            }
+
+            @Override
+            public boolean incremental() {
+                return anyIncremental;
+            }
+
+            @Override
+            public String toString() {
+                final StringBuilder b = new StringBuilder("Portfolio");
+                String sep = "[";
+                for (SATFactory f : members) {
+                    b.append(sep).append(f);
+                    sep = ", ";
+                }
+                return b.append("]").toString();
+            }
+        };
+    }
+
     /**
      * Returns a SATFactory that produces instances of the specified SAT4J solver.
      * For the list of available SAT4J solvers see
@@ -375,4 +527,15 @@ public abstract class SATFactory {
         return true;
     }
 
+    /**
+     * Returns true if the solvers returned by this.instance() can solve their
+     * clauses under a set of assumptions; i.e. if they support
+     * {@link SATSolver#solve(int[])} with a non-empty array of literals.
+     *
+     * @return true if the solvers returned by this.instance() support assumptions
+     */
+    public boolean assumptions() {
+        return false;
+    }
+
 }
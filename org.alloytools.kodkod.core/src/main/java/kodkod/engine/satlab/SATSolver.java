@@ -21,6 +21,9 @@
  */
 package kodkod.engine.satlab;
 
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
 /**
  * Provides an interface to a SAT solver.
  *
@@ -76,6 +79,55 @@ public interface SATSolver {
      */
     public abstract boolean addClause(int[] lits);
 
+    /**
+     * Adds the clauses stored in the remaining elements of the given buffer to
+     * this solver, and returns the number of clauses by which this.clauses grew as
+     * a result of the call. Each clause is stored as a sequence of its literals
+     * followed by 0, as in the DIMACS format. The buffer's position is advanced to
+     * its limit. The same requirements apply to each clause as to the argument of
+     * {@link #addClause(int[])}. The default implementation passes the clauses to
+     * {@link #addClause(int[])} one at a time; solvers that cross a language
+     * boundary can override it to transfer a whole batch at once, in which case a
+     * {@linkplain java.nio.ByteBuffer#allocateDirect(int) direct} buffer in
+     * {@linkplain java.nio.ByteOrder#nativeOrder() native byte order} is the
+     * fastest to pass.
+     *
+     * @requires clauses.get(clauses.limit()-1) = 0
+     * @ensures [[this.clauses']] = ([[this.clauses]] and [[clauses[position..limit)]])
+     * @ensures clauses.position' = clauses.limit
+     * @return #this.clauses' - #this.clauses
+     * @throws NullPointerException clauses = null
+     */
+    public default int addClauses(IntBuffer clauses) {
+        final int before = numberOfClauses();
+        // arrays are reused across clauses of the same length, since addClause
+        // keeps no references to them
+        final int[][] arrays = new int[16][];
+        int[] lits = new int[16];
+        int size = 0;
+        while (clauses.hasRemaining()) {
+            final int lit = clauses.get();
+            if (lit != 0) {
+                if (size == lits.length)
+                    lits = Arrays.copyOf(lits, size * 2);
+                lits[size++] = lit;
+            } else {
+                final int[] clause;
+                if (size < arrays.length) {
+                    if (arrays[size] == null)
+                        arrays[size] = new int[size];
+                    clause = arrays[size];
+                } else {
+                    clause = new int[size];
+                }
+                System.arraycopy(lits, 0, clause, 0, size);
+                addClause(clause);
+                size = 0;
+            }
+        }
+        return numberOfClauses() - before;
+    }
+
     /**
      * Returns true if there is a satisfying assignment for this.clauses. Otherwise
      * returns false. If this.clauses are satisfiable, the satisfying assignment for
@@ -89,9 +141,58 @@ public interface SATSolver {
      */
     public abstract boolean solve() throws SATAbortedException;
 
+    /**
+     * Returns true if there is a satisfying assignment for this.clauses that makes
+     * all of the given literals true. Otherwise returns false. Unlike a clause, an
+     * assumption holds only for the duration of this call: a subsequent call to
+     * {@link #solve()} or {@link #solve(int[])} does not see it, so this solver
+     * remains usable after this method returns false. If the outcome is true, the
+     * satisfying assignment can be obtained by calling {@link #valueOf(int)}. The
+     * default implementation supports only an empty array of assumptions; solvers
+     * produced by a factory whose {@link SATFactory#assumptions()} method returns
+     * true support arbitrary assumptions.
+     *
+     * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in
+     *           this.variables
+     * @return true if this.clauses and the given literals are satisfiable;
+     *         otherwise false.
+     * @throws SATAbortedException - the call to solve was cancelled or could not
+     *             terminate normally.
+     * @throws UnsupportedOperationException this solver does not support
+     *             assumptions and assumptions.length > 0
+     */
+    public default boolean solve(int[] assumptions) throws SATAbortedException {
+        if (assumptions.length > 0)
+            throw new UnsupportedOperationException("solving under assumptions is not supported by " + this);
+        return solve();
+    }
+
+    /**
+     * Returns a subset of the assumptions passed to the last call to
+     * {@link #solve(int[])} that is unsatisfiable together with this.clauses. The
+     * subset need not be minimal, and it is empty if this.clauses are
+     * unsatisfiable on their own. Clients that solve many queries against the
+     * same clauses can use it to tell which of their assumptions caused a query to
+     * fail. The default implementation returns an empty array, which is correct
+     * for the default implementation of {@link #solve(int[])}, since it accepts
+     * only empty arrays of assumptions.
+     *
+     * @requires the last call to {@link #solve()} or {@link #solve(int[])}
+     *           returned false
+     * @return some lits: set assumptions | UNSAT(this.clauses && lits), where
+     *         assumptions are the literals given to the last call to
+     *         {@link #solve(int[])}, or the empty set if the last call was to
+     *         {@link #solve()}
+     * @throws IllegalStateException the outcome of the last call to solve was not
+     *             <code>false</code>
+     */
+    public default int[] failedAssumptions() {
+        return new int[0];
+    }
+
     /**
      * Returns the boolean value assigned to the given variable by the last
-     * successful call to {@link #solve()}.
+     * successful call to {@link #solve()} or {@link #solve(int[])}.
      *
      * @requires {@link #solve() } has been called and the outcome of the last call
      *           was <code>true</code>.
@@ -103,6 +204,32 @@ public interface SATSolver {
      */
     public abstract boolean valueOf(int variable);
 
+    /**
+     * Asks this solver to stop the call to {@link #solve()} or
+     * {@link #solve(int[])} that another thread is currently performing, if any,
+     * and returns true if this solver supports such requests. The interrupted
+     * call throws a {@link SATAbortedException}. A request that arrives before
+     * the search starts may be lost, so callers waiting for termination should
+     * repeat it. The default implementation does nothing and returns false.
+     *
+     * @return true if this solver can be aborted
+     */
+    public default boolean abort() {
+        return false;
+    }
+
+    /**
+     * Returns the search statistics that this solver has gathered so far, or null
+     * if it keeps none. Unlike the other methods of a solver, this method may be
+     * called by a thread other than the one that is currently solving, in order to
+     * monitor the search. The default implementation returns null.
+     *
+     * @return the search statistics of this solver, or null if it keeps none
+     */
+    public default SearchStatistics statistics() {
+        return null;
+    }
+
     /**
      * Frees the memory used by this solver. Once free() is called, all subsequent
      * calls to methods other than free() may fail.
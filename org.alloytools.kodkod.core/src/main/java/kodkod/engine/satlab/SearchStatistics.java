@@ -0,0 +1,119 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+/**
+ * The search statistics of a sat solver: the number of conflicts, decisions,
+ * propagations and restarts performed by the solver since it was created. A
+ * statistic that the solver does not keep is -1.
+ *
+ * @specfield conflicts, decisions, propagations, restarts: long
+ */
+public final class SearchStatistics {
+
+    private final long conflicts, decisions, propagations, restarts;
+
+    /**
+     * Constructs search statistics with the given values, using -1 for those that
+     * are not known.
+     *
+     * @ensures this.conflicts' = conflicts && this.decisions' = decisions &&
+     *          this.propagations' = propagations && this.restarts' = restarts
+     */
+    public SearchStatistics(long conflicts, long decisions, long propagations, long restarts) {
+        this.conflicts = conflicts;
+        this.decisions = decisions;
+        this.propagations = propagations;
+        this.restarts = restarts;
+    }
+
+    /**
+     * Returns the statistics stored in the given array as {conflicts, decisions,
+     * propagations, restarts}, or null if the array is null.
+     *
+     * @requires stats = null || stats.length = 4
+     */
+    static SearchStatistics valueOf(long[] stats) {
+        return stats == null ? null : new SearchStatistics(stats[0], stats[1], stats[2], stats[3]);
+    }
+
+    /**
+     * Returns the number of conflicts, or -1 if unknown.
+     *
+     * @return this.conflicts
+     */
+    public long conflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Returns the number of decisions, or -1 if unknown.
+     *
+     * @return this.decisions
+     */
+    public long decisions() {
+        return decisions;
+    }
+
+    /**
+     * Returns the number of propagations, or -1 if unknown.
+     *
+     * @return this.propagations
+     */
+    public long propagations() {
+        return propagations;
+    }
+
+    /**
+     * Returns the number of restarts, or -1 if unknown.
+     *
+     * @return this.restarts
+     */
+    public long restarts() {
+        return restarts;
+    }
+
+    /**
+     * Returns the sum of the given statistics, which is unknown wherever either is
+     * unknown.
+     *
+     * @return some s: SearchStatistics | s.conflicts = this.conflicts +
+     *         other.conflicts && ... (or -1)
+     */
+    public SearchStatistics plus(SearchStatistics other) {
+        return new SearchStatistics(sum(conflicts, other.conflicts), sum(decisions, other.decisions), sum(propagations, other.propagations), sum(restarts, other.restarts));
+    }
+
+    private static long sum(long a, long b) {
+        return a < 0 || b < 0 ? -1 : a + b;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "conflicts: " + conflicts + ", decisions: " + decisions + ", propagations: " + propagations + ", restarts: " + restarts;
+    }
+}
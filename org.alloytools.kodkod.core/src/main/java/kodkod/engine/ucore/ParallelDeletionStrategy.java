@@ -0,0 +1,325 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.ucore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import kodkod.engine.fol2sat.TranslationLog;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.satlab.Clause;
+import kodkod.engine.satlab.ReductionStrategy;
+import kodkod.engine.satlab.ResolutionTrace;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IntBitSet;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+import kodkod.util.ints.IntVector;
+import kodkod.util.ints.Ints;
+
+/**
+ * A deletion-based strategy for generating unsat cores that are minimal at the
+ * logic level, which tests several candidate deletions in parallel.
+ * Specifically, let C be a core that is minimal according to this strategy, and
+ * let F(C) be the top-level logic constraints corresponding to C. Then, this
+ * strategy guarantees that for all f in F(C), F(C) - f is satisfiable, which is
+ * the same guarantee as that of {@linkplain RCEStrategy}.
+ * <p>
+ * Rather than re-solving a reduced resolution trace for each candidate, this
+ * strategy loads the axioms of the trace, without the unit clauses that assert
+ * the top-level formulas, into one solver per worker thread, and asserts the
+ * top-level formulas of the current core through assumptions instead. Each
+ * worker repeatedly takes a formula f from the current core and solves under the
+ * assumptions for the core without f. If that is satisfiable, f is necessary;
+ * otherwise the failed assumptions form a smaller core, which is shared with the
+ * other workers. Once every formula in the core is known to be necessary, the
+ * prover re-solves the axioms without the unit clauses of the discarded
+ * formulas, so that its trace reflects the minimal core.
+ * </p>
+ * <p>
+ * The solvers of the workers are produced by a factory that supports
+ * {@linkplain SATFactory#assumptions() assumptions}. This implementation will
+ * work properly only on CNFs generated by the kodkod {@linkplain Translator}.
+ * </p>
+ *
+ * @see RCEStrategy
+ */
+public final class ParallelDeletionStrategy implements ReductionStrategy {
+
+    private final IntSet     rootVars;
+    private final SATFactory factory;
+    private final int        threads;
+    private boolean          done;
+
+    /**
+     * Constructs a parallel deletion strategy that will use the given translation
+     * log to relate the cnf clauses back to the logic constraints from which they
+     * were generated, and the given number of worker threads, each with its own
+     * solver produced by the given factory.
+     *
+     * @requires threads > 0
+     * @requires factory.assumptions()
+     * @throws IllegalArgumentException threads < 1 || !factory.assumptions()
+     */
+    public ParallelDeletionStrategy(TranslationLog log, SATFactory factory, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        if (!factory.assumptions())
+            throw new IllegalArgumentException(factory + " does not support assumptions.");
+        this.rootVars = StrategyUtils.rootVars(log);
+        this.factory = factory;
+        this.threads = threads;
+        this.done = false;
+    }
+
+    /**
+     * Constructs a parallel deletion strategy that uses one worker thread per
+     * available processor.
+     *
+     * @requires factory.assumptions()
+     * @throws IllegalArgumentException !factory.assumptions()
+     */
+    public ParallelDeletionStrategy(TranslationLog log, SATFactory factory) {
+        this(log, factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see kodkod.engine.satlab.ReductionStrategy#next(kodkod.engine.satlab.ResolutionTrace)
+     */
+    @Override
+    public IntSet next(ResolutionTrace trace) {
+        if (done)
+            return Ints.EMPTY_SET; // the trace has been re-solved for the minimal core
+        done = true;
+
+        // split the axioms into the units for top-level formulas and the rest
+        final IntSet axioms = trace.axioms(), core = trace.core();
+        final List<int[]> clauses = new ArrayList<int[]>(axioms.size());
+        final IntVector units = new ArrayIntVector(), unitLits = new ArrayIntVector();
+        final IntSet candidates = new IntTreeSet();
+        int maxVar = 0;
+        final Iterator<Clause> itr = trace.iterator(axioms);
+        for (IntIterator indices = axioms.iterator(); itr.hasNext();) {
+            final Clause clause = itr.next();
+            final int index = indices.next();
+            maxVar = StrictMath.max(maxVar, clause.maxVariable());
+            if (clause.size() == 1 && rootVars.contains(clause.maxVariable())) {
+                final int lit = clause.literals().next();
+                units.add(index);
+                unitLits.add(lit);
+                if (core.contains(index))
+                    candidates.add(lit);
+            } else {
+                clauses.add(clause.toArray());
+            }
+        }
+        if (candidates.size() < 2)
+            return Ints.EMPTY_SET;
+
+        final SharedCore shared = new SharedCore(candidates);
+        minimize(shared, clauses, maxVar);
+        final IntSet minimal = shared.core;
+        if (minimal.size() == candidates.size())
+            return Ints.EMPTY_SET;
+
+        final IntSet next = new IntBitSet(trace.size());
+        next.addAll(axioms);
+        for (int i = 0; i < units.size(); i++) {
+            if (!minimal.contains(unitLits.get(i)))
+                next.remove(units.get(i));
+        }
+        return next;
+    }
+
+    /**
+     * Runs this.threads workers on the given shared core until every formula in it
+     * is known to be necessary.
+     *
+     * @ensures all lit: shared.core' | UNSAT(clauses && shared.core') and
+     *          SAT(clauses && shared.core' - lit)
+     * @throws SATAbortedException a worker failed or the calling thread was
+     *             interrupted
+     */
+    private void minimize(final SharedCore shared, final List<int[]> clauses, final int maxVar) {
+        final int workers = StrictMath.min(threads, shared.core.size());
+        final ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "kodkod-core-minimizer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() {
+                        work(shared, clauses, maxVar);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    shared.abort();
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new SATAbortedException(String.valueOf(cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            shared.abort();
+            Thread.currentThread().interrupt();
+            throw new SATAbortedException("Interrupted.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests candidate deletions from the given shared core with a fresh solver for
+     * the given clauses, until there are no candidates left.
+     */
+    private void work(SharedCore shared, List<int[]> clauses, int maxVar) {
+        final SATSolver solver = factory.instance();
+        try {
+            solver.addVariables(maxVar);
+            for (int[] clause : clauses) {
+                solver.addClause(clause.clone()); // the solver may modify its argument
+            }
+            for (int lit = shared.take(); lit != 0; lit = shared.take()) {
+                final int[] tried = shared.without(lit);
+                if (solver.solve(tried))
+                    shared.necessary(lit);
+                else
+                    shared.unnecessary(lit, tried, solver.failedAssumptions());
+            }
+        } finally {
+            solver.free();
+        }
+    }
+
+    /**
+     * The core shared by the workers: a set of literals for top-level formulas
+     * that is unsatisfiable together with the clauses of the workers, the literals
+     * in it that are known to be necessary, and the queue of literals to try.
+     *
+     * @specfield core: set int
+     * @specfield necessary: set core
+     * @invariant UNSAT(clauses && core)
+     * @invariant all lit: necessary | SAT(clauses && core - lit)
+     */
+    private static final class SharedCore {
+
+        final IntSet            core, necessary;
+        private final IntVector queue;
+        private int             head;
+        private boolean         aborted;
+
+        SharedCore(IntSet candidates) {
+            this.core = new IntTreeSet(candidates);
+            this.necessary = new IntTreeSet();
+            this.queue = new ArrayIntVector(candidates.toArray());
+            this.head = 0;
+            this.aborted = false;
+        }
+
+        /**
+         * Returns the next literal in the core whose necessity is unknown, or 0 if
+         * there are none left or the minimization was aborted.
+         */
+        synchronized int take() {
+            while (!aborted && head < queue.size()) {
+                final int lit = queue.get(head++);
+                if (core.contains(lit) && !necessary.contains(lit))
+                    return lit;
+            }
+            return 0;
+        }
+
+        /** Returns the core without the given literal. */
+        synchronized int[] without(int lit) {
+            final IntSet ans = new IntTreeSet(core);
+            ans.remove(lit);
+            return ans.toArray();
+        }
+
+        /**
+         * Records that the given literal is necessary. This holds for the current core
+         * too, since it is a subset of the core without which the literal was tried.
+         */
+        synchronized void necessary(int lit) {
+            if (core.contains(lit))
+                necessary.add(lit);
+        }
+
+        /**
+         * Records that the given literals, tried without the given literal, were
+         * unsatisfiable, with the given failed assumptions. The failed assumptions
+         * become the core if they are a subset of the current core, which another
+         * worker may have reduced in the meantime; otherwise the literal is tried
+         * again against the current core.
+         */
+        synchronized void unnecessary(int lit, int[] tried, int[] failed) {
+            final IntSet smaller = new IntTreeSet();
+            for (int i : tried)
+                smaller.add(i);
+            final IntSet reported = new IntTreeSet();
+            for (int i : failed)
+                reported.add(i);
+            if (smaller.containsAll(reported))
+                smaller.retainAll(reported);
+            if (core.containsAll(smaller)) {
+                core.retainAll(smaller);
+            } else if (core.contains(lit) && !necessary.contains(lit)) {
+                queue.add(lit);
+            }
+        }
+
+        /** Makes all subsequent calls to take() return 0. */
+        synchronized void abort() {
+            aborted = true;
+        }
+    }
+}
@@ -80,6 +80,11 @@ public final class StrategyUtils {
             public boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env) {
                 return roots.contains(translated) && env.isEmpty();
             }
+
+            @Override
+            public Set<Formula> formulas() {
+                return roots;
+            }
         };
         for (Iterator<TranslationRecord> itr = log.replay(filter); itr.hasNext();) {
             TranslationRecord record = itr.next();
@@ -133,6 +138,11 @@ public final class StrategyUtils {
             public boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env) {
                 return roots.contains(translated) && env.isEmpty();
             }
+
+            @Override
+            public Set<Formula> formulas() {
+                return roots;
+            }
         };
         for (Iterator<TranslationRecord> itr = log.replay(filter); itr.hasNext();) {
             TranslationRecord record = itr.next();
@@ -0,0 +1,462 @@
+/*
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.util.nodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.Comprehension;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.Expression;
+import kodkod.ast.FixFormula;
+import kodkod.ast.Formula;
+import kodkod.ast.IfExpression;
+import kodkod.ast.IfIntExpression;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntExpression;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.NotFormula;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.SumExpression;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.visitor.AbstractReplacer;
+
+/**
+ * Hash-conses formulas and expressions: structurally identical nodes interned
+ * by the same interner are replaced with one canonical node. Since the
+ * translator caches the translations of shared nodes, interning lets it
+ * translate structurally identical subformulas and subexpressions once, even
+ * if they were constructed separately, e.g. by expanding the same macro at
+ * different call sites.
+ * <p>
+ * Bound variables are renamed by their nesting depth, so that two quantified
+ * formulas, comprehensions or sums that differ only in the names of their
+ * variables are also interned as one node. Free variables, relations and
+ * constants are kept as they are. Relation predicates are not interned, but
+ * their children are.
+ * </p>
+ *
+ * @specfield table: set Node // the canonical nodes
+ */
+public final class NodeInterner {
+
+    /** The canonical nodes, keyed by their structure. */
+    private final Map<Key,Node>      table     = new HashMap<Key,Node>();
+    /** The canonical variables for each depth and arity. */
+    private final Map<Long,Variable> variables = new HashMap<Long,Variable>();
+
+    /**
+     * Constructs a new interner with an empty table.
+     *
+     * @ensures no this.table'
+     */
+    public NodeInterner() {}
+
+    /**
+     * Returns the interned version of the given formula.
+     *
+     * @return a formula that is structurally identical to the given one, up to the
+     *         names of its bound variables, and whose descendants are in
+     *         this.table
+     * @ensures this.table' = this.table + the canonical descendants of the result
+     */
+    public Formula intern(Formula formula) {
+        return formula.accept(new Interner());
+    }
+
+    /**
+     * Returns the interned version of the given expression.
+     *
+     * @return an expression that is structurally identical to the given one, up to
+     *         the names of its bound variables, and whose descendants are in
+     *         this.table
+     * @ensures this.table' = this.table + the canonical descendants of the result
+     */
+    public Expression intern(Expression expression) {
+        return expression.accept(new Interner());
+    }
+
+    /**
+     * Returns the interned version of the given int expression.
+     *
+     * @return an int expression that is structurally identical to the given one,
+     *         up to the names of its bound variables, and whose descendants are in
+     *         this.table
+     * @ensures this.table' = this.table + the canonical descendants of the result
+     */
+    public IntExpression intern(IntExpression intExpr) {
+        return intExpr.accept(new Interner());
+    }
+
+    /**
+     * Returns the number of canonical nodes in this interner.
+     *
+     * @return #this.table
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns the canonical node that is structurally identical to the given node,
+     * whose children are canonical, adding the node to this.table if there is no
+     * such node.
+     */
+    @SuppressWarnings("unchecked" )
+    private <N extends Node> N canonical(N node) {
+        final Object[] parts = parts(node);
+        if (parts == null)
+            return node;
+        final Key key = new Key(parts);
+        final Node ret = table.get(key);
+        if (ret != null)
+            return (N) ret;
+        table.put(key, node);
+        return node;
+    }
+
+    /**
+     * Returns the canonical variable of the given arity that is bound at the given
+     * depth.
+     */
+    private Variable variable(int depth, int arity) {
+        final Long key = ((long) depth << 32) | arity;
+        Variable ret = variables.get(key);
+        if (ret == null) {
+            ret = Variable.nary("v" + depth, arity);
+            variables.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the class of the given node followed by its operator, constants and
+     * children, or null if the node is a leaf or is not interned.
+     */
+    private static Object[] parts(Node node) {
+        if (node instanceof Decl) {
+            final Decl d = (Decl) node;
+            return new Object[] {
+                                 Decl.class, d.variable(), d.multiplicity(), d.expression()
+            };
+        } else if (node instanceof Decls) {
+            final Decls d = (Decls) node;
+            final Object[] ret = new Object[d.size() + 1];
+            ret[0] = Decls.class;
+            for (int i = 0; i < d.size(); i++)
+                ret[i + 1] = d.get(i);
+            return ret;
+        } else if (node instanceof UnaryExpression) {
+            final UnaryExpression e = (UnaryExpression) node;
+            return new Object[] {
+                                 UnaryExpression.class, e.op(), e.expression()
+            };
+        } else if (node instanceof BinaryExpression) {
+            final BinaryExpression e = (BinaryExpression) node;
+            return new Object[] {
+                                 BinaryExpression.class, e.op(), e.left(), e.right()
+            };
+        } else if (node instanceof NaryExpression) {
+            final NaryExpression e = (NaryExpression) node;
+            final Object[] ret = new Object[e.size() + 2];
+            ret[0] = NaryExpression.class;
+            ret[1] = e.op();
+            for (int i = 0; i < e.size(); i++)
+                ret[i + 2] = e.child(i);
+            return ret;
+        } else if (node instanceof Comprehension) {
+            final Comprehension e = (Comprehension) node;
+            return new Object[] {
+                                 Comprehension.class, e.decls(), e.formula()
+            };
+        } else if (node instanceof IfExpression) {
+            final IfExpression e = (IfExpression) node;
+            return new Object[] {
+                                 IfExpression.class, e.condition(), e.thenExpr(), e.elseExpr()
+            };
+        } else if (node instanceof ProjectExpression) {
+            final ProjectExpression e = (ProjectExpression) node;
+            final Object[] ret = new Object[e.arity() + 2];
+            ret[0] = ProjectExpression.class;
+            ret[1] = e.expression();
+            for (int i = 0; i < e.arity(); i++)
+                ret[i + 2] = e.column(i);
+            return ret;
+        } else if (node instanceof IntToExprCast) {
+            final IntToExprCast e = (IntToExprCast) node;
+            return new Object[] {
+                                 IntToExprCast.class, e.op(), e.intExpr()
+            };
+        } else if (node instanceof IntConstant) {
+            return new Object[] {
+                                 IntConstant.class, ((IntConstant) node).value()
+            };
+        } else if (node instanceof IfIntExpression) {
+            final IfIntExpression e = (IfIntExpression) node;
+            return new Object[] {
+                                 IfIntExpression.class, e.condition(), e.thenExpr(), e.elseExpr()
+            };
+        } else if (node instanceof ExprToIntCast) {
+            final ExprToIntCast e = (ExprToIntCast) node;
+            return new Object[] {
+                                 ExprToIntCast.class, e.op(), e.expression()
+            };
+        } else if (node instanceof NaryIntExpression) {
+            final NaryIntExpression e = (NaryIntExpression) node;
+            final Object[] ret = new Object[e.size() + 2];
+            ret[0] = NaryIntExpression.class;
+            ret[1] = e.op();
+            for (int i = 0; i < e.size(); i++)
+                ret[i + 2] = e.child(i);
+            return ret;
+        } else if (node instanceof BinaryIntExpression) {
+            final BinaryIntExpression e = (BinaryIntExpression) node;
+            return new Object[] {
+                                 BinaryIntExpression.class, e.op(), e.left(), e.right()
+            };
+        } else if (node instanceof UnaryIntExpression) {
+            final UnaryIntExpression e = (UnaryIntExpression) node;
+            return new Object[] {
+                                 UnaryIntExpression.class, e.op(), e.intExpr()
+            };
+        } else if (node instanceof SumExpression) {
+            final SumExpression e = (SumExpression) node;
+            return new Object[] {
+                                 SumExpression.class, e.decls(), e.intExpr()
+            };
+        } else if (node instanceof IntComparisonFormula) {
+            final IntComparisonFormula f = (IntComparisonFormula) node;
+            return new Object[] {
+                                 IntComparisonFormula.class, f.op(), f.left(), f.right()
+            };
+        } else if (node instanceof QuantifiedFormula) {
+            final QuantifiedFormula f = (QuantifiedFormula) node;
+            return new Object[] {
+                                 QuantifiedFormula.class, f.quantifier(), f.decls(), f.domain(), f.body()
+            };
+        } else if (node instanceof NaryFormula) {
+            final NaryFormula f = (NaryFormula) node;
+            final Object[] ret = new Object[f.size() + 2];
+            ret[0] = NaryFormula.class;
+            ret[1] = f.op();
+            for (int i = 0; i < f.size(); i++)
+                ret[i + 2] = f.child(i);
+            return ret;
+        } else if (node instanceof BinaryFormula) {
+            final BinaryFormula f = (BinaryFormula) node;
+            return new Object[] {
+                                 BinaryFormula.class, f.op(), f.left(), f.right()
+            };
+        } else if (node instanceof NotFormula) {
+            return new Object[] {
+                                 NotFormula.class, ((NotFormula) node).formula()
+            };
+        } else if (node instanceof ComparisonFormula) {
+            final ComparisonFormula f = (ComparisonFormula) node;
+            return new Object[] {
+                                 ComparisonFormula.class, f.op(), f.left(), f.right()
+            };
+        } else if (node instanceof MultiplicityFormula) {
+            final MultiplicityFormula f = (MultiplicityFormula) node;
+            return new Object[] {
+                                 MultiplicityFormula.class, f.multiplicity(), f.expression()
+            };
+        } else if (node instanceof FixFormula) {
+            final FixFormula f = (FixFormula) node;
+            return new Object[] {
+                                 FixFormula.class, f.formula(), f.condition()
+            };
+        }
+        return null; // leaves and relation predicates
+    }
+
+    /**
+     * The structure of a node whose children are canonical: nodes among its parts
+     * are compared by identity, and other parts by equality.
+     */
+    private static final class Key {
+
+        private final Object[] parts;
+        private final int      hash;
+
+        Key(Object[] parts) {
+            this.parts = parts;
+            int h = 0;
+            for (Object part : parts)
+                h = 31 * h + (part instanceof Node ? System.identityHashCode(part) : part.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Object[] other = ((Key) o).parts;
+            if (other.length != parts.length)
+                return false;
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] instanceof Node ? parts[i] != other[i] : !parts[i].equals(other[i]))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Replaces each node with its canonical version. A node that is visited more
+     * than once within the scope of the same bound variables is replaced once.
+     */
+    private final class Interner extends AbstractReplacer {
+
+        /**
+         * The replaced nodes within each scope; a scope is opened by each bound
+         * variable.
+         */
+        private final List<Map<Node,Node>> scopes = new ArrayList<Map<Node,Node>>();
+        /** The bound variables, innermost last, and their canonical versions. */
+        private final List<Variable>       bound  = new ArrayList<Variable>();
+        private final List<Variable>       renamed = new ArrayList<Variable>();
+
+        Interner() {
+            super(Collections.<Node> emptySet());
+            scopes.add(new IdentityHashMap<Node,Node>());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked" )
+        protected <N extends Node> N lookup(N node) {
+            return (N) scopes.get(scopes.size() - 1).get(node);
+        }
+
+        @Override
+        protected <N extends Node> N cache(N node, N replacement) {
+            final N ret = canonical(replacement);
+            scopes.get(scopes.size() - 1).put(node, ret);
+            return ret;
+        }
+
+        /**
+         * Replaces the given declarations, binding their variables to canonical
+         * ones, and returns the canonical replacement.
+         *
+         * @ensures the variables of decls are bound in opened scopes
+         */
+        private Decls bind(Decls decls) {
+            Decls ret = null;
+            for (Decl decl : decls) {
+                final Expression expr = decl.expression().accept(this);
+                final Variable var = variable(bound.size(), decl.variable().arity());
+                bound.add(decl.variable());
+                renamed.add(var);
+                scopes.add(new IdentityHashMap<Node,Node>());
+                final Decl d = canonical(var.declare(decl.multiplicity(), expr));
+                ret = ret == null ? d : canonical(ret.and(d));
+            }
+            return ret;
+        }
+
+        /**
+         * Closes the scopes of the innermost bound variables, up to the given
+         * number of variables.
+         */
+        private void unbind(int depth) {
+            while (bound.size() > depth) {
+                bound.remove(bound.size() - 1);
+                renamed.remove(renamed.size() - 1);
+                scopes.remove(scopes.size() - 1);
+            }
+        }
+
+        @Override
+        public Expression visit(Variable variable) {
+            for (int i = bound.size() - 1; i >= 0; i--) {
+                if (bound.get(i) == variable)
+                    return renamed.get(i);
+            }
+            return variable;
+        }
+
+        @Override
+        public Formula visit(QuantifiedFormula quantFormula) {
+            Formula ret = lookup(quantFormula);
+            if (ret != null)
+                return ret;
+            final int depth = bound.size();
+            final Decls decls = bind(quantFormula.decls());
+            final Formula domain = quantFormula.domain().accept(this);
+            final Formula body = quantFormula.body().accept(this);
+            unbind(depth);
+            ret = (decls == quantFormula.decls() && domain == quantFormula.domain() && body == quantFormula.body()) ? quantFormula : body.quantify(quantFormula.quantifier(), decls, domain);
+            return cache(quantFormula, ret);
+        }
+
+        @Override
+        public Expression visit(Comprehension comprehension) {
+            Expression ret = lookup(comprehension);
+            if (ret != null)
+                return ret;
+            final int depth = bound.size();
+            final Decls decls = bind(comprehension.decls());
+            final Formula formula = comprehension.formula().accept(this);
+            unbind(depth);
+            ret = (decls == comprehension.decls() && formula == comprehension.formula()) ? comprehension : formula.comprehension(decls);
+            return cache(comprehension, ret);
+        }
+
+        @Override
+        public IntExpression visit(SumExpression intExpr) {
+            IntExpression ret = lookup(intExpr);
+            if (ret != null)
+                return ret;
+            final int depth = bound.size();
+            final Decls decls = bind(intExpr.decls());
+            final IntExpression expr = intExpr.intExpr().accept(this);
+            unbind(depth);
+            ret = (decls == intExpr.decls() && expr == intExpr.intExpr()) ? intExpr : expr.sum(decls);
+            return cache(intExpr, ret);
+        }
+    }
+}
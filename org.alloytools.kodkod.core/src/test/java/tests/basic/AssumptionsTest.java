@@ -0,0 +1,123 @@
+package tests.basic;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+
+/**
+ * Tests solving under assumptions and the retrieval of failed assumptions with
+ * all available solvers that {@linkplain SATFactory#assumptions() support}
+ * them.
+ */
+public class AssumptionsTest extends TestCase {
+
+    private static final SATFactory[] FACTORIES = {
+                                                   SATFactory.DefaultSAT4J, SATFactory.LightSAT4J, SATFactory.MiniSat, SATFactory.Glucose
+    };
+
+    public AssumptionsTest(String arg0) {
+        super(arg0);
+    }
+
+    /**
+     * Returns a solver with the clauses (1 | 2), (-1 | 3), (-2 | 3), (-4 | 5) and
+     * variables [1..6].
+     */
+    private static SATSolver solver(SATFactory factory) {
+        final SATSolver solver = factory.instance();
+        solver.addVariables(6);
+        solver.addClause(new int[] {
+                                    1, 2
+        });
+        solver.addClause(new int[] {
+                                    -1, 3
+        });
+        solver.addClause(new int[] {
+                                    -2, 3
+        });
+        solver.addClause(new int[] {
+                                    -4, 5
+        });
+        return solver;
+    }
+
+    private static boolean contains(int[] lits, int lit) {
+        for (int l : lits) {
+            if (l == lit)
+                return true;
+        }
+        return false;
+    }
+
+    public final void testAssumptions() {
+        for (SATFactory factory : FACTORIES) {
+            if (!factory.assumptions())
+                continue;
+            final SATSolver solver = solver(factory);
+            try {
+                assertTrue(factory.toString(), solver.solve(new int[] {
+                                                                       -1, 6
+                }));
+                assertTrue(solver.valueOf(2));
+                assertTrue(solver.valueOf(6));
+
+                // 4, -5 fail; 6 is irrelevant
+                final int[] assumed = {
+                                       6, 4, -5
+                };
+                assertFalse(factory.toString(), solver.solve(assumed));
+                final int[] failed = solver.failedAssumptions();
+                assertTrue(Arrays.toString(failed), contains(failed, 4) && contains(failed, -5));
+                for (int lit : failed)
+                    assertTrue(contains(assumed, lit));
+
+                // -3 fails with the clauses alone
+                assertFalse(solver.solve(new int[] {
+                                                    -3
+                }));
+                assertTrue(Arrays.equals(new int[] {
+                                                    -3
+                }, solver.failedAssumptions()));
+
+                // the assumptions do not persist
+                assertTrue(solver.solve());
+                assertTrue(solver.valueOf(3));
+                solver.addClause(new int[] {
+                                            -3
+                });
+                assertFalse(solver.solve(new int[] {
+                                                    6
+                }));
+                assertEquals(0, solver.failedAssumptions().length);
+                assertFalse(solver.solve());
+            } finally {
+                solver.free();
+            }
+        }
+    }
+
+    public final void testFailedAssumptionsState() {
+        for (SATFactory factory : FACTORIES) {
+            if (!factory.assumptions())
+                continue;
+            final SATSolver solver = solver(factory);
+            try {
+                assertTrue(solver.solve(new int[] {
+                                                   1
+                }));
+                solver.failedAssumptions();
+                fail("Expected IllegalStateException from " + factory);
+            } catch (IllegalStateException e) {} finally {
+                solver.free();
+            }
+        }
+    }
+
+    public final void testLightSAT4J() {
+        assertTrue(SATFactory.DefaultSAT4J.assumptions());
+        assertTrue(SATFactory.LightSAT4J.assumptions());
+        assertFalse(SATFactory.MiniSatProver.assumptions());
+    }
+}
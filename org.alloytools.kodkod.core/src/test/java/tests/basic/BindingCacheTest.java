@@ -0,0 +1,86 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Evaluator;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.Statistics;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * Tests the bounded cache of translations for the bindings of free variables.
+ *
+ * @see kodkod.engine.config.Options#bindingCacheCapacity()
+ */
+public class BindingCacheTest extends TestCase {
+
+    private final Relation a, r;
+    private final Bounds   bounds;
+
+    public BindingCacheTest(String arg0) {
+        super(arg0);
+        a = Relation.unary("a");
+        r = Relation.binary("r");
+        final List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 6; i++)
+            atoms.add("A" + i);
+        final Universe u = new Universe(atoms);
+        final TupleFactory f = u.factory();
+        bounds = new Bounds(u);
+        bounds.bound(a, f.allOf(1));
+        bounds.bound(r, f.allOf(2));
+    }
+
+    /**
+     * Returns all x: a | all y: a | x.r in y.r or no y.r, in which y.r is shared,
+     * so its translation is looked up once per binding of x and y.
+     */
+    private Formula formula() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        final Expression yr = y.join(r);
+        return x.join(r).in(yr).or(yr.no()).forAll(y.oneOf(a)).forAll(x.oneOf(a)).and(r.some());
+    }
+
+    private Solution solve(int capacity) {
+        final Solver solver = new Solver();
+        solver.options().setSymmetryBreaking(0);
+        solver.options().setBindingCacheCapacity(capacity);
+        final Solution sol = solver.solve(formula(), bounds);
+        assertTrue(sol.sat());
+        assertTrue(new Evaluator(sol.instance(), solver.options()).evaluate(formula()));
+        return sol;
+    }
+
+    public final void testMostRecentBinding() {
+        final Statistics stats = solve(0).stats();
+        assertTrue(stats.cacheMisses() > 0);
+        assertTrue(stats.cacheEvictions() > 0);
+    }
+
+    public final void testUnbounded() {
+        final Statistics recent = solve(0).stats();
+        final Statistics stats = solve(Integer.MAX_VALUE).stats();
+        assertEquals(0, stats.cacheEvictions());
+        assertTrue(stats.cacheHits() > recent.cacheHits());
+        assertEquals(recent.variables(), stats.variables());
+        assertEquals(recent.clauses(), stats.clauses());
+    }
+
+    public final void testBounded() {
+        final Statistics unbounded = solve(Integer.MAX_VALUE).stats();
+        final Statistics stats = solve(8).stats();
+        assertTrue(stats.cacheEvictions() > 0);
+        assertTrue(stats.cacheHits() < unbounded.cacheHits());
+        assertEquals(unbounded.variables(), stats.variables());
+        assertEquals(unbounded.clauses(), stats.clauses());
+    }
+}
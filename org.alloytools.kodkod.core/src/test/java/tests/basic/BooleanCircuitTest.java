@@ -5,6 +5,7 @@ import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -331,6 +332,34 @@ public class BooleanCircuitTest extends TestCase {
 
     }
 
+    public final void testHashConsing() {
+        final int n = 100;
+        final BooleanFactory g = BooleanFactory.factory(n, new Options()), h = BooleanFactory.factory(n, new Options());
+        final List<BooleanValue> gates = new ArrayList<BooleanValue>();
+        for (int i = 1; i <= n; i++) {
+            for (int j = i + 1; j <= n; j++) {
+                gates.add(g.and(g.variable(i), g.variable(j)));
+                gates.add(g.or(g.variable(i), g.not(g.variable(j))));
+                gates.add(g.ite(g.variable(i), g.variable(j), g.variable(1 + (i + j) % n)));
+            }
+        }
+        final int max = g.maxFormula();
+        assertTrue(max > 10000);
+        int k = 0;
+        for (int i = 1; i <= n; i++) {
+            for (int j = i + 1; j <= n; j++) {
+                assertSame(gates.get(k++), g.and(g.variable(i), g.variable(j)));
+                assertSame(gates.get(k++), g.or(g.not(g.variable(j)), g.variable(i)));
+                assertSame(gates.get(k++), g.ite(g.variable(i), g.variable(j), g.variable(1 + (i + j) % n)));
+            }
+        }
+        assertEquals(max, g.maxFormula());
+        for (BooleanValue gate : gates) {
+            assertTrue(g.contains(gate));
+            assertFalse(h.contains(gate));
+        }
+    }
+
     // public final void testReductions() {
     // final BooleanValue val1 = f.or(v[10], v[6]);
     // final BooleanValue val2 = f.or(v[8], val1);
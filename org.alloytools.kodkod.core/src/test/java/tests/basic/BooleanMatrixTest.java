@@ -507,4 +507,53 @@ public class BooleanMatrixTest extends TestCase {
         assertTrue(equivalent(mT324c.override(mT324), mToT));
 
     }
+
+    /**
+     * @return a 6 x 6 matrix in the given factory whose cells at indices that are
+     *         not divisible by the given stride hold variables, some of them
+     *         negated, and some TRUE.
+     */
+    private static final BooleanMatrix sample(BooleanFactory factory, int stride) {
+        final BooleanMatrix m = factory.matrix(Dimensions.square(6, 2));
+        for (int i = 0; i < 36; i++) {
+            if (i % stride != 0)
+                m.set(i, i % 7 == 0 ? TRUE : i % 3 == 0 ? factory.not(factory.variable(i % NUM_VARS + 1)) : factory.variable(i % NUM_VARS + 1));
+        }
+        return m;
+    }
+
+    /**
+     * @return true if m and b have the same entries, comparing values by labels
+     */
+    private static final boolean sameLabels(BooleanMatrix m, BooleanMatrix b) {
+        if (!(equivalent(m.dimensions(), b.dimensions()) && m.density() == b.density()))
+            return false;
+        final Iterator<IndexedEntry<BooleanValue>> bIter = b.iterator();
+        for (IndexedEntry<BooleanValue> e : m) {
+            final IndexedEntry<BooleanValue> be = bIter.next();
+            if (e.index() != be.index() || e.value().label() != be.value().label())
+                return false;
+        }
+        return true;
+    }
+
+    public final void testPrimitiveMatrices() {
+        final Options options = new Options();
+        options.setPrimitiveMatrices(true);
+        final BooleanFactory s = BooleanFactory.factory(NUM_VARS, new Options()), p = BooleanFactory.factory(NUM_VARS, options);
+        assertFalse(s.primitiveMatrices());
+        assertTrue(p.primitiveMatrices());
+
+        // the primitive algorithms must create the same gates in the same order
+        for (int stride = 2; stride < 6; stride++) {
+            final BooleanMatrix s0 = sample(s, stride), s1 = sample(s, stride + 1);
+            final BooleanMatrix p0 = sample(p, stride), p1 = sample(p, stride + 1);
+            assertTrue(sameLabels(s0.dot(s1), p0.dot(p1)));
+            assertTrue(sameLabels(s0.or(s1), p0.or(p1)));
+            assertTrue(sameLabels(s0.cross(s1), p0.cross(p1)));
+            assertTrue(sameLabels(s0.closure(), p0.closure()));
+            assertTrue(sameLabels(s1.transpose().dot(s0), p1.transpose().dot(p0)));
+        }
+        assertEquals(s.maxFormula(), p.maxFormula());
+    }
 }
@@ -0,0 +1,243 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.AbortedException;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.config.Budget;
+import kodkod.engine.config.Metrics;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * Tests the cancellation and resource limits of a budget at each stage of an
+ * analysis.
+ */
+public class BudgetTest extends TestCase {
+
+    private final Relation a, b, a2b;
+
+    public BudgetTest(String arg0) {
+        super(arg0);
+        this.a = Relation.unary("a");
+        this.b = Relation.unary("b");
+        this.a2b = Relation.binary("a2b");
+    }
+
+    /** Returns the bounds for placing n pigeons into n-1 holes. */
+    private Bounds bounds(int n) {
+        final List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 2 * n - 1; i++) {
+            atoms.add("" + i);
+        }
+        final Universe universe = new Universe(atoms);
+        final TupleFactory factory = universe.factory();
+        final Bounds bounds = new Bounds(universe);
+        bounds.boundExactly(a, factory.range(factory.tuple("0"), factory.tuple("" + (n - 1))));
+        bounds.boundExactly(b, factory.range(factory.tuple("" + n), factory.tuple("" + (2 * n - 2))));
+        bounds.bound(a2b, bounds.upperBound(a).product(bounds.upperBound(b)));
+        return bounds;
+    }
+
+    /** Returns an unsatisfiable pigeonhole formula. */
+    private Formula pigeons() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        return Formula.and(a2b.function(a, b), x.join(a2b).eq(y.join(a2b)).implies(x.eq(y)).forAll(x.oneOf(a).and(y.oneOf(a))));
+    }
+
+    /**
+     * Returns a solver that uses SAT4J without symmetry breaking, so that the
+     * pigeonhole problem is hard, and the given budget.
+     */
+    private static Solver solver(Budget budget) {
+        final Solver solver = new Solver();
+        solver.options().setSolver(SATFactory.DefaultSAT4J);
+        solver.options().setSymmetryBreaking(0);
+        solver.options().setBudget(budget);
+        return solver;
+    }
+
+    /** Solves the given number of pigeons with the given budget, expecting an abort. */
+    private Budget.Usage abort(int n, Budget budget) {
+        try {
+            solver(budget).solve(pigeons(), bounds(n));
+            fail("expected the analysis to be aborted");
+            return null;
+        } catch (AbortedException e) {
+            assertNotNull(e.usage());
+            return e.usage();
+        }
+    }
+
+    public final void testUnlimited() {
+        final Budget budget = new Budget();
+        final Solver solver = solver(budget);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Solution.Outcome.UNSATISFIABLE, solver.solve(pigeons(), bounds(5)).outcome());
+        }
+        final Iterator<Solution> sols = solver.solveAll(a2b.some(), bounds(3));
+        while (sols.hasNext())
+            sols.next();
+    }
+
+    public final void testCancelled() {
+        final Budget budget = new Budget();
+        budget.cancel();
+        final Budget.Usage usage = abort(5, budget);
+        assertEquals(Budget.Limit.CANCELLED, usage.limit());
+        assertEquals(Metrics.Stage.SYMMETRY_DETECTION, usage.stage());
+        assertEquals(0, usage.gates());
+    }
+
+    public final void testGates() {
+        final Budget.Usage usage = abort(8, new Budget(0, 100, 0));
+        assertEquals(Budget.Limit.GATES, usage.limit());
+        assertEquals(Metrics.Stage.TRANSLATION_TO_BOOLEAN, usage.stage());
+        assertEquals(101, usage.gates());
+        assertEquals(0, usage.clauses());
+    }
+
+    public final void testClauses() {
+        final Budget.Usage usage = abort(8, new Budget(0, 0, 100));
+        assertEquals(Budget.Limit.CLAUSES, usage.limit());
+        assertEquals(Metrics.Stage.TRANSLATION_TO_CNF, usage.stage());
+        assertTrue(usage.gates() > 0);
+        assertTrue(usage.clauses() > 100);
+        assertNull(usage.search());
+    }
+
+    public final void testTime() {
+        final long start = System.currentTimeMillis();
+        final Budget.Usage usage = abort(13, new Budget(200, 0, 0));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(Budget.Limit.TIME, usage.limit());
+        assertTrue(usage.millis() >= 200);
+    }
+
+    /**
+     * Solves the given number of pigeons with the given budget on each of the
+     * given number of threads at once, and returns the usages of the aborted
+     * analyses, or null for those that were not aborted.
+     */
+    private Budget.Usage[] abortConcurrently(final int n, final Budget budget, int threads) throws InterruptedException {
+        final Budget.Usage[] usages = new Budget.Usage[threads];
+        final Thread[] solvers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            solvers[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        solver(budget).solve(pigeons(), bounds(n));
+                    } catch (AbortedException e) {
+                        usages[index] = e.usage();
+                    }
+                }
+            };
+            solvers[i].start();
+        }
+        for (Thread t : solvers)
+            t.join();
+        return usages;
+    }
+
+    public final void testConcurrentTime() throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        final Budget budget = new Budget(300, 0, 0);
+        for (Budget.Usage usage : abortConcurrently(13, budget, 3)) {
+            assertNotNull(usage);
+            assertEquals(Budget.Limit.TIME, usage.limit());
+            assertTrue(usage.millis() >= 300);
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        // each analysis runs under its own fork, so the budget is not used up
+        assertEquals(Solution.Outcome.UNSATISFIABLE, solver(budget).solve(pigeons(), bounds(5)).outcome());
+    }
+
+    public final void testConcurrentCancel() throws InterruptedException {
+        final Budget budget = new Budget();
+        final Thread canceller = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                budget.cancel();
+            }
+        };
+        canceller.start();
+        for (Budget.Usage usage : abortConcurrently(13, budget, 3)) {
+            assertNotNull(usage);
+            assertEquals(Budget.Limit.CANCELLED, usage.limit());
+        }
+        canceller.join();
+    }
+
+    public final void testCancelWhileSolving() throws InterruptedException {
+        final Budget budget = new Budget();
+        final Thread canceller = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                budget.cancel();
+            }
+        };
+        canceller.start();
+        final Budget.Usage usage = abort(13, budget);
+        canceller.join();
+        assertEquals(Budget.Limit.CANCELLED, usage.limit());
+        assertTrue(budget.cancelled());
+        if (usage.stage() == Metrics.Stage.SOLVING) {
+            assertNotNull(usage.search());
+            assertTrue(usage.search().conflicts() > 0);
+        }
+    }
+
+    public final void testCancelWhileCounting() throws InterruptedException {
+        final Budget budget = new Budget();
+        final Thread canceller = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                budget.cancel();
+            }
+        };
+        canceller.start();
+        try {
+            solver(budget).count(pigeons(), bounds(13), null);
+            fail("expected the count to be aborted");
+        } catch (AbortedException e) {
+            assertNotNull(e.usage());
+            assertEquals(Budget.Limit.CANCELLED, e.usage().limit());
+            if (e.usage().stage() == Metrics.Stage.SOLVING) {
+                assertNotNull(e.usage().search());
+                assertTrue(e.usage().search().conflicts() > 0);
+            }
+        }
+        canceller.join();
+        assertTrue(budget.cancelled());
+    }
+}
@@ -0,0 +1,206 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntExpression;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Evaluator;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.UnboundLeafException;
+import kodkod.instance.Instance;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+
+/**
+ * Tests that a cached {@link Evaluator} agrees with a plain one.
+ */
+public class CachedEvaluatorTest extends TestCase {
+
+    private final Relation a, b, r, t, ord, first, last;
+    private final Variable x, y;
+    private final Universe universe;
+
+    public CachedEvaluatorTest(String arg0) {
+        super(arg0);
+        a = Relation.unary("a");
+        b = Relation.unary("b");
+        r = Relation.binary("r");
+        t = Relation.ternary("t");
+        ord = Relation.binary("ord");
+        first = Relation.unary("first");
+        last = Relation.unary("last");
+        x = Variable.unary("x");
+        y = Variable.unary("y");
+        final List<Object> atoms = new ArrayList<Object>();
+        for (int i = 0; i < 5; i++)
+            atoms.add("A" + i);
+        for (int i = -8; i < 8; i++)
+            atoms.add(i);
+        universe = new Universe(atoms);
+    }
+
+    private TupleSet random(Random random, int arity, int max) {
+        final TupleFactory f = universe.factory();
+        final TupleSet ret = f.noneOf(arity);
+        final int capacity = (int) Math.pow(max, arity);
+        for (int i = 0; i < capacity; i++) {
+            if (random.nextInt(3) == 0) {
+                int index = 0;
+                for (int j = 0, k = i; j < arity; j++, k /= max)
+                    index = index * universe.size() + k % max;
+                ret.add(f.tuple(arity, index));
+            }
+        }
+        return ret;
+    }
+
+    private Instance instance(Random random) {
+        final TupleFactory f = universe.factory();
+        final Instance inst = new Instance(universe);
+        for (int i = -8; i < 8; i++)
+            inst.add(i, f.setOf(i));
+        inst.add(a, random(random, 1, 5));
+        inst.add(b, random(random, 1, universe.size()));
+        inst.add(r, random(random, 2, 5));
+        inst.add(t, random(random, 3, 5));
+        inst.add(ord, f.setOf(f.tuple("A0", "A1"), f.tuple("A1", "A2"), f.tuple("A2", "A3"), f.tuple("A3", "A4")));
+        inst.add(first, f.setOf("A0"));
+        inst.add(last, f.setOf("A4"));
+        return inst;
+    }
+
+    private List<Expression> expressions() {
+        final List<Expression> ret = new ArrayList<Expression>();
+        ret.add(Expression.UNIV);
+        ret.add(Expression.IDEN);
+        ret.add(Expression.NONE);
+        ret.add(Expression.INTS);
+        ret.add(a.union(b));
+        ret.add(a.intersection(b));
+        ret.add(b.difference(a));
+        ret.add(r.override(a.product(a)));
+        ret.add(t.override(r.product(b)));
+        ret.add(a.join(r));
+        ret.add(r.join(a));
+        ret.add(r.join(t));
+        ret.add(t.join(r).join(a));
+        ret.add(r.transpose());
+        ret.add(r.closure());
+        ret.add(r.reflexiveClosure());
+        ret.add(Expression.union(a, b, r.join(a)));
+        ret.add(Expression.product(a, r, a));
+        ret.add(x.join(r).some().and(x.in(y.join(r.closure()))).comprehension(x.oneOf(a).and(y.oneOf(b))));
+        ret.add(a.some().thenElse(r, r.transpose()));
+        ret.add(a.count().toExpression());
+        ret.add(r.count().minus(IntConstant.constant(3)).toBitset());
+        ret.add(b.sum().toExpression());
+        return ret;
+    }
+
+    private List<IntExpression> intExpressions() {
+        final List<IntExpression> ret = new ArrayList<IntExpression>();
+        ret.add(IntConstant.constant(9));
+        ret.add(r.count());
+        ret.add(b.sum());
+        ret.add(b.sum().plus(r.count()).multiply(IntConstant.constant(3)));
+        ret.add(b.sum().minus(IntConstant.constant(7)).negate());
+        ret.add(b.sum().abs().xor(a.count()).not().signum());
+        ret.add(IntExpression.plus(a.count(), b.count(), r.count(), t.count()));
+        ret.add(x.join(r).count().sum(x.oneOf(a)));
+        ret.add(x.sum().sum(x.oneOf(b)));
+        ret.add(a.some().thenElse(a.count(), b.count()));
+        ret.add(b.sum().divide(a.count()));
+        ret.add(b.sum().modulo(IntConstant.constant(3)));
+        ret.add(r.count().shl(IntConstant.constant(1)));
+        return ret;
+    }
+
+    private List<Formula> formulas() {
+        final List<Formula> ret = new ArrayList<Formula>();
+        ret.add(a.in(b));
+        ret.add(a.eq(b.intersection(a)));
+        ret.add(r.some().and(t.no()).or(a.one()).iff(b.lone()));
+        ret.add(a.some().implies(r.join(a).in(a)));
+        ret.add(x.join(r).some().forAll(x.oneOf(a)));
+        ret.add(x.join(y.join(t)).in(b).forSome(x.oneOf(a).and(y.oneOf(a))));
+        ret.add(x.in(y.join(r)).forSome(y.oneOf(a)).forAll(x.oneOf(b)));
+        ret.add(r.acyclic());
+        ret.add(r.function(a, a));
+        ret.add(r.partialFunction(a, b));
+        ret.add(ord.totalOrder(a, first, last));
+        ret.add(Formula.and(a.some(), b.some(), r.some()));
+        ret.add(Formula.or(a.no(), b.no(), r.no()));
+        ret.add(a.count().lt(b.count()).and(r.count().gte(IntConstant.constant(3))));
+        ret.add(b.sum().plus(IntConstant.constant(7)).gt(IntConstant.constant(0)));
+        ret.add(x.sum().gt(IntConstant.constant(2)).forSome(x.oneOf(Expression.INTS)));
+        ret.add(b.sum().toExpression().in(Expression.INTS));
+        return ret;
+    }
+
+    private void check(Evaluator plain, Evaluator cached) {
+        for (Expression e : expressions())
+            assertEquals(e.toString(), plain.evaluate(e), cached.evaluate(e));
+        for (IntExpression e : intExpressions())
+            assertEquals(e.toString(), plain.evaluate(e), cached.evaluate(e));
+        for (Formula f : formulas())
+            assertEquals(f.toString(), plain.evaluate(f), cached.evaluate(f));
+    }
+
+    private void check(Options options) {
+        final Random random = new Random(2005);
+        for (int i = 0; i < 20; i++) {
+            final Instance inst = instance(random);
+            final Evaluator plain = new Evaluator(inst, options), cached = new Evaluator(inst, options, true);
+            assertTrue(cached.cached());
+            check(plain, cached);
+            check(plain, cached);
+        }
+    }
+
+    public void testAgreement() {
+        final Options options = new Options();
+        options.setBitwidth(4);
+        check(options);
+    }
+
+    public void testAgreementNoOverflow() {
+        final Options options = new Options();
+        options.setBitwidth(4);
+        options.setNoOverflow(true);
+        check(options);
+    }
+
+    public void testInstanceChange() {
+        final Random random = new Random(2009);
+        final Instance inst = instance(random);
+        final Options options = new Options();
+        options.setBitwidth(4);
+        final Evaluator cached = new Evaluator(inst, options, true);
+        final Expression e = r.closure().join(a);
+        assertEquals(new Evaluator(inst, options).evaluate(e), cached.evaluate(e));
+        cached.instance().add(r, random(random, 2, 5));
+        cached.instance().add(a, random(random, 1, 5));
+        assertEquals(new Evaluator(inst, options).evaluate(e), cached.evaluate(e));
+        check(new Evaluator(inst, options), cached);
+    }
+
+    public void testUnbound() {
+        final Evaluator cached = new Evaluator(new Instance(universe), new Options(), true);
+        try {
+            cached.evaluate(a.join(r));
+            fail("Expected UnboundLeafException");
+        } catch (UnboundLeafException e) {}
+        try {
+            cached.evaluate(x.some());
+            fail("Expected UnboundLeafException");
+        } catch (UnboundLeafException e) {}
+    }
+}
@@ -4,18 +4,25 @@
 package tests.basic;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import examples.alloy.CeilingsAndFloors;
 import examples.alloy.Dijkstra;
 import junit.framework.TestCase;
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
+import kodkod.ast.Variable;
 import kodkod.engine.Solution;
 import kodkod.engine.Solver;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.instance.Bounds;
 import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
 import kodkod.instance.Universe;
 
 /**
@@ -87,4 +94,81 @@ public class EnumerationTest extends TestCase {
 
     }
 
+    public final void testProjection() {
+        final Relation a = Relation.unary("A"), r = Relation.binary("r");
+        final Variable x = Variable.unary("x");
+        final Formula f = x.join(r).some().forSome(x.oneOf(a));
+        final Universe u = new Universe(Arrays.asList("a", "b"));
+        final TupleFactory t = u.factory();
+        final Bounds b = new Bounds(u);
+        b.bound(a, t.allOf(1));
+        b.bound(r, t.allOf(2));
+        solver.options().setSymmetryBreaking(0);
+
+        // the skolem constant for x makes the full enumeration return some
+        // values of A and r more than once
+        final Set<Relation> projection = new LinkedHashSet<Relation>(Arrays.asList(a, r));
+        final Set<List<TupleSet>> all = new HashSet<List<TupleSet>>(), projected = new HashSet<List<TupleSet>>();
+        int full = 0;
+        for (Iterator<Solution> sols = solver.solveAll(f, b); sols.hasNext();) {
+            final Solution sol = sols.next();
+            if (sol.sat()) {
+                full++;
+                all.add(Arrays.asList(sol.instance().tuples(a), sol.instance().tuples(r)));
+            }
+        }
+        for (Iterator<Solution> sols = solver.solveAll(f, b, projection); sols.hasNext();) {
+            final Solution sol = sols.next();
+            if (sol.sat())
+                assertTrue(projected.add(Arrays.asList(sol.instance().tuples(a), sol.instance().tuples(r))));
+        }
+        assertTrue(full > all.size());
+        assertEquals(all, projected);
+
+        // A and r satisfy f iff some atom is in A and has an r successor
+        int models = 0;
+        for (int as = 0; as < 4; as++) {
+            for (int rs = 0; rs < 16; rs++) {
+                if (((as & 1) != 0 && (rs & 3) != 0) || ((as & 2) != 0 && (rs & 12) != 0))
+                    models++;
+            }
+        }
+        assertEquals(models, projected.size());
+        assertEquals(models, solver.count(f, b, projection));
+        assertEquals(models, solver.count(f, b, null));
+        assertEquals(3, solver.count(f, b, Collections.singleton(a)));
+    }
+
+    public final void testCountUnconstrained() {
+        final Relation r = Relation.binary("r");
+        final Universe u = new Universe(Arrays.asList("a", "b", "c"));
+        final TupleFactory t = u.factory();
+        final Bounds b = new Bounds(u);
+        final Relation a = Relation.unary("a");
+        b.boundExactly(a, t.setOf("a"));
+        b.bound(r, t.allOf(2));
+        solver.options().setSymmetryBreaking(0);
+
+        // only the tuples of r that start with a are constrained
+        final Formula f = a.join(r).some();
+        assertEquals(7 * 64, solver.count(f, b, null));
+        int sols = 0;
+        for (Iterator<Solution> iter = solver.solveAll(f, b, null); iter.hasNext();) {
+            if (iter.next().sat())
+                sols++;
+        }
+        assertEquals(7 * 64, sols);
+        assertEquals(0, solver.count(f.and(r.no()), b, null));
+    }
+
+    public final void testCountTrivial() {
+        final Relation r = Relation.unary("r");
+        final Universe u = new Universe(Arrays.asList("a", "b", "c"));
+        final TupleFactory f = u.factory();
+        final Bounds b = new Bounds(u);
+        b.bound(r, f.setOf("a"), f.allOf(1));
+        assertEquals(3, solver.count(r.some(), b, null));
+        assertEquals(1, solver.count(r.some(), b, Collections.<Relation> emptySet()));
+    }
+
 }
@@ -0,0 +1,72 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.IntConstant;
+import kodkod.engine.HOLSolver;
+import kodkod.engine.Solution;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.instance.TupleSet;
+
+/**
+ * Runs the {@link HOLSome4AllTest higher-order tests} with the disjuncts of
+ * higher-order disjunctions solved in parallel.
+ */
+public class HOLOrParallelTest extends HOLSome4AllTest {
+
+    @Override
+    protected void setupOptions() {
+        super.setupOptions();
+        options.setSolver(SATFactory.DefaultSAT4J);
+        options.setHolOrThreads(4);
+    }
+
+    /**
+     * Returns a disjunction of a first-order and two higher-order formulas, each
+     * of which is satisfiable.
+     */
+    private Formula disjunction() {
+        // some s: ints | s > 1 && (all ns: set Node | some ns => #ns > s)
+        Formula h1 = si.gt(IntConstant.constant(1)).and(ns.some().implies(ns.count().gt(si)).forAll(ns.setOf(Node))).forSome(s.oneOf(Expression.INTS));
+        // some s: ints | s < 0 && (all ns: set Node | #ns > s)
+        Formula h2 = si.lt(IntConstant.constant(0)).and(ns.count().gt(si).forAll(ns.setOf(Node))).forSome(s.oneOf(Expression.INTS));
+        return Formula.or(h1, Node.some(), h2);
+    }
+
+    private List<TupleSet> enumerate(Options opt, int max) {
+        final List<TupleSet> ans = new ArrayList<TupleSet>();
+        final Iterator<Solution> sols = HOLSolver.solver(opt).solveAll(disjunction(), bounds);
+        while (ans.size() < max && sols.hasNext()) {
+            final Solution sol = sols.next();
+            if (!sol.sat())
+                break;
+            ans.add(eval(sol, Node));
+        }
+        return ans;
+    }
+
+    public void testFirstSATWins() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(solve(disjunction()).sat());
+        }
+        assertFalse(solve(Formula.or(Node.some().and(Node.no()), disjunction().not())).sat());
+    }
+
+    public void testDeterministicEnumeration() {
+        final Options sequential = options.clone();
+        sequential.setHolOrThreads(1);
+        final List<TupleSet> expected = enumerate(sequential, 10);
+        assertFalse(expected.isEmpty());
+        final Options deterministic = options.clone();
+        deterministic.setDeterministic(true);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, enumerate(deterministic, 10));
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.IntConstant;
+import kodkod.engine.Solution;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.hol.HOLTranslation;
+import kodkod.engine.satlab.SATFactory;
+
+/**
+ * Runs the {@link HOLSome4AllTest higher-order tests} with a SAT solver that
+ * solves under assumptions, so that the candidates are verified by a single
+ * incremental translation.
+ */
+public class HOLSome4AllIncrementalTest extends HOLSome4AllTest {
+
+    private final List<Integer> iterations = new ArrayList<Integer>();
+
+    @Override
+    protected void setupOptions() {
+        super.setupOptions();
+        options.setSolver(SATFactory.DefaultSAT4J);
+        options.setReporter(new AbstractReporter() {
+
+            @Override
+            public void holIterationTime(HOLTranslation tr, int iteration, long candidateTime, long verificationTime, long refinementTime) {
+                assertTrue(candidateTime >= 0 && verificationTime >= 0 && refinementTime >= 0);
+                iterations.add(iteration);
+            }
+        });
+    }
+
+    public void testIterationTime() {
+        // SAT: some s: ints | s >= 2 && (all ns: set Node | some ns => #ns > s)
+        // forces Node to be empty after some counterexamples
+        Formula cnd = si.gte(IntConstant.constant(2));
+        Formula f = cnd.and(ns.some().implies(ns.count().gt(si)).forAll(ns.setOf(Node))).forSome(s.oneOf(Expression.INTS));
+        Solution sol = solve(f);
+        assertTrue(sol.sat());
+        assertEquals(0, eval(sol, Node).size());
+        assertFalse(iterations.isEmpty());
+        for (int i = 0; i < iterations.size(); i++) {
+            assertEquals(i + 1, (int) iterations.get(i));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.IncrementalSolver;
+import kodkod.engine.Solution;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+
+/**
+ * Tests solving with {@link IncrementalSolver} under assumptions.
+ */
+public class IncrementalAssumptionTest extends TestCase {
+
+    private static final int   USIZE = 6;
+    private final TupleFactory factory;
+    private final Relation[]   atoms;
+    private final Relation     s, r;
+    private final Options      options;
+
+    public IncrementalAssumptionTest(String arg0) {
+        super(arg0);
+        final List<String> names = new ArrayList<String>(USIZE);
+        for (int i = 0; i < USIZE; i++) {
+            names.add("A" + i);
+        }
+        this.factory = new Universe(names).factory();
+        this.atoms = new Relation[USIZE];
+        for (int i = 0; i < USIZE; i++) {
+            atoms[i] = Relation.unary("a" + i);
+        }
+        this.s = Relation.unary("s");
+        this.r = Relation.binary("r");
+        this.options = new Options();
+        options.setSolver(SATFactory.DefaultSAT4J);
+    }
+
+    /**
+     * Returns bounds that bind each atom exactly to a singleton relation, so that
+     * they induce no symmetries, and s and r to the whole universe.
+     */
+    private Bounds bounds() {
+        final Bounds b = new Bounds(factory.universe());
+        for (int i = 0; i < USIZE; i++) {
+            b.boundExactly(atoms[i], factory.setOf("A" + i));
+        }
+        b.bound(s, factory.allOf(1));
+        b.bound(r, factory.allOf(2));
+        return b;
+    }
+
+    /**
+     * Returns bounds that narrow the upper bound of s to the first k atoms.
+     */
+    private Bounds scope(int k) {
+        final Bounds b = new Bounds(factory.universe());
+        final TupleSet upper = factory.noneOf(1);
+        for (int i = 0; i < k; i++) {
+            upper.add(factory.tuple("A" + i));
+        }
+        b.bound(s, upper);
+        return b;
+    }
+
+    public final void testScopeGrowth() {
+        // r is an irreflexive function from s to s, so s needs at least two atoms
+        final Formula f = Formula.and(s.some(), r.function(s, s), r.intersection(Expression.IDEN).no());
+        final IncrementalSolver solver = IncrementalSolver.solver(options);
+        Solution sol = solver.solve(f, bounds(), atoms[0].in(s), scope(1));
+        assertFalse(sol.sat());
+        assertTrue(solver.usable());
+        for (int k = 2; k <= USIZE; k++) {
+            sol = solver.solve(Formula.TRUE, new Bounds(factory.universe()), atoms[k - 1].in(s), scope(k));
+            assertTrue(sol.sat());
+            final TupleSet sval = sol.instance().tuples(s);
+            assertTrue(scope(k).upperBound(s).containsAll(sval));
+            assertTrue(sval.contains(factory.tuple("A" + (k - 1))));
+        }
+        sol = solver.solve(Formula.TRUE, new Bounds(factory.universe()), atoms[0].in(s).not(), scope(1));
+        assertFalse(sol.sat());
+        assertTrue(solver.usable());
+        solver.free();
+    }
+
+    public final void testTrivialTranslation() {
+        final IncrementalSolver solver = IncrementalSolver.solver(options);
+        Solution sol = solver.solve(r.in(Expression.UNIV.product(Expression.UNIV)), bounds(), s.some(), scope(0));
+        assertFalse(sol.sat());
+        assertTrue(solver.usable());
+        sol = solver.solve(Formula.TRUE, new Bounds(factory.universe()), s.one(), scope(1));
+        assertTrue(sol.sat());
+        assertEquals(factory.setOf("A0"), sol.instance().tuples(s));
+        solver.free();
+    }
+
+    public final void testPushPop() {
+        // r is an irreflexive function from s to s
+        final Formula facts = Formula.and(r.function(s, s), r.intersection(Expression.IDEN).no());
+        final IncrementalSolver solver = IncrementalSolver.solver(options);
+        assertTrue(solver.solve(facts, bounds()).sat());
+
+        final Formula one = s.one(), some = s.some();
+        solver.push(some);
+        Solution sol = solver.check();
+        assertTrue(sol.sat());
+        assertTrue(sol.instance().tuples(s).size() > 1);
+        assertTrue(solver.failed().isEmpty());
+
+        solver.push(atoms[0].in(s));
+        solver.push(one);
+        sol = solver.check();
+        assertFalse(sol.sat());
+        assertTrue(solver.usable());
+        assertTrue(solver.failed().contains(one));
+        assertFalse(solver.failed().contains(atoms[0].in(s)));
+
+        assertSame(one, solver.pop());
+        sol = solver.check();
+        assertTrue(sol.sat());
+        assertTrue(sol.instance().tuples(s).contains(factory.tuple("A0")));
+
+        // a formula that is false with respect to the bounds
+        final Formula none = atoms[0].in(Expression.NONE);
+        solver.push(none);
+        assertFalse(solver.check().sat());
+        assertEquals(1, solver.failed().size());
+        assertSame(none, solver.failed().get(0));
+        solver.pop();
+        solver.pop();
+        solver.pop();
+        try {
+            solver.pop();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {}
+
+        // the facts alone
+        assertTrue(solver.check().sat());
+        assertTrue(solver.solve(s.no(), new Bounds(factory.universe())).sat());
+        solver.push(some);
+        assertFalse(solver.check().sat());
+        assertEquals(1, solver.failed().size());
+        solver.pop();
+        assertTrue(solver.check().sat());
+        solver.free();
+    }
+
+    public final void testPushPopTrivial() {
+        final IncrementalSolver solver = IncrementalSolver.solver(options);
+        assertTrue(solver.solve(r.in(Expression.UNIV.product(Expression.UNIV)), bounds()).sat());
+        solver.push(s.one());
+        solver.push(s.no());
+        assertFalse(solver.check().sat());
+        assertEquals(2, solver.failed().size());
+        solver.pop();
+        final Solution sol = solver.check();
+        assertTrue(sol.sat());
+        assertEquals(1, sol.instance().tuples(s).size());
+        solver.free();
+    }
+
+    public final void testAssumptionsRequired() {
+        final Options noAssumptions = options.clone();
+        noAssumptions.setSolver(new SATFactory() {
+
+            @Override
+            public SATSolver instance() {
+                return SATFactory.DefaultSAT4J.instance();
+            }
+        });
+        try {
+            IncrementalSolver.solver(noAssumptions).solve(s.some(), bounds(), Formula.TRUE, scope(1));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+        try {
+            IncrementalSolver.solver(noAssumptions).push(s.some());
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+    }
+
+}
@@ -0,0 +1,169 @@
+package tests.basic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.management.MBeanServer;
+
+import junit.framework.TestCase;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.config.Metrics;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.engine.satlab.SearchStatistics;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * Tests the live metrics of an analysis, as seen through the reporter and JMX.
+ */
+public class MetricsTest extends TestCase {
+
+    private final Solver   solver;
+    private final Relation a, b, a2b;
+    private final Bounds   bounds;
+
+    public MetricsTest(String arg0) {
+        super(arg0);
+        this.solver = new Solver();
+        List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 15; i++) {
+            atoms.add("" + i);
+        }
+        final Universe universe = new Universe(atoms);
+        final TupleFactory factory = universe.factory();
+        this.a = Relation.unary("a");
+        this.b = Relation.unary("b");
+        this.a2b = Relation.binary("a2b");
+        this.bounds = new Bounds(universe);
+        bounds.boundExactly(a, factory.range(factory.tuple("0"), factory.tuple("7")));
+        bounds.boundExactly(b, factory.range(factory.tuple("8"), factory.tuple("14")));
+        bounds.bound(a2b, bounds.upperBound(a).product(bounds.upperBound(b)));
+    }
+
+    /** Returns an unsatisfiable pigeonhole formula: 8 pigeons in 7 holes. */
+    private Formula pigeons() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        return Formula.and(a2b.function(a, b), x.join(a2b).eq(y.join(a2b)).implies(x.eq(y)).forAll(x.oneOf(a).and(y.oneOf(a))));
+    }
+
+    /**
+     * A reporter that records the stages of the metrics it is given, and whether
+     * the metrics were registered with the platform MBean server at the time.
+     */
+    private static final class Recorder extends AbstractReporter {
+
+        final List<String> stages     = new ArrayList<String>();
+        boolean            registered = true;
+
+        @Override
+        public synchronized void progress(Metrics metrics) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (metrics.running())
+                    registered &= metrics.getStage().equals(server.getAttribute(metrics.name(), "Stage")) || metrics.stage() == Metrics.Stage.DONE;
+            } catch (Exception e) {
+                registered = metrics.stage() == Metrics.Stage.DONE; // stopped in the meantime
+            }
+            stages.add(metrics.getStage());
+        }
+    }
+
+    public final void testSampling() {
+        final Recorder recorder = new Recorder();
+        final Metrics metrics = new Metrics(1);
+        solver.options().setReporter(recorder);
+        solver.options().setMetrics(metrics);
+        assertEquals(Metrics.Stage.IDLE, metrics.stage());
+
+        final Solution sol = solver.solve(pigeons(), bounds);
+        assertEquals(Solution.Outcome.UNSATISFIABLE, sol.outcome());
+        assertFalse(metrics.running());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(metrics.name()));
+
+        // which stages are sampled depends on timing; the final report from
+        // stop() is always the last one
+        synchronized (recorder) {
+            assertFalse(recorder.stages.isEmpty());
+            assertEquals("DONE", recorder.stages.get(recorder.stages.size() - 1));
+            for (String stage : recorder.stages)
+                assertNotNull(Metrics.Stage.valueOf(stage));
+            assertTrue(recorder.registered);
+        }
+        assertEquals(Metrics.Stage.DONE, metrics.stage());
+        assertEquals(sol.stats().clauses(), metrics.getClauses());
+        assertEquals(sol.stats().variables(), metrics.getVariables());
+        assertTrue(metrics.getGates() > 0);
+        assertTrue(metrics.getClausesPerSecond() > 0);
+        assertTrue(metrics.getConflicts() > 0);
+        assertTrue(metrics.getDecisions() > 0);
+        assertTrue(metrics.millis(Metrics.Stage.SOLVING) <= metrics.getElapsedMillis());
+        assertEquals(0, metrics.getStageMillis());
+    }
+
+    public final void testUnsampled() {
+        final Recorder recorder = new Recorder();
+        final Metrics metrics = new Metrics();
+        solver.options().setReporter(recorder);
+        solver.options().setMetrics(metrics);
+        solver.options().setBindingCacheCapacity(1000);
+        final Solution sol = solver.solve(a2b.function(a, b), bounds);
+        assertTrue(sol.sat());
+        assertTrue(recorder.stages.isEmpty());
+        assertEquals(Metrics.Stage.DONE, metrics.stage());
+        assertEquals(sol.stats().clauses(), metrics.getClauses());
+        final long lookups = sol.stats().cacheHits() + sol.stats().cacheMisses();
+        assertEquals(lookups == 0 ? 0 : (double) sol.stats().cacheHits() / lookups, metrics.getCacheHitRate(), 1e-9);
+    }
+
+    public final void testSolveAll() {
+        final Metrics metrics = new Metrics();
+        solver.options().setMetrics(metrics);
+        int solutions = 0;
+        for (Iterator<Solution> itr = solver.solveAll(a2b.function(a, b).and(a2b.join(b).eq(a)), bounds); itr.hasNext() && solutions < 3; solutions++) {
+            itr.next();
+            assertFalse(metrics.running());
+            assertEquals(Metrics.Stage.DONE, metrics.stage());
+            assertTrue(metrics.getClauses() > 0);
+        }
+        assertEquals(3, solutions);
+    }
+
+    public final void testSolverStatistics() {
+        for (SATFactory factory : new SATFactory[] {
+                                                    SATFactory.DefaultSAT4J, SATFactory.MiniSat, SATFactory.Glucose, SATFactory.Lingeling
+        }) {
+            if (!SATFactory.available(factory))
+                continue;
+            final SATSolver sat = factory.instance();
+            try {
+                sat.addVariables(2);
+                sat.addClause(new int[] {
+                                         1, 2
+                });
+                sat.addClause(new int[] {
+                                         -1, 2
+                });
+                sat.addClause(new int[] {
+                                         1, -2
+                });
+                assertTrue(sat.solve());
+                final SearchStatistics stats = sat.statistics();
+                if (stats != null) { // prebuilt native libraries may predate statistics
+                    assertTrue(stats.decisions() >= 0 && stats.conflicts() >= 0 && stats.propagations() > 0);
+                }
+            } finally {
+                sat.free();
+            }
+            assertNull(sat.statistics());
+        }
+    }
+}
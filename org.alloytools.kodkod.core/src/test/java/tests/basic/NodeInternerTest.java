@@ -0,0 +1,118 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntExpression;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Evaluator;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.Statistics;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+import kodkod.util.nodes.NodeInterner;
+
+/**
+ * Tests the hash-consing of formulas and expressions.
+ *
+ * @see kodkod.engine.config.Options#internNodes()
+ */
+public class NodeInternerTest extends TestCase {
+
+    private final Relation a, b, r;
+    private final Bounds   bounds;
+
+    public NodeInternerTest(String arg0) {
+        super(arg0);
+        a = Relation.unary("a");
+        b = Relation.unary("b");
+        r = Relation.binary("r");
+        final List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 5; i++)
+            atoms.add("A" + i);
+        final Universe u = new Universe(atoms);
+        final TupleFactory f = u.factory();
+        bounds = new Bounds(u);
+        bounds.bound(a, f.allOf(1));
+        bounds.bound(b, f.allOf(1));
+        bounds.bound(r, f.allOf(2));
+    }
+
+    /**
+     * Returns all x: a | some y: b | x->y in r, constructed with fresh variables.
+     */
+    private Formula total() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        return x.product(y).in(r).forSome(y.oneOf(b)).forAll(x.oneOf(a));
+    }
+
+    public final void testStructuralSharing() {
+        final NodeInterner interner = new NodeInterner();
+        final Formula f0 = total(), f1 = total();
+        assertNotSame(f0, f1);
+        assertSame(interner.intern(f0), interner.intern(f1));
+
+        final Expression e0 = a.join(r).union(b), e1 = a.join(r).union(b);
+        assertSame(interner.intern(e0), interner.intern(e1));
+        assertNotSame(interner.intern(e0), interner.intern(b.union(a.join(r))));
+
+        final IntExpression i0 = a.count().plus(IntConstant.constant(2));
+        final IntExpression i1 = a.count().plus(IntConstant.constant(2));
+        assertSame(interner.intern(i0), interner.intern(i1));
+        assertNotSame(interner.intern(i0), interner.intern(a.count().plus(IntConstant.constant(3))));
+    }
+
+    public final void testBoundVariables() {
+        final NodeInterner interner = new NodeInterner();
+        final Variable x = Variable.unary("x");
+        final Formula some = x.some();
+        final QuantifiedFormula f0 = (QuantifiedFormula) interner.intern(some.forAll(x.oneOf(a)));
+        final QuantifiedFormula f1 = (QuantifiedFormula) interner.intern(some.forAll(x.oneOf(b)));
+        // the body is shared, and its variable is bound by the declarations of both
+        assertSame(f0.body(), f1.body());
+        assertSame(f0.decls().get(0).variable(), f1.decls().get(0).variable());
+        // free variables are kept
+        assertSame(x, ((MultiplicityFormula) interner.intern(some)).expression());
+        // nested quantifiers bind distinct variables
+        final Variable y = Variable.unary("y");
+        final QuantifiedFormula f2 = (QuantifiedFormula) interner.intern(x.in(y).forAll(y.oneOf(a)).forAll(x.oneOf(a)));
+        final QuantifiedFormula inner = (QuantifiedFormula) f2.body();
+        assertNotSame(f2.decls().get(0).variable(), inner.decls().get(0).variable());
+    }
+
+    private Solution solve(Formula formula, boolean intern) {
+        final Solver solver = new Solver();
+        solver.options().setSymmetryBreaking(0);
+        solver.options().setInternNodes(intern);
+        final Solution sol = solver.solve(formula, bounds);
+        if (sol.sat())
+            assertTrue(new Evaluator(sol.instance(), solver.options()).evaluate(formula));
+        return sol;
+    }
+
+    public final void testTranslation() {
+        final Formula sat = Formula.and(total(), total().not().not(), r.some(), a.some());
+        final Solution s0 = solve(sat, false), s1 = solve(sat, true);
+        assertTrue(s0.sat());
+        assertTrue(s1.sat());
+        final Statistics plain = s0.stats(), interned = s1.stats();
+        // the duplicate conjunct is translated once, to the same circuit
+        assertTrue(interned.cacheHits() + interned.cacheMisses() < plain.cacheHits() + plain.cacheMisses());
+        assertEquals(plain.primaryVariables(), interned.primaryVariables());
+        assertEquals(plain.variables(), interned.variables());
+        assertEquals(plain.clauses(), interned.clauses());
+
+        final Formula unsat = Formula.and(total(), total().not(), a.some());
+        assertFalse(solve(unsat, false).sat());
+        assertFalse(solve(unsat, true).sat());
+    }
+}
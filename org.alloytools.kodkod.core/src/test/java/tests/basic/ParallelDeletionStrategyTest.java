@@ -0,0 +1,123 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Proof;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.ucore.ParallelDeletionStrategy;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * Tests the parallel deletion-based core minimization.
+ */
+public class ParallelDeletionStrategyTest extends TestCase {
+
+    private final Solver   solver, checker;
+    private final Relation a, b, a2b, b2a;
+    private final Bounds   bounds;
+
+    public ParallelDeletionStrategyTest(String arg0) {
+        super(arg0);
+        this.solver = new Solver();
+        solver.options().setLogTranslation(1);
+        solver.options().setSolver(SATFactory.MiniSatProver);
+        this.checker = new Solver();
+        checker.options().setSolver(SATFactory.DefaultSAT4J);
+        List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 9; i++) {
+            atoms.add("" + i);
+        }
+        final Universe universe = new Universe(atoms);
+        final TupleFactory factory = universe.factory();
+        this.a = Relation.unary("a");
+        this.b = Relation.unary("b");
+        this.a2b = Relation.binary("a2b");
+        this.b2a = Relation.binary("b2a");
+        this.bounds = new Bounds(universe);
+        bounds.boundExactly(a, factory.setOf("0", "1", "2", "3", "4"));
+        bounds.boundExactly(b, factory.setOf("5", "6", "7", "8"));
+        bounds.bound(a2b, bounds.upperBound(a).product(bounds.upperBound(b)));
+        bounds.bound(b2a, bounds.upperBound(b).product(bounds.upperBound(a)));
+    }
+
+    /**
+     * Returns top-level formulas with several overlapping minimal cores of two or
+     * three formulas each, so that the first core found by the prover is not
+     * minimal.
+     */
+    private List<Formula> formulas() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        final List<Formula> formulas = new ArrayList<Formula>();
+        formulas.add(a2b.some());
+        formulas.add(a2b.function(a, b));
+        formulas.add(x.join(a2b).eq(y.join(a2b)).implies(x.eq(y)).forAll(x.oneOf(a).and(y.oneOf(a))));
+        formulas.add(b2a.some());
+        formulas.add(b2a.function(b, a));
+        formulas.add(a2b.eq(b2a.transpose()));
+        formulas.add(a2b.join(b2a).in(Expression.UNIV.product(Expression.UNIV)));
+        formulas.add(x.join(a2b).one().forAll(x.oneOf(a)));
+        formulas.add(a2b.join(a2b.transpose()).in(Expression.IDEN));
+        formulas.add(b2a.join(a2b).in(Expression.IDEN));
+        return formulas;
+    }
+
+    private void assertMinimal(Set<Formula> core) {
+        assertFalse(core.isEmpty());
+        assertEquals(Solution.Outcome.UNSATISFIABLE, checker.solve(Formula.and(core), bounds).outcome());
+        for (Formula f : core) {
+            final Set<Formula> rest = new LinkedHashSet<Formula>(core);
+            rest.remove(f);
+            assertTrue(checker.solve(Formula.and(rest), bounds).sat());
+        }
+    }
+
+    private Set<Formula> minimize(int threads) {
+        final Solution sol = solver.solve(Formula.and(formulas()), bounds);
+        assertEquals(Solution.Outcome.UNSATISFIABLE, sol.outcome());
+        final Proof proof = sol.proof();
+        final int initial = proof.highLevelCore().size();
+        proof.minimize(new ParallelDeletionStrategy(proof.log(), SATFactory.DefaultSAT4J, threads));
+        assertTrue(proof.highLevelCore().size() < initial);
+        return proof.highLevelCore().keySet();
+    }
+
+    public final void testSequential() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return; // the proofs come from the native prover
+        final Set<Formula> core = minimize(1);
+        assertMinimal(core);
+        assertTrue(core.size() == 2 || core.size() == 3);
+    }
+
+    public final void testParallel() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return;
+        for (int i = 0; i < 10; i++) {
+            final Set<Formula> core = minimize(4);
+            assertMinimal(core);
+            assertTrue(core.size() == 2 || core.size() == 3);
+        }
+    }
+
+    public final void testUnsupportedFactory() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return;
+        final Solution sol = solver.solve(Formula.and(formulas()), bounds);
+        try {
+            new ParallelDeletionStrategy(sol.proof().log(), SATFactory.MiniSatProver, 2);
+            fail();
+        } catch (IllegalArgumentException e) {}
+    }
+}
@@ -0,0 +1,74 @@
+package tests.basic;
+
+import static kodkod.engine.Solution.Outcome.SATISFIABLE;
+import static kodkod.engine.Solution.Outcome.UNSATISFIABLE;
+
+import java.util.Iterator;
+
+import examples.alloy.CeilingsAndFloors;
+import examples.alloy.Pigeonhole;
+import junit.framework.TestCase;
+import kodkod.ast.Formula;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.satlab.SATFactory;
+
+/**
+ * Tests the portfolio solvers produced by {@link SATFactory#portfolio}.
+ */
+public class PortfolioTest extends TestCase {
+
+    private final Solver solver;
+
+    public PortfolioTest(String arg0) {
+        super(arg0);
+        this.solver = new Solver();
+    }
+
+    public final void testIllegalPortfolios() {
+        try {
+            SATFactory.portfolio();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+        try {
+            SATFactory.portfolio(SATFactory.DefaultSAT4J, SATFactory.MiniSatProver);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    public final void testOutcomes() {
+        solver.options().setSolver(SATFactory.portfolio(SATFactory.DefaultSAT4J, SATFactory.LightSAT4J));
+
+        final Pigeonhole model = new Pigeonhole();
+        final Formula f = model.declarations().and(model.pigeonPerHole());
+        Solution sol = solver.solve(f, model.bounds(5, 5));
+        assertEquals(SATISFIABLE, sol.outcome());
+        sol = solver.solve(f, model.bounds(6, 5));
+        assertEquals(UNSATISFIABLE, sol.outcome());
+    }
+
+    public final void testEnumeration() {
+        solver.options().setSolver(SATFactory.portfolio(SATFactory.DefaultSAT4J, SATFactory.LightSAT4J));
+        assertTrue(solver.options().solver().incremental());
+
+        final CeilingsAndFloors model = new CeilingsAndFloors();
+        final Formula f = model.checkBelowTooAssertion();
+
+        // has exactly one instance
+        Iterator<Solution> sol = solver.solveAll(f, model.bounds(2, 2));
+        assertNotNull(sol.next().instance());
+        assertNull(sol.next().instance());
+        assertFalse(sol.hasNext());
+    }
+
+    public final void testDefaultPortfolio() {
+        solver.options().setSolver(SATFactory.Portfolio);
+        assertTrue(SATFactory.available(SATFactory.Portfolio));
+
+        final CeilingsAndFloors model = new CeilingsAndFloors();
+        Iterator<Solution> sol = solver.solveAll(model.checkBelowTooAssertion(), model.bounds(3, 3));
+        assertNotNull(sol.next().instance());
+        assertNotNull(sol.next().instance());
+        assertTrue(sol.hasNext());
+    }
+}
@@ -0,0 +1,167 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import kodkod.engine.satlab.Clause;
+import kodkod.engine.satlab.ReductionStrategy;
+import kodkod.engine.satlab.ResolutionTrace;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATProver;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+/**
+ * Tests the packed resolution traces produced by the MiniSat prover, both in
+ * memory and mapped onto temporary files.
+ */
+public class ResolutionTraceTest extends TestCase {
+
+    private static final String MAPPED = "kodkod.trace.mapped";
+
+    public ResolutionTraceTest(String arg0) {
+        super(arg0);
+    }
+
+    /**
+     * Returns the clauses stating that p pigeons sit in h holes, at most one per
+     * hole, with a few clauses that are not needed for the proof.
+     */
+    private static List<int[]> pigeons(int p, int h) {
+        final List<int[]> clauses = new ArrayList<int[]>();
+        for (int i = 0; i < p; i++) {
+            final int[] clause = new int[h];
+            for (int j = 0; j < h; j++)
+                clause[j] = i * h + j + 1;
+            clauses.add(clause);
+        }
+        for (int j = 0; j < h; j++)
+            for (int i = 0; i < p; i++)
+                for (int k = i + 1; k < p; k++)
+                    clauses.add(new int[] {
+                                           -(i * h + j + 1), -(k * h + j + 1)
+                    });
+        final int extra = p * h + 1;
+        clauses.add(new int[] {
+                               extra, extra + 1
+        });
+        clauses.add(new int[] {
+                               -extra, 1
+        });
+        return clauses;
+    }
+
+    private static SATProver prover(List<int[]> clauses, int vars) {
+        final SATProver prover = (SATProver) SATFactory.MiniSatProver.instance();
+        prover.addVariables(vars);
+        for (int[] clause : clauses)
+            prover.addClause(clause.clone());
+        assertFalse(prover.solve());
+        return prover;
+    }
+
+    /** Returns a copy of the given clause sorted in the increasing order of absolute values. */
+    private static int[] sorted(int[] clause) {
+        final int[] ret = clause.clone();
+        for (int i = 1; i < ret.length; i++) {
+            final int lit = ret[i];
+            int j = i;
+            for (; j > 0 && StrictMath.abs(ret[j - 1]) > StrictMath.abs(lit); j--)
+                ret[j] = ret[j - 1];
+            ret[j] = lit;
+        }
+        return ret;
+    }
+
+    /**
+     * Checks that the trace is a refutation of the given clauses: its axioms are
+     * the given clauses, each resolvent follows from its antecedents, the last
+     * clause is empty, and the core is unsatisfiable.
+     */
+    private static void check(ResolutionTrace trace, List<int[]> clauses, int vars) {
+        final IntSet axioms = trace.axioms();
+        assertEquals(clauses.size(), axioms.size());
+        final Iterator<Clause> itr = trace.iterator(axioms);
+        for (int i = 0; itr.hasNext(); i++)
+            assertTrue(Arrays.equals(sorted(clauses.get(i)), itr.next().toArray()));
+
+        for (IntIterator indices = trace.resolvents().iterator(); indices.hasNext();) {
+            final int index = indices.next();
+            final Clause resolvent = trace.get(index);
+            assertTrue(resolvent.numberOfAntecedents() > 1);
+            final IntSet lits = Ints.bestSet(-vars - 2, vars + 2);
+            for (Iterator<Clause> antes = resolvent.antecedents(); antes.hasNext();) {
+                for (IntIterator l = antes.next().literals(); l.hasNext();)
+                    lits.add(l.next());
+            }
+            for (IntIterator l = resolvent.literals(); l.hasNext();)
+                assertTrue(lits.contains(l.next()));
+        }
+        assertEquals(0, trace.get(trace.size() - 1).size());
+
+        final IntSet core = trace.core();
+        assertFalse(core.isEmpty());
+        assertEquals(trace.reachable(Ints.singleton(trace.size() - 1)).size(), trace.size() - axioms.size() + core.size());
+        final SATSolver checker = SATFactory.DefaultSAT4J.instance();
+        checker.addVariables(vars);
+        for (Iterator<Clause> c = trace.iterator(core); c.hasNext();)
+            checker.addClause(c.next().toArray());
+        assertFalse(checker.solve());
+    }
+
+    private String solve(List<int[]> clauses, int vars) {
+        final SATProver prover = prover(clauses, vars);
+        try {
+            final ResolutionTrace trace = prover.proof();
+            check(trace, clauses, vars);
+            final IntSet core = trace.core();
+            assertFalse(core.contains(clauses.size() - 1));
+            prover.reduce(new ReductionStrategy() {
+
+                boolean done = false;
+
+                @Override
+                public IntSet next(ResolutionTrace trace) {
+                    if (done)
+                        return Ints.EMPTY_SET;
+                    done = true;
+                    return trace.core();
+                }
+            });
+            final List<int[]> reduced = new ArrayList<int[]>();
+            for (IntIterator itr = core.iterator(); itr.hasNext();)
+                reduced.add(clauses.get(itr.next()));
+            check(prover.proof(), reduced, vars);
+            return trace.toString();
+        } finally {
+            prover.free();
+        }
+    }
+
+    public final void testHeap() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return; // the traces come from the native prover
+        solve(pigeons(6, 5), 32);
+    }
+
+    public final void testMapped() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return;
+        final String heap = solve(pigeons(6, 5), 32);
+        final String old = System.getProperty(MAPPED);
+        System.setProperty(MAPPED, "0");
+        try {
+            assertEquals(heap, solve(pigeons(6, 5), 32));
+        } finally {
+            if (old == null)
+                System.clearProperty(MAPPED);
+            else
+                System.setProperty(MAPPED, old);
+        }
+    }
+}
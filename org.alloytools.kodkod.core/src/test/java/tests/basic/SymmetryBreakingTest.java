@@ -2,6 +2,7 @@ package tests.basic;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import kodkod.ast.Formula;
@@ -9,11 +10,13 @@ import kodkod.ast.Relation;
 import kodkod.engine.Solution;
 import kodkod.engine.Solver;
 import kodkod.engine.Statistics;
+import kodkod.engine.fol2sat.SymmetryDetector;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.instance.Universe;
+import kodkod.util.ints.IntSet;
 
 /**
  * Tests symmetry breaking code for total orderings and acyclic relations.
@@ -183,4 +186,31 @@ public class SymmetryBreakingTest extends TestCase {
         assertPrimVarNum(bounds.upperBound(ac1).size());
     }
 
+    public void testSymmetryThreads() {
+        final List<String> atoms = new ArrayList<String>(150);
+        for (int i = 0; i < 150; i++) {
+            atoms.add("a" + i);
+        }
+        final TupleFactory f = new Universe(atoms).factory();
+        final Bounds b = new Bounds(f.universe());
+        final Relation a = Relation.unary("a"), c = Relation.unary("c"), r = Relation.binary("r");
+        b.bound(a, f.range(f.tuple("a0"), f.tuple("a99")));
+        b.bound(c, f.range(f.tuple("a20"), f.tuple("a149")));
+        b.bound(r, b.upperBound(a).product(b.upperBound(c)));
+        final Formula formula = r.some().and(r.in(a.product(c))).and(a.one());
+
+        final Set<IntSet> parts = SymmetryDetector.partition(b, null, null);
+        assertEquals(new ArrayList<IntSet>(parts), new ArrayList<IntSet>(SymmetryDetector.partition(b, null, null, 4)));
+        assertEquals(3, parts.size());
+
+        solver.options().setSymmetryBreaking(200);
+        final Solution s1 = solver.solve(formula, b);
+        solver.options().setSymmetryThreads(4);
+        final Solution s4 = solver.solve(formula, b);
+        solver.options().setSymmetryThreads(1);
+        assertEquals(s1.stats().variables(), s4.stats().variables());
+        assertEquals(s1.stats().clauses(), s4.stats().clauses());
+        assertEquals(s1.instance().relationTuples(), s4.instance().relationTuples());
+    }
+
 }
@@ -0,0 +1,169 @@
+package tests.basic;
+
+import static kodkod.engine.Solution.Outcome.SATISFIABLE;
+import static kodkod.engine.Solution.Outcome.UNSATISFIABLE;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import examples.alloy.CeilingsAndFloors;
+import examples.alloy.Pigeonhole;
+import junit.framework.TestCase;
+import kodkod.ast.Decl;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Evaluator;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.fol2sat.TranslationCache;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * Tests {@link TranslationCache}.
+ */
+public class TranslationCacheTest extends TestCase {
+
+    private final Solver     solver;
+    private File             dir;
+    private TranslationCache cache;
+
+    public TranslationCacheTest(String arg0) {
+        super(arg0);
+        this.solver = new Solver();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("kodkod", ".cache");
+        dir.delete();
+        cache = new TranslationCache(dir);
+        solver.options().setTranslationCache(cache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    private Solution pigeons(int pigeons, int holes) {
+        final Pigeonhole model = new Pigeonhole();
+        final Formula f = model.declarations().and(model.pigeonPerHole());
+        final Solution sol = solver.solve(f, model.bounds(pigeons, holes));
+        if (sol.instance() != null)
+            assertTrue(new Evaluator(sol.instance(), solver.options()).evaluate(f));
+        return sol;
+    }
+
+    public final void testHits() {
+        assertEquals(SATISFIABLE, pigeons(5, 5).outcome());
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(SATISFIABLE, pigeons(5, 5).outcome());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        assertEquals(UNSATISFIABLE, pigeons(6, 5).outcome());
+        assertEquals(UNSATISFIABLE, pigeons(6, 5).outcome());
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    public final void testOptions() {
+        pigeons(5, 5);
+        solver.options().setSymmetryBreaking(0);
+        pigeons(5, 5);
+        assertEquals(0, cache.hits());
+        solver.options().setLogTranslation(1);
+        pigeons(5, 5);
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    public final void testCorruptFile() throws IOException {
+        pigeons(5, 5);
+        for (File f : dir.listFiles()) {
+            final FileOutputStream out = new FileOutputStream(f);
+            out.write(new byte[] {
+                                  'K', 'K', 'T', 'C', 0, 0, 0, 7
+            });
+            out.close();
+        }
+        assertEquals(SATISFIABLE, pigeons(5, 5).outcome());
+        assertEquals(0, cache.hits());
+        assertEquals(SATISFIABLE, pigeons(5, 5).outcome());
+        assertEquals(1, cache.hits());
+    }
+
+    public final void testSkolems() {
+        final List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            atoms.add("a" + i);
+        }
+        final Universe u = new Universe(atoms);
+        final TupleFactory t = u.factory();
+        final List<Relation> skolems = new ArrayList<Relation>();
+        final List<Variable> skolemized = new ArrayList<Variable>();
+        solver.options().setReporter(new AbstractReporter() {
+
+            @Override
+            public void skolemizing(Decl decl, Relation skolem, List<Decl> context) {
+                skolems.add(skolem);
+                skolemized.add(decl.variable());
+            }
+        });
+
+        for (int run = 0; run < 2; run++) {
+            final Relation a = Relation.unary("A"), r = Relation.binary("r");
+            final Variable x = Variable.unary("x");
+            final Formula f = x.join(r).some().forSome(x.oneOf(a));
+            final Bounds b = new Bounds(u);
+            b.bound(a, t.allOf(1));
+            b.bound(r, t.allOf(2));
+
+            final Solution sol = solver.solve(f, b);
+            assertEquals(SATISFIABLE, sol.outcome());
+            assertEquals(run + 1, skolems.size());
+            assertSame(x, skolemized.get(run));
+            final Relation skolem = skolems.get(run);
+            assertTrue(sol.instance().relations().contains(skolem));
+            assertTrue(sol.instance().tuples(skolem).size() == 1);
+            assertTrue(sol.instance().tuples(a).containsAll(sol.instance().tuples(skolem)));
+        }
+        assertEquals(1, cache.hits());
+        assertEquals(skolems.get(0).name(), skolems.get(1).name());
+    }
+
+    public final void testEnumeration() {
+        final CeilingsAndFloors model = new CeilingsAndFloors();
+        final Formula f = model.declarations().and(model.belowToo());
+        final int[] counts = new int[2];
+        for (int run = 0; run < 2; run++) {
+            for (Iterator<Solution> sols = solver.solveAll(f, model.bounds(2, 2)); sols.hasNext();) {
+                final Solution sol = sols.next();
+                if (sol.instance() != null) {
+                    assertTrue(new Evaluator(sol.instance(), solver.options()).evaluate(f));
+                    counts[run]++;
+                }
+            }
+        }
+        assertTrue(counts[0] > 1);
+        assertEquals(counts[0], counts[1]);
+        assertEquals(1, cache.hits());
+    }
+}
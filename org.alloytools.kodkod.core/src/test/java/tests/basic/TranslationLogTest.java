@@ -0,0 +1,138 @@
+package tests.basic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import kodkod.ast.Formula;
+import kodkod.ast.Node;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Proof;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.fol2sat.RecordFilter;
+import kodkod.engine.fol2sat.TranslationLog;
+import kodkod.engine.fol2sat.TranslationRecord;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+
+/**
+ * Tests the replay of file-based translation logs, with and without the
+ * variables and formulas of a filter.
+ */
+public class TranslationLogTest extends TestCase {
+
+    private final Solver   solver;
+    private final Relation a, b, a2b;
+    private final Bounds   bounds;
+
+    public TranslationLogTest(String arg0) {
+        super(arg0);
+        this.solver = new Solver();
+        solver.options().setSolver(SATFactory.MiniSatProver);
+        List<String> atoms = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            atoms.add("" + i);
+        }
+        final Universe universe = new Universe(atoms);
+        final TupleFactory factory = universe.factory();
+        this.a = Relation.unary("a");
+        this.b = Relation.unary("b");
+        this.a2b = Relation.binary("a2b");
+        this.bounds = new Bounds(universe);
+        bounds.boundExactly(a, factory.setOf("0", "1", "2", "3", "4"));
+        bounds.boundExactly(b, factory.setOf("5", "6", "7"));
+        bounds.bound(a2b, bounds.upperBound(a).product(bounds.upperBound(b)));
+    }
+
+    /** Returns an unsatisfiable pigeonhole formula with a redundant conjunct. */
+    private Formula formula() {
+        final Variable x = Variable.unary("x"), y = Variable.unary("y");
+        return Formula.and(a2b.function(a, b), x.join(a2b).eq(y.join(a2b)).implies(x.eq(y)).forAll(x.oneOf(a).and(y.oneOf(a))), a2b.some());
+    }
+
+    private Proof proof(int logTranslation) {
+        solver.options().setLogTranslation(logTranslation);
+        final Solution sol = solver.solve(formula(), bounds);
+        assertEquals(Solution.Outcome.UNSATISFIABLE, sol.outcome());
+        return sol.proof();
+    }
+
+    private static List<String> replay(TranslationLog log, RecordFilter filter) {
+        final List<String> ret = new ArrayList<String>();
+        for (Iterator<TranslationRecord> itr = log.replay(filter); itr.hasNext();) {
+            ret.add(itr.next().toString());
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a filter that accepts the records for the given variables and
+     * formulas, and that passes them on to the log if hinted is true.
+     */
+    private static RecordFilter filter(final IntSet vars, final Set<Formula> formulas, final boolean hinted) {
+        return new RecordFilter() {
+
+            @Override
+            public boolean accept(Node node, Formula translated, int literal, Map<Variable,TupleSet> env) {
+                return (vars == null || vars.contains(StrictMath.abs(literal))) && (formulas == null || formulas.contains(translated));
+            }
+
+            @Override
+            public IntSet variables() {
+                return hinted ? vars : null;
+            }
+
+            @Override
+            public Set<Formula> formulas() {
+                return hinted ? formulas : null;
+            }
+        };
+    }
+
+    public final void testIndexedReplay() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return; // the proofs come from the native prover
+        final TranslationLog log = proof(2).log();
+        final List<String> all = replay(log, RecordFilter.ALL);
+        assertTrue(all.size() > 20);
+
+        final IntSet vars = new IntTreeSet();
+        int i = 0;
+        for (Iterator<TranslationRecord> itr = log.replay(); itr.hasNext(); i++) {
+            final int literal = itr.next().literal();
+            if (i % 3 == 0)
+                vars.add(StrictMath.abs(literal));
+        }
+        vars.add(Integer.MAX_VALUE);
+        final Set<Formula> roots = log.roots();
+
+        final List<String> byVars = replay(log, filter(vars, null, true));
+        assertFalse(byVars.isEmpty());
+        assertTrue(byVars.size() < all.size());
+        assertEquals(replay(log, filter(vars, null, false)), byVars);
+        assertEquals(replay(log, filter(null, roots, false)), replay(log, filter(null, roots, true)));
+        assertEquals(replay(log, filter(vars, roots, false)), replay(log, filter(vars, roots, true)));
+        assertTrue(replay(log, filter(new IntTreeSet(), roots, true)).isEmpty());
+    }
+
+    public final void testCore() {
+        if (!SATFactory.available(SATFactory.MiniSatProver))
+            return;
+        final Proof logged = proof(2), unlogged = proof(1);
+        assertEquals(unlogged.highLevelCore().keySet().toString(), logged.highLevelCore().keySet().toString());
+        int records = 0;
+        for (Iterator<TranslationRecord> itr = logged.core(); itr.hasNext(); itr.next())
+            records++;
+        assertTrue(records >= logged.highLevelCore().size());
+    }
+}
@@ -65,6 +65,33 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_addClause
 	return solverPtr->okay();
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    addClauses
+ * Signature: (JLjava/nio/IntBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Glucose_addClauses
+(JNIEnv * env, jobject, jlong solver, jobject clauses, jint offset, jint length) {
+	jint* buf = (jint*) env->GetDirectBufferAddress(clauses);
+	if (buf == NULL)
+		return -1;
+	Solver* solverPtr = ((Solver*)solver);
+	vec<Lit> lits;
+	jint added = 0;
+	for(jint* end = buf + offset + length, * i = buf + offset; i < end; ++i) {
+		int var = *i;
+		if (var != 0) {
+			lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+		} else {
+			solverPtr->addClause(lits);
+			lits.clear();
+			if (solverPtr->okay())
+				++added;
+		}
+	}
+	return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Glucose
  * Method:    solve
@@ -76,6 +103,43 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solve
 	return ((Solver*)solver)->solve();
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solveAssuming
+(JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+	jsize length = env->GetArrayLength(assumptions);
+	jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+	vec<Lit> lits;
+	for(int i = 0; i < length; ++i) {
+		int var = *(buf+i);
+		lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+	}
+	env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+	return ((Solver*)solver)->solve(lits);
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    failed
+ * Signature: (J[I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_kodkod_engine_satlab_Glucose_failed
+(JNIEnv * env, jobject, jlong solver, jintArray) {
+	// the final conflict clause holds the negations of the failed assumptions
+	vec<Lit>& conflict = ((Solver*)solver)->conflict;
+	jintArray failed = env->NewIntArray(conflict.size());
+	jint* buf = env->GetIntArrayElements(failed, JNI_FALSE);
+	for(int i = 0; i < conflict.size(); ++i) {
+		Lit lit = ~conflict[i];
+		*(buf+i) = sign(lit) ? -(var(lit)+1) : var(lit)+1;
+	}
+	env->ReleaseIntArrayElements(failed, buf, 0);
+	return failed;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Glucose
  * Method:    valueOf
@@ -85,3 +149,31 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_valueOf
 (JNIEnv *, jobject, jlong solver, jint var) {
 	return ((Solver*)solver)->model[var-1]==l_True;
 }
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    interrupt
+ * Signature: (JZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_interrupt
+(JNIEnv *, jobject, jlong solver, jboolean on) {
+	if (on)
+		((Solver*)solver)->interrupt();
+	else
+		((Solver*)solver)->clearInterrupt();
+	return JNI_TRUE;
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    statistics
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_kodkod_engine_satlab_Glucose_statistics
+  (JNIEnv * env, jobject obj, jlong solver) {
+	Solver* s = (Solver*)solver;
+	jlong stats[4] = { (jlong)s->conflicts, (jlong)s->decisions, (jlong)s->propagations, (jlong)s->starts };
+	jlongArray ret = env->NewLongArray(4);
+	env->SetLongArrayRegion(ret, 0, 4, stats);
+	return ret;
+}
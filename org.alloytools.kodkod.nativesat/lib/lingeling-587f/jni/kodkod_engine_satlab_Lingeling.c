@@ -5,6 +5,14 @@
 #include <stdio.h>
 #include <stdlib.h>
 
+/*
+ * Termination callback installed by the interrupt method:
+ * tells lingeling to stop searching as soon as possible.
+ */
+static int terminate(void * state) {
+	return 1;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    make
@@ -62,6 +70,28 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
 	return JNI_TRUE;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    addClauses
+ * Signature: (JLjava/nio/IntBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Lingeling_addClauses
+  (JNIEnv * env, jobject obj, jlong lgl, jobject clauses, jint offset, jint length) {
+	jint* buf = (jint*)(*env)->GetDirectBufferAddress(env, clauses);
+	LGL* lglPtr = (LGL*)lgl;
+	jint added = 0;
+	jint i;
+	if (buf == NULL)
+		return -1;
+	for(i = offset; i < offset + length; i++) {
+		int lit = buf[i];
+		lgladd (lglPtr, lit);
+		if (lit == 0)
+			added++;
+	}
+	return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    solve
@@ -73,6 +103,18 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solve
 	return lglsat(lglPtr)==10;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    solveAssuming
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solveAssuming
+  (JNIEnv * env, jobject obj, jlong lgl, jint lit) {
+	LGL* lglPtr = (LGL*) lgl;
+	lglassume (lglPtr, lit);
+	return lglsat(lglPtr)==10;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    valueOf
@@ -87,3 +129,27 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_valueOf
 		return JNI_FALSE;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    interrupt
+ * Signature: (JZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_interrupt
+  (JNIEnv * env, jobject obj, jlong lgl, jboolean on) {
+	lglseterm((LGL*)lgl, on ? terminate : NULL, NULL);
+	return JNI_TRUE;
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    statistics
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_kodkod_engine_satlab_Lingeling_statistics
+  (JNIEnv * env, jobject obj, jlong solver) {
+	LGL* lglPtr = (LGL*) solver;
+	jlong stats[4] = { lglgetconfs(lglPtr), lglgetdecs(lglPtr), lglgetprops(lglPtr), -1 };
+	jlongArray ret = (*env)->NewLongArray(env, 4);
+	(*env)->SetLongArrayRegion(env, ret, 0, 4, stats);
+	return ret;
+}
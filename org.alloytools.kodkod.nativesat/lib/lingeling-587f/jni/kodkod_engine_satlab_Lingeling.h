@@ -39,6 +39,14 @@ JNIEXPORT void JNICALL Java_kodkod_engine_satlab_Lingeling_addVariables
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
   (JNIEnv *, jobject, jlong, jintArray);
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    addClauses
+ * Signature: (JLjava/nio/IntBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Lingeling_addClauses
+  (JNIEnv *, jobject, jlong, jobject, jint, jint);
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    solve
@@ -47,6 +55,14 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solve
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    solveAssuming
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solveAssuming
+  (JNIEnv *, jobject, jlong, jint);
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    valueOf
@@ -55,6 +71,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solve
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_valueOf
   (JNIEnv *, jobject, jlong, jint);
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    interrupt
+ * Signature: (JZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_interrupt
+  (JNIEnv *, jobject, jlong, jboolean);
+
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    statistics
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_kodkod_engine_satlab_Lingeling_statistics
+  (JNIEnv *, jobject, jlong);
+
 #ifdef __cplusplus
 }
 #endif
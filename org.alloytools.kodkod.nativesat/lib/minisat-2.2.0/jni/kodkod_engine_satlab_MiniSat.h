@@ -39,6 +39,14 @@ JNIEXPORT void JNICALL Java_kodkod_engine_satlab_MiniSat_addVariables
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_addClause
   (JNIEnv *, jobject, jlong, jintArray);
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    addClauses
+ * Signature: (JLjava/nio/IntBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_MiniSat_addClauses
+  (JNIEnv *, jobject, jlong, jobject, jint, jint);
+
 /*
  * Class:     kodkod_engine_satlab_MiniSat
  * Method:    solve
@@ -47,6 +55,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solve
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solveAssuming
+  (JNIEnv *, jobject, jlong, jintArray);
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    failed
+ * Signature: (J[I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_kodkod_engine_satlab_MiniSat_failed
+  (JNIEnv *, jobject, jlong, jintArray);
+
 /*
  * Class:     kodkod_engine_satlab_MiniSat
  * Method:    valueOf
@@ -55,6 +79,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solve
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_valueOf
   (JNIEnv *, jobject, jlong, jint);
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    interrupt
+ * Signature: (JZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_interrupt
+  (JNIEnv *, jobject, jlong, jboolean);
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    statistics
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_kodkod_engine_satlab_MiniSat_statistics
+  (JNIEnv *, jobject, jlong);
+
 #ifdef __cplusplus
 }
 #endif